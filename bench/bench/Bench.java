@@ -0,0 +1,219 @@
+package bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Минимальный harness для микро-бенчмарков (в духе JMH, без зависимостей):
+ * прогрев и замеры итерациями фиксированной длительности, операции в секунду
+ * со стандартным отклонением, байт выделено на операцию (ThreadMXBean).
+ *
+ * Результаты пишутся в bench/results/&lt;suite&gt;-&lt;label&gt;.csv, label по умолчанию -
+ * короткий hash текущего коммита; с -Dbench.baseline=&lt;csv&gt; выводится разница с ним.
+ *
+ * Параметры (system properties): bench.warmup, bench.iterations - количество итераций,
+ * bench.time - длительность итерации в мс, bench.filter - regex по имени случая,
+ * bench.label, bench.baseline, bench.results - каталог результатов.
+ */
+public final class Bench {
+
+    /** Один вызов измеряемого кода. */
+    public interface Case {
+        /**
+         * @return сколько операций (строк, значений) выполнено за вызов
+         */
+        long run() throws Exception;
+    }
+
+    private static final class Entry {
+        final String name;
+        final String unit;
+        final Case body;
+
+        Entry(String name, String unit, Case body) {
+            this.name = name;
+            this.unit = unit;
+            this.body = body;
+        }
+    }
+
+    private static final class Result {
+        final String name;
+        final String unit;
+        final double opsPerSec;
+        final double stddev;
+        final double bytesPerOp;
+
+        Result(String name, String unit, double opsPerSec, double stddev, double bytesPerOp) {
+            this.name = name;
+            this.unit = unit;
+            this.opsPerSec = opsPerSec;
+            this.stddev = stddev;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Приемник результатов, чтобы JIT не выбросил вычисления
+    private static volatile Object sinkObject;
+    private static volatile long sinkValue;
+
+    private final String suite;
+    private final List<Entry> cases = new ArrayList<>();
+    private final int warmup = Integer.getInteger("bench.warmup", 3);
+    private final int iterations = Integer.getInteger("bench.iterations", 5);
+    private final long iterationNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("bench.time", 1000));
+    private final Pattern filter = Pattern.compile(System.getProperty("bench.filter", ".*"));
+
+    public Bench(String suite) {
+        this.suite = suite;
+    }
+
+    public static void consume(Object value) {
+        sinkObject = value;
+    }
+
+    public static void consume(long value) {
+        sinkValue = value;
+    }
+
+    /**
+     * @param unit название операции в отчете (rows, values, ...)
+     */
+    public Bench add(String name, String unit, Case body) {
+        cases.add(new Entry(name, unit, body));
+        return this;
+    }
+
+    /**
+     * Выполнить все случаи, подходящие под bench.filter, и сохранить результаты.
+     */
+    public void run() throws Exception {
+        System.out.printf("# %s: %d warmup + %d iterations x %d ms%n",
+                suite, warmup, iterations, TimeUnit.NANOSECONDS.toMillis(iterationNanos));
+
+        List<Result> results = new ArrayList<>();
+        for (Entry entry : cases) {
+            if (!filter.matcher(entry.name).find()) {
+                continue;
+            }
+            Result result = measure(entry);
+            results.add(result);
+            System.out.printf("%-40s %,14.0f +- %5.1f%% %s/s %,10.1f B/op%n",
+                    result.name, result.opsPerSec, 100.0 * result.stddev / Math.max(1e-9, result.opsPerSec),
+                    result.unit, result.bytesPerOp);
+        }
+
+        String baseline = System.getProperty("bench.baseline");
+        if (baseline != null) {
+            compare(results, Paths.get(baseline));
+        }
+        save(results);
+    }
+
+    private Result measure(Entry entry) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            iteration(entry.body);
+        }
+        double[] rates = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] measured = iteration(entry.body);
+            rates[i] = measured[0] * 1e9 / measured[1];
+            totalOps += measured[0];
+            totalBytes += measured[2];
+        }
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate;
+        }
+        mean /= rates.length;
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean);
+        }
+        double stddev = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) : 0;
+        return new Result(entry.name, entry.unit, mean, stddev, totalBytes / (double) Math.max(1, totalOps));
+    }
+
+    /**
+     * @return {операций, наносекунд, байт выделено}
+     */
+    private long[] iteration(Case body) throws Exception {
+        long ops = 0;
+        long allocStart = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            ops += body.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocStart;
+        return new long[]{ops, elapsed, allocated};
+    }
+
+    private void compare(List<Result> results, Path baseline) throws IOException {
+        Map<String, Double> previous = new HashMap<>();
+        for (String line : Files.readAllLines(baseline, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(",");
+            if (parts.length >= 4 && !parts[0].equals("suite")) {
+                previous.put(parts[1], Double.parseDouble(parts[3]));
+            }
+        }
+        System.out.printf("# compared with %s%n", baseline);
+        for (Result result : results) {
+            Double before = previous.get(result.name);
+            if (before != null && before > 0) {
+                System.out.printf("%-40s %+7.1f%%%n", result.name, 100.0 * (result.opsPerSec - before) / before);
+            }
+        }
+    }
+
+    private void save(List<Result> results) throws IOException {
+        String label = System.getProperty("bench.label", gitRevision());
+        Path dir = Paths.get(System.getProperty("bench.results", "bench/results"));
+        Files.createDirectories(dir);
+        Path file = dir.resolve(suite + "-" + label + ".csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("suite,case,unit,ops_per_sec,stddev,bytes_per_op,label");
+            for (Result result : results) {
+                out.printf(Locale.ROOT, "%s,%s,%s,%.1f,%.1f,%.1f,%s%n", suite, result.name, result.unit,
+                        result.opsPerSec, result.stddev, result.bytesPerOp, label);
+            }
+        }
+        System.out.printf("# results: %s%n", file);
+    }
+
+    /** Короткий hash текущего коммита или "local". */
+    static String gitRevision() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+                    .redirectErrorStream(true).start();
+            String revision = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (process.waitFor() == 0 && !revision.isEmpty()) {
+                return revision;
+            }
+        } catch (IOException e) {
+            // git недоступен - ниже метка по умолчанию
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "local";
+    }
+}
@@ -0,0 +1,506 @@
+package bench;
+
+import tools.TlcSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Сквозной нагрузочный прогон загрузчика по матрице: база данных x режим записи x BATCH_SIZE
+ * x THREAD_COUNT x набор данных. Каждый прогон - отдельный процесс (Main через StubLoaderMain,
+ * статический AppConfig не переносится между прогонами) со сгенерированным XML-конфигом;
+ * загрузчик сохраняет JSON-сводку (RUN_REPORT), из нее берутся строки/с и квантили стадий.
+ *
+ * Первые warmup прогонов каждой ячейки отбрасываются, по остальным считаются медиана,
+ * разброс и медианы квантилей. Отчеты: bench/results/load-&lt;label&gt;.json, .md, .html;
+ * с -Dbench.baseline=&lt;load-*.json&gt; ячейки сравниваются с прошлым прогоном по порогам
+ * threshold.throughput и threshold.p99, при регрессии код возврата 1.
+ *
+ * По умолчанию JDBC базы - заглушка jdbc:stub:&lt;db&gt; с задержкой stub.*; для локального сервера
+ * в матрице задаются ключи подключения (db.postgresql.POSTGRESQL_URL=...). Режим copy работает
+ * только с настоящим PostgreSQL (нужен PGConnection), MongoDB - только с db.mongodb.MONGO_HOSTS.
+ * Приемники blackhole и file (bench/results/load-&lt;label&gt;/files) подключений не требуют.
+ *
+ * java -cp "build/classes:build/bench:$CP" bench.LoadBenchmark [bench/load-matrix.properties]
+ */
+public final class LoadBenchmark {
+
+    private static final String[] STAGES = {"read", "queue_wait", "bind", "batch_wait", "execute_batch", "commit"};
+
+    /** Одна ячейка матрицы и ее результаты. */
+    private static final class Cell {
+        final String database;
+        final String mode;
+        final int batchSize;
+        final int threads;
+        final String dataset;
+        final List<Map<String, Double>> runs = new ArrayList<>();
+        final Map<String, Double> summary = new LinkedHashMap<>();
+        String error;
+        String verdict = "";
+        boolean regression;
+
+        Cell(String database, String mode, int batchSize, int threads, String dataset) {
+            this.database = database;
+            this.mode = mode;
+            this.batchSize = batchSize;
+            this.threads = threads;
+            this.dataset = dataset;
+        }
+
+        String name() {
+            return database + "/" + mode + "/b" + batchSize + "/t" + threads + "/" + dataset;
+        }
+    }
+
+    private final Properties matrix;
+    private final String label = System.getProperty("bench.label", Bench.gitRevision());
+    private final Path results = Paths.get(System.getProperty("bench.results", "bench/results"));
+    private final Pattern filter = Pattern.compile(System.getProperty("bench.filter", ".*"));
+    private final Map<String, String> datasets = new HashMap<>();
+
+    private LoadBenchmark(Properties matrix) {
+        this.matrix = matrix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String matrixFile = args.length > 0 ? args[0] : "bench/load-matrix.properties";
+        Properties matrix = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(matrixFile))) {
+            matrix.load(in);
+        }
+        System.exit(new LoadBenchmark(matrix).run() ? 0 : 1);
+    }
+
+    /**
+     * @return false, если есть регрессии относительно baseline
+     */
+    private boolean run() throws Exception {
+        int warmup = Integer.parseInt(get("warmup", "1"));
+        int iterations = Integer.parseInt(get("iterations", "3"));
+        Path runDir = results.resolve("load-" + label);
+        Files.createDirectories(runDir);
+
+        List<Cell> cells = new ArrayList<>();
+        for (String database : list("databases")) {
+            for (String mode : list("modes")) {
+                if (mode.equals("copy") && !database.equals("postgresql")) {
+                    continue;
+                }
+                for (String batchSize : list("batchSizes")) {
+                    for (String threads : list("threads")) {
+                        for (String dataset : list("datasets")) {
+                            Cell cell = new Cell(database, mode, Integer.parseInt(batchSize),
+                                    Integer.parseInt(threads), dataset);
+                            if (filter.matcher(cell.name()).find()) {
+                                cells.add(cell);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.printf("# load: %d cells x (%d warmup + %d iterations), label %s%n",
+                cells.size(), warmup, iterations, label);
+
+        for (Cell cell : cells) {
+            if (database(cell.database) == null) {
+                cell.error = "no connection settings (db." + cell.database + ".*)";
+                System.out.printf("%-48s skipped: %s%n", cell.name(), cell.error);
+                continue;
+            }
+            for (int i = 0; i < warmup + iterations && cell.error == null; i++) {
+                Map<String, Double> run = runOnce(cell, runDir, i);
+                if (i >= warmup && run != null) {
+                    cell.runs.add(run);
+                }
+            }
+            summarize(cell);
+            if (cell.error != null) {
+                System.out.printf("%-48s FAILED: %s%n", cell.name(), cell.error);
+            } else {
+                System.out.printf("%-48s %,12.0f rows/s +- %4.1f%%  execute p99 %8.2f ms%n", cell.name(),
+                        cell.summary.get("rowsPerSec"), cell.summary.get("stddevPct"),
+                        cell.summary.getOrDefault("execute_batch.p99Ms", 0.0));
+            }
+        }
+
+        String baseline = System.getProperty("bench.baseline");
+        if (baseline != null) {
+            compare(cells, Paths.get(baseline));
+        }
+        save(cells, warmup, iterations);
+
+        long regressions = cells.stream().filter(c -> c.regression).count();
+        if (regressions > 0) {
+            System.out.printf("# %d regression(s) against %s%n", regressions, baseline);
+        }
+        return regressions == 0;
+    }
+
+    // ---------------------------------------------------------------------
+    // Один прогон
+    // ---------------------------------------------------------------------
+
+    private Map<String, Double> runOnce(Cell cell, Path runDir, int iteration) throws Exception {
+        String base = cell.name().replace('/', '_') + "-" + iteration;
+        Path config = runDir.resolve(base + ".xml");
+        Path report = runDir.resolve(base + ".json");
+        Path log = runDir.resolve(base + ".log");
+        Files.deleteIfExists(report);
+        writeConfig(cell, config, report);
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(list("jvmArgs", " "));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StubLoaderMain.class.getName());
+        command.add(config.toString());
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        long timeout = Long.parseLong(get("timeoutSec", "1800"));
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            cell.error = "timeout after " + timeout + " s, see " + log;
+            return null;
+        }
+        if (process.exitValue() != 0 || !Files.isRegularFile(report)) {
+            cell.error = "exit code " + process.exitValue() + ", see " + log;
+            return null;
+        }
+        return parseReport(new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+    }
+
+    private void writeConfig(Cell cell, Path config, Path report) throws Exception {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("DATABASE_TYPE", cell.database.toUpperCase());
+        values.put("PARQUET_DIR", dataset(cell.dataset));
+        values.put("BATCH_SIZE", String.valueOf(cell.batchSize));
+        values.put("THREAD_COUNT", String.valueOf(cell.threads));
+        values.put("TEST_LIMIT", "0");
+        values.put("LOG_INTERVAL", "1000000000");
+        values.put("TABLE_NAME", "taxi_trips");
+        values.put("POSTGRESQL_COPY", String.valueOf(cell.mode.equals("copy")));
+        values.put("TRIP_REUSE", String.valueOf(cell.mode.equals("reuse")));
+        values.put("VIRTUAL_THREADS", String.valueOf(cell.mode.equals("virtual")));
+        values.put("RUN_REPORT", report.toAbsolutePath().toString());
+        values.putAll(prefixed("config."));
+        values.putAll(database(cell.database));
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(config, StandardCharsets.UTF_8))) {
+            out.println("<AppConfig>");
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                if (e.getKey().equals("MONGO_HOSTS")) {
+                    out.println("  <MONGO_HOSTS>");
+                    for (String host : e.getValue().split(",")) {
+                        out.printf("    <HOST>%s</HOST>%n", xml(host.trim()));
+                    }
+                    out.println("  </MONGO_HOSTS>");
+                } else {
+                    out.printf("  <%s>%s</%s>%n", e.getKey(), xml(e.getValue()), e.getKey());
+                }
+            }
+            out.println("</AppConfig>");
+        }
+    }
+
+    /**
+     * Ключи подключения базы: из db.&lt;name&gt;.* или заглушка для JDBC баз; null - подключиться нечем.
+     */
+    private Map<String, String> database(String name) {
+        Map<String, String> values = prefixed("db." + name + ".");
+        if (!values.isEmpty()) {
+            return values;
+        }
+        if (name.equals("mongodb")) {
+            return null;
+        }
+        if (name.equals("blackhole")) {
+            return values;
+        }
+        if (name.equals("file")) {
+            values.put("FILE_SINK_DIR", results.resolve("load-" + label).resolve("files").toAbsolutePath().toString());
+            return values;
+        }
+        String url = "jdbc:stub:" + name + "?executeMicros=" + get("stub.executeMicros", "500")
+                + "&rowNanos=" + get("stub.rowNanos", "200") + "&commitMicros=" + get("stub.commitMicros", "200");
+        String prefix = name.toUpperCase();
+        values.put(prefix + "_URL", url);
+        values.put(prefix + "_USER", "bench");
+        values.put(prefix + "_PASSWORD", "bench");
+        return values;
+    }
+
+    /**
+     * Каталог набора данных: dataset.&lt;name&gt;.dir или генерируется по files / rows / schema.
+     */
+    private String dataset(String name) throws Exception {
+        String dir = datasets.get(name);
+        if (dir == null) {
+            dir = get("dataset." + name + ".dir", "");
+            if (dir.isEmpty()) {
+                dir = TlcFixtures.ensureDataset(
+                        Integer.parseInt(get("dataset." + name + ".files", "2")),
+                        Long.parseLong(get("dataset." + name + ".rows", "100000")),
+                        TlcSchema.parse(get("dataset." + name + ".schema", "yellow_2024")));
+            }
+            datasets.put(name, dir);
+        }
+        return dir;
+    }
+
+    private static Map<String, Double> parseReport(String json) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        Matcher top = Pattern.compile("\"(rows|elapsedMs|rowsPerSec|batches|pinned|pinnedMs)\": ([0-9.]+)").matcher(json);
+        while (top.find()) {
+            values.put(top.group(1), Double.parseDouble(top.group(2)));
+        }
+        Matcher stage = Pattern.compile("\"(\\w+)\": \\{([^{}]*)}").matcher(json);
+        while (stage.find()) {
+            Matcher field = Pattern.compile("\"(\\w+)\": ([0-9.]+)").matcher(stage.group(2));
+            while (field.find()) {
+                values.put(stage.group(1) + "." + field.group(1), Double.parseDouble(field.group(2)));
+            }
+        }
+        return values;
+    }
+
+    // ---------------------------------------------------------------------
+    // Сводка и сравнение
+    // ---------------------------------------------------------------------
+
+    private static void summarize(Cell cell) {
+        if (cell.runs.isEmpty()) {
+            if (cell.error == null) {
+                cell.error = "no measured runs";
+            }
+            return;
+        }
+        double[] rates = cell.runs.stream().mapToDouble(r -> r.getOrDefault("rowsPerSec", 0.0)).toArray();
+        double mean = Arrays.stream(rates).average().orElse(0);
+        double variance = Arrays.stream(rates).map(r -> (r - mean) * (r - mean)).sum();
+        double stddev = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) : 0;
+
+        cell.summary.put("rowsPerSec", median(rates));
+        cell.summary.put("rowsPerSecMin", Arrays.stream(rates).min().orElse(0));
+        cell.summary.put("rowsPerSecMax", Arrays.stream(rates).max().orElse(0));
+        cell.summary.put("stddevPct", 100.0 * stddev / Math.max(1e-9, mean));
+        cell.summary.put("rows", cell.runs.get(0).getOrDefault("rows", 0.0));
+        if (cell.mode.equals("virtual")) {
+            cell.summary.put("pinned", median(cell.runs.stream().mapToDouble(r -> r.getOrDefault("pinned", 0.0)).toArray()));
+            cell.summary.put("pinnedMs", median(cell.runs.stream().mapToDouble(r -> r.getOrDefault("pinnedMs", 0.0)).toArray()));
+        }
+        for (String stage : STAGES) {
+            for (String key : new String[]{"p50Ms", "p90Ms", "p99Ms", "p999Ms"}) {
+                String name = stage + "." + key;
+                if (cell.runs.get(0).containsKey(name)) {
+                    cell.summary.put(name, median(cell.runs.stream()
+                            .mapToDouble(r -> r.getOrDefault(name, 0.0)).toArray()));
+                }
+            }
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    private void compare(List<Cell> cells, Path baseline) throws IOException {
+        double throughputThreshold = Double.parseDouble(get("threshold.throughput", "0.10"));
+        double p99Threshold = Double.parseDouble(get("threshold.p99", "0.25"));
+
+        // Ячейка в JSON отчета - одна строка: "name" и плоские числовые поля
+        Map<String, Map<String, Double>> previous = new HashMap<>();
+        Pattern name = Pattern.compile("\"name\": \"([^\"]+)\"");
+        Pattern number = Pattern.compile("\"([\\w.]+)\": (-?[0-9.]+)");
+        for (String line : Files.readAllLines(baseline, StandardCharsets.UTF_8)) {
+            Matcher n = name.matcher(line);
+            if (!n.find()) {
+                continue;
+            }
+            Map<String, Double> values = new HashMap<>();
+            Matcher m = number.matcher(line);
+            while (m.find()) {
+                values.put(m.group(1), Double.parseDouble(m.group(2)));
+            }
+            previous.put(n.group(1), values);
+        }
+
+        for (Cell cell : cells) {
+            Map<String, Double> before = previous.get(cell.name());
+            if (before == null || cell.error != null || !before.containsKey("rowsPerSec")) {
+                continue;
+            }
+            List<String> notes = new ArrayList<>();
+            double change = cell.summary.get("rowsPerSec") / before.get("rowsPerSec") - 1;
+            cell.summary.put("baseline.rowsPerSec", before.get("rowsPerSec"));
+            cell.summary.put("baseline.throughputChangePct", 100 * change);
+            if (change < -throughputThreshold) {
+                cell.regression = true;
+                notes.add(String.format(Locale.ROOT, "throughput %+.1f%%", 100 * change));
+            }
+            for (String stage : STAGES) {
+                Double now = cell.summary.get(stage + ".p99Ms");
+                Double then = before.get(stage + ".p99Ms");
+                // Квантили меньше 0.1 мс - шум округления, не сравниваются
+                if (now != null && then != null && then >= 0.1 && now / then - 1 > p99Threshold) {
+                    cell.regression = true;
+                    notes.add(String.format(Locale.ROOT, "%s p99 %+.0f%%", stage, 100 * (now / then - 1)));
+                }
+            }
+            cell.verdict = cell.regression ? "REGRESSION: " + String.join(", ", notes)
+                    : String.format(Locale.ROOT, "ok (%+.1f%%)", 100 * change);
+            System.out.printf("%-48s %s%n", cell.name(), cell.verdict);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Отчеты
+    // ---------------------------------------------------------------------
+
+    private void save(List<Cell> cells, int warmup, int iterations) throws IOException {
+        Files.createDirectories(results);
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+        Path json = results.resolve("load-" + label + ".json");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(json, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.printf("  \"label\": \"%s\",%n  \"timestamp\": \"%s\",%n", label, timestamp);
+            out.printf("  \"warmup\": %d,%n  \"iterations\": %d,%n", warmup, iterations);
+            out.println("  \"cells\": [");
+            for (int i = 0; i < cells.size(); i++) {
+                Cell cell = cells.get(i);
+                StringBuilder line = new StringBuilder("    {\"name\": \"").append(cell.name()).append('"');
+                line.append(", \"database\": \"").append(cell.database).append('"');
+                line.append(", \"mode\": \"").append(cell.mode).append('"');
+                line.append(", \"batchSize\": ").append(cell.batchSize);
+                line.append(", \"threads\": ").append(cell.threads);
+                line.append(", \"dataset\": \"").append(cell.dataset).append('"');
+                line.append(", \"runs\": ").append(cell.runs.size());
+                for (Map.Entry<String, Double> e : cell.summary.entrySet()) {
+                    line.append(String.format(Locale.ROOT, ", \"%s\": %.3f", e.getKey(), e.getValue()));
+                }
+                if (cell.error != null) {
+                    line.append(", \"error\": \"").append(cell.error.replace("\\", "/").replace("\"", "'")).append('"');
+                }
+                line.append(", \"regression\": ").append(cell.regression).append('}');
+                out.println(line + (i + 1 < cells.size() ? "," : ""));
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+
+        Path markdown = results.resolve("load-" + label + ".md");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(markdown, StandardCharsets.UTF_8))) {
+            out.printf("# Load benchmark %s%n%n", label);
+            out.printf("%s, %d warmup + %d measured runs per cell, median of runs.%n%n", timestamp, warmup, iterations);
+            out.println("| cell | rows/s | +- | read p99 ms | bind p99 ms | execute p50 / p99 ms | commit p99 ms | vs baseline |");
+            out.println("|---|---:|---:|---:|---:|---:|---:|---|");
+            for (Cell cell : cells) {
+                if (cell.error != null) {
+                    out.printf("| %s | - | - | - | - | - | - | %s |%n", cell.name(), cell.error);
+                    continue;
+                }
+                out.printf(Locale.ROOT, "| %s | %,.0f | %.1f%% | %s | %s | %s / %s | %s | %s |%n", cell.name(),
+                        cell.summary.get("rowsPerSec"), cell.summary.get("stddevPct"),
+                        ms(cell, "read.p99Ms"), ms(cell, "bind.p99Ms"), ms(cell, "execute_batch.p50Ms"),
+                        ms(cell, "execute_batch.p99Ms"), ms(cell, "commit.p99Ms"),
+                        cell.regression ? "**" + cell.verdict + "**" : cell.verdict);
+            }
+        }
+
+        Path html = results.resolve("load-" + label + ".html");
+        double best = cells.stream().mapToDouble(c -> c.summary.getOrDefault("rowsPerSec", 0.0)).max().orElse(1);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(html, StandardCharsets.UTF_8))) {
+            out.println("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Load benchmark " + label + "</title>");
+            out.println("<style>body{font-family:sans-serif}table{border-collapse:collapse}"
+                    + "td,th{border:1px solid #ccc;padding:3px 8px;text-align:right}td:first-child{text-align:left}"
+                    + ".bar{background:#4a90d9;height:10px}.bad{background:#fdd}</style></head><body>");
+            out.printf("<h2>Load benchmark %s</h2><p>%s, %d warmup + %d measured runs per cell, median of runs.</p>%n",
+                    label, timestamp, warmup, iterations);
+            out.println("<table><tr><th>cell</th><th>rows/s</th><th></th><th>+-</th><th>read p99</th><th>bind p99</th>"
+                    + "<th>execute p50 / p99</th><th>commit p99</th><th>vs baseline</th></tr>");
+            for (Cell cell : cells) {
+                if (cell.error != null) {
+                    out.printf("<tr class=\"bad\"><td>%s</td><td colspan=\"8\">%s</td></tr>%n",
+                            cell.name(), xml(cell.error));
+                    continue;
+                }
+                double rate = cell.summary.get("rowsPerSec");
+                out.printf(Locale.ROOT, "<tr%s><td>%s</td><td>%,.0f</td><td style=\"width:200px\">"
+                                + "<div class=\"bar\" style=\"width:%.0f%%\"></div></td><td>%.1f%%</td>"
+                                + "<td>%s</td><td>%s</td><td>%s / %s</td><td>%s</td><td>%s</td></tr>%n",
+                        cell.regression ? " class=\"bad\"" : "", cell.name(), rate, 100 * rate / Math.max(1, best),
+                        cell.summary.get("stddevPct"), ms(cell, "read.p99Ms"), ms(cell, "bind.p99Ms"),
+                        ms(cell, "execute_batch.p50Ms"), ms(cell, "execute_batch.p99Ms"), ms(cell, "commit.p99Ms"),
+                        xml(cell.verdict));
+            }
+            out.println("</table><p>Latencies in ms.</p></body></html>");
+        }
+        System.out.printf("# results: %s, %s, %s%n", json, markdown, html);
+    }
+
+    private static String ms(Cell cell, String key) {
+        Double value = cell.summary.get(key);
+        return value == null ? "-" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    // ---------------------------------------------------------------------
+    // Матрица
+    // ---------------------------------------------------------------------
+
+    private String get(String key, String defaultValue) {
+        return matrix.getProperty(key, defaultValue).trim();
+    }
+
+    private List<String> list(String key) {
+        return list(key, ",");
+    }
+
+    private List<String> list(String key, String separator) {
+        List<String> values = new ArrayList<>();
+        for (String value : get(key, "").split(separator)) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    /** Ключи с префиксом, без префикса, в порядке имен. */
+    private Map<String, String> prefixed(String prefix) {
+        Map<String, String> values = new LinkedHashMap<>();
+        matrix.stringPropertyNames().stream().sorted().filter(k -> k.startsWith(prefix))
+                .forEach(k -> values.put(k.substring(prefix.length()), get(k, "")));
+        return values;
+    }
+
+    private static String xml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,142 @@
+package bench;
+
+import config.ReaderMode;
+import model.TaxiTrip;
+import plan.LoadPlanner;
+import plan.WorkUnit;
+import reader.LocalMicros;
+import reader.ParquetColumns;
+import reader.ParquetTaxiReader;
+import reader.TripRow;
+import reader.TripValues;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Бенчмарки пути декодирования Parquet: чтение файлов целиком во всех режимах reader'а
+ * (GROUP - parseGroup / hasField / getDoubleValue, DIRECT, TripRow, переиспользуемый TaxiTrip)
+ * и отдельные функции преобразования значений из TripValues / LocalMicros.
+ *
+ * Запуск: java -cp build/classes:bench-classes:lib/* bench.ReaderBenchmark
+ * (-Dbench.rows=100000 - строк в файле, остальные параметры см. Bench).
+ */
+public class ReaderBenchmark {
+
+    private static final int VALUES = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int rows = Integer.getInteger("bench.rows", 100_000);
+        Map<String, String> fixtures = TlcFixtures.ensure(rows);
+        Bench bench = new Bench("reader");
+
+        for (Map.Entry<String, String> fixture : fixtures.entrySet()) {
+            String variant = fixture.getKey();
+            List<WorkUnit> units = LoadPlanner.plan(Collections.singletonList(fixture.getValue()),
+                    null, 0, 1, 0).getFiles().get(0).getUnits();
+
+            ParquetTaxiReader group = new ParquetTaxiReader(ParquetColumns.ALL, null, ReaderMode.GROUP);
+            ParquetTaxiReader direct = new ParquetTaxiReader(ParquetColumns.ALL, null, ReaderMode.DIRECT);
+
+            bench.add("file." + variant + ".group", "rows", () -> readList(group, units));
+            bench.add("file." + variant + ".direct", "rows", () -> readList(direct, units));
+            bench.add("file." + variant + ".rows", "rows", () -> {
+                long[] sum = new long[1];
+                long count = 0;
+                for (WorkUnit unit : units) {
+                    count += direct.readUnitRows(unit, new AtomicLong(Long.MAX_VALUE),
+                            row -> sum[0] += row.pickupLocalMicros + row.ints[TripRow.PU_LOCATION_ID]);
+                }
+                Bench.consume(sum[0]);
+                return count;
+            });
+            bench.add("file." + variant + ".reuse", "rows", () -> {
+                long[] sum = new long[1];
+                long count = 0;
+                for (WorkUnit unit : units) {
+                    count += direct.readUnitReused(unit, new AtomicLong(Long.MAX_VALUE),
+                            trip -> sum[0] += trip.getPickupLocalMicros() + trip.getPuLocationId());
+                }
+                Bench.consume(sum[0]);
+                return count;
+            });
+        }
+
+        addHelpers(bench);
+        bench.run();
+    }
+
+    private static long readList(ParquetTaxiReader reader, List<WorkUnit> units) throws Exception {
+        long count = 0;
+        for (WorkUnit unit : units) {
+            List<TaxiTrip> trips = reader.readUnit(unit, new AtomicLong(Long.MAX_VALUE));
+            count += trips.size();
+            Bench.consume(trips);
+        }
+        return count;
+    }
+
+    /**
+     * Функции преобразования на наборах значений, похожих на данные TLC
+     * (включая отрицательные, NaN и выходящие за диапазон).
+     */
+    private static void addHelpers(Bench bench) {
+        Random random = new Random(7);
+        double[] amounts = new double[VALUES];
+        long[] longs = new long[VALUES];
+        long[] micros = new long[VALUES];
+        String[] flags = new String[VALUES];
+        long base = 1_704_067_200_000_000L;
+        for (int i = 0; i < VALUES; i++) {
+            amounts[i] = i % 101 == 0 ? Double.NaN : (random.nextDouble() - 0.1) * (i % 97 == 0 ? 1e12 : 100);
+            longs[i] = i % 89 == 0 ? Long.MAX_VALUE : random.nextInt(300) - 10;
+            micros[i] = base + i * 6_000_000L + random.nextInt(5_000_000);
+            flags[i] = i % 50 == 0 ? "Y" : i % 333 == 0 ? "" : "N";
+        }
+
+        bench.add("helper.clampDecimal", "values", () -> {
+            double sum = 0;
+            for (double amount : amounts) {
+                sum += TripValues.clampDecimal(amount, TripValues.MONEY_MAX);
+            }
+            Bench.consume((long) sum);
+            return VALUES;
+        });
+        bench.add("helper.saturateToInt", "values", () -> {
+            long sum = 0;
+            for (long value : longs) {
+                sum += TripValues.clampInt(TripValues.saturateToInt(value), TripValues.TINYINT_MAX);
+            }
+            Bench.consume(sum);
+            return VALUES;
+        });
+        bench.add("helper.microsToLocalDateTime", "values", () -> {
+            Object last = null;
+            for (long value : micros) {
+                last = TripValues.microsToLocalDateTime(value);
+            }
+            Bench.consume(last);
+            return VALUES;
+        });
+        LocalMicros localMicros = new LocalMicros();
+        bench.add("helper.localMicros", "values", () -> {
+            long sum = 0;
+            for (long value : micros) {
+                sum += localMicros.toLocalMicros(value);
+            }
+            Bench.consume(sum);
+            return VALUES;
+        });
+        bench.add("helper.normalizeFlag", "values", () -> {
+            Object last = null;
+            for (String flag : flags) {
+                last = TripValues.normalizeFlag(flag);
+            }
+            Bench.consume(last);
+            return VALUES;
+        });
+    }
+}
@@ -0,0 +1,219 @@
+package bench;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver-заглушка в процессе: Connection / Statement / PreparedStatement через
+ * java.lang.reflect.Proxy, без сети и без сервера. Считает вызовы set*, addBatch,
+ * executeBatch, commit и имитирует задержку сервера.
+ *
+ * URL: jdbc:stub:&lt;имя&gt;[?executeMicros=N&amp;rowNanos=N&amp;commitMicros=N]
+ *   executeMicros - задержка executeBatch (round trip), rowNanos - добавка на строку batch'а,
+ *   commitMicros - задержка commit. Задержка - parkNanos, как ожидание ответа по сети.
+ *
+ * Proxy упаковывает аргументы в Object[] (с boxing примитивов), поэтому у заглушки есть
+ * собственная стоимость на вызов - ее меряет случай stub.bindRow в WriterBenchmark.
+ */
+public final class StubJdbcDriver implements Driver {
+
+    private static final String PREFIX = "jdbc:stub:";
+    private static final StubJdbcDriver INSTANCE = new StubJdbcDriver();
+
+    // Счетчики всех подключений
+    public static final LongAdder BINDS = new LongAdder();
+    public static final LongAdder ROWS = new LongAdder();
+    public static final LongAdder BATCHES = new LongAdder();
+    public static final LongAdder COMMITS = new LongAdder();
+
+    /**
+     * Зарегистрировать заглушку. Остальные драйверы снимаются с регистрации,
+     * чтобы DriverManager не пытался подключаться к настоящим серверам.
+     */
+    public static synchronized void install() throws SQLException {
+        for (String real : new String[]{"org.postgresql.Driver", "com.microsoft.sqlserver.jdbc.SQLServerDriver",
+                "com.mysql.cj.jdbc.Driver"}) {
+            try {
+                Class.forName(real);
+            } catch (ClassNotFoundException e) {
+                // драйвера нет в classpath - снимать нечего
+            }
+        }
+        for (Driver driver : java.util.Collections.list(DriverManager.getDrivers())) {
+            if (driver != INSTANCE) {
+                DriverManager.deregisterDriver(driver);
+            }
+        }
+        DriverManager.registerDriver(INSTANCE);
+    }
+
+    /**
+     * Зарегистрировать заглушку рядом с настоящими драйверами: jdbc:stub:... идет в заглушку,
+     * остальные URL - как обычно (LoadBenchmark смешивает заглушку и локальные серверы).
+     */
+    public static synchronized void register() throws SQLException {
+        DriverManager.registerDriver(INSTANCE);
+    }
+
+    public static void resetCounters() {
+        BINDS.reset();
+        ROWS.reset();
+        BATCHES.reset();
+        COMMITS.reset();
+    }
+
+    /** Параметры задержки из URL. */
+    private static final class Latency {
+        long executeNanos;
+        long rowNanos;
+        long commitNanos;
+
+        static Latency parse(String url) {
+            Latency latency = new Latency();
+            int query = url.indexOf('?');
+            if (query < 0) {
+                return latency;
+            }
+            for (String param : url.substring(query + 1).split("&")) {
+                String[] kv = param.split("=", 2);
+                long value = kv.length == 2 ? Long.parseLong(kv[1]) : 0;
+                switch (kv[0]) {
+                    case "executeMicros": latency.executeNanos = value * 1000; break;
+                    case "rowNanos": latency.rowNanos = value; break;
+                    case "commitMicros": latency.commitNanos = value * 1000; break;
+                    default: break;
+                }
+            }
+            return latency;
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        Latency latency = Latency.parse(url);
+        boolean[] closed = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(StubJdbcDriver.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "createStatement":
+                            return statement();
+                        case "prepareStatement":
+                            return preparedStatement(latency);
+                        case "commit":
+                            pause(latency.commitNanos);
+                            COMMITS.increment();
+                            return null;
+                        case "isClosed":
+                            return closed[0];
+                        case "close":
+                            closed[0] = true;
+                            return null;
+                        case "unwrap":
+                            throw new SQLFeatureNotSupportedException("stub connection: unwrap");
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+    }
+
+    private static Statement statement() {
+        return (Statement) Proxy.newProxyInstance(StubJdbcDriver.class.getClassLoader(),
+                new Class<?>[]{Statement.class}, (proxy, method, args) ->
+                        "execute".equals(method.getName()) ? Boolean.FALSE : defaultValue(method));
+    }
+
+    private static PreparedStatement preparedStatement(Latency latency) {
+        int[] batch = new int[1];
+        return (PreparedStatement) Proxy.newProxyInstance(StubJdbcDriver.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("set") && args != null && args.length >= 2) {
+                        BINDS.increment();
+                        return null;
+                    }
+                    switch (name) {
+                        case "addBatch":
+                            batch[0]++;
+                            return null;
+                        case "executeBatch": {
+                            int rows = batch[0];
+                            batch[0] = 0;
+                            pause(latency.executeNanos + rows * latency.rowNanos);
+                            ROWS.add(rows);
+                            BATCHES.increment();
+                            return new int[rows];
+                        }
+                        case "clearBatch":
+                            batch[0] = 0;
+                            return null;
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+    }
+
+    private static void pause(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,20 @@
+package bench;
+
+/**
+ * Запуск загрузчика (Main) с зарегистрированным StubJdbcDriver: URL jdbc:stub:... в конфигурации
+ * обслуживает заглушка, остальные - настоящие драйверы. Дочерний процесс LoadBenchmark.
+ *
+ * java -cp ... bench.StubLoaderMain config.xml
+ */
+public final class StubLoaderMain {
+
+    private StubLoaderMain() {
+        // static-only class
+    }
+
+    public static void main(String[] args) throws Exception {
+        StubJdbcDriver.register();
+        // Main в пакете по умолчанию - из именованного пакета доступен только через reflection
+        Class.forName("Main").getMethod("main", String[].class).invoke(null, (Object) args);
+    }
+}
@@ -0,0 +1,95 @@
+package bench;
+
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import tools.TaxiParquetGenerator;
+import tools.TlcSchema;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Небольшие Parquet файлы в вариантах схемы TLC yellow taxi для бенчмарков чтения.
+ * Файлы генерируются детерминированно (tools.TaxiParquetGenerator, фиксированный seed)
+ * при первом запуске в каталог bench.fixtures (по умолчанию java.io.tmpdir/obloader-bench),
+ * поэтому результаты сравнимы между коммитами и машинами без хранения бинарных файлов в репозитории.
+ *
+ * Варианты отличаются типами колонок - от них зависит путь декодирования
+ * (например, getDoubleValue для INT64 passenger_count идет через ClassCastException),
+ * описание вариантов - в tools.TlcSchema.
+ */
+public final class TlcFixtures {
+
+    /** Версия генератора в имени файла: при изменении формата строк старые фикстуры не используются. */
+    private static final String GENERATOR_VERSION = "g1";
+
+    private TlcFixtures() {
+        // static-only class
+    }
+
+    /**
+     * Пути к файлам всех вариантов (вариант -> файл), при необходимости файлы создаются.
+     */
+    public static Map<String, String> ensure(int rows) throws IOException {
+        File dir = directory();
+        Map<String, String> files = new LinkedHashMap<>();
+        for (TlcSchema schema : TlcSchema.values()) {
+            String variant = schema.name().toLowerCase();
+            File file = new File(dir, variant + "-" + rows + "-" + GENERATOR_VERSION + ".parquet");
+            if (!file.isFile()) {
+                write(file, schema, rows);
+            }
+            files.put(variant, file.getAbsolutePath());
+        }
+        return files;
+    }
+
+    /**
+     * Каталог месячных файлов для нагрузочного прогона (LoadBenchmark), при необходимости
+     * генерируется. Готовый каталог отмечается файлом .complete.
+     */
+    public static String ensureDataset(int files, long rows, TlcSchema schema) throws Exception {
+        String name = String.format("load-%s-%dx%d-%s", schema.name().toLowerCase(), files, rows, GENERATOR_VERSION);
+        File dir = new File(directory(), name);
+        File complete = new File(dir, ".complete");
+        if (!complete.isFile()) {
+            TaxiParquetGenerator.Options options = new TaxiParquetGenerator.Options();
+            options.out = dir.getPath();
+            options.files = files;
+            options.rows = rows;
+            options.schema = schema;
+            options.seed = 42;
+            TaxiParquetGenerator.generate(options);
+            if (!complete.createNewFile() && !complete.isFile()) {
+                throw new IOException("Cannot create " + complete);
+            }
+        }
+        return dir.getAbsolutePath();
+    }
+
+    private static File directory() throws IOException {
+        File dir = new File(System.getProperty("bench.fixtures",
+                new File(System.getProperty("java.io.tmpdir"), "obloader-bench").getPath()));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create fixture directory " + dir);
+        }
+        return dir;
+    }
+
+    private static void write(File file, TlcSchema schema, int rows) throws IOException {
+        TaxiParquetGenerator.Options options = new TaxiParquetGenerator.Options();
+        options.rows = rows;
+        options.schema = schema;
+        options.codec = CompressionCodecName.SNAPPY;
+        options.rowGroupBytes = 4L * 1024 * 1024;
+
+        // Через временный файл: прерванная генерация не оставляет битую фикстуру
+        File tmp = new File(file.getPath() + ".tmp");
+        TaxiParquetGenerator.write(tmp, options, YearMonth.of(2024, 1), 42);
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+}
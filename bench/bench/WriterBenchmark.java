@@ -0,0 +1,174 @@
+package bench;
+
+import config.AppConfig;
+import config.DatabaseType;
+import model.TaxiTrip;
+import writer.DatabaseWriter;
+import writer.MSSQLWriter;
+import writer.OceanBaseWriter;
+import writer.PgCopyEncoder;
+import writer.PostgreSQLWriter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Бенчмарки клиентской стороны writer'ов без сервера: PostgreSQLWriter, MSSQLWriter и
+ * OceanBaseWriter подключаются к StubJdbcDriver (jdbc:stub:...).
+ *
+ * Случаи:
+ *   &lt;db&gt;.addTrip / &lt;db&gt;.addTrips - bind строк и batch'и без задержки сервера;
+ *   &lt;db&gt;.executeBatch - то же с имитацией round trip (bench.executeMicros, bench.rowNanos,
+ *   bench.commitMicros) - видно, сколько дает размер batch'а;
+ *   pgcopy.encodeTrip - кодирование строки для binary COPY (bulk режим PostgreSQL);
+ *   stub.bindRow - стоимость самой заглушки на строку (18 set* + addBatch), ее можно вычесть.
+ *
+ * MongoDBWriter здесь не меряется: для него нужен сервер или заглушка протокола Mongo.
+ */
+public class WriterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tripCount = Integer.getInteger("bench.trips", 10_000);
+        String latency = "?executeMicros=" + Long.getLong("bench.executeMicros", 500)
+                + "&rowNanos=" + Long.getLong("bench.rowNanos", 200)
+                + "&commitMicros=" + Long.getLong("bench.commitMicros", 200);
+
+        AppConfig.TABLE_NAME = "taxi_trips";
+        AppConfig.BATCH_SIZE = Integer.getInteger("bench.batchSize", 1000);
+        AppConfig.LOG_INTERVAL = Integer.MAX_VALUE;
+        StubJdbcDriver.install();
+
+        List<TaxiTrip> trips = trips(tripCount);
+        Bench bench = new Bench("writer");
+
+        for (DatabaseType type : new DatabaseType[]{DatabaseType.POSTGRESQL, DatabaseType.MSSQL, DatabaseType.OCEANBASE}) {
+            String name = type.name().toLowerCase();
+            DatabaseWriter fast = connect(type, "jdbc:stub:" + name);
+            DatabaseWriter slow = connect(type, "jdbc:stub:" + name + latency);
+
+            bench.add(name + ".addTrip", "rows", () -> {
+                for (TaxiTrip trip : trips) {
+                    fast.addTrip(trip);
+                }
+                fast.flush();
+                return trips.size();
+            });
+            bench.add(name + ".addTrips", "rows", () -> {
+                fast.addTrips(trips);
+                fast.flush();
+                return trips.size();
+            });
+            bench.add(name + ".executeBatch", "rows", () -> {
+                slow.addTrips(trips);
+                slow.flush();
+                return trips.size();
+            });
+        }
+
+        PgCopyEncoder encoder = new PgCopyEncoder(1024 * 1024);
+        bench.add("pgcopy.encodeTrip", "rows", () -> {
+            encoder.getBuffer().clear();
+            encoder.writeHeader();
+            for (TaxiTrip trip : trips) {
+                if (!encoder.hasRoomForRow()) {
+                    encoder.getBuffer().clear();
+                }
+                encoder.addTrip(trip);
+            }
+            encoder.writeTrailer();
+            Bench.consume(encoder.size());
+            return trips.size();
+        });
+
+        Connection stub = DriverManager.getConnection("jdbc:stub:raw");
+        PreparedStatement statement = stub.prepareStatement("INSERT");
+        bench.add("stub.bindRow", "rows", () -> {
+            for (TaxiTrip trip : trips) {
+                bindRaw(statement, trip);
+            }
+            statement.executeBatch();
+            return trips.size();
+        });
+
+        bench.run();
+        System.out.printf("# stub totals: %,d binds, %,d rows, %,d batches, %,d commits%n",
+                StubJdbcDriver.BINDS.sum(), StubJdbcDriver.ROWS.sum(),
+                StubJdbcDriver.BATCHES.sum(), StubJdbcDriver.COMMITS.sum());
+    }
+
+    private static DatabaseWriter connect(DatabaseType type, String url) throws SQLException {
+        AppConfig.DATABASE_TYPE = type;
+        switch (type) {
+            case POSTGRESQL:
+                AppConfig.POSTGRESQL_URL = url;
+                return new PostgreSQLWriter("Bench-" + type.name());
+            case MSSQL:
+                AppConfig.MSSQL_URL = url;
+                return new MSSQLWriter("Bench-" + type.name());
+            default:
+                AppConfig.OCEANBASE_URL = url;
+                return new OceanBaseWriter("Bench-" + type.name());
+        }
+    }
+
+    /** Те же вызовы, что делает PostgreSQLWriter, но без writer'а. */
+    private static void bindRaw(PreparedStatement ps, TaxiTrip trip) throws SQLException {
+        ps.setTimestamp(1, Timestamp.valueOf(trip.getPickupDatetime()));
+        ps.setInt(2, trip.getVendorId());
+        ps.setTimestamp(3, Timestamp.valueOf(trip.getDropoffDatetime()));
+        ps.setInt(4, trip.getPassengerCount());
+        ps.setDouble(5, trip.getTripDistance());
+        ps.setInt(6, trip.getRateCodeId());
+        ps.setString(7, trip.getStoreAndFwdFlag());
+        ps.setInt(8, trip.getPuLocationId());
+        ps.setInt(9, trip.getDoLocationId());
+        ps.setInt(10, trip.getPaymentType());
+        ps.setDouble(11, trip.getFareAmount());
+        ps.setDouble(12, trip.getExtra());
+        ps.setDouble(13, trip.getMtaTax());
+        ps.setDouble(14, trip.getTipAmount());
+        ps.setDouble(15, trip.getTollsAmount());
+        ps.setDouble(16, trip.getImprovementSurcharge());
+        ps.setDouble(17, trip.getTotalAmount());
+        ps.setDouble(18, trip.getCongestionSurcharge());
+        ps.addBatch();
+    }
+
+    private static List<TaxiTrip> trips(int count) {
+        Random random = new Random(11);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<TaxiTrip> trips = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TaxiTrip trip = new TaxiTrip();
+            LocalDateTime pickup = base.plusSeconds(i * 6L);
+            trip.setVendorId(1 + random.nextInt(2));
+            trip.setPickupDatetime(pickup);
+            trip.setDropoffDatetime(pickup.plusMinutes(5 + random.nextInt(40)));
+            trip.setPassengerCount(random.nextInt(7));
+            trip.setTripDistance(Math.round(random.nextDouble() * 2000) / 100.0);
+            trip.setRateCodeId(1 + random.nextInt(6));
+            trip.setStoreAndFwdFlag(random.nextInt(50) == 0 ? "Y" : "N");
+            trip.setPuLocationId(1 + random.nextInt(265));
+            trip.setDoLocationId(1 + random.nextInt(265));
+            trip.setPaymentType(random.nextInt(5));
+            double fare = Math.round(random.nextDouble() * 6000) / 100.0;
+            trip.setFareAmount(fare);
+            trip.setExtra(0.5);
+            trip.setMtaTax(0.5);
+            trip.setTipAmount(Math.round(random.nextDouble() * 500) / 100.0);
+            trip.setTollsAmount(0.0);
+            trip.setImprovementSurcharge(0.3);
+            trip.setTotalAmount(fare + 3.3);
+            trip.setCongestionSurcharge(2.5);
+            trips.add(trip);
+        }
+        return trips;
+    }
+}
@@ -0,0 +1,214 @@
+package Logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронная запись логов: потоки-производители кладут события в lock-free кольцевой буфер
+ * (bounded MPSC очередь на последовательностях слотов), а один фоновый поток форматирует их
+ * и пачками пишет в консоль и файл, сбрасывая буферы раз в FLUSH_INTERVAL_MS или когда очередь пуста.
+ *
+ * Слоты и события выделяются один раз; для infof/errorf String.format выполняется уже в фоновом
+ * потоке, поэтому аргументы должны быть неизменяемыми значениями (числа, строки, WorkUnit и т.п.).
+ * При переполнении производитель ждет освобождения слота - события не теряются.
+ */
+final class AsyncLogWriter {
+
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Одно событие лога (переиспользуемый слот). */
+    private static final class Event {
+        boolean error;
+        String level;
+        long timeMillis;
+        String message;
+        String format;
+        Object[] args;
+    }
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;                               // только фоновый поток
+
+    private final BufferedWriter file;
+    private final StringBuilder outChunk = new StringBuilder(8192);
+    private final StringBuilder errChunk = new StringBuilder(1024);
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * @param capacity размер буфера (округляется вверх до степени двойки)
+     * @param file файл лога, null = только консоль
+     */
+    AsyncLogWriter(int capacity, BufferedWriter file) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+        this.file = file;
+
+        this.thread = new Thread(this::run, "AsyncLog");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Поставить событие в очередь: либо готовое сообщение, либо format + args.
+     */
+    void submit(boolean error, String level, String message, String format, Object[] args) {
+        long timeMillis = System.currentTimeMillis();
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // Буфер полон - ждем фоновый поток
+                Thread.onSpinWait();
+                Thread.yield();
+                pos = tail.get();
+            } else {
+                pos = tail.get();
+            }
+        }
+
+        Event event = slots[index];
+        event.error = error;
+        event.level = level;
+        event.timeMillis = timeMillis;
+        event.message = message;
+        event.format = format;
+        event.args = args;
+        sequences.set(index, pos + 1);   // публикация слота
+    }
+
+    /**
+     * Остановить фоновый поток, дописав все события из очереди.
+     */
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            int drained = drain();
+            long now = System.currentTimeMillis();
+            if (drained == 0 || now - lastFlush >= FLUSH_INTERVAL_MS) {
+                flush();
+                lastFlush = now;
+            }
+            if (drained == 0) {
+                if (!running && tail.get() == head) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Переложить опубликованные события в буферы вывода.
+     */
+    private int drain() {
+        int count = 0;
+        while (count < slots.length) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            Event event = slots[index];
+            append(event);
+            event.message = null;
+            event.format = null;
+            event.args = null;
+            sequences.set(index, head + slots.length);   // слот снова свободен
+            head++;
+            count++;
+        }
+        return count;
+    }
+
+    private void append(Event event) {
+        String message;
+        try {
+            message = event.format != null ? String.format(event.format, event.args) : event.message;
+        } catch (RuntimeException e) {
+            message = event.format + " [format error: " + e.getMessage() + "]";
+        }
+
+        // Смена потока вывода: сначала выводим накопленное в другом, чтобы сохранить порядок
+        StringBuilder other = event.error ? outChunk : errChunk;
+        if (other.length() > 0) {
+            flushConsole();
+        }
+
+        StringBuilder chunk = event.error ? errChunk : outChunk;
+        int start = chunk.length();
+        chunk.append('[');
+        TIME_FMT.formatTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(event.timeMillis), zone), chunk);
+        chunk.append("] [").append(event.level).append("] ").append(message).append(System.lineSeparator());
+
+        if (file != null) {
+            try {
+                file.append(chunk, start, chunk.length());
+            } catch (IOException e) {
+                System.err.printf("[LOG] File logging failed: %s%n", e.getMessage());
+            }
+        }
+    }
+
+    private void flushConsole() {
+        print(System.out, outChunk);
+        print(System.err, errChunk);
+    }
+
+    private static void print(PrintStream stream, StringBuilder chunk) {
+        if (chunk.length() > 0) {
+            stream.print(chunk);
+            stream.flush();
+            chunk.setLength(0);
+        }
+    }
+
+    private void flush() {
+        flushConsole();
+        if (file != null) {
+            try {
+                file.flush();
+            } catch (IOException e) {
+                System.err.printf("[LOG] File logging failed: %s%n", e.getMessage());
+            }
+        }
+    }
+}
@@ -11,6 +11,9 @@ import java.time.format.DateTimeFormatter;
  * Простой сервис логирования: пишет и в консоль, и в файл.
  * API и формат сообщений сохранены как в оригинале (info/infof/error/errorf/debug).
  * Никакой init(...) не требуется.
+ *
+ * startAsync() включает асинхронный режим (AsyncLogWriter): вызовы не берут общий lock
+ * и не пишут в файл сами, а кладут событие в кольцевой буфер фонового потока.
  */
 public final class LogService {
     private LogService() {}
@@ -21,6 +24,9 @@ public final class LogService {
 
     private static volatile BufferedWriter writer;
 
+    // Асинхронный режим, null = синхронная запись
+    private static volatile AsyncLogWriter async;
+
     // Ленивая инициализация файла (один общий файл на день).
     private static BufferedWriter getWriter() {
         BufferedWriter w = writer;
@@ -64,33 +70,83 @@ public final class LogService {
         }
     }
 
+    private static final int DEFAULT_ASYNC_CAPACITY = 8192;
+
+    public static void startAsync() {
+        startAsync(DEFAULT_ASYNC_CAPACITY);
+    }
+
+    /**
+     * Включить асинхронный режим. Оставшиеся события дописываются в close()
+     * или в shutdown hook при завершении JVM.
+     *
+     * @param capacity размер кольцевого буфера в событиях
+     */
+    public static synchronized void startAsync(int capacity) {
+        if (async != null) {
+            return;
+        }
+        async = new AsyncLogWriter(capacity, getWriter());
+        Runtime.getRuntime().addShutdownHook(new Thread(LogService::close, "LogService-shutdown"));
+    }
+
     // ---------- публичный API (как в твоём исходнике) ----------
 
     public static void info(String message) {
+        AsyncLogWriter a = async;
+        if (a != null) {
+            a.submit(false, "INFO", message, null, null);
+            return;
+        }
         String line = String.format("[%s] [INFO] %s%n", ts(), message);
         writeBoth(false, line);
     }
 
     public static void infof(String format, Object... args) {
+        AsyncLogWriter a = async;
+        if (a != null) {
+            a.submit(false, "INFO", null, format, args);
+            return;
+        }
         info(String.format(format, args));
     }
 
     public static void error(String message) {
+        AsyncLogWriter a = async;
+        if (a != null) {
+            a.submit(true, "ERROR", message, null, null);
+            return;
+        }
         String line = String.format("[%s] [ERROR] %s%n", ts(), message);
         writeBoth(true, line);
     }
 
     public static void errorf(String format, Object... args) {
+        AsyncLogWriter a = async;
+        if (a != null) {
+            a.submit(true, "ERROR", null, format, args);
+            return;
+        }
         error(String.format(format, args));
     }
 
     public static void debug(String message) {
+        AsyncLogWriter a = async;
+        if (a != null) {
+            a.submit(false, "DEBUG", message, null, null);
+            return;
+        }
         String line = String.format("[%s] [DEBUG] %s%n", ts(), message);
         writeBoth(false, line);
     }
 
     // опционально — аккуратно закрыть при завершении (можно не вызывать)
     public static synchronized void close() {
+        AsyncLogWriter a = async;
+        if (a != null) {
+            async = null;
+            a.shutdown();
+        }
         if (writer != null) {
             try {
                 writer.flush();
@@ -1,14 +1,52 @@
 import config.AppConfig;
 import config.AppConfigReader;
+import config.DatabaseType;
+import config.SortMode;
 import Logging.LogService;
+import metrics.AllocationReport;
+import metrics.FileLoadEvent;
+import metrics.FlightRecording;
+import metrics.LoaderControl;
+import metrics.LoaderMetrics;
+import metrics.MetricsServer;
+import metrics.PinningMonitor;
+import metrics.WriterMetrics;
 import model.TaxiTrip;
+import plan.DirectoryWatcher;
+import plan.FilePlan;
+import plan.LeaseCoordinator;
+import plan.LoadLedger;
+import plan.LoadPlan;
+import plan.LoadPlanner;
+import plan.LoadProgress;
+import plan.UnitPrefetcher;
+import plan.WorkUnit;
+import reader.DecodedCache;
+import reader.ExternalSort;
 import reader.ParquetTaxiReader;
+import reader.TripFilter;
+import reader.TripRow;
+import reader.TripRowSink;
+import writer.BatchGate;
 import writer.DatabaseWriter;
 import writer.DatabaseWriterFactory;
-
+import writer.FanOut;
+import writer.LoadThrottle;
+import writer.WriterPool;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Точка входа приложения для загрузки NYC Taxi данных из Parquet в различные БД.
@@ -17,6 +55,22 @@ import java.util.concurrent.*;
  */
 public class Main {
 
+    // Журнал загрузок по умолчанию в режиме WATCH_MODE
+    private static final String DEFAULT_LEDGER = "load-ledger.tsv";
+
+    // Writer, не получавший файлов столько времени, закрывается (WATCH_MODE, COORDINATED_MODE)
+    private static final long WRITER_IDLE_MILLIS = 10 * 60 * 1000L;
+
+    // Сколько раз ждать, пока footer нового файла станет читаемым
+    private static final int WATCH_FOOTER_ATTEMPTS = 3;
+
+    // Сколько shutdown hook ждет остановки WATCH_MODE (догрузки текущего файла)
+    private static final long WATCH_STOP_MAX_MILLIS = 10 * 60 * 1000L;
+
+    // Пул writer'ов между файлами (WATCH_MODE, COORDINATED_MODE), null - writer на файл
+    private static volatile WriterPool writerPool;
+    private static volatile boolean watchStopping;
+
     // Отключить избыточные логи Hadoop и Parquet
     static {
         System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "ERROR");
@@ -44,14 +98,40 @@ public class Main {
         AppConfig.printConfig();
         LogService.info("");
 
+        if (AppConfig.ASYNC_LOGGING) {
+            LogService.startAsync();
+        }
+        MetricsServer.start(AppConfig.METRICS_BIND_ADDRESS, AppConfig.METRICS_PORT);
+        LoaderControl.register();
+        FlightRecording.start(AppConfig.JFR_RECORDING);
+        if (!AppConfig.ALLOCATION_REPORT.isEmpty()) {
+            AllocationReport.start(AppConfig.ALLOCATION_REPORT);
+        }
+        BatchGate.configure(AppConfig.MAX_IN_FLIGHT_BATCHES);
+        LoadProgress.setTargets(Math.max(1, AppConfig.FANOUT_TARGETS.size()));
+        LoadThrottle.setLimits(AppConfig.THROTTLE_ROWS_PER_SEC, AppConfig.THROTTLE_BYTES_PER_SEC,
+                AppConfig.THROTTLE_TARGET_P99_MS);
+        if (AppConfig.VIRTUAL_THREADS) {
+            // Каждый pinning на виртуальном потоке держит carrier - учитываются все события
+            PinningMonitor.start(Duration.ZERO);
+        }
+
 
 
         try {
             // Проверить подключение к БД
             testConnection();
 
-            // Загрузить все файлы из каталога
-            loadAllFiles();
+            if (AppConfig.COORDINATED_MODE) {
+                // Делить файлы с другими процессами загрузчика через таблицу аренд
+                loadCoordinated();
+            } else if (AppConfig.WATCH_MODE) {
+                // Загружать новые файлы по мере появления, до остановки процесса
+                watchFiles();
+            } else {
+                // Загрузить все файлы из каталога
+                loadAllFiles();
+            }
 
             LogService.info("");
             LogService.info("✅ All done successfully!");
@@ -77,56 +157,389 @@ public class Main {
             return;
         }
 
+        // Журнал загрузок: уже загруженные (и прерванные) файлы пропускаются
+        LoadLedger ledger = null;
+        if (!AppConfig.LOAD_LEDGER.isEmpty()) {
+            try {
+                ledger = new LoadLedger(AppConfig.LOAD_LEDGER);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read load ledger " + AppConfig.LOAD_LEDGER, e);
+            }
+            filesPaths = skipRecorded(filesPaths, ledger);
+            if (filesPaths.isEmpty()) {
+                LogService.info("All files are already in the load ledger, nothing to do");
+                return;
+            }
+        }
+
         LogService.infof("Found %d .parquet files to process", filesPaths.size());
         LogService.info("");
 
-        // Вывести список найденных файлов для проверки
-        LogService.info("Files to be processed:");
-        for (int i = 0; i < filesPaths.size(); i++) {
-            String relativeName = AppConfig.getRelativeFileName(filesPaths.get(i));
-            LogService.infof("  %2d. %s", i + 1, relativeName);
-        }
+        // Планирование: footer'ы всех файлов -> строки, row groups, unit'ы
+        LoadPlan plan = LoadPlanner.plan(filesPaths, TripFilter.fromConfig(), AppConfig.TEST_LIMIT,
+                AppConfig.THREAD_COUNT, AppConfig.WORK_UNIT_ROWS);
+        plan.print();
         LogService.info("");
 
+        List<FilePlan> files = plan.getLoadableFiles();
+        LoadProgress.start(plan.getTotalRowsToLoad());
+
         long totalRecords = 0;
         long totalStartTime = System.currentTimeMillis();
 
+        // Read-ahead: первые unit'ы следующих файлов декодируются, пока грузится текущий
+        // (при SORT_MODE = FILE файл все равно читается целиком до записи)
+        UnitPrefetcher prefetcher = null;
+        if (AppConfig.PREFETCH_MEMORY_MB > 0 && files.size() > 1 && AppConfig.SORT_MODE != SortMode.FILE) {
+            prefetcher = new UnitPrefetcher(files,
+                    new ParquetTaxiReader(DatabaseWriterFactory.getRequiredColumns(), TripFilter.fromConfig()),
+                    AppConfig.PREFETCH_MEMORY_MB * 1024L * 1024L, AppConfig.TEST_LIMIT);
+            prefetcher.start();
+            LoaderControl.setPrefetcher(prefetcher);
+        }
+
         // Загрузить каждый файл
-        for (int i = 0; i < filesPaths.size(); i++) {
-            String filePath = filesPaths.get(i);
-            String relativeName = AppConfig.getRelativeFileName(filePath);
+        for (int i = 0; i < files.size(); i++) {
+            FilePlan filePlan = files.get(i);
+            String relativeName = AppConfig.getRelativeFileName(filePlan.getFilePath());
 
             LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-            LogService.infof("Processing file %d/%d: %s", i + 1, filesPaths.size(), relativeName);
+            LogService.infof("Processing file %d/%d: %s", i + 1, files.size(), relativeName);
             LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
 
+            AllocationReport.fileStarted(relativeName);
             try {
-                long recordsLoaded = loadFile(filePath, AppConfig.TEST_LIMIT);
+                long recordsLoaded = loadRecorded(filePlan, prefetcher, ledger);
                 totalRecords += recordsLoaded;
 
                 LogService.infof("✅ File %d/%d completed: %,d records",
-                        i + 1, filesPaths.size(), recordsLoaded);
+                        i + 1, files.size(), recordsLoaded);
+                LogService.info(LoadProgress.snapshot());
                 LogService.info("");
 
             } catch (Exception e) {
                 LogService.errorf("❌ Error loading file %s: %s", relativeName, e.getMessage());
                 e.printStackTrace();
                 // Продолжить со следующим файлом
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.discard(filePlan);
+                }
+                AllocationReport.fileCompleted();
             }
         }
 
+        if (prefetcher != null) {
+            prefetcher.close();
+            LoaderControl.setPrefetcher(null);
+        }
+
         // Итоговая статистика
         long totalElapsed = System.currentTimeMillis() - totalStartTime;
-        double totalRate = (totalRecords * 1000.0) / totalElapsed;
+        double totalRate = (totalRecords * 1000.0) / Math.max(1, totalElapsed);
 
         LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         LogService.info("=== FINAL STATISTICS ===");
         LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-        LogService.infof("Files processed:  %d", filesPaths.size());
+        LogService.infof("Files processed:  %d", files.size());
         LogService.infof("Total records:    %,d", totalRecords);
+        LogService.infof("Planned records:  %,d", plan.getTotalRowsToLoad());
         LogService.infof("Total time:       %.1f minutes", totalElapsed / 60000.0);
         LogService.infof("Average rate:     %.0f records/sec", totalRate);
         LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        finishRun(totalRecords, totalElapsed);
+    }
+
+    /**
+     * Режим WATCH_MODE: PARQUET_DIR и подкаталоги отслеживаются (DirectoryWatcher), каждый
+     * дописанный файл загружается сразу, загруженные отмечаются в журнале LOAD_LEDGER.
+     * Writer'ы задач остаются открытыми между файлами (WriterPool).
+     * Остановка - SIGTERM / Ctrl-C: текущий файл догружается, затем выводится итоговая статистика.
+     */
+    private static void watchFiles() throws Exception {
+        String ledgerPath = AppConfig.LOAD_LEDGER.isEmpty() ? DEFAULT_LEDGER : AppConfig.LOAD_LEDGER;
+        LoadLedger ledger = new LoadLedger(ledgerPath);
+        TripFilter filter = TripFilter.fromConfig();
+        long startTime = System.currentTimeMillis();
+
+        // Hook ждет не main (он может сам быть в System.exit и ждать hook'и), а выхода из цикла
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watchStopping = true;
+            LogService.info("Stopping watch mode after the current file...");
+            try {
+                if (!stopped.await(WATCH_STOP_MAX_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LogService.errorf("Watch mode did not stop within %d s, exiting", WATCH_STOP_MAX_MILLIS / 1000);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "Watch-stop"));
+
+        try {
+            watchLoop(ledger, filter, startTime);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private static void watchLoop(LoadLedger ledger, TripFilter filter, long startTime) throws Exception {
+        Map<String, Integer> footerFailures = new HashMap<>();
+        long totalRecords = 0;
+
+        writerPool = new WriterPool(WRITER_IDLE_MILLIS);
+        try (DirectoryWatcher watcher = new DirectoryWatcher(Paths.get(AppConfig.PARQUET_DIR),
+                AppConfig.WATCH_STABLE_SECONDS * 1000L, AppConfig.WATCH_MARKER_SUFFIX)) {
+            LogService.infof("=== Watching %s (%s) ===", AppConfig.PARQUET_DIR,
+                    AppConfig.WATCH_MARKER_SUFFIX.isEmpty()
+                            ? "file is complete after " + AppConfig.WATCH_STABLE_SECONDS + " s without changes"
+                            : "file is complete when <file>" + AppConfig.WATCH_MARKER_SUFFIX + " exists");
+
+            while (!watchStopping) {
+                List<String> ready = watcher.poll(1000,
+                        path -> ledger.status(AppConfig.getRelativeFileName(path)) != null);
+                if (ready.isEmpty()) {
+                    writerPool.closeIdle();
+                    continue;
+                }
+
+                LogService.infof("Watch: %d new file(s) ready", ready.size());
+                LoadPlan plan = LoadPlanner.plan(ready, filter, AppConfig.TEST_LIMIT,
+                        AppConfig.THREAD_COUNT, AppConfig.WORK_UNIT_ROWS);
+
+                // Footer не читается: файл еще дописывается или поврежден
+                for (FilePlan failed : plan.getFiles()) {
+                    if (failed.getError() == null) {
+                        continue;
+                    }
+                    String relativeName = AppConfig.getRelativeFileName(failed.getFilePath());
+                    int failures = footerFailures.merge(failed.getFilePath(), 1, Integer::sum);
+                    if (failures < WATCH_FOOTER_ATTEMPTS) {
+                        LogService.infof("Watch: %s is not readable yet (%s), will retry", relativeName, failed.getError());
+                        watcher.retryLater(failed.getFilePath());
+                    } else {
+                        LogService.errorf("❌ %s: footer unreadable after %d attempts: %s",
+                                relativeName, failures, failed.getError());
+                        try {
+                            ledger.failed(relativeName, failed.getFileSize(), failed.getError());
+                        } catch (IOException e) {
+                            LogService.errorf("❌ Could not record %s in the load ledger: %s", relativeName, e.getMessage());
+                        }
+                    }
+                }
+
+                LoadProgress.start(plan.getTotalRowsToLoad());
+                for (FilePlan filePlan : plan.getLoadableFiles()) {
+                    if (watchStopping) {
+                        break;  // не начатые файлы будут загружены при следующем запуске
+                    }
+                    String relativeName = AppConfig.getRelativeFileName(filePlan.getFilePath());
+                    footerFailures.remove(filePlan.getFilePath());
+
+                    LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+                    LogService.infof("Processing new file: %s", relativeName);
+                    LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+                    AllocationReport.fileStarted(relativeName);
+                    try {
+                        long recordsLoaded = loadRecorded(filePlan, null, ledger);
+                        totalRecords += recordsLoaded;
+                        LogService.infof("✅ File %s completed: %,d records (%,d since start)",
+                                relativeName, recordsLoaded, totalRecords);
+                        LogService.info("");
+                    } catch (Exception e) {
+                        LogService.errorf("❌ Error loading file %s: %s", relativeName, e.getMessage());
+                        e.printStackTrace();
+                    } finally {
+                        AllocationReport.fileCompleted();
+                    }
+                }
+                LogService.infof("Watch: waiting for new files in %s", AppConfig.PARQUET_DIR);
+            }
+        } finally {
+            writerPool.close();
+            writerPool = null;
+        }
+
+        LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        LogService.info("=== WATCH MODE STOPPED ===");
+        LogService.infof("Total records:    %,d", totalRecords);
+        LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        finishRun(totalRecords, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Режим COORDINATED_MODE: файлы PARQUET_DIR делятся между всеми запущенными процессами
+     * через таблицу аренд (LeaseCoordinator). Процесс захватывает по одному свободному файлу
+     * и грузит его своими потоками и writer'ами; завершается, когда в таблице не осталось
+     * ни свободных файлов, ни файлов, занятых другими процессами (их аренда может истечь).
+     */
+    private static void loadCoordinated() throws Exception {
+        LogService.info("=== Scanning for Parquet files ===");
+        Map<String, String> paths = new LinkedHashMap<>();
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (String path : AppConfig.getAllParquetFiles()) {
+            String relativeName = AppConfig.getRelativeFileName(path);
+            paths.put(relativeName, path);
+            sizes.put(relativeName, new File(path).length());
+        }
+        LogService.infof("Found %d .parquet files", paths.size());
+
+        TripFilter filter = TripFilter.fromConfig();
+        long totalRecords = 0;
+        int filesLoaded = 0;
+        Map<String, String> failedFiles;
+        long startTime = System.currentTimeMillis();
+
+        try (LeaseCoordinator coordinator = LeaseCoordinator.fromConfig()) {
+            coordinator.register(sizes);
+            LogService.info("");
+
+            writerPool = new WriterPool(WRITER_IDLE_MILLIS);
+            try {
+                while (true) {
+                    String relativeName = coordinator.claim();
+                    if (relativeName == null) {
+                        int remaining = coordinator.remaining();
+                        if (remaining == 0) {
+                            break;
+                        }
+                        LogService.infof("Coordinator: %d file(s) leased by other instances, waiting", remaining);
+                        writerPool.closeIdle();
+                        Thread.sleep(coordinator.getPollMillis());
+                        continue;
+                    }
+
+                    String path = paths.get(relativeName);
+                    if (path == null) {
+                        // Файл зарегистрирован другим процессом, но здесь его нет
+                        LogService.errorf("❌ %s is not found under %s", relativeName, AppConfig.PARQUET_DIR);
+                        coordinator.failed(relativeName, "not found on " + coordinator.getInstanceId());
+                        continue;
+                    }
+                    LoadPlan plan = LoadPlanner.plan(Collections.singletonList(path), filter, AppConfig.TEST_LIMIT,
+                            AppConfig.THREAD_COUNT, AppConfig.WORK_UNIT_ROWS);
+                    FilePlan filePlan = plan.getFiles().get(0);
+                    if (filePlan.getError() != null) {
+                        LogService.errorf("❌ %s: footer unreadable: %s", relativeName, filePlan.getError());
+                        coordinator.failed(relativeName, filePlan.getError());
+                        continue;
+                    }
+
+                    LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+                    LogService.infof("Processing leased file: %s", relativeName);
+                    LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+                    LoadProgress.start(plan.getTotalRowsToLoad());
+                    AllocationReport.fileStarted(relativeName);
+                    try {
+                        long recordsLoaded = loadFile(filePlan, AppConfig.TEST_LIMIT, null);
+                        coordinator.done(relativeName, recordsLoaded);
+                        totalRecords += recordsLoaded;
+                        filesLoaded++;
+                        LogService.infof("✅ File %s completed: %,d records", relativeName, recordsLoaded);
+                        LogService.info("");
+                    } catch (RuntimeException e) {
+                        LogService.errorf("❌ Error loading file %s: %s", relativeName, e.getMessage());
+                        e.printStackTrace();
+                        coordinator.failed(relativeName,
+                                e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    } finally {
+                        AllocationReport.fileCompleted();
+                    }
+                }
+            } finally {
+                writerPool.close();
+                writerPool = null;
+            }
+            failedFiles = coordinator.failedFiles();
+        }
+
+        long totalElapsed = System.currentTimeMillis() - startTime;
+        LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        LogService.info("=== FINAL STATISTICS (this instance) ===");
+        LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        LogService.infof("Files loaded:     %d of %d", filesLoaded, paths.size());
+        if (!failedFiles.isEmpty()) {
+            LogService.errorf("Files failed:     %d (all instances)", failedFiles.size());
+            for (Map.Entry<String, String> failed : failedFiles.entrySet()) {
+                LogService.errorf("  %s: %s", failed.getKey(), failed.getValue());
+            }
+        }
+        LogService.infof("Total records:    %,d", totalRecords);
+        LogService.infof("Total time:       %.1f minutes", totalElapsed / 60000.0);
+        LogService.infof("Average rate:     %.0f records/sec", (totalRecords * 1000.0) / Math.max(1, totalElapsed));
+        LogService.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        finishRun(totalRecords, totalElapsed);
+        if (!failedFiles.isEmpty()) {
+            // Код возврата 1: не все файлы таблицы аренд загружены
+            throw new IllegalStateException(failedFiles.size() + " file(s) failed to load, see "
+                    + AppConfig.LEASE_TABLE);
+        }
+    }
+
+    /**
+     * Убрать из списка файлы, которые уже есть в журнале загрузок.
+     */
+    private static List<String> skipRecorded(List<String> filesPaths, LoadLedger ledger) {
+        List<String> result = new ArrayList<>();
+        int loaded = 0;
+        for (String path : filesPaths) {
+            String relativeName = AppConfig.getRelativeFileName(path);
+            LoadLedger.Status status = ledger.status(relativeName);
+            if (status == null) {
+                result.add(path);
+            } else if (status == LoadLedger.Status.DONE) {
+                loaded++;
+            } else {
+                LogService.errorf("⚠️  %s is %s in the load ledger (partially loaded?), skipped", relativeName, status);
+            }
+        }
+        if (loaded > 0) {
+            LogService.infof("Skipping %d file(s) already in the load ledger", loaded);
+        }
+        return result;
+    }
+
+    /**
+     * Загрузить файл с отметками STARTED / DONE / FAILED в журнале (ledger = null - без журнала).
+     */
+    private static long loadRecorded(FilePlan filePlan, UnitPrefetcher prefetcher, LoadLedger ledger) throws IOException {
+        String relativeName = AppConfig.getRelativeFileName(filePlan.getFilePath());
+        if (ledger != null) {
+            ledger.started(relativeName, filePlan.getFileSize());
+        }
+        long recordsLoaded;
+        try {
+            recordsLoaded = loadFile(filePlan, AppConfig.TEST_LIMIT, prefetcher);
+        } catch (RuntimeException e) {
+            if (ledger != null) {
+                ledger.failed(relativeName, filePlan.getFileSize(),
+                        e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+            throw e;
+        }
+        if (ledger != null) {
+            ledger.done(relativeName, filePlan.getFileSize(), recordsLoaded);
+        }
+        return recordsLoaded;
+    }
+
+    /**
+     * Итоговые отчеты и остановка метрик.
+     */
+    private static void finishRun(long totalRecords, long totalElapsed) {
+        FanOut.close();
+        PinningMonitor.stop();
+        LoaderMetrics.printSummary();
+        LoaderMetrics.printShardSummary(totalElapsed);
+        DecodedCache.printSummary();
+        if (!AppConfig.RUN_REPORT.isEmpty()) {
+            LoaderMetrics.writeRunReport(AppConfig.RUN_REPORT, totalRecords, totalElapsed);
+        }
+        AllocationReport.finish();
+        MetricsServer.stop();
+        FlightRecording.stop();
     }
 
     /**
@@ -135,9 +548,14 @@ public class Main {
     private static void testConnection() {
         LogService.infof("=== Testing %s Connection ===", DatabaseWriterFactory.getCurrentDatabaseName());
 
-        try (DatabaseWriter writer = DatabaseWriterFactory.createWriter("Test")) {
-            LogService.info("Connection test successful!");
-
+        List<DatabaseType> targets = AppConfig.FANOUT_TARGETS.isEmpty()
+                ? Collections.singletonList(AppConfig.DATABASE_TYPE) : AppConfig.FANOUT_TARGETS;
+        try {
+            for (DatabaseType target : targets) {
+                try (DatabaseWriter writer = DatabaseWriterFactory.createWriter(target, "Test")) {
+                    LogService.infof("Connection test successful: %s", target.getDisplayName());
+                }
+            }
         } catch (Exception e) {
             LogService.errorf("Connection test failed: %s", e.getMessage());
             throw new RuntimeException("Cannot connect to database", e);
@@ -148,59 +566,101 @@ public class Main {
 
     /**
      * Загрузить данные из Parquet файла в БД с многопоточной вставкой.
+     * Каждый поток берет unit'ы файла из общей очереди, сам читает их и вставляет,
+     * поэтому и декодирование Parquet, и запись идут параллельно.
      *
-     * @param filePath путь к Parquet файлу
+     * @param filePlan план файла (unit'ы из LoadPlanner)
      * @param limit максимальное количество записей (0 = все)
+     * @param prefetcher read-ahead с уже декодированными unit'ами файла (null = выключен)
      * @return количество загруженных записей
      */
-    private static long loadFile(String filePath, int limit) {
+    private static long loadFile(FilePlan filePlan, int limit, UnitPrefetcher prefetcher) {
         LogService.info("=== Loading Data from Parquet ===");
-        LogService.infof("File: %s", filePath);
+        LogService.infof("File: %s", filePlan.getFilePath());
         LogService.infof("Limit: %s", limit == 0 ? "ALL" : String.format("%,d", limit));
         LogService.infof("Threads: %d", AppConfig.THREAD_COUNT);
+        LogService.infof("Planned: %,d rows in %d units", filePlan.getRowsToLoad(), filePlan.getUnits().size());
         LogService.info("");
 
         long overallStart = System.currentTimeMillis();
+        FileLoadEvent fileEvent = new FileLoadEvent();
+        fileEvent.begin();
 
         try {
-            // Читаем Parquet файл
-            LogService.info("Step 1: Reading Parquet file...");
-            ParquetTaxiReader reader = new ParquetTaxiReader();
-            List<TaxiTrip> trips = reader.readFile(filePath, limit);
-
-            if (trips.isEmpty()) {
+            if (filePlan.getUnits().isEmpty()) {
                 LogService.info("No data to load");
                 return 0;
             }
 
-            LogService.infof("✅ Read %,d trips from Parquet", trips.size());
-            LogService.info("");
+            Queue<WorkUnit> units = new ConcurrentLinkedQueue<>(filePlan.getUnits());
+            LoaderControl.fileStarted(AppConfig.getRelativeFileName(filePlan.getFilePath()), units);
+            AtomicLong remaining = new AtomicLong(limit > 0 ? limit : Long.MAX_VALUE);
 
-            // Записываем в БД многопоточно
-            LogService.infof("Step 2: Writing to %s (multithreaded)...",
+            // Читаем и записываем в БД многопоточно
+            LogService.infof("Reading and writing to %s (multithreaded)...",
                     DatabaseWriterFactory.getCurrentDatabaseName());
 
-            if (AppConfig.THREAD_COUNT <= 1) {
-                // Однопоточный режим
-                insertSingleThreaded(trips);
+            List<InsertResult> results;
+            int nullPickupFixed = 0;
+            if (AppConfig.SORT_MODE == SortMode.FILE) {
+                // Внешняя сортировка: файл читается целиком, затем каждый поток пишет свой диапазон ключей
+                try (ExternalSort sort = new ExternalSort(DatabaseWriterFactory.getRequiredColumns(),
+                        TripFilter.fromConfig())) {
+                    sort.spill(units, remaining, AppConfig.THREAD_COUNT);
+                    nullPickupFixed += sort.getNullPickupFixed();
+                    Queue<ExternalSort.Range> ranges = new ConcurrentLinkedQueue<>(sort.split(AppConfig.THREAD_COUNT));
+                    results = AppConfig.THREAD_COUNT <= 1
+                            ? insertSingleThreaded(units, ranges, remaining, null)
+                            : insertMultiThreaded(units, ranges, remaining, AppConfig.THREAD_COUNT, null);
+                }
             } else {
-                // Многопоточный режим
-                insertMultiThreaded(trips);
+                int threadCount = Math.min(AppConfig.THREAD_COUNT, filePlan.getUnits().size());
+                if (threadCount <= 1) {
+                    // Однопоточный режим
+                    results = insertSingleThreaded(units, null, remaining, prefetcher);
+                } else {
+                    // Многопоточный режим
+                    results = insertMultiThreaded(units, null, remaining, threadCount, prefetcher);
+                }
+            }
+
+            TripStats stats = new TripStats();
+            long totalInserted = 0;
+            for (InsertResult result : results) {
+                stats.merge(result.stats);
+                totalInserted += result.recordsInserted;
+                nullPickupFixed += result.nullPickupFixed;
+            }
+
+            if (limit > 0 && remaining.get() <= 0) {
+                LogService.infof("  Reached limit of %,d records", limit);
+            }
+            if (nullPickupFixed > 0) {
+                LogService.infof("⚠️  Fixed %,d records with null pickup_datetime (%.2f%%)",
+                        nullPickupFixed, (nullPickupFixed * 100.0) / Math.max(1, stats.count));
             }
 
             // Общая статистика
             long overallElapsed = System.currentTimeMillis() - overallStart;
-            double overallRate = (trips.size() * 1000.0) / overallElapsed;
+            double overallRate = (totalInserted * 1000.0) / Math.max(1, overallElapsed);
 
             LogService.info("");
             LogService.info("=== Overall Statistics ===");
-            LogService.infof("Total records:    %,d", trips.size());
+            LogService.infof("Total records:    %,d", totalInserted);
             LogService.infof("Total time:       %.1f seconds", overallElapsed / 1000.0);
             LogService.infof("Overall rate:     %.0f records/sec", overallRate);
 
             // Простая статистика по данным
-            printDataStatistics(trips);
-            return trips.size();
+            printDataStatistics(stats);
+
+            if (fileEvent.shouldCommit()) {
+                fileEvent.file = filePlan.getFilePath();
+                fileEvent.units = filePlan.getUnits().size();
+                fileEvent.plannedRows = filePlan.getRowsToLoad();
+                fileEvent.rows = totalInserted;
+                fileEvent.commit();
+            }
+            return totalInserted;
 
         } catch (Exception e) {
             LogService.errorf("Error loading file: %s", e.getMessage());
@@ -209,57 +669,48 @@ public class Main {
     }
 
     /**
-     * Однопоточная вставка (когда THREAD_COUNT = 1).
+     * Однопоточная загрузка (когда THREAD_COUNT = 1 или в файле один unit).
      */
-    private static void insertSingleThreaded(List<TaxiTrip> trips) throws Exception {
-        try (DatabaseWriter writer = DatabaseWriterFactory.createWriter("Main")) {
-            writer.addTrips(trips);
-            writer.flush();
+    private static List<InsertResult> insertSingleThreaded(Queue<WorkUnit> units, Queue<ExternalSort.Range> ranges,
+                                                           AtomicLong remaining,
+                                                           UnitPrefetcher prefetcher) throws Exception {
+        InsertResult result = new InsertTask("Main", units, ranges, remaining, prefetcher).call();
 
-            LogService.info("");
-            LogService.infof("✅ Inserted %,d records into %s",
-                    writer.getTotalInserted(), DatabaseWriterFactory.getCurrentDatabaseName());
-            LogService.infof("   %s", writer.getPerformanceStats());
-        }
+        LogService.info("");
+        LogService.infof("✅ Inserted %,d records into %s",
+                result.recordsInserted, DatabaseWriterFactory.getCurrentDatabaseName());
+        LogService.infof("   %s", result.performanceStats);
+
+        List<InsertResult> results = new ArrayList<>();
+        results.add(result);
+        return results;
     }
 
     /**
-     * Многопоточная вставка данных в БД.
+     * Многопоточная загрузка: threadCount задач разбирают общую очередь unit'ов.
+     * При VIRTUAL_THREADS каждая задача - виртуальный поток: ожидание ответа БД не занимает
+     * поток ОС, и задач (соединений) может быть намного больше ядер; число batch'ей,
+     * одновременно выполняющихся в БД, ограничивает BatchGate (MAX_IN_FLIGHT_BATCHES).
      */
-    private static void insertMultiThreaded(List<TaxiTrip> trips) throws Exception {
-        int threadCount = AppConfig.THREAD_COUNT;
-        int totalRecords = trips.size();
-        int chunkSize = (totalRecords + threadCount - 1) / threadCount; // Округление вверх
-
-        LogService.infof("Splitting %,d records into %d chunks of ~%,d records each",
-                totalRecords, threadCount, chunkSize);
+    private static List<InsertResult> insertMultiThreaded(Queue<WorkUnit> units, Queue<ExternalSort.Range> ranges,
+                                                          AtomicLong remaining, int threadCount,
+                                                          UnitPrefetcher prefetcher) throws Exception {
+        LogService.infof("Scheduling %d %s on %d %s threads", ranges != null ? ranges.size() : units.size(),
+                ranges != null ? "sorted key ranges" : "work units", threadCount,
+                AppConfig.VIRTUAL_THREADS ? "virtual" : "platform");
         LogService.info("");
 
         // Создать пул потоков
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        ExecutorService executor = AppConfig.VIRTUAL_THREADS
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(threadCount);
         List<Future<InsertResult>> futures = new ArrayList<>();
 
-        // Разбить данные на chunks и запустить задачи
         for (int i = 0; i < threadCount; i++) {
-            int startIdx = i * chunkSize;
-            int endIdx = Math.min(startIdx + chunkSize, totalRecords);
-
-            if (startIdx >= totalRecords) {
-                break; // Больше нечего обрабатывать
-            }
-
-            List<TaxiTrip> chunk = trips.subList(startIdx, endIdx);
             String taskId = String.format("Task-%d", i + 1);
-
-            LogService.infof("[%s] Starting: %,d records (indices %,d to %,d)",
-                    taskId, chunk.size(), startIdx, endIdx - 1);
-
-            InsertTask task = new InsertTask(taskId, chunk, startIdx, endIdx - 1);
-            Future<InsertResult> future = executor.submit(task);
-            futures.add(future);
+            futures.add(executor.submit(new InsertTask(taskId, units, ranges, remaining, prefetcher)));
         }
 
-        LogService.info("");
         LogService.info("All tasks submitted, waiting for completion...");
         LogService.info("");
 
@@ -268,51 +719,55 @@ public class Main {
         long totalTime = 0;
         List<InsertResult> results = new ArrayList<>();
 
-        for (Future<InsertResult> future : futures) {
-            try {
-                InsertResult result = future.get(); // Ждем завершения задачи
-                results.add(result);
-                totalInserted += result.recordsInserted;
-                totalTime = Math.max(totalTime, result.elapsedMs);
-
-                LogService.infof("[%s] ✅ Completed: %,d records in %.1f sec (%.0f rec/sec)",
-                        result.taskId, result.recordsInserted,
-                        result.elapsedMs / 1000.0, result.rate);
-
-            } catch (ExecutionException e) {
-                LogService.errorf("Task failed: %s", e.getCause().getMessage());
-                throw new RuntimeException("Insert task failed", e.getCause());
-            }
-        }
-
-        // Завершить пул потоков
-        executor.shutdown();
         try {
-            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+            for (Future<InsertResult> future : futures) {
+                try {
+                    InsertResult result = future.get(); // Ждем завершения задачи
+                    results.add(result);
+                    totalInserted += result.recordsInserted;
+                    totalTime = Math.max(totalTime, result.elapsedMs);
+
+                    LogService.infof("[%s] ✅ Completed: %,d records, %d units in %.1f sec (%.0f rec/sec)",
+                            result.taskId, result.recordsInserted, result.unitsProcessed,
+                            result.elapsedMs / 1000.0, result.rate);
+
+                } catch (ExecutionException e) {
+                    LogService.errorf("Task failed: %s", e.getCause().getMessage());
+                    throw new RuntimeException("Insert task failed", e.getCause());
+                }
+            }
+        } finally {
+            // Завершить пул потоков
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
                 executor.shutdownNow();
+                Thread.currentThread().interrupt();
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
         }
 
         // Итоговая статистика по потокам
         LogService.info("");
         LogService.info("=== Thread Performance Summary ===");
         for (InsertResult result : results) {
-            LogService.infof("  %s: %,d records | %.1f sec | %.0f rec/sec",
-                    result.taskId, result.recordsInserted,
+            LogService.infof("  %s: %,d records | %d units | %.1f sec | %.0f rec/sec",
+                    result.taskId, result.recordsInserted, result.unitsProcessed,
                     result.elapsedMs / 1000.0, result.rate);
         }
 
         double avgRate = results.stream().mapToDouble(r -> r.rate).average().orElse(0);
-        double overallRate = (totalInserted * 1000.0) / totalTime;
+        double overallRate = (totalInserted * 1000.0) / Math.max(1, totalTime);
 
         LogService.info("");
         LogService.infof("✅ Total inserted: %,d records", totalInserted);
         LogService.infof("   Max thread time: %.1f sec", totalTime / 1000.0);
         LogService.infof("   Average thread rate: %.0f rec/sec", avgRate);
         LogService.infof("   Overall throughput: %.0f rec/sec", overallRate);
+
+        return results;
     }
 
     /**
@@ -323,29 +778,44 @@ public class Main {
         final long recordsInserted;
         final long elapsedMs;
         final double rate;
+        final int unitsProcessed;
+        final int nullPickupFixed;
+        final TripStats stats;
+        final String performanceStats;
 
-        InsertResult(String taskId, long recordsInserted, long elapsedMs) {
+        InsertResult(String taskId, long recordsInserted, long elapsedMs, int unitsProcessed,
+                     int nullPickupFixed, TripStats stats, String performanceStats) {
             this.taskId = taskId;
             this.recordsInserted = recordsInserted;
             this.elapsedMs = elapsedMs;
-            this.rate = (recordsInserted * 1000.0) / elapsedMs;
+            this.rate = (recordsInserted * 1000.0) / Math.max(1, elapsedMs);
+            this.unitsProcessed = unitsProcessed;
+            this.nullPickupFixed = nullPickupFixed;
+            this.stats = stats;
+            this.performanceStats = performanceStats;
         }
     }
 
     /**
-     * Задача для вставки данных в отдельном потоке.
+     * Задача загрузки в отдельном потоке: берет unit'ы из очереди, читает и вставляет их
+     * через собственные reader и writer (одно подключение на задачу).
+     * Unit, уже декодированный read-ahead'ом, берется у prefetcher'а без чтения файла.
+     * При SORT_MODE = FILE задача вместо unit'ов пишет диапазоны ключей внешней сортировки.
      */
     private static class InsertTask implements Callable<InsertResult> {
         private final String taskId;
-        private final List<TaxiTrip> trips;
-        private final int startIdx;
-        private final int endIdx;
+        private final Queue<WorkUnit> units;
+        private final Queue<ExternalSort.Range> ranges;
+        private final AtomicLong remaining;
+        private final UnitPrefetcher prefetcher;
 
-        InsertTask(String taskId, List<TaxiTrip> trips, int startIdx, int endIdx) {
+        InsertTask(String taskId, Queue<WorkUnit> units, Queue<ExternalSort.Range> ranges, AtomicLong remaining,
+                   UnitPrefetcher prefetcher) {
             this.taskId = taskId;
-            this.trips = trips;
-            this.startIdx = startIdx;
-            this.endIdx = endIdx;
+            this.units = units;
+            this.ranges = ranges;
+            this.remaining = remaining;
+            this.prefetcher = prefetcher;
         }
 
         @Override
@@ -356,10 +826,105 @@ public class Main {
                     taskId, java.time.LocalDateTime.now().format(
                             java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss")));
 
-            try (DatabaseWriter writer = DatabaseWriterFactory.createWriter(taskId)) {
-                // Вставить данные
-                writer.addTrips(trips);
+            ParquetTaxiReader reader = new ParquetTaxiReader(
+                    DatabaseWriterFactory.getRequiredColumns(), TripFilter.fromConfig());
+            TripStats stats = new TripStats();
+            int unitsProcessed = 0;
+            int prefetchedNullPickupFixed = 0;
+            WriterMetrics metrics = LoaderMetrics.forTask(taskId);
+
+            try (WriterPool.Lease lease = WriterPool.lease(writerPool, taskId)) {
+                DatabaseWriter writer = lease.writer();
+                // Writer из пула мог уже загрузить предыдущие файлы
+                long insertedBefore = writer.getTotalInserted();
+
+                ExternalSort.Range range;
+                while (ranges != null && (range = ranges.poll()) != null) {
+                    long mergeStart = System.nanoTime();
+                    long rows;
+                    if (writer instanceof TripRowSink) {
+                        TripRowSink sink = (TripRowSink) writer;
+                        rows = range.merge(row -> {
+                            stats.add(row);
+                            sink.addRow(row);
+                        });
+                    } else {
+                        TaxiTrip trip = new TaxiTrip();
+                        rows = range.merge(row -> {
+                            row.copyTo(trip);
+                            stats.add(trip);
+                            writer.addTrip(trip);
+                        });
+                    }
+                    LogService.infof("[%s] Merged %s: %,d records in %,d ms",
+                            taskId, range, rows, (System.nanoTime() - mergeStart) / 1_000_000);
+                    unitsProcessed++;
+                }
+
+                WorkUnit unit;
+                while (remaining.get() > 0 && (unit = units.poll()) != null) {
+                    long waitStart = System.nanoTime();
+                    UnitPrefetcher.Prefetched prefetched = prefetcher != null ? prefetcher.take(unit) : null;
+                    long readStart = System.nanoTime();
+                    if (prefetcher != null) {
+                        metrics.queueWait(readStart - waitStart);
+                    }
+                    long writerBefore = metrics.getWriterNanos();
+                    if (prefetched == null) {
+                        metrics.readStarted();
+                    }
+
+                    if (prefetched == null && writer instanceof TripRowSink) {
+                        // Строки идут из reader'а прямо в writer, без TaxiTrip
+                        TripRowSink sink = (TripRowSink) writer;
+                        long rows = reader.readUnitRows(unit, remaining, row -> {
+                            stats.add(row);
+                            sink.addRow(row);
+                        });
+                        // Чтение чередуется с записью: время чтения = время unit'а минус время writer'а
+                        long unitNanos = System.nanoTime() - readStart;
+                        metrics.readCompleted(unit, rows, unitNanos - (metrics.getWriterNanos() - writerBefore));
+
+                        LogService.infof("[%s] Streamed %s: %,d records in %,d ms",
+                                taskId, unit, rows, unitNanos / 1_000_000);
+                        unitsProcessed++;
+                        continue;
+                    }
+
+                    if (prefetched == null && AppConfig.TRIP_REUSE) {
+                        // Один переиспользуемый TaxiTrip: writer биндит значения и отпускает объект
+                        long rows = reader.readUnitReused(unit, remaining, trip -> {
+                            stats.add(trip);
+                            writer.addTrip(trip);
+                        });
+                        long unitNanos = System.nanoTime() - readStart;
+                        metrics.readCompleted(unit, rows, unitNanos - (metrics.getWriterNanos() - writerBefore));
+
+                        LogService.infof("[%s] Streamed %s: %,d records in %,d ms",
+                                taskId, unit, rows, unitNanos / 1_000_000);
+                        unitsProcessed++;
+                        continue;
+                    }
+
+                    List<TaxiTrip> trips;
+                    if (prefetched != null) {
+                        trips = prefetched.takeTrips(remaining);
+                        prefetchedNullPickupFixed += prefetched.getNullPickupFixed();
+                    } else {
+                        trips = reader.readUnit(unit, remaining);
+                        metrics.readCompleted(unit, trips.size(), System.nanoTime() - readStart);
+                    }
+
+                    LogService.infof("[%s] %s %s: %,d records in %,d ms",
+                            taskId, prefetched != null ? "Prefetched" : "Read", unit, trips.size(),
+                            (System.nanoTime() - readStart) / 1_000_000);
+
+                    stats.add(trips);
+                    writer.addTrips(trips);
+                    unitsProcessed++;
+                }
                 writer.flush();
+                lease.completed();
 
                 long elapsed = System.currentTimeMillis() - taskStart;
 
@@ -367,7 +932,8 @@ public class Main {
                         taskId, java.time.LocalDateTime.now().format(
                                 java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss")));
 
-                return new InsertResult(taskId, writer.getTotalInserted(), elapsed);
+                return new InsertResult(taskId, writer.getTotalInserted() - insertedBefore, elapsed, unitsProcessed,
+                        reader.getNullPickupDatetimeCount() + prefetchedNullPickupFixed, stats, writer.getPerformanceStats());
 
             } catch (Exception e) {
                 LogService.errorf("[%s] Thread failed: %s", taskId, e.getMessage());
@@ -377,36 +943,60 @@ public class Main {
     }
 
     /**
-     * Вывести простую статистику по загруженным данным.
+     * Агрегаты по загруженным данным (считаются в задачах, чтобы не держать весь файл в памяти).
      */
-    private static void printDataStatistics(List<TaxiTrip> trips) {
-        if (trips.isEmpty()) {
-            return;
+    private static class TripStats {
+        long count;
+        double totalFare;
+        double totalDistance;
+        long totalPassengers;
+
+        void add(List<TaxiTrip> trips) {
+            for (TaxiTrip trip : trips) {
+                add(trip);
+            }
         }
 
-        LogService.info("");
-        LogService.info("=== Data Statistics ===");
+        void add(TaxiTrip trip) {
+            count++;
+            totalFare += trip.getTotalAmount();
+            totalDistance += trip.getTripDistance();
+            totalPassengers += trip.getPassengerCount();
+        }
 
-        double totalFare = trips.stream()
-                .mapToDouble(TaxiTrip::getTotalAmount)
-                .sum();
+        void add(TripRow row) {
+            count++;
+            totalFare += row.doubles[TripRow.TOTAL_AMOUNT];
+            totalDistance += row.doubles[TripRow.TRIP_DISTANCE];
+            totalPassengers += row.ints[TripRow.PASSENGER_COUNT];
+        }
 
-        double avgFare = totalFare / trips.size();
+        void merge(TripStats other) {
+            count += other.count;
+            totalFare += other.totalFare;
+            totalDistance += other.totalDistance;
+            totalPassengers += other.totalPassengers;
+        }
+    }
 
-        double totalDistance = trips.stream()
-                .mapToDouble(TaxiTrip::getTripDistance)
-                .sum();
+    /**
+     * Вывести простую статистику по загруженным данным.
+     */
+    private static void printDataStatistics(TripStats stats) {
+        if (stats.count == 0) {
+            return;
+        }
 
-        double avgDistance = totalDistance / trips.size();
+        LogService.info("");
+        LogService.info("=== Data Statistics ===");
 
-        int totalPassengers = trips.stream()
-                .mapToInt(TaxiTrip::getPassengerCount)
-                .sum();
+        double avgFare = stats.totalFare / stats.count;
+        double avgDistance = stats.totalDistance / stats.count;
 
-        LogService.infof("Total fare:       $%,.2f", totalFare);
+        LogService.infof("Total fare:       $%,.2f", stats.totalFare);
         LogService.infof("Average fare:     $%.2f", avgFare);
-        LogService.infof("Total distance:   %.2f miles", totalDistance);
+        LogService.infof("Total distance:   %.2f miles", stats.totalDistance);
         LogService.infof("Average distance: %.2f miles", avgDistance);
-        LogService.infof("Total passengers: %,d", totalPassengers);
+        LogService.infof("Total passengers: %,d", stats.totalPassengers);
     }
-}
\ No newline at end of file
+}
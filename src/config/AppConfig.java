@@ -1,6 +1,7 @@
 package config;
 
 import java.io.File;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,6 +17,9 @@ public final class AppConfig {
 
     // === Database type ===
     public static DatabaseType DATABASE_TYPE;
+    public static List<DatabaseType> FANOUT_TARGETS = new ArrayList<>();   // писать во все эти БД, пусто = DATABASE_TYPE
+    public static int FANOUT_BUFFER_BATCHES = 16;   // очередь batch'ей каждой цели
+    public static int FANOUT_THREADS;               // потоков-writer'ов на цель, 0 = THREAD_COUNT
 
     // === OceanBase ===
     public static String OCEANBASE_URL;
@@ -26,12 +30,20 @@ public final class AppConfig {
     public static String POSTGRESQL_URL;
     public static String POSTGRESQL_USER;
     public static String POSTGRESQL_PASSWORD;
+    public static boolean POSTGRESQL_COPY;   // binary COPY вместо batch INSERT
+    public static List<String> POSTGRESQL_SHARDS = new ArrayList<>();   // URL узлов, пусто = один POSTGRESQL_URL
+    public static ShardKey SHARD_KEY = ShardKey.PU_LOCATION_ID;
+    public static String SHARD_MAP;          // диапазоны ключа -> узел, пусто = hash
 
     // === MSSQL ===
     public static String MSSQL_URL;
     public static String MSSQL_USER;
     public static String MSSQL_PASSWORD;
 
+    // === File sink (DatabaseType.FILE) ===
+    public static String FILE_SINK_DIR;
+    public static FileSinkFormat FILE_SINK_FORMAT = FileSinkFormat.PGCOPY;
+
     // === JDBC compatibility (used in OceanBaseWriter) ===
     public static String JDBC_URL;
     public static String JDBC_USER;
@@ -50,17 +62,60 @@ public final class AppConfig {
     public static String PARQUET_DIR;
     public static String FIRST_FILE;
 
+    // === Row filters (pushed down to Parquet row groups / pages) ===
+    public static LocalDateTime FILTER_PICKUP_FROM;              // включительно, null = без ограничения
+    public static LocalDateTime FILTER_PICKUP_TO;                // не включительно, null = без ограничения
+    public static List<Integer> FILTER_PU_LOCATIONS = new ArrayList<>();
+    public static List<Integer> FILTER_DO_LOCATIONS = new ArrayList<>();
+    public static List<Integer> FILTER_VENDORS = new ArrayList<>();
+
     // === Batch / limits / logs ===
-    public static int BATCH_SIZE;
+    // volatile - поля, которые меняются во время загрузки через JMX (metrics.LoaderControl)
+    public static volatile int BATCH_SIZE;
     public static int TEST_LIMIT;
-    public static int LOG_INTERVAL;
+    public static volatile int LOG_INTERVAL;
+    public static int METRICS_PORT;          // HTTP endpoint /metrics (Prometheus), 0 = выключен
+    public static String METRICS_BIND_ADDRESS; // адрес endpoint'а, пусто = 127.0.0.1 (только локально)
+    public static String ALLOCATION_REPORT;  // файл отчета о выделении памяти и GC, пусто = выключено
+    public static String JFR_RECORDING;      // файл .jfr для записи Flight Recorder на время загрузки, пусто = выключено
+    public static String RUN_REPORT;         // JSON-сводка прогона (строки, время, квантили стадий), пусто = выключено
+    public static boolean ASYNC_LOGGING;     // LogService через кольцевой буфер и фоновый поток
 
     // === Table / DB name ===
     public static String TABLE_NAME;
     public static String DATABASE_NAME;
 
     // === Performance ===
-    public static int THREAD_COUNT;
+    public static volatile int THREAD_COUNT;
+    public static boolean VIRTUAL_THREADS;   // задачи на виртуальных потоках: THREAD_COUNT = число задач / соединений
+    public static volatile int MAX_IN_FLIGHT_BATCHES; // batch'ей в БД одновременно на процесс (fan-out: на каждую цель), 0 = без ограничения
+    public static long THROTTLE_ROWS_PER_SEC;   // лимит строк/с всех writer'ов (fan-out: каждой цели), 0 = без ограничения
+    public static long THROTTLE_BYTES_PER_SEC;  // лимит байт/с всех writer'ов (fan-out: каждой цели), 0 = без ограничения
+    public static int THROTTLE_TARGET_P99_MS;   // цель p99 batch'а (execute + commit) для подстройки лимита, 0 = выключено
+    public static int WORK_UNIT_ROWS;        // размер unit'а планировщика в строках, 0 = авто
+    public static ReaderMode READER_MODE = ReaderMode.DIRECT;
+    public static boolean TRIP_REUSE;        // один переиспользуемый TaxiTrip на поток вместо списков
+    public static int PREFETCH_MEMORY_MB = 256;   // бюджет read-ahead следующих файлов, 0 = выключен
+    public static String DECODED_CACHE_DIR;    // кэш декодированных unit'ов на диске, пусто = выключен
+    public static int DECODED_CACHE_MB = 4096; // квота кэша, при превышении вытесняются давно не использованные
+    public static SortMode SORT_MODE = SortMode.NONE;   // порядок строк перед вставкой
+    public static int SORT_MEMORY_MB = 512;    // SORT_MODE = FILE: память прогонов на все потоки
+    public static String SORT_SPILL_DIR;       // SORT_MODE = FILE: каталог прогонов, пусто = java.io.tmpdir
+
+    // === Watch mode ===
+    public static boolean WATCH_MODE;          // загружать новые файлы PARQUET_DIR по мере появления
+    public static String LOAD_LEDGER;          // журнал загруженных файлов, пусто = без журнала (WATCH_MODE: load-ledger.tsv)
+    public static int WATCH_STABLE_SECONDS = 30;   // файл готов, если не менялся столько секунд
+    public static String WATCH_MARKER_SUFFIX;  // или: файл готов, когда есть <файл><суффикс>, например .done
+
+    // === Coordinated mode (several loader processes) ===
+    public static boolean COORDINATED_MODE;    // делить файлы с другими процессами через таблицу аренд
+    public static String LEASE_TABLE = "loader_lease";
+    public static int LEASE_SECONDS = 60;      // срок аренды файла, продлевается каждые LEASE_SECONDS / 3
+    public static String INSTANCE_ID;          // имя процесса в таблице аренд, пусто = host:pid
+    public static String LEASE_JDBC_URL;       // БД таблицы аренд, пусто = целевая БД
+    public static String LEASE_JDBC_USER;
+    public static String LEASE_JDBC_PASSWORD;
 
     // ---------------------------------------------------------------------
     // === Utility methods ===
@@ -132,6 +187,10 @@ public final class AppConfig {
     public static void printConfig() {
         System.out.println("=== Application Configuration ===");
         System.out.println("Database Type: " + (DATABASE_TYPE != null ? DATABASE_TYPE.getDisplayName() : "null"));
+        if (!FANOUT_TARGETS.isEmpty()) {
+            System.out.println("Fan-out Targets: " + FANOUT_TARGETS + " (buffer " + FANOUT_BUFFER_BATCHES
+                    + " batches, " + (FANOUT_THREADS > 0 ? FANOUT_THREADS : THREAD_COUNT) + " writer threads each)");
+        }
         switch (DATABASE_TYPE) {
             case OCEANBASE:
                 System.out.println("JDBC URL: " + OCEANBASE_URL);
@@ -140,6 +199,11 @@ public final class AppConfig {
             case POSTGRESQL:
                 System.out.println("JDBC URL: " + POSTGRESQL_URL);
                 System.out.println("User: " + POSTGRESQL_USER);
+                System.out.println("Write Mode: " + (POSTGRESQL_COPY ? "binary COPY" : "batch INSERT"));
+                if (!POSTGRESQL_SHARDS.isEmpty()) {
+                    System.out.println("Shards: " + String.join(", ", POSTGRESQL_SHARDS));
+                    System.out.println("Shard Key: " + SHARD_KEY + (SHARD_MAP.isEmpty() ? " (hash)" : " " + SHARD_MAP));
+                }
                 break;
             case MSSQL:
                 System.out.println("JDBC URL: " + MSSQL_URL);
@@ -152,6 +216,13 @@ public final class AppConfig {
                 System.out.println("Collection: " + MONGO_COLLECTION);
                 System.out.println("SSL: " + (MONGO_USE_SSL ? "enabled" : "disabled"));
                 break;
+            case BLACKHOLE:
+                System.out.println("Sink: rows are counted and discarded");
+                break;
+            case FILE:
+                System.out.println("Output Dir: " + FILE_SINK_DIR);
+                System.out.println("Format: " + FILE_SINK_FORMAT);
+                break;
             default:
                 System.out.println("No database type selected.");
         }
@@ -162,8 +233,52 @@ public final class AppConfig {
         System.out.println("First File: " + FIRST_FILE);
         System.out.println("Batch Size: " + BATCH_SIZE);
         System.out.println("Test Limit: " + TEST_LIMIT);
+        if (FILTER_PICKUP_FROM != null || FILTER_PICKUP_TO != null) {
+            System.out.println("Filter Pickup: [" + (FILTER_PICKUP_FROM != null ? FILTER_PICKUP_FROM : "-inf")
+                    + ", " + (FILTER_PICKUP_TO != null ? FILTER_PICKUP_TO : "+inf") + ")");
+        }
+        if (!FILTER_PU_LOCATIONS.isEmpty()) System.out.println("Filter PU Locations: " + FILTER_PU_LOCATIONS);
+        if (!FILTER_DO_LOCATIONS.isEmpty()) System.out.println("Filter DO Locations: " + FILTER_DO_LOCATIONS);
+        if (!FILTER_VENDORS.isEmpty()) System.out.println("Filter Vendors: " + FILTER_VENDORS);
         System.out.println("Log Interval: " + LOG_INTERVAL);
+        System.out.println("Metrics Port: " + (METRICS_PORT > 0 ? String.valueOf(METRICS_PORT) : "disabled"));
+        if (METRICS_PORT > 0) System.out.println("Metrics Bind Address: "
+                + (METRICS_BIND_ADDRESS.isEmpty() ? "127.0.0.1" : METRICS_BIND_ADDRESS));
+        System.out.println("Allocation Report: " + (ALLOCATION_REPORT.isEmpty() ? "disabled" : ALLOCATION_REPORT));
+        System.out.println("JFR Recording: " + (JFR_RECORDING.isEmpty() ? "disabled" : JFR_RECORDING));
+        System.out.println("Run Report: " + (RUN_REPORT.isEmpty() ? "disabled" : RUN_REPORT));
+        System.out.println("Async Logging: " + (ASYNC_LOGGING ? "enabled" : "disabled"));
         System.out.println("Thread Count: " + THREAD_COUNT);
+        System.out.println("Virtual Threads: " + (VIRTUAL_THREADS ? "enabled" : "disabled"));
+        System.out.println("Max In-Flight Batches: "
+                + (MAX_IN_FLIGHT_BATCHES > 0 ? String.valueOf(MAX_IN_FLIGHT_BATCHES) : "unlimited"));
+        System.out.println("Throttle Rows/sec: "
+                + (THROTTLE_ROWS_PER_SEC > 0 ? String.valueOf(THROTTLE_ROWS_PER_SEC) : "unlimited"));
+        System.out.println("Throttle Bytes/sec: "
+                + (THROTTLE_BYTES_PER_SEC > 0 ? String.valueOf(THROTTLE_BYTES_PER_SEC) : "unlimited"));
+        System.out.println("Throttle Target p99: "
+                + (THROTTLE_TARGET_P99_MS > 0 ? THROTTLE_TARGET_P99_MS + " ms" : "disabled"));
+        System.out.println("Reader Mode: " + READER_MODE);
+        System.out.println("Work Unit Rows: " + (WORK_UNIT_ROWS > 0 ? String.valueOf(WORK_UNIT_ROWS) : "auto"));
+        System.out.println("Trip Reuse: " + (TRIP_REUSE ? "enabled" : "disabled"));
+        System.out.println("Prefetch Memory: " + (PREFETCH_MEMORY_MB > 0 ? PREFETCH_MEMORY_MB + " MB" : "disabled"));
+        System.out.println("Decoded Cache: " + (DECODED_CACHE_DIR.isEmpty()
+                ? "disabled" : DECODED_CACHE_DIR + " (" + DECODED_CACHE_MB + " MB)"));
+        System.out.println("Sort Mode: " + SORT_MODE + (SORT_MODE == SortMode.FILE
+                ? " (" + SORT_MEMORY_MB + " MB, spill to "
+                + (SORT_SPILL_DIR.isEmpty() ? System.getProperty("java.io.tmpdir") : SORT_SPILL_DIR) + ")" : ""));
+        System.out.println("Watch Mode: " + (WATCH_MODE ? "enabled" : "disabled"));
+        System.out.println("Load Ledger: " + (LOAD_LEDGER.isEmpty() ? (WATCH_MODE ? "load-ledger.tsv" : "disabled") : LOAD_LEDGER));
+        if (WATCH_MODE) {
+            System.out.println("Watch Completion: " + (WATCH_MARKER_SUFFIX.isEmpty()
+                    ? "stable for " + WATCH_STABLE_SECONDS + " s" : "marker *" + WATCH_MARKER_SUFFIX));
+        }
+        System.out.println("Coordinated Mode: " + (COORDINATED_MODE ? "enabled" : "disabled"));
+        if (COORDINATED_MODE) {
+            System.out.println("Lease Table: " + LEASE_TABLE + (LEASE_JDBC_URL.isEmpty() ? "" : " @ " + LEASE_JDBC_URL));
+            System.out.println("Lease Duration: " + LEASE_SECONDS + " s");
+            System.out.println("Instance Id: " + (INSTANCE_ID.isEmpty() ? "host:pid" : INSTANCE_ID));
+        }
         System.out.println("=================================");
     }
 }
@@ -6,6 +6,10 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Читает конфигурацию приложения из XML файла.
@@ -35,6 +39,15 @@ public final class AppConfigReader {
 
             // === Основные настройки ===
             AppConfig.DATABASE_TYPE = DatabaseType.valueOf(text(root, "DATABASE_TYPE").trim().toUpperCase());
+            AppConfig.FANOUT_TARGETS.clear();
+            for (String target : text(root, "FANOUT_TARGETS").split(",")) {
+                if (!target.trim().isEmpty()) {
+                    AppConfig.FANOUT_TARGETS.add(DatabaseType.valueOf(target.trim().toUpperCase()));
+                }
+            }
+            String fanoutBuffer = text(root, "FANOUT_BUFFER_BATCHES");
+            AppConfig.FANOUT_BUFFER_BATCHES = fanoutBuffer.isEmpty() ? 16 : parseInt(fanoutBuffer);
+            AppConfig.FANOUT_THREADS = parseInt(text(root, "FANOUT_THREADS"));
 
             // === OceanBase ===
             AppConfig.OCEANBASE_URL = text(root, "OCEANBASE_URL");
@@ -45,12 +58,36 @@ public final class AppConfigReader {
             AppConfig.POSTGRESQL_URL = text(root, "POSTGRESQL_URL");
             AppConfig.POSTGRESQL_USER = text(root, "POSTGRESQL_USER");
             AppConfig.POSTGRESQL_PASSWORD = text(root, "POSTGRESQL_PASSWORD");
+            AppConfig.POSTGRESQL_COPY = parseBool(text(root, "POSTGRESQL_COPY"));
+
+            // Читаем список узлов <POSTGRESQL_SHARDS><URL>...</URL>...</POSTGRESQL_SHARDS>
+            AppConfig.POSTGRESQL_SHARDS.clear();
+            NodeList shardsParent = root.getElementsByTagName("POSTGRESQL_SHARDS");
+            if (shardsParent.getLength() > 0) {
+                NodeList urlNodes = ((Element) shardsParent.item(0)).getElementsByTagName("URL");
+                for (int i = 0; i < urlNodes.getLength(); i++) {
+                    String url = urlNodes.item(i).getTextContent().trim();
+                    if (!url.isEmpty()) {
+                        AppConfig.POSTGRESQL_SHARDS.add(url);
+                    }
+                }
+            }
+            String shardKey = text(root, "SHARD_KEY");
+            AppConfig.SHARD_KEY = shardKey.isEmpty()
+                    ? ShardKey.PU_LOCATION_ID : ShardKey.valueOf(shardKey.toUpperCase());
+            AppConfig.SHARD_MAP = text(root, "SHARD_MAP");
 
             // === MSSQL ===
             AppConfig.MSSQL_URL = text(root, "MSSQL_URL");
             AppConfig.MSSQL_USER = text(root, "MSSQL_USER");
             AppConfig.MSSQL_PASSWORD = text(root, "MSSQL_PASSWORD");
 
+            // === File sink ===
+            AppConfig.FILE_SINK_DIR = text(root, "FILE_SINK_DIR");
+            String fileSinkFormat = text(root, "FILE_SINK_FORMAT");
+            AppConfig.FILE_SINK_FORMAT = fileSinkFormat.isEmpty()
+                    ? FileSinkFormat.PGCOPY : FileSinkFormat.valueOf(fileSinkFormat.toUpperCase());
+
             // === JDBC Compatibility (для OceanBaseWriter)
             AppConfig.JDBC_URL = AppConfig.OCEANBASE_URL;
             AppConfig.JDBC_USER = AppConfig.OCEANBASE_USER;
@@ -82,10 +119,23 @@ public final class AppConfigReader {
             AppConfig.PARQUET_DIR = text(root, "PARQUET_DIR");
             AppConfig.FIRST_FILE  = text(root, "FIRST_FILE");
 
+            // === Фильтры строк (пусто = без фильтра) ===
+            AppConfig.FILTER_PICKUP_FROM  = parseDateTime(text(root, "FILTER_PICKUP_FROM"));
+            AppConfig.FILTER_PICKUP_TO    = parseDateTime(text(root, "FILTER_PICKUP_TO"));
+            AppConfig.FILTER_PU_LOCATIONS = parseIntList(text(root, "FILTER_PU_LOCATIONS"));
+            AppConfig.FILTER_DO_LOCATIONS = parseIntList(text(root, "FILTER_DO_LOCATIONS"));
+            AppConfig.FILTER_VENDORS      = parseIntList(text(root, "FILTER_VENDORS"));
+
             // === Пакеты/лимиты ===
             AppConfig.BATCH_SIZE   = parseInt(text(root, "BATCH_SIZE"));
             AppConfig.TEST_LIMIT   = parseInt(text(root, "TEST_LIMIT"));
             AppConfig.LOG_INTERVAL = parseInt(text(root, "LOG_INTERVAL"));
+            AppConfig.METRICS_PORT = parseInt(text(root, "METRICS_PORT"));
+            AppConfig.METRICS_BIND_ADDRESS = text(root, "METRICS_BIND_ADDRESS");
+            AppConfig.ALLOCATION_REPORT = text(root, "ALLOCATION_REPORT");
+            AppConfig.JFR_RECORDING = text(root, "JFR_RECORDING");
+            AppConfig.RUN_REPORT = text(root, "RUN_REPORT");
+            AppConfig.ASYNC_LOGGING = parseBool(text(root, "ASYNC_LOGGING"));
 
             // === Таблица / база ===
             AppConfig.TABLE_NAME   = text(root, "TABLE_NAME");
@@ -93,6 +143,48 @@ public final class AppConfigReader {
 
             // === Потоки ===
             AppConfig.THREAD_COUNT = parseInt(text(root, "THREAD_COUNT"));
+            AppConfig.VIRTUAL_THREADS = parseBool(text(root, "VIRTUAL_THREADS"));
+            AppConfig.MAX_IN_FLIGHT_BATCHES = parseInt(text(root, "MAX_IN_FLIGHT_BATCHES"));
+            AppConfig.THROTTLE_ROWS_PER_SEC = parseLong(text(root, "THROTTLE_ROWS_PER_SEC"));
+            AppConfig.THROTTLE_BYTES_PER_SEC = parseLong(text(root, "THROTTLE_BYTES_PER_SEC"));
+            AppConfig.THROTTLE_TARGET_P99_MS = parseInt(text(root, "THROTTLE_TARGET_P99_MS"));
+            AppConfig.WORK_UNIT_ROWS = parseInt(text(root, "WORK_UNIT_ROWS"));
+            String readerMode = text(root, "READER_MODE");
+            AppConfig.READER_MODE = readerMode.isEmpty()
+                    ? ReaderMode.DIRECT : ReaderMode.valueOf(readerMode.toUpperCase());
+            AppConfig.TRIP_REUSE = parseBool(text(root, "TRIP_REUSE"));
+            String prefetchMemory = text(root, "PREFETCH_MEMORY_MB");
+            AppConfig.PREFETCH_MEMORY_MB = prefetchMemory.isEmpty() ? 256 : parseInt(prefetchMemory);
+            AppConfig.DECODED_CACHE_DIR = text(root, "DECODED_CACHE_DIR");
+            String cacheMb = text(root, "DECODED_CACHE_MB");
+            AppConfig.DECODED_CACHE_MB = cacheMb.isEmpty() ? 4096 : parseInt(cacheMb);
+            String sortMode = text(root, "SORT_MODE");
+            AppConfig.SORT_MODE = sortMode.isEmpty()
+                    ? SortMode.NONE : SortMode.valueOf(sortMode.toUpperCase());
+            String sortMemory = text(root, "SORT_MEMORY_MB");
+            AppConfig.SORT_MEMORY_MB = sortMemory.isEmpty() ? 512 : parseInt(sortMemory);
+            AppConfig.SORT_SPILL_DIR = text(root, "SORT_SPILL_DIR");
+
+            // === Режим наблюдения ===
+            AppConfig.WATCH_MODE = parseBool(text(root, "WATCH_MODE"));
+            AppConfig.LOAD_LEDGER = text(root, "LOAD_LEDGER");
+            String stableSeconds = text(root, "WATCH_STABLE_SECONDS");
+            AppConfig.WATCH_STABLE_SECONDS = stableSeconds.isEmpty() ? 30 : parseInt(stableSeconds);
+            AppConfig.WATCH_MARKER_SUFFIX = text(root, "WATCH_MARKER_SUFFIX");
+
+            // === Несколько процессов ===
+            AppConfig.COORDINATED_MODE = parseBool(text(root, "COORDINATED_MODE"));
+            String leaseTable = text(root, "LEASE_TABLE");
+            AppConfig.LEASE_TABLE = leaseTable.isEmpty() ? "loader_lease" : leaseTable;
+            String leaseSeconds = text(root, "LEASE_SECONDS");
+            AppConfig.LEASE_SECONDS = leaseSeconds.isEmpty() ? 60 : parseInt(leaseSeconds);
+            AppConfig.INSTANCE_ID = text(root, "INSTANCE_ID");
+            AppConfig.LEASE_JDBC_URL = text(root, "LEASE_JDBC_URL");
+            AppConfig.LEASE_JDBC_USER = text(root, "LEASE_JDBC_USER");
+            AppConfig.LEASE_JDBC_PASSWORD = text(root, "LEASE_JDBC_PASSWORD");
+            if (AppConfig.COORDINATED_MODE && AppConfig.WATCH_MODE) {
+                throw new IllegalArgumentException("COORDINATED_MODE and WATCH_MODE cannot be combined");
+            }
 
             System.out.println("INFO: Configuration loaded from " + f.getAbsolutePath());
             AppConfig.printConfig();
@@ -116,6 +208,29 @@ public final class AppConfigReader {
         return "true".equalsIgnoreCase(s) || "1".equals(s) || "yes".equalsIgnoreCase(s);
     }
 
+    /**
+     * "2024-03-01" или "2024-03-01 12:00:00" / "2024-03-01T12:00:00". Пусто = null.
+     */
+    private static LocalDateTime parseDateTime(String s) {
+        s = s.trim();
+        if (s.isEmpty()) return null;
+        if (s.length() == 10) return LocalDate.parse(s).atStartOfDay();
+        return LocalDateTime.parse(s.replace(' ', 'T'));
+    }
+
+    /**
+     * Список целых через запятую: "132, 138, 161".
+     */
+    private static List<Integer> parseIntList(String s) {
+        List<Integer> list = new ArrayList<>();
+        for (String part : s.split(",")) {
+            if (!part.trim().isEmpty()) {
+                list.add(Integer.parseInt(part.trim()));
+            }
+        }
+        return list;
+    }
+
     private static int parseInt(String s) {
         try {
             return Integer.parseInt(s.trim());
@@ -123,4 +238,12 @@ public final class AppConfigReader {
             return 0;
         }
     }
+
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s.trim());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
 }
@@ -7,7 +7,9 @@ public enum DatabaseType {
     OCEANBASE("OceanBase"),
     POSTGRESQL("PostgreSQL"),
     MONGODB("MongoDB"),
-    MSSQL("Microsoft SQL Server");
+    MSSQL("Microsoft SQL Server"),
+    BLACKHOLE("Blackhole (no writes)"),     // строки только считаются - потолок reader'а и конвертации
+    FILE("Bulk load files");                // локальные файлы PG COPY binary / CSV
 
     private final String displayName;
 
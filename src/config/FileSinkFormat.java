@@ -0,0 +1,21 @@
+package config;
+
+/**
+ * Формат файлов приемника DatabaseType.FILE.
+ */
+public enum FileSinkFormat {
+    /** PostgreSQL binary COPY: COPY taxi_trips FROM '...' (FORMAT binary) (по умолчанию). */
+    PGCOPY("bin"),
+    /** CSV без заголовка для bcp / LOAD DATA INFILE / COPY ... (FORMAT csv), null - пустое поле. */
+    CSV("csv");
+
+    private final String extension;
+
+    FileSinkFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
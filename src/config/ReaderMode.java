@@ -0,0 +1,11 @@
+package config;
+
+/**
+ * Способ декодирования Parquet в ParquetTaxiReader.
+ */
+public enum ReaderMode {
+    /** Прямые converter'ы в TaxiTrip, словарные колонки через lookup-массивы (по умолчанию). */
+    DIRECT,
+    /** Исходный путь через example Group и поиск полей по имени. */
+    GROUP
+}
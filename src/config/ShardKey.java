@@ -0,0 +1,11 @@
+package config;
+
+/**
+ * Ключ распределения строк по узлам PostgreSQL (POSTGRESQL_SHARDS).
+ */
+public enum ShardKey {
+    /** pu_location_id: диапазоны SHARD_MAP или hash по числу узлов (по умолчанию). */
+    PU_LOCATION_ID,
+    /** Год pickup_datetime: диапазоны SHARD_MAP или hash по числу узлов. */
+    PICKUP_YEAR
+}
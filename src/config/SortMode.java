@@ -0,0 +1,14 @@
+package config;
+
+/**
+ * Порядок строк перед вставкой (SORT_MODE): первичный ключ PG и OceanBase начинается
+ * с pickup_datetime, строки в порядке ключа пишутся в конец индекса без расщепления страниц.
+ */
+public enum SortMode {
+    /** Порядок файла (по умолчанию). */
+    NONE,
+    /** Строки каждого unit'а сортируются в памяти перед writer'ом. */
+    UNIT,
+    /** Внешняя сортировка всего файла (SORT_SPILL_DIR); каждый поток пишет свой диапазон ключей. */
+    FILE
+}
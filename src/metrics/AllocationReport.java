@@ -0,0 +1,249 @@
+package metrics;
+
+import Logging.LogService;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Отчет о выделении памяти и GC за загрузку: байт на строку по стадиям (из WriterMetrics),
+ * время GC по сборщикам и пик heap - по каждому файлу и за весь запуск.
+ *
+ * Пик heap - максимум занятого heap перед сборками (уведомления GC) и в конце файла.
+ * Read-ahead (Prefetch) читает следующие файлы заранее, его выделения попадают в файл,
+ * во время загрузки которого они произошли.
+ *
+ * ThreadMXBean не считает выделения виртуальных потоков (-1, VIRTUAL_THREADS): стадии
+ * с такими замерами выводятся как n/a, а не как 0 байт на строку.
+ */
+public final class AllocationReport {
+
+    private AllocationReport() {
+        // static-only class
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final Stage[] ALLOC_STAGES = {Stage.READ, Stage.BIND, Stage.EXECUTE_BATCH};
+
+    private static volatile boolean enabled;
+    private static final AtomicBoolean UNAVAILABLE_WARNED = new AtomicBoolean();
+    private static String reportFile;
+    private static final Set<String> HEAP_POOLS = new HashSet<>();
+    private static final List<FileEntry> FILES = new ArrayList<>();
+
+    private static volatile long peakHeapBytes;
+    private static Snapshot fileStart;
+    private static Snapshot runStart;
+    private static String currentFile;
+
+    /** Состояние счетчиков на момент времени. */
+    private static class Snapshot {
+        final long[] allocated = new long[ALLOC_STAGES.length];
+        final long[] unmeasured = new long[ALLOC_STAGES.length];
+        long readRows;
+        long rows;
+        final Map<String, long[]> gc = new LinkedHashMap<>();   // имя -> {count, timeMs}
+
+        static Snapshot take() {
+            Snapshot snapshot = new Snapshot();
+            for (WriterMetrics task : LoaderMetrics.tasks()) {
+                for (int i = 0; i < ALLOC_STAGES.length; i++) {
+                    snapshot.allocated[i] += task.getAllocatedBytes(ALLOC_STAGES[i]);
+                    snapshot.unmeasured[i] += task.getUnmeasuredAllocations(ALLOC_STAGES[i]);
+                }
+                snapshot.readRows += task.getReadRows();
+                snapshot.rows += task.getRows();
+            }
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                snapshot.gc.put(gc.getName(), new long[]{gc.getCollectionCount(), gc.getCollectionTime()});
+            }
+            return snapshot;
+        }
+    }
+
+    /** Итог одного файла (или всего запуска). */
+    private static class FileEntry {
+        final String file;
+        final Snapshot start;
+        final Snapshot end;
+        final long peakHeap;
+
+        FileEntry(String file, Snapshot start, Snapshot end, long peakHeap) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.peakHeap = peakHeap;
+        }
+    }
+
+    /**
+     * Включить учет (reportFile - куда сохранить отчет, пусто = только лог).
+     */
+    public static synchronized void start(String reportFile) {
+        if (enabled) {
+            return;
+        }
+        AllocationReport.reportFile = reportFile;
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            LogService.error("Allocation report: thread allocated memory is not supported by this JVM");
+            return;
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                HEAP_POOLS.add(pool.getName());
+            }
+        }
+        NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                updatePeak(heapUsed(info.getGcInfo().getMemoryUsageBeforeGc()));
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+        }
+
+        runStart = Snapshot.take();
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Байты, выделенные текущим потоком с его старта; -1 - недоступно (виртуальный поток). */
+    static long threadAllocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Счетчик выделений потока вернул -1: предупредить один раз за запуск. */
+    static void trackingUnavailable() {
+        if (UNAVAILABLE_WARNED.compareAndSet(false, true)) {
+            LogService.info("⚠️  Allocation report: thread allocated memory is unavailable on virtual threads"
+                    + " (VIRTUAL_THREADS = true); bytes/row for those stages is reported as n/a");
+        }
+    }
+
+    public static synchronized void fileStarted(String file) {
+        if (!enabled) {
+            return;
+        }
+        currentFile = file;
+        fileStart = Snapshot.take();
+        peakHeapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public static synchronized void fileCompleted() {
+        if (!enabled || fileStart == null) {
+            return;
+        }
+        updatePeak(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        FILES.add(new FileEntry(currentFile, fileStart, Snapshot.take(), peakHeapBytes));
+        fileStart = null;
+    }
+
+    /**
+     * Вывести отчет в лог и сохранить в файл.
+     */
+    public static synchronized void finish() {
+        if (!enabled) {
+            return;
+        }
+        long runPeak = 0;
+        for (FileEntry file : FILES) {
+            runPeak = Math.max(runPeak, file.peakHeap);
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add("=== Allocation / GC Report ===");
+        for (FileEntry file : FILES) {
+            describe(lines, file);
+        }
+        describe(lines, new FileEntry("TOTAL", runStart, Snapshot.take(), runPeak));
+
+        for (String line : lines) {
+            LogService.info(line);
+        }
+        if (reportFile != null && !reportFile.isEmpty()) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(reportFile), StandardCharsets.UTF_8))) {
+                for (String line : lines) {
+                    out.println(line);
+                }
+                LogService.infof("Allocation report saved: %s", reportFile);
+            } catch (IOException e) {
+                LogService.errorf("Could not save allocation report %s: %s", reportFile, e.getMessage());
+            }
+        }
+    }
+
+    private static void describe(List<String> lines, FileEntry entry) {
+        long readRows = entry.end.readRows - entry.start.readRows;
+        long rows = entry.end.rows - entry.start.rows;
+        lines.add(entry.file);
+        lines.add(String.format("  rows: %,d read, %,d written | peak heap %,d MB",
+                readRows, rows, entry.peakHeap / (1024 * 1024)));
+
+        StringBuilder alloc = new StringBuilder("  bytes/row:");
+        for (int i = 0; i < ALLOC_STAGES.length; i++) {
+            long bytes = entry.end.allocated[i] - entry.start.allocated[i];
+            long perRows = ALLOC_STAGES[i] == Stage.READ ? readRows : rows;
+            if (entry.end.unmeasured[i] > entry.start.unmeasured[i]) {
+                alloc.append(String.format(" %s n/a", ALLOC_STAGES[i].getMetricName()));
+                continue;
+            }
+            alloc.append(String.format(" %s %.0f", ALLOC_STAGES[i].getMetricName(),
+                    bytes / (double) Math.max(1, perRows)));
+        }
+        lines.add(alloc.toString());
+
+        StringBuilder gc = new StringBuilder("  gc:");
+        for (Map.Entry<String, long[]> collector : entry.end.gc.entrySet()) {
+            long[] before = entry.start.gc.getOrDefault(collector.getKey(), new long[2]);
+            gc.append(String.format(" %s %d x / %,d ms;", collector.getKey(),
+                    collector.getValue()[0] - before[0], collector.getValue()[1] - before[1]));
+        }
+        lines.add(gc.toString());
+    }
+
+    private static long heapUsed(Map<String, MemoryUsage> usage) {
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : usage.entrySet()) {
+            if (HEAP_POOLS.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void updatePeak(long heapUsed) {
+        if (heapUsed > peakHeapBytes) {
+            peakHeapBytes = heapUsed;
+        }
+    }
+}
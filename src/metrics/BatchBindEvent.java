@@ -0,0 +1,30 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR: накопление batch'а - от первой привязанной строки до executeBatch.
+ * Интервал включает и чтение, чередующееся с привязкой; чистое время bind - в bindTime.
+ */
+@Name("loader.BatchBind")
+@Label("Batch Bind")
+@Category({"Loader", "Write"})
+@Description("Binding rows of one batch to the statement or COPY buffer")
+@StackTrace(false)
+class BatchBindEvent extends jdk.jfr.Event {
+
+    @Label("Task")
+    String taskId;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bind Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long bindTime;
+}
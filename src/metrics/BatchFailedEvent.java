@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR: batch завершился ошибкой и был откачен (повторных попыток загрузчик не делает,
+ * ошибка пробрасывается и останавливает задачу). Stack trace сохраняется.
+ */
+@Name("loader.BatchFailed")
+@Label("Batch Failed")
+@Category({"Loader", "Write"})
+@Description("Batch rolled back after a database error")
+class BatchFailedEvent extends jdk.jfr.Event {
+
+    @Label("Task")
+    String taskId;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("SQL State")
+    String sqlState;
+
+    @Label("Message")
+    String message;
+}
@@ -0,0 +1,22 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR: commit batch'а.
+ */
+@Name("loader.Commit")
+@Label("Commit")
+@Category({"Loader", "Write"})
+@StackTrace(false)
+class CommitEvent extends jdk.jfr.Event {
+
+    @Label("Task")
+    String taskId;
+
+    @Label("Rows")
+    long rows;
+}
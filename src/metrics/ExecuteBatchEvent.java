@@ -0,0 +1,24 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR: отправка batch'а в БД (executeBatch / insertMany / завершение COPY).
+ */
+@Name("loader.ExecuteBatch")
+@Label("Execute Batch")
+@Category({"Loader", "Write"})
+@Description("Sending one batch to the target database")
+@StackTrace(false)
+class ExecuteBatchEvent extends jdk.jfr.Event {
+
+    @Label("Task")
+    String taskId;
+
+    @Label("Rows")
+    long rows;
+}
@@ -0,0 +1,30 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR: загрузка одного файла целиком (граница файла в записи).
+ */
+@Name("loader.FileLoad")
+@Label("File Load")
+@Category("Loader")
+@Description("Loading one Parquet file into the target database")
+@StackTrace(false)
+public class FileLoadEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Units")
+    public int units;
+
+    @Label("Planned Rows")
+    public long plannedRows;
+
+    @Label("Rows")
+    public long rows;
+}
@@ -0,0 +1,64 @@
+package metrics;
+
+import Logging.LogService;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+/**
+ * Запись Java Flight Recorder на время загрузки (настройки "profile" + события loader.*).
+ * Файл записывается при stop() или при завершении JVM, в том числе после фатальной ошибки.
+ */
+public final class FlightRecording {
+
+    private FlightRecording() {
+        // static-only class
+    }
+
+    private static Recording recording;
+
+    /**
+     * Начать запись в файл (пустой путь - не записывать).
+     */
+    public static synchronized void start(String file) {
+        if (file == null || file.isEmpty() || recording != null) {
+            return;
+        }
+        try {
+            Path destination = Paths.get(file).toAbsolutePath();
+            Recording r = new Recording(Configuration.getConfiguration("profile"));
+            r.setName("loader");
+            r.setToDisk(true);
+            r.setDestination(destination);
+            r.start();
+            recording = r;
+            Runtime.getRuntime().addShutdownHook(new Thread(FlightRecording::stop, "JFR-stop"));
+            LogService.infof("JFR recording started: %s", destination);
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            LogService.errorf("Could not start JFR recording %s: %s", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Остановить запись и сохранить файл.
+     */
+    public static synchronized void stop() {
+        if (recording == null) {
+            return;
+        }
+        Recording r = recording;
+        recording = null;
+        try {
+            r.stop();
+            LogService.infof("JFR recording saved: %s", r.getDestination());
+        } catch (IllegalStateException e) {
+            LogService.errorf("Could not stop JFR recording: %s", e.getMessage());
+        } finally {
+            r.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package metrics;
+
+import Logging.LogService;
+import config.AppConfig;
+import plan.LoadProgress;
+import plan.UnitPrefetcher;
+import writer.BatchGate;
+import writer.LoadThrottle;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * MBean obloader:type=Loader для наблюдения и настройки во время многочасовой загрузки
+ * (jconsole / VisualVM локально, удаленно - с -Dcom.sun.management.jmxremote.port=...).
+ *
+ * Изменения подхватываются на границах batch'ей и файлов:
+ *   BatchSize          - writer'ы сравнивают размер batch'а с BATCH_SIZE после каждой строки:
+ *                        уменьшение закрывает текущий batch на следующей строке;
+ *   ThreadCount        - число задач следующего файла (текущий файл дорабатывает прежним числом);
+ *   MaxInFlightBatches - сразу для новых batch'ей (уже выполняющиеся возвращают разрешения
+ *                        в прежний семафор);
+ *   LogInterval, Throttle* - сразу.
+ */
+public final class LoaderControl implements LoaderControlMBean {
+
+    private static final String NAME = "obloader:type=Loader";
+
+    // Текущий файл: заполняет Main при начале файла
+    private static volatile String currentFile = "";
+    private static volatile Queue<?> pendingUnits;
+    private static volatile UnitPrefetcher prefetcher;
+
+    /**
+     * Зарегистрировать MBean в platform MBeanServer.
+     */
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new LoaderControl(), name);
+                LogService.infof("JMX: %s registered", NAME);
+            }
+        } catch (JMException | SecurityException e) {
+            LogService.errorf("Could not register MBean %s: %s", NAME, e.getMessage());
+        }
+    }
+
+    /** Начат файл: его очередь unit'ов видна в PendingUnits. */
+    public static void fileStarted(String file, Queue<?> units) {
+        currentFile = file;
+        pendingUnits = units;
+    }
+
+    public static void setPrefetcher(UnitPrefetcher unitPrefetcher) {
+        prefetcher = unitPrefetcher;
+    }
+
+    // === Счетчики ===
+
+    @Override
+    public long getRowsDone() {
+        return LoadProgress.getDoneRows();
+    }
+
+    @Override
+    public long getRowsPlanned() {
+        return LoadProgress.getTotalRows();
+    }
+
+    @Override
+    public double getRowsPerSec() {
+        return LoadProgress.getRowsPerSec();
+    }
+
+    @Override
+    public long getBatches() {
+        long batches = 0;
+        for (WriterMetrics task : LoaderMetrics.tasks()) {
+            batches += task.getBatches();
+        }
+        return batches;
+    }
+
+    @Override
+    public String getCurrentFile() {
+        return currentFile;
+    }
+
+    @Override
+    public int getPendingUnits() {
+        Queue<?> units = pendingUnits;
+        return units != null ? units.size() : 0;
+    }
+
+    @Override
+    public long getPrefetchedBytes() {
+        UnitPrefetcher p = prefetcher;
+        return p != null ? p.getUsedBytes() : 0;
+    }
+
+    @Override
+    public String[] getWriterStats() {
+        List<WriterMetrics> tasks = LoaderMetrics.tasks();
+        String[] stats = new String[tasks.size()];
+        for (int i = 0; i < stats.length; i++) {
+            WriterMetrics task = tasks.get(i);
+            LatencyHistogram execute = task.histogram(Stage.EXECUTE_BATCH);
+            LatencyHistogram wait = task.histogram(Stage.BATCH_WAIT);
+            stats[i] = String.format("%s: %,d rows, %,d batches, execute p50/p99 %.1f/%.1f ms, wait p99 %.1f ms",
+                    task.getTaskId(), task.getRows(), task.getBatches(),
+                    execute.quantile(0.5) / 1e6, execute.quantile(0.99) / 1e6, wait.quantile(0.99) / 1e6);
+        }
+        return stats;
+    }
+
+    // === Параметры ===
+
+    @Override
+    public int getBatchSize() {
+        return AppConfig.BATCH_SIZE;
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        require(batchSize >= 1, "BatchSize must be >= 1");
+        changed("BATCH_SIZE", AppConfig.BATCH_SIZE, batchSize);
+        AppConfig.BATCH_SIZE = batchSize;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return AppConfig.THREAD_COUNT;
+    }
+
+    @Override
+    public void setThreadCount(int threadCount) {
+        require(threadCount >= 1, "ThreadCount must be >= 1");
+        changed("THREAD_COUNT", AppConfig.THREAD_COUNT, threadCount);
+        AppConfig.THREAD_COUNT = threadCount;
+    }
+
+    @Override
+    public int getMaxInFlightBatches() {
+        return AppConfig.MAX_IN_FLIGHT_BATCHES;
+    }
+
+    @Override
+    public synchronized void setMaxInFlightBatches(int maxInFlightBatches) {
+        require(maxInFlightBatches >= 0, "MaxInFlightBatches must be >= 0 (0 = unlimited)");
+        changed("MAX_IN_FLIGHT_BATCHES", AppConfig.MAX_IN_FLIGHT_BATCHES, maxInFlightBatches);
+        AppConfig.MAX_IN_FLIGHT_BATCHES = maxInFlightBatches;
+        BatchGate.configure(maxInFlightBatches);
+    }
+
+    @Override
+    public int getLogInterval() {
+        return AppConfig.LOG_INTERVAL;
+    }
+
+    @Override
+    public void setLogInterval(int logInterval) {
+        require(logInterval >= 1, "LogInterval must be >= 1");
+        changed("LOG_INTERVAL", AppConfig.LOG_INTERVAL, logInterval);
+        AppConfig.LOG_INTERVAL = logInterval;
+    }
+
+    @Override
+    public long getThrottleRowsPerSec() {
+        return LoadThrottle.getRowsLimit();
+    }
+
+    @Override
+    public synchronized void setThrottleRowsPerSec(long rowsPerSec) {
+        require(rowsPerSec >= 0, "ThrottleRowsPerSec must be >= 0 (0 = unlimited)");
+        LoadThrottle.setLimits(rowsPerSec, LoadThrottle.getBytesLimit(), LoadThrottle.getTargetP99Millis());
+    }
+
+    @Override
+    public long getThrottleBytesPerSec() {
+        return LoadThrottle.getBytesLimit();
+    }
+
+    @Override
+    public synchronized void setThrottleBytesPerSec(long bytesPerSec) {
+        require(bytesPerSec >= 0, "ThrottleBytesPerSec must be >= 0 (0 = unlimited)");
+        LoadThrottle.setLimits(LoadThrottle.getRowsLimit(), bytesPerSec, LoadThrottle.getTargetP99Millis());
+    }
+
+    @Override
+    public long getThrottleTargetP99Ms() {
+        return LoadThrottle.getTargetP99Millis();
+    }
+
+    @Override
+    public synchronized void setThrottleTargetP99Ms(long targetP99Ms) {
+        require(targetP99Ms >= 0, "ThrottleTargetP99Ms must be >= 0 (0 = off)");
+        LoadThrottle.setLimits(LoadThrottle.getRowsLimit(), LoadThrottle.getBytesLimit(), targetP99Ms);
+    }
+
+    @Override
+    public long getThrottleEffectiveRowsPerSec() {
+        return LoadThrottle.getEffectiveRowsPerSec();
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static void changed(String key, long from, long to) {
+        LogService.infof("JMX: %s %,d -> %,d", key, from, to);
+    }
+}
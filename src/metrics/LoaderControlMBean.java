@@ -0,0 +1,58 @@
+package metrics;
+
+/**
+ * JMX-интерфейс загрузчика (obloader:type=Loader): счетчики прогона и параметры,
+ * которые можно менять во время загрузки. Описание - в LoaderControl.
+ */
+public interface LoaderControlMBean {
+
+    // === Счетчики ===
+
+    long getRowsDone();
+
+    long getRowsPlanned();
+
+    double getRowsPerSec();
+
+    long getBatches();
+
+    String getCurrentFile();
+
+    int getPendingUnits();
+
+    long getPrefetchedBytes();
+
+    String[] getWriterStats();
+
+    // === Параметры ===
+
+    int getBatchSize();
+
+    void setBatchSize(int batchSize);
+
+    int getThreadCount();
+
+    void setThreadCount(int threadCount);
+
+    int getMaxInFlightBatches();
+
+    void setMaxInFlightBatches(int maxInFlightBatches);
+
+    int getLogInterval();
+
+    void setLogInterval(int logInterval);
+
+    long getThrottleRowsPerSec();
+
+    void setThrottleRowsPerSec(long rowsPerSec);
+
+    long getThrottleBytesPerSec();
+
+    void setThrottleBytesPerSec(long bytesPerSec);
+
+    long getThrottleTargetP99Ms();
+
+    void setThrottleTargetP99Ms(long targetP99Ms);
+
+    long getThrottleEffectiveRowsPerSec();
+}
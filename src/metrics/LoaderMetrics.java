@@ -0,0 +1,257 @@
+package metrics;
+
+import Logging.LogService;
+import config.DatabaseType;
+import plan.LoadProgress;
+import writer.LoadThrottle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Реестр метрик загрузки: WriterMetrics по taskId, экспорт в текстовый формат Prometheus
+ * и короткая сводка по стадиям для лога.
+ */
+public final class LoaderMetrics {
+
+    private LoaderMetrics() {
+        // static-only class
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_KEYS = {"p50", "p90", "p99", "p999"};
+
+    private static final Map<String, WriterMetrics> TASKS = new ConcurrentSkipListMap<>();
+    private static final Map<String, WriterMetrics> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Метрики потока; один taskId (например, "Task-1" во всех файлах) = одна запись.
+     */
+    public static WriterMetrics forTask(String taskId) {
+        return CACHE.computeIfAbsent(taskId, id -> {
+            WriterMetrics metrics = new WriterMetrics(id);
+            TASKS.put(id, metrics);
+            return metrics;
+        });
+    }
+
+    /** Метрики всех потоков, по taskId. */
+    static List<WriterMetrics> tasks() {
+        return new ArrayList<>(TASKS.values());
+    }
+
+    /**
+     * Все метрики в формате Prometheus text exposition 0.0.4.
+     */
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        List<WriterMetrics> tasks = new ArrayList<>(TASKS.values());
+
+        sb.append("# HELP loader_stage_duration_seconds Duration of loader pipeline stages per task.\n");
+        sb.append("# TYPE loader_stage_duration_seconds summary\n");
+        for (WriterMetrics task : tasks) {
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = task.histogram(stage);
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                String labels = "task=\"" + task.getTaskId() + "\",stage=\"" + stage.getMetricName() + "\"";
+                for (double q : QUANTILES) {
+                    sb.append("loader_stage_duration_seconds{").append(labels)
+                            .append(",quantile=\"").append(q).append("\"} ")
+                            .append(seconds(histogram.quantile(q))).append('\n');
+                }
+                sb.append("loader_stage_duration_seconds_sum{").append(labels).append("} ")
+                        .append(seconds(histogram.getSum())).append('\n');
+                sb.append("loader_stage_duration_seconds_count{").append(labels).append("} ")
+                        .append(histogram.getCount()).append('\n');
+            }
+        }
+
+        counter(sb, tasks, "loader_rows_total", "Rows committed to the target database.", WriterMetrics::getRows);
+        counter(sb, tasks, "loader_batches_total", "Batches committed to the target database.", WriterMetrics::getBatches);
+        counter(sb, tasks, "loader_read_bytes_total", "Compressed Parquet bytes read.", WriterMetrics::getReadBytes);
+
+        Map<String, long[]> pinned = PinningMonitor.snapshot();
+        if (!pinned.isEmpty()) {
+            sb.append("# HELP loader_virtual_thread_pinned_total Virtual thread parks pinned to the carrier, by source.\n");
+            sb.append("# TYPE loader_virtual_thread_pinned_total counter\n");
+            for (Map.Entry<String, long[]> e : pinned.entrySet()) {
+                sb.append("loader_virtual_thread_pinned_total{source=\"").append(e.getKey()).append("\"} ")
+                        .append(e.getValue()[0]).append('\n');
+            }
+            sb.append("# HELP loader_virtual_thread_pinned_seconds_total Time virtual threads spent pinned, by source.\n");
+            sb.append("# TYPE loader_virtual_thread_pinned_seconds_total counter\n");
+            for (Map.Entry<String, long[]> e : pinned.entrySet()) {
+                sb.append("loader_virtual_thread_pinned_seconds_total{source=\"").append(e.getKey()).append("\"} ")
+                        .append(seconds(e.getValue()[1])).append('\n');
+            }
+        }
+
+        if (LoadThrottle.isEnabled()) {
+            sb.append("# HELP loader_throttle_rows_per_second Effective rows/sec limit of the load throttle per target database (0 = unlimited).\n");
+            sb.append("# TYPE loader_throttle_rows_per_second gauge\n");
+            for (Map.Entry<DatabaseType, Long> rate : LoadThrottle.getEffectiveRowsPerSecByTarget().entrySet()) {
+                sb.append("loader_throttle_rows_per_second{target=\"").append(rate.getKey().name().toLowerCase())
+                        .append("\"} ").append(rate.getValue()).append('\n');
+            }
+        }
+
+        sb.append("# HELP loader_progress_rows Rows committed / planned for the whole run.\n");
+        sb.append("# TYPE loader_progress_rows gauge\n");
+        sb.append("loader_progress_rows{kind=\"done\"} ").append(LoadProgress.getDoneRows()).append('\n');
+        sb.append("loader_progress_rows{kind=\"planned\"} ").append(LoadProgress.getTotalRows()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Сводка p50 / p99 по стадиям для каждого потока.
+     */
+    public static void printSummary() {
+        LogService.info("=== Stage Latency (p50 / p99 per task) ===");
+        for (WriterMetrics task : TASKS.values()) {
+            StringBuilder line = new StringBuilder("  ").append(task.getTaskId()).append(':');
+            int header = line.length();
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = task.histogram(stage);
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                line.append(String.format(" %s %.1f/%.1f ms", stage.getMetricName(),
+                        histogram.quantile(0.5) / 1e6, histogram.quantile(0.99) / 1e6));
+            }
+            if (line.length() > header) {
+                LogService.info(line.toString());
+            }
+        }
+    }
+
+    /**
+     * Строки и задержки по узлам PostgreSQL (ShardedPostgreSQLWriter): writer'ы узла
+     * называются "Task-1@shard-0", их метрики складываются по имени узла.
+     * Перекос долей строк показывает неудачный SHARD_KEY / SHARD_MAP.
+     */
+    public static void printShardSummary(long elapsedMillis) {
+        Map<String, List<WriterMetrics>> shards = new TreeMap<>();
+        long totalRows = 0;
+        for (WriterMetrics task : TASKS.values()) {
+            int at = task.getTaskId().indexOf('@');
+            if (at >= 0) {
+                shards.computeIfAbsent(task.getTaskId().substring(at + 1), k -> new ArrayList<>()).add(task);
+                totalRows += task.getRows();
+            }
+        }
+        if (shards.isEmpty()) {
+            return;
+        }
+        LogService.info("=== Shard Throughput ===");
+        for (Map.Entry<String, List<WriterMetrics>> shard : shards.entrySet()) {
+            long rows = 0;
+            long batches = 0;
+            LatencyHistogram execute = new LatencyHistogram();
+            LatencyHistogram commit = new LatencyHistogram();
+            for (WriterMetrics task : shard.getValue()) {
+                rows += task.getRows();
+                batches += task.getBatches();
+                execute.add(task.histogram(Stage.EXECUTE_BATCH));
+                commit.add(task.histogram(Stage.COMMIT));
+            }
+            LogService.infof("  %s: %,d rows (%.1f%%) | %,d batches | %.0f rows/sec | execute p99 %.1f ms | commit p99 %.1f ms",
+                    shard.getKey(), rows, rows * 100.0 / Math.max(1, totalRows), batches,
+                    rows * 1000.0 / Math.max(1, elapsedMillis),
+                    execute.quantile(0.99) / 1e6, commit.quantile(0.99) / 1e6);
+        }
+    }
+
+    /**
+     * Гистограмма стадии по всем потокам.
+     */
+    public static LatencyHistogram total(Stage stage) {
+        LatencyHistogram total = new LatencyHistogram();
+        for (WriterMetrics task : TASKS.values()) {
+            total.add(task.histogram(stage));
+        }
+        return total;
+    }
+
+    /**
+     * Сохранить JSON-сводку прогона: строки, время, счетчики и квантили стадий по всем потокам.
+     * Файл читает LoadBenchmark (bench/), формат плоский и стабильный.
+     */
+    public static void writeRunReport(String file, long rows, long elapsedMillis) {
+        long batches = 0;
+        long readBytes = 0;
+        for (WriterMetrics task : TASKS.values()) {
+            batches += task.getBatches();
+            readBytes += task.getReadBytes();
+        }
+
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        json.append("  \"rows\": ").append(rows).append(",\n");
+        json.append("  \"elapsedMs\": ").append(elapsedMillis).append(",\n");
+        json.append(String.format(Locale.ROOT, "  \"rowsPerSec\": %.1f,%n", rows * 1000.0 / Math.max(1, elapsedMillis)));
+        json.append("  \"batches\": ").append(batches).append(",\n");
+        json.append("  \"readBytes\": ").append(readBytes).append(",\n");
+        long pinnedCount = 0;
+        long pinnedNanos = 0;
+        for (long[] value : PinningMonitor.snapshot().values()) {
+            pinnedCount += value[0];
+            pinnedNanos += value[1];
+        }
+        json.append("  \"pinned\": ").append(pinnedCount).append(",\n");
+        json.append(String.format(Locale.ROOT, "  \"pinnedMs\": %.3f,%n", pinnedNanos / 1e6));
+        json.append("  \"stages\": {");
+        String separator = "\n";
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = total(stage);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            json.append(separator).append("    \"").append(stage.getMetricName()).append("\": {")
+                    .append("\"count\": ").append(histogram.getCount())
+                    .append(String.format(Locale.ROOT, ", \"meanMs\": %.3f",
+                            histogram.getSum() / 1e6 / histogram.getCount()));
+            for (int i = 0; i < QUANTILES.length; i++) {
+                json.append(String.format(Locale.ROOT, ", \"%sMs\": %.3f",
+                        QUANTILE_KEYS[i], histogram.quantile(QUANTILES[i]) / 1e6));
+            }
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+
+        try {
+            Files.write(Paths.get(file), json.toString().getBytes(StandardCharsets.UTF_8));
+            LogService.infof("Run report saved: %s", file);
+        } catch (IOException e) {
+            LogService.errorf("Could not save run report %s: %s", file, e.getMessage());
+        }
+    }
+
+    private interface Value {
+        long get(WriterMetrics metrics);
+    }
+
+    private static void counter(StringBuilder sb, List<WriterMetrics> tasks, String name, String help, Value value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        for (WriterMetrics task : tasks) {
+            sb.append(name).append("{task=\"").append(task.getTaskId()).append("\"} ")
+                    .append(value.get(task)).append('\n');
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
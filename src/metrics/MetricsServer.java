@@ -0,0 +1,126 @@
+package metrics;
+
+import Logging.LogService;
+import com.sun.net.httpserver.HttpServer;
+import writer.LoadThrottle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Локальный HTTP endpoint /metrics в формате Prometheus (JDK HttpServer, без зависимостей)
+ * и /throttle - лимиты writer.LoadThrottle во время загрузки: GET только показывает их,
+ * изменение - только POST:
+ *   curl -X POST 'http://localhost:9400/throttle?rows=20000&bytes=0&p99=50'
+ * (rows / bytes - в секунду, p99 - цель в мс, 0 = без ограничения, не указанные не меняются).
+ *
+ * Аутентификации нет, поэтому по умолчанию endpoint слушает только 127.0.0.1;
+ * другой адрес задается METRICS_BIND_ADDRESS.
+ */
+public final class MetricsServer {
+
+    private MetricsServer() {
+        // static-only class
+    }
+
+    private static HttpServer server;
+
+    /**
+     * Запустить endpoint на адресе и порту (0 или меньше - не запускать).
+     *
+     * @param bindAddress адрес, пусто = 127.0.0.1
+     */
+    public static synchronized void start(String bindAddress, int port) {
+        if (port <= 0 || server != null) {
+            return;
+        }
+        String host = bindAddress == null || bindAddress.isEmpty() ? "127.0.0.1" : bindAddress;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(host), port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = LoaderMetrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.createContext("/throttle", exchange -> {
+                int status = 200;
+                String body;
+                String method = exchange.getRequestMethod();
+                String query = exchange.getRequestURI().getRawQuery();
+                try {
+                    if ("POST".equals(method)) {
+                        Map<String, Long> values = parseQuery(query);
+                        if (!values.isEmpty()) {
+                            LoadThrottle.setLimits(
+                                    values.getOrDefault("rows", LoadThrottle.getRowsLimit()),
+                                    values.getOrDefault("bytes", LoadThrottle.getBytesLimit()),
+                                    values.getOrDefault("p99", LoadThrottle.getTargetP99Millis()));
+                            LogService.infof("Throttle limits changed via /throttle from %s",
+                                    exchange.getRemoteAddress());
+                        }
+                        body = LoadThrottle.describe() + "\n";
+                    } else if ("GET".equals(method) && (query == null || query.isEmpty())) {
+                        body = LoadThrottle.describe() + "\n";
+                    } else {
+                        // GET с параметрами тоже отклоняется: изменения только через POST
+                        status = 405;
+                        body = "Use GET to view limits and POST to change them\n";
+                        exchange.getResponseHeaders().set("Allow", "GET, POST");
+                    }
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    body = e.getMessage() + "\n";
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            });
+            server.start();
+            LogService.infof("Metrics endpoint: http://%s:%d/metrics", host, port);
+        } catch (IOException e) {
+            LogService.errorf("Could not start metrics endpoint on %s:%d: %s", host, port, e.getMessage());
+            server = null;
+        }
+    }
+
+    /**
+     * "rows=1000&p99=50" -> {rows=1000, p99=50}; допустимы только rows, bytes, p99.
+     */
+    private static Map<String, Long> parseQuery(String query) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq > 0 ? pair.substring(0, eq) : pair;
+            if (!name.equals("rows") && !name.equals("bytes") && !name.equals("p99")) {
+                throw new IllegalArgumentException("Unknown parameter: " + name + " (expected rows, bytes, p99)");
+            }
+            try {
+                values.put(name, Long.parseLong(eq > 0 ? pair.substring(eq + 1) : ""));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + pair);
+            }
+        }
+        return values;
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
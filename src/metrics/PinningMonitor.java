@@ -0,0 +1,148 @@
+package metrics;
+
+import Logging.LogService;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Учет блокировок виртуальных потоков на carrier-потоке (pinning) по событиям JFR
+ * jdk.VirtualThreadPinned: поток парковался внутри synchronized или native-кадра и держал
+ * carrier. Такие места в драйверах сводят на нет выигрыш VIRTUAL_THREADS - при частом
+ * pinning драйвер лучше оставить на пуле платформенных потоков.
+ *
+ * Источник события - первый кадр стека из пакета драйвера (SOURCES), иначе первый кадр
+ * не из JDK. Сводка по источникам выводится в лог, счетчики - в Prometheus и RUN_REPORT.
+ */
+public final class PinningMonitor {
+
+    private PinningMonitor() {
+        // static-only class
+    }
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+
+    // Пакет -> имя источника в сводке
+    private static final String[][] SOURCES = {
+            {"org.postgresql.", "postgresql"},
+            {"com.microsoft.sqlserver.", "mssql"},
+            {"com.mysql.", "mysql"},
+            {"com.oceanbase.", "oceanbase"},
+            {"com.mongodb.", "mongodb"},
+            {"org.bson.", "mongodb"},
+            {"org.apache.parquet.", "parquet"},
+            {"org.apache.hadoop.", "hadoop"},
+    };
+
+    private static RecordingStream stream;
+
+    // Источник -> {событий, наносекунд}; пишет только поток RecordingStream
+    private static final Map<String, long[]> PINNED = new LinkedHashMap<>();
+
+    /**
+     * Начать учет; события короче threshold не записываются.
+     */
+    public static synchronized void start(Duration threshold) {
+        if (stream != null) {
+            return;
+        }
+        try {
+            RecordingStream s = new RecordingStream();
+            s.enable(EVENT).withThreshold(threshold).withStackTrace();
+            s.onEvent(EVENT, PinningMonitor::record);
+            s.startAsync();
+            stream = s;
+            LogService.infof("Virtual thread pinning monitor started (threshold %d ms)", threshold.toMillis());
+        } catch (IllegalStateException | SecurityException e) {
+            LogService.errorf("Could not start pinning monitor: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Остановить учет (события, записанные до остановки, будут учтены) и вывести сводку.
+     */
+    public static synchronized void stop() {
+        if (stream == null) {
+            return;
+        }
+        RecordingStream s = stream;
+        stream = null;
+        try {
+            s.stop();
+        } catch (IllegalStateException e) {
+            LogService.errorf("Could not stop pinning monitor: %s", e.getMessage());
+        } finally {
+            s.close();
+        }
+        printSummary();
+    }
+
+    private static void record(RecordedEvent event) {
+        String source = source(event.getStackTrace());
+        long nanos = event.getDuration().toNanos();
+        synchronized (PINNED) {
+            long[] value = PINNED.computeIfAbsent(source, k -> new long[2]);
+            value[0]++;
+            value[1] += nanos;
+        }
+    }
+
+    private static String source(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        String firstApp = null;
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.getMethod() == null || frame.getMethod().getType() == null) {
+                continue;
+            }
+            String className = frame.getMethod().getType().getName();
+            for (String[] source : SOURCES) {
+                if (className.startsWith(source[0])) {
+                    return source[1];
+                }
+            }
+            if (firstApp == null && !isJdk(className)) {
+                firstApp = className;
+            }
+        }
+        return firstApp != null ? firstApp : "jdk";
+    }
+
+    private static boolean isJdk(String className) {
+        return className.startsWith("java.") || className.startsWith("javax.")
+                || className.startsWith("jdk.") || className.startsWith("sun.");
+    }
+
+    /** Снимок: источник -> {событий, наносекунд}. */
+    static Map<String, long[]> snapshot() {
+        Map<String, long[]> copy = new LinkedHashMap<>();
+        synchronized (PINNED) {
+            for (Map.Entry<String, long[]> e : PINNED.entrySet()) {
+                copy.put(e.getKey(), e.getValue().clone());
+            }
+        }
+        return copy;
+    }
+
+    private static void printSummary() {
+        Map<String, long[]> pinned = snapshot();
+        LogService.info("=== Virtual Thread Pinning ===");
+        if (pinned.isEmpty()) {
+            LogService.info("  no pinned parks recorded");
+            return;
+        }
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(pinned.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (Map.Entry<String, long[]> e : entries) {
+            LogService.infof("  %s: %,d events, %.1f ms pinned", e.getKey(), e.getValue()[0], e.getValue()[1] / 1e6);
+        }
+    }
+}
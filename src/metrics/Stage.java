@@ -0,0 +1,24 @@
+package metrics;
+
+/**
+ * Стадии конвейера загрузки, по которым собираются гистограммы задержек.
+ */
+public enum Stage {
+    READ("read"),                  // чтение и декодирование unit'а Parquet
+    QUEUE_WAIT("queue_wait"),      // ожидание следующего unit'а (очередь файла / read-ahead)
+    BIND("bind"),                  // привязка строк batch'а к statement / буферу
+    BATCH_WAIT("batch_wait"),      // ожидание batch'а: лимит скорости (LoadThrottle) и MAX_IN_FLIGHT_BATCHES
+    EXECUTE_BATCH("execute_batch"),
+    COMMIT("commit");
+
+    private final String metricName;
+
+    Stage(String metricName) {
+        this.metricName = metricName;
+    }
+
+    /** Значение label stage в Prometheus. */
+    public String getMetricName() {
+        return metricName;
+    }
+}
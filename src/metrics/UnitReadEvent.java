@@ -0,0 +1,38 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR: чтение и декодирование одного unit'а (диапазона row groups) Parquet файла.
+ */
+@Name("loader.UnitRead")
+@Label("Parquet Unit Read")
+@Category({"Loader", "Read"})
+@Description("Reading and decoding a range of Parquet row groups")
+@StackTrace(false)
+class UnitReadEvent extends jdk.jfr.Event {
+
+    @Label("Task")
+    String taskId;
+
+    @Label("File")
+    String file;
+
+    @Label("First Row Group")
+    int firstRowGroup;
+
+    @Label("Last Row Group")
+    int lastRowGroup;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Compressed Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,310 @@
+package metrics;
+
+import plan.WorkUnit;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики одного потока загрузки (taskId): гистограммы по стадиям и счетчики.
+ * Время bind копится по строкам и записывается в гистограмму одним значением на batch.
+ * Замеряется каждая BIND_SAMPLE_ROWS-я строка (время и выделения умножаются на шаг): два
+ * System.nanoTime на каждую строку заметны на фоне самого bind. Весь batch одним интервалом
+ * мерить нельзя - в потоковых режимах между bind'ами строк идет чтение.
+ *
+ * Writer отмечает фазы batch'а (executeStarted / commitStarted / batchCompleted),
+ * а метрики по ним же пишут события JFR (loader.*): при выключенной записи JFR
+ * это только создание объекта события на batch.
+ * При включенном AllocationReport те же границы стадий используются для подсчета
+ * выделенной потоком памяти (ThreadMXBean.getCurrentThreadAllocatedBytes). На виртуальных
+ * потоках счетчик недоступен (-1): такие замеры не суммируются, а считаются неизмеренными.
+ */
+public class WriterMetrics {
+
+    private static final int BIND_SAMPLE_ROWS = 16;     // степень двойки
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final String taskId;
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder readBytes = new LongAdder();
+    private final LongAdder writerNanos = new LongAdder();
+    private final LongAdder readRows = new LongAdder();
+    private final Map<Stage, LongAdder> allocatedBytes = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> unmeasuredAllocations = new EnumMap<>(Stage.class);
+
+    // Текущий batch и unit (только поток writer'а)
+    private int bindRows;
+    private long pendingBindNanos;
+    private long pendingExecuteNanos;
+    private long executeStart;
+    private long phaseStart;
+    private BatchBindEvent bindEvent;
+    private ExecuteBatchEvent executeEvent;
+    private CommitEvent commitEvent;
+    private UnitReadEvent readEvent;
+
+    // Выделения памяти потоком (только при включенном AllocationReport)
+    private long writerAllocated;          // bind + execute + commit за все время
+    private long bindAllocStart;
+    private long executeAllocStart;
+    private long readAllocStart;
+    private long readWriterAllocStart;
+
+    WriterMetrics(String taskId) {
+        this.taskId = taskId;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+            allocatedBytes.put(stage, new LongAdder());
+            unmeasuredAllocations.put(stage, new LongAdder());
+        }
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Начало привязки строки к batch'у.
+     *
+     * @return метка для bindCompleted (NOT_SAMPLED - строка не замеряется)
+     */
+    public long bindStarted() {
+        if ((bindRows++ & (BIND_SAMPLE_ROWS - 1)) != 0) {
+            return NOT_SAMPLED;
+        }
+        if (AllocationReport.isEnabled()) {
+            bindAllocStart = AllocationReport.threadAllocatedBytes();
+        }
+        return System.nanoTime();
+    }
+
+    /** Привязка строки завершена. */
+    public void bindCompleted(long bindStart) {
+        if (bindEvent == null) {
+            bindEvent = new BatchBindEvent();
+            bindEvent.begin();
+        }
+        if (bindStart == NOT_SAMPLED) {
+            return;
+        }
+        long nanos = (System.nanoTime() - bindStart) * BIND_SAMPLE_ROWS;
+        pendingBindNanos += nanos;
+        writerNanos.add(nanos);
+        if (AllocationReport.isEnabled()) {
+            writerAllocated += addAllocated(Stage.BIND, bindAllocStart, 0, BIND_SAMPLE_ROWS);
+        }
+    }
+
+    /**
+     * Отправка части batch'а до executeStarted (COPY отправляет заполненный буфер по ходу batch'а);
+     * учитывается во времени execute_batch.
+     */
+    public void addExecuteNanos(long nanos) {
+        pendingExecuteNanos += nanos;
+        writerNanos.add(nanos);
+    }
+
+    /** Начало отправки batch'а: executeBatch / insertMany / завершение COPY. */
+    public void executeStarted() {
+        if (bindEvent != null) {
+            bindEvent.end();
+        }
+        executeEvent = new ExecuteBatchEvent();
+        executeEvent.begin();
+        if (AllocationReport.isEnabled()) {
+            executeAllocStart = AllocationReport.threadAllocatedBytes();
+        }
+        executeStart = System.nanoTime();
+        phaseStart = executeStart;
+    }
+
+    /** Batch отправлен, начало commit. */
+    public void commitStarted() {
+        long now = System.nanoTime();
+        pendingExecuteNanos += now - phaseStart;
+        executeEvent.end();
+        commitEvent = new CommitEvent();
+        commitEvent.begin();
+        phaseStart = now;
+    }
+
+    /**
+     * Batch выполнен и закоммичен (для БД без отдельного commit - просто выполнен).
+     */
+    public void batchCompleted(long batchRows) {
+        long now = System.nanoTime();
+        long commitNanos = 0;
+        if (commitEvent != null) {
+            commitNanos = now - phaseStart;
+            commitEvent.end();
+        } else {
+            pendingExecuteNanos += now - phaseStart;
+            executeEvent.end();
+        }
+
+        stages.get(Stage.BIND).record(pendingBindNanos);
+        stages.get(Stage.EXECUTE_BATCH).record(pendingExecuteNanos);
+        if (commitEvent != null) {
+            stages.get(Stage.COMMIT).record(commitNanos);
+        }
+        writerNanos.add(now - executeStart);
+        if (AllocationReport.isEnabled()) {
+            writerAllocated += addAllocated(Stage.EXECUTE_BATCH, executeAllocStart, 0, 1);
+        }
+        rows.add(batchRows);
+        batches.increment();
+
+        if (bindEvent != null && bindEvent.shouldCommit()) {
+            bindEvent.taskId = taskId;
+            bindEvent.rows = batchRows;
+            bindEvent.bindTime = pendingBindNanos;
+            bindEvent.commit();
+        }
+        if (executeEvent.shouldCommit()) {
+            executeEvent.taskId = taskId;
+            executeEvent.rows = batchRows;
+            executeEvent.commit();
+        }
+        if (commitEvent != null && commitEvent.shouldCommit()) {
+            commitEvent.taskId = taskId;
+            commitEvent.rows = batchRows;
+            commitEvent.commit();
+        }
+        resetBatch();
+    }
+
+    /**
+     * Batch не выполнен (будет откачен, ошибка пробрасывается дальше).
+     */
+    public void batchFailed(long batchRows, Exception error) {
+        BatchFailedEvent event = new BatchFailedEvent();
+        if (event.shouldCommit()) {
+            event.taskId = taskId;
+            event.rows = batchRows;
+            event.sqlState = error instanceof SQLException ? ((SQLException) error).getSQLState() : null;
+            event.message = error.getMessage();
+            event.commit();
+        }
+        resetBatch();
+    }
+
+    private void resetBatch() {
+        pendingBindNanos = 0;
+        pendingExecuteNanos = 0;
+        bindEvent = null;
+        executeEvent = null;
+        commitEvent = null;
+    }
+
+    /** Начало чтения unit'а самим потоком (не из read-ahead). */
+    public void readStarted() {
+        readEvent = new UnitReadEvent();
+        readEvent.begin();
+        if (AllocationReport.isEnabled()) {
+            readAllocStart = AllocationReport.threadAllocatedBytes();
+            readWriterAllocStart = writerAllocated;
+        }
+    }
+
+    /**
+     * Чтение unit'а завершено.
+     *
+     * @param nanos время чтения (без времени записи, если они чередовались)
+     */
+    public void readCompleted(WorkUnit unit, long unitRows, long nanos) {
+        long bytes = unit.getRangeEnd() - unit.getRangeStart();
+        stages.get(Stage.READ).record(nanos);
+        readBytes.add(bytes);
+        readRows.add(unitRows);
+        if (AllocationReport.isEnabled()) {
+            // Запись, чередующаяся с чтением в потоковых режимах, в чтение не входит
+            addAllocated(Stage.READ, readAllocStart, writerAllocated - readWriterAllocStart, 1);
+        }
+
+        UnitReadEvent event = readEvent;
+        readEvent = null;
+        if (event != null && event.shouldCommit()) {
+            event.taskId = taskId;
+            event.file = unit.getFilePath();
+            event.firstRowGroup = unit.getFirstRowGroup();
+            event.lastRowGroup = unit.getLastRowGroup();
+            event.rows = unitRows;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Добавить к стадии выделения потока с метки start.
+     *
+     * @param excluded выделения внутри стадии, которые к ней не относятся
+     * @param scale множитель выборочного замера
+     * @return учтенные байты (0, если счетчик потока недоступен)
+     */
+    private long addAllocated(Stage stage, long start, long excluded, int scale) {
+        long now = AllocationReport.threadAllocatedBytes();
+        if (start < 0 || now < 0) {
+            unmeasuredAllocations.get(stage).increment();
+            AllocationReport.trackingUnavailable();
+            return 0;
+        }
+        long allocated = Math.max(0, now - start - excluded) * scale;
+        allocatedBytes.get(stage).add(allocated);
+        return allocated;
+    }
+
+    public void queueWait(long nanos) {
+        stages.get(Stage.QUEUE_WAIT).record(nanos);
+    }
+
+    /** Ожидание разрешения на batch (writer.BatchGate). */
+    public void batchWait(long nanos) {
+        stages.get(Stage.BATCH_WAIT).record(nanos);
+    }
+
+    /**
+     * Суммарное время, проведенное writer'ом в bind / executeBatch / commit.
+     * Нужно, чтобы выделить время чтения, когда чтение и запись чередуются построчно.
+     */
+    public long getWriterNanos() {
+        return writerNanos.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getReadBytes() {
+        return readBytes.sum();
+    }
+
+    public long getReadRows() {
+        return readRows.sum();
+    }
+
+    /**
+     * Байты, выделенные потоком в стадии (READ, BIND, EXECUTE_BATCH - вместе с commit).
+     */
+    public long getAllocatedBytes(Stage stage) {
+        return allocatedBytes.get(stage).sum();
+    }
+
+    /**
+     * Замеры стадии, пропущенные из-за недоступного счетчика выделений (виртуальные потоки).
+     */
+    public long getUnmeasuredAllocations(Stage stage) {
+        return unmeasuredAllocations.get(stage).sum();
+    }
+}
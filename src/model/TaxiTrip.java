@@ -1,16 +1,26 @@
 package model;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * Модель данных для одной поездки такси NYC.
  * Содержит основные поля из Parquet файла.
+ *
+ * Даты могут храниться как LocalDateTime или как примитивные микросекунды времени зоны
+ * (setPickupLocalMicros); во втором случае LocalDateTime создается только при вызове геттера.
+ * Это позволяет переиспользовать один объект для потока строк (ParquetTaxiReader.readUnitReused).
  */
 public class TaxiTrip {
 
+    // Значение даты отсутствует
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
     private int vendorId;
     private LocalDateTime pickupDatetime;
     private LocalDateTime dropoffDatetime;
+    private long pickupLocalMicros = NO_TIMESTAMP;
+    private long dropoffLocalMicros = NO_TIMESTAMP;
     private int passengerCount;
     private double tripDistance;
     private int rateCodeId;
@@ -34,14 +44,43 @@ public class TaxiTrip {
     public int getVendorId() { return vendorId; }
     public void setVendorId(int vendorId) { this.vendorId = vendorId; }
 
-    public LocalDateTime getPickupDatetime() { return pickupDatetime; }
+    public LocalDateTime getPickupDatetime() {
+        if (pickupDatetime == null && pickupLocalMicros != NO_TIMESTAMP) {
+            pickupDatetime = toLocalDateTime(pickupLocalMicros);
+        }
+        return pickupDatetime;
+    }
     public void setPickupDatetime(LocalDateTime pickupDatetime) {
         this.pickupDatetime = pickupDatetime;
+        this.pickupLocalMicros = NO_TIMESTAMP;
     }
 
-    public LocalDateTime getDropoffDatetime() { return dropoffDatetime; }
+    public LocalDateTime getDropoffDatetime() {
+        if (dropoffDatetime == null && dropoffLocalMicros != NO_TIMESTAMP) {
+            dropoffDatetime = toLocalDateTime(dropoffLocalMicros);
+        }
+        return dropoffDatetime;
+    }
     public void setDropoffDatetime(LocalDateTime dropoffDatetime) {
         this.dropoffDatetime = dropoffDatetime;
+        this.dropoffLocalMicros = NO_TIMESTAMP;
+    }
+
+    /** pickup в микросекундах времени зоны (как LocalDateTime.toEpochSecond(UTC)), NO_TIMESTAMP = null. */
+    public long getPickupLocalMicros() {
+        return pickupDatetime != null ? toLocalMicros(pickupDatetime) : pickupLocalMicros;
+    }
+    public void setPickupLocalMicros(long micros) {
+        this.pickupLocalMicros = micros;
+        this.pickupDatetime = null;
+    }
+
+    public long getDropoffLocalMicros() {
+        return dropoffDatetime != null ? toLocalMicros(dropoffDatetime) : dropoffLocalMicros;
+    }
+    public void setDropoffLocalMicros(long micros) {
+        this.dropoffLocalMicros = micros;
+        this.dropoffDatetime = null;
     }
 
     public int getPassengerCount() { return passengerCount; }
@@ -93,11 +132,20 @@ public class TaxiTrip {
     public double getCongestionSurcharge() { return congestionSurcharge; }
     public void setCongestionSurcharge(double s) { this.congestionSurcharge = s; }
 
+    private static long toLocalMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1000;
+    }
+
+    private static LocalDateTime toLocalDateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
     @Override
     public String toString() {
         return String.format(
                 "TaxiTrip{pickup=%s, distance=%.2f mi, fare=$%.2f, tip=$%.2f, total=$%.2f, passengers=%d}",
-                pickupDatetime, tripDistance, fareAmount, tipAmount, totalAmount, passengerCount
+                getPickupDatetime(), tripDistance, fareAmount, tipAmount, totalAmount, passengerCount
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package plan;
+
+import Logging.LogService;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Наблюдение за PARQUET_DIR и подкаталогами (WatchService) для режима WATCH_MODE.
+ * Новый или изменившийся .parquet файл становится кандидатом и выдается, когда запись
+ * в него закончена:
+ *   - есть файл-маркер &lt;имя&gt;.parquet&lt;markerSuffix&gt; (например, .done), если суффикс задан;
+ *   - иначе размер и время изменения не менялись stableMillis.
+ * Файлы, начинающиеся с '.' или '_' (временные файлы копирования, _temporary), пропускаются.
+ *
+ * При старте кандидаты - все существующие файлы (уже стабильные выдаются сразу);
+ * при переполнении очереди событий (OVERFLOW) каталог пересканируется.
+ */
+public class DirectoryWatcher implements AutoCloseable {
+
+    private static class Candidate {
+        long size;
+        long modified;
+        long stableSince;
+    }
+
+    private final Path root;
+    private final long stableMillis;
+    private final String markerSuffix;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Map<Path, Candidate> candidates = new HashMap<>();
+
+    public DirectoryWatcher(Path root, long stableMillis, String markerSuffix) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.stableMillis = stableMillis;
+        this.markerSuffix = markerSuffix == null ? "" : markerSuffix;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        registerTree(this.root);
+    }
+
+    /**
+     * Дождаться событий не дольше timeoutMillis и вернуть готовые файлы (в порядке имен).
+     *
+     * @param skip файлы, которые не нужно выдавать (например, уже загруженные)
+     * @return готовые файлы; пустой список - готовых нет
+     */
+    public List<String> poll(long timeoutMillis, Predicate<String> skip) throws IOException, InterruptedException {
+        try {
+            WatchKey key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            while (key != null) {
+                handle(key);
+                key = watchService.poll();
+            }
+        } catch (ClosedWatchServiceException e) {
+            return new ArrayList<>();
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> ready = new ArrayList<>();
+        Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Candidate> entry = it.next();
+            Path file = entry.getKey();
+            if (skip.test(file.toString()) || !Files.isRegularFile(file)) {
+                it.remove();
+                continue;
+            }
+            Candidate candidate = entry.getValue();
+            long size;
+            long modified;
+            try {
+                size = Files.size(file);
+                modified = Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                it.remove();    // удален или переименован между событиями
+                continue;
+            }
+            if (size != candidate.size || modified != candidate.modified) {
+                candidate.size = size;
+                candidate.modified = modified;
+                candidate.stableSince = now;
+            }
+            boolean complete = markerSuffix.isEmpty()
+                    ? now - candidate.stableSince >= stableMillis
+                    : Files.exists(file.resolveSibling(file.getFileName() + markerSuffix));
+            if (complete) {
+                ready.add(file.toString());
+                it.remove();
+            }
+        }
+        ready.sort(String::compareTo);
+        return ready;
+    }
+
+    /**
+     * Вернуть файл в кандидаты (например, footer еще не читается) - он будет выдан снова
+     * после следующего периода стабильности.
+     */
+    public void retryLater(String file) {
+        Candidate candidate = new Candidate();
+        candidate.size = -1;
+        candidates.put(Path.of(file), candidate);
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LogService.info("Watch: event overflow, rescanning " + root);
+                registerTree(root);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !isHidden(path)) {
+                    registerTree(path);
+                }
+            } else if (!markerSuffix.isEmpty() && path.getFileName().toString().endsWith(markerSuffix)) {
+                String name = path.getFileName().toString();
+                track(path.resolveSibling(name.substring(0, name.length() - markerSuffix.length())), false);
+            } else {
+                track(path, false);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Зарегистрировать каталог с подкаталогами и взять его файлы в кандидаты.
+     */
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!keys.containsValue(dir)) {
+                    keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                track(file, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Удален во время обхода
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isHidden(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(".") || name.startsWith("_");
+    }
+
+    private void track(Path file, boolean existing) {
+        String name = file.getFileName().toString();
+        if (!name.toLowerCase().endsWith(".parquet") || isHidden(file)
+                || candidates.containsKey(file) || !Files.isRegularFile(file)) {
+            return;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return;
+        }
+        Candidate candidate = new Candidate();
+        candidate.size = attributes.size();
+        candidate.modified = attributes.lastModifiedTime().toMillis();
+        // Существующий файл стабилен с момента последнего изменения, новый - с текущего момента
+        candidate.stableSince = existing ? candidate.modified : System.currentTimeMillis();
+        candidates.put(file, candidate);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,128 @@
+package plan;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * План загрузки одного Parquet файла, построенный по его footer.
+ */
+public class FilePlan {
+
+    /**
+     * Описание одной row group из footer.
+     */
+    public static class RowGroupInfo {
+        final int index;
+        final long rowCount;
+        final long startOffset;
+        final long compressedSize;
+        final LocalDateTime minPickup;
+        final LocalDateTime maxPickup;
+        final boolean selected;
+
+        RowGroupInfo(int index, long rowCount, long startOffset, long compressedSize,
+                     LocalDateTime minPickup, LocalDateTime maxPickup, boolean selected) {
+            this.index = index;
+            this.rowCount = rowCount;
+            this.startOffset = startOffset;
+            this.compressedSize = compressedSize;
+            this.minPickup = minPickup;
+            this.maxPickup = maxPickup;
+            this.selected = selected;
+        }
+
+        public int getIndex() { return index; }
+        public long getRowCount() { return rowCount; }
+        public long getCompressedSize() { return compressedSize; }
+        public LocalDateTime getMinPickup() { return minPickup; }
+        public LocalDateTime getMaxPickup() { return maxPickup; }
+
+        /** false = row group отброшена фильтром по статистике и читаться не будет. */
+        public boolean isSelected() { return selected; }
+    }
+
+    private final String filePath;
+    private final long fileSize;
+    private final List<RowGroupInfo> rowGroups;
+    private final List<WorkUnit> units = new ArrayList<>();
+    private final String error;
+    private long rowsToLoad;
+
+    FilePlan(String filePath, long fileSize, List<RowGroupInfo> rowGroups) {
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.rowGroups = rowGroups;
+        this.error = null;
+    }
+
+    private FilePlan(String filePath, String error) {
+        this.filePath = filePath;
+        this.fileSize = 0;
+        this.rowGroups = Collections.emptyList();
+        this.error = error;
+    }
+
+    static FilePlan failed(String filePath, String error) {
+        return new FilePlan(filePath, error);
+    }
+
+    public String getFilePath() { return filePath; }
+
+    public long getFileSize() { return fileSize; }
+
+    public List<RowGroupInfo> getRowGroups() { return rowGroups; }
+
+    public List<WorkUnit> getUnits() { return units; }
+
+    /** Ошибка чтения footer, null если файл прочитан. */
+    public String getError() { return error; }
+
+    /** Все строки файла по footer. */
+    public long getRowCount() {
+        long rows = 0;
+        for (RowGroupInfo rg : rowGroups) rows += rg.rowCount;
+        return rows;
+    }
+
+    /** Строки в выбранных row groups. */
+    public long getSelectedRowCount() {
+        long rows = 0;
+        for (RowGroupInfo rg : rowGroups) {
+            if (rg.selected) rows += rg.rowCount;
+        }
+        return rows;
+    }
+
+    public int getSelectedRowGroupCount() {
+        int count = 0;
+        for (RowGroupInfo rg : rowGroups) {
+            if (rg.selected) count++;
+        }
+        return count;
+    }
+
+    /** Строки, которые будут загружены: выбранные row groups с учетом лимита. */
+    public long getRowsToLoad() { return rowsToLoad; }
+
+    void setRowsToLoad(long rowsToLoad) { this.rowsToLoad = rowsToLoad; }
+
+    void addUnit(WorkUnit unit) { units.add(unit); }
+
+    public LocalDateTime getMinPickup() {
+        LocalDateTime min = null;
+        for (RowGroupInfo rg : rowGroups) {
+            if (rg.minPickup != null && (min == null || rg.minPickup.isBefore(min))) min = rg.minPickup;
+        }
+        return min;
+    }
+
+    public LocalDateTime getMaxPickup() {
+        LocalDateTime max = null;
+        for (RowGroupInfo rg : rowGroups) {
+            if (rg.maxPickup != null && (max == null || rg.maxPickup.isAfter(max))) max = rg.maxPickup;
+        }
+        return max;
+    }
+}
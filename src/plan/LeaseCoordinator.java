@@ -0,0 +1,375 @@
+package plan;
+
+import config.AppConfig;
+import Logging.LogService;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Распределение файлов между несколькими процессами загрузчика (COORDINATED_MODE) через
+ * таблицу аренд LEASE_TABLE в целевой БД (или в БД LEASE_JDBC_URL):
+ *   work_key - путь файла относительно PARQUET_DIR, status - PENDING/RUNNING/DONE/FAILED,
+ *   lease_owner - INSTANCE_ID процесса, lease_until - срок аренды (мс, по часам БД).
+ *
+ * Каждый процесс регистрирует найденные файлы (register), затем по одному захватывает
+ * свободный файл (claim) условным UPDATE - захват выигрывает ровно один процесс.
+ * Пока файл грузится, поток Lease-heartbeat продлевает аренду каждые LEASE_SECONDS / 3.
+ * Аренда процесса, переставшего ее продлевать (упал, потерял сеть), истекает, и файл
+ * забирает другой процесс - не более MAX_ATTEMPTS раз, чтобы файл, роняющий загрузчик,
+ * не обходил все процессы по кругу: истекшая аренда последней попытки переводит файл в FAILED
+ * (expireExhausted), и он попадает в итоговый список failedFiles(). Строки, записанные упавшим процессом, при повторной
+ * загрузке файла задваиваются, как и при ручном перезапуске.
+ *
+ * Время аренды берется из часов БД, поэтому часы хостов могут расходиться.
+ * Все процессы должны видеть одни и те же файлы под PARQUET_DIR (общий каталог).
+ */
+public class LeaseCoordinator implements AutoCloseable {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private enum Dialect { POSTGRESQL, MYSQL, MSSQL }
+
+    private final Connection connection;
+    private final Dialect dialect;
+    private final String table;
+    private final String instanceId;
+    private final long leaseMillis;
+    private final String now;
+
+    private String leasedKey;         // файл, который сейчас грузит этот процесс
+    private Thread heartbeat;
+
+    public LeaseCoordinator(String url, String user, String password, String table,
+                            String instanceId, long leaseMillis) throws SQLException {
+        this.connection = DriverManager.getConnection(url, user, password);
+        this.connection.setAutoCommit(true);
+        this.dialect = url.startsWith("jdbc:sqlserver:") ? Dialect.MSSQL
+                : url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:oceanbase:") ? Dialect.MYSQL
+                : Dialect.POSTGRESQL;
+        this.table = table;
+        this.instanceId = instanceId;
+        this.leaseMillis = leaseMillis;
+        switch (dialect) {
+            case MSSQL:
+                now = "DATEDIFF_BIG(millisecond, '1970-01-01', SYSUTCDATETIME())";
+                break;
+            case MYSQL:
+                now = "CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED)";
+                break;
+            default:
+                now = "CAST(EXTRACT(EPOCH FROM clock_timestamp()) * 1000 AS BIGINT)";
+        }
+        createTable();
+        LogService.infof("Coordinator: instance %s, lease table %s, lease %d s",
+                instanceId, table, leaseMillis / 1000);
+    }
+
+    /**
+     * Координатор по настройкам AppConfig: LEASE_JDBC_URL или подключение целевой БД.
+     */
+    public static LeaseCoordinator fromConfig() throws SQLException {
+        String url = AppConfig.LEASE_JDBC_URL;
+        String user = AppConfig.LEASE_JDBC_USER;
+        String password = AppConfig.LEASE_JDBC_PASSWORD;
+        if (url.isEmpty()) {
+            url = AppConfig.getJdbcUrl();
+            if (url == null) {
+                throw new IllegalStateException("COORDINATED_MODE needs LEASE_JDBC_URL for "
+                        + AppConfig.DATABASE_TYPE.getDisplayName());
+            }
+            switch (AppConfig.DATABASE_TYPE) {
+                case POSTGRESQL:
+                    user = AppConfig.POSTGRESQL_USER;
+                    password = AppConfig.POSTGRESQL_PASSWORD;
+                    break;
+                case MSSQL:
+                    user = AppConfig.MSSQL_USER;
+                    password = AppConfig.MSSQL_PASSWORD;
+                    break;
+                default:
+                    user = AppConfig.JDBC_USER;
+                    password = AppConfig.JDBC_PASSWORD;
+            }
+        }
+        String instanceId = AppConfig.INSTANCE_ID.isEmpty() ? defaultInstanceId() : AppConfig.INSTANCE_ID;
+        return new LeaseCoordinator(url, user, password, AppConfig.LEASE_TABLE, instanceId,
+                AppConfig.LEASE_SECONDS * 1000L);
+    }
+
+    private static String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return host + ":" + ProcessHandle.current().pid();
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /** Пауза между попытками захвата, когда все оставшиеся файлы заняты другими процессами. */
+    public long getPollMillis() {
+        return Math.max(1000, leaseMillis / 3);
+    }
+
+    private void createTable() throws SQLException {
+        String columns = " (work_key VARCHAR(400) NOT NULL PRIMARY KEY, file_size BIGINT NOT NULL, "
+                + "status VARCHAR(16) NOT NULL, lease_owner VARCHAR(128), lease_until BIGINT NOT NULL, "
+                + "attempts INT NOT NULL, rows_loaded BIGINT, detail VARCHAR(1000))";
+        String sql = dialect == Dialect.MSSQL
+                ? "IF OBJECT_ID(N'" + table + "', N'U') IS NULL CREATE TABLE " + table + columns
+                : "CREATE TABLE IF NOT EXISTS " + table + columns;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Добавить в таблицу файлы, которых в ней еще нет (статус PENDING).
+     *
+     * @param files относительный путь -> размер файла
+     * @return сколько файлов добавлено этим процессом
+     */
+    public synchronized int register(Map<String, Long> files) throws SQLException {
+        Set<String> known = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT work_key FROM " + table)) {
+            while (rs.next()) {
+                known.add(rs.getString(1));
+            }
+        }
+        int added = 0;
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table
+                + " (work_key, file_size, status, lease_until, attempts) VALUES (?, ?, 'PENDING', 0, 0)")) {
+            for (Map.Entry<String, Long> file : files.entrySet()) {
+                if (known.contains(file.getKey())) {
+                    continue;
+                }
+                insert.setString(1, file.getKey());
+                insert.setLong(2, file.getValue());
+                try {
+                    insert.executeUpdate();
+                    added++;
+                } catch (SQLException e) {
+                    // Тот же файл одновременно добавил другой процесс
+                    if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                        throw e;
+                    }
+                }
+            }
+        }
+        LogService.infof("Coordinator: %d file(s) registered, %d already known", added, files.size() - added);
+        return added;
+    }
+
+    /**
+     * Захватить следующий свободный файл (PENDING или с истекшей арендой) и начать продлевать аренду.
+     *
+     * @return относительный путь файла, null - свободных файлов нет
+     */
+    public synchronized String claim() throws SQLException {
+        if (leasedKey != null) {
+            throw new IllegalStateException("Lease on " + leasedKey + " is still held");
+        }
+        expireExhausted();
+        String free = "(status = 'PENDING' OR (status = 'RUNNING' AND lease_until < " + now
+                + " AND attempts < " + MAX_ATTEMPTS + "))";
+        List<String[]> candidates = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT work_key, lease_owner FROM " + table
+                     + " WHERE " + free + " ORDER BY work_key")) {
+            while (rs.next()) {
+                candidates.add(new String[] {rs.getString(1), rs.getString(2)});
+            }
+        }
+        try (PreparedStatement update = connection.prepareStatement("UPDATE " + table
+                + " SET status = 'RUNNING', lease_owner = ?, lease_until = " + now + " + ?, attempts = attempts + 1"
+                + " WHERE work_key = ? AND " + free)) {
+            for (String[] candidate : candidates) {
+                update.setString(1, instanceId);
+                update.setLong(2, leaseMillis);
+                update.setString(3, candidate[0]);
+                if (update.executeUpdate() == 1) {
+                    if (candidate[1] != null) {
+                        LogService.infof("Coordinator: lease of %s expired (owner %s), reclaimed",
+                                candidate[0], candidate[1]);
+                    }
+                    leasedKey = candidate[0];
+                    startHeartbeat();
+                    return leasedKey;
+                }
+                // Файл захватил другой процесс между SELECT и UPDATE
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Сколько файлов еще не загружено: свободные и занятые другими процессами.
+     */
+    public synchronized int remaining() throws SQLException {
+        expireExhausted();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table
+                     + " WHERE status IN ('PENDING', 'RUNNING')")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Файлы, аренда которых истекла на последней попытке (MAX_ATTEMPTS), - в FAILED:
+     * иначе они остаются RUNNING навсегда, их никто не захватывает и не учитывает.
+     */
+    private void expireExhausted() throws SQLException {
+        List<String[]> exhausted = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT work_key, lease_owner FROM " + table
+                     + " WHERE status = 'RUNNING' AND lease_until < " + now + " AND attempts >= " + MAX_ATTEMPTS)) {
+            while (rs.next()) {
+                exhausted.add(new String[] {rs.getString(1), rs.getString(2)});
+            }
+        }
+        if (exhausted.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement update = connection.prepareStatement("UPDATE " + table
+                + " SET status = 'FAILED', detail = ?, lease_until = 0"
+                + " WHERE work_key = ? AND status = 'RUNNING' AND lease_until < " + now
+                + " AND attempts >= " + MAX_ATTEMPTS)) {
+            for (String[] file : exhausted) {
+                update.setString(1, "lease expired after " + MAX_ATTEMPTS + " attempts (last owner " + file[1] + ")");
+                update.setString(2, file[0]);
+                if (update.executeUpdate() == 1) {
+                    LogService.errorf("❌ Coordinator: %s failed: lease expired after %d attempts (last owner %s)",
+                            file[0], MAX_ATTEMPTS, file[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Файлы в FAILED (всех процессов) с причиной - для итоговой статистики.
+     */
+    public synchronized Map<String, String> failedFiles() throws SQLException {
+        expireExhausted();
+        Map<String, String> failed = new LinkedHashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT work_key, detail FROM " + table
+                     + " WHERE status = 'FAILED' ORDER BY work_key")) {
+            while (rs.next()) {
+                failed.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return failed;
+    }
+
+    /** Файл загружен: DONE, аренда снята. */
+    public void done(String key, long rows) throws SQLException {
+        finish(key, "DONE", rows, null);
+    }
+
+    /** Файл не загружен: FAILED, повторно не захватывается (как FAILED в LoadLedger). */
+    public void failed(String key, String error) throws SQLException {
+        finish(key, "FAILED", 0, error);
+    }
+
+    private void finish(String key, String status, long rows, String detail) throws SQLException {
+        stopHeartbeat();
+        synchronized (this) {
+            if (key.equals(leasedKey)) {
+                leasedKey = null;
+            }
+            try (PreparedStatement update = connection.prepareStatement("UPDATE " + table
+                    + " SET status = ?, rows_loaded = ?, detail = ?, lease_until = 0"
+                    + " WHERE work_key = ? AND lease_owner = ? AND status = 'RUNNING'")) {
+                update.setString(1, status);
+                update.setLong(2, rows);
+                update.setString(3, detail == null ? null
+                        : detail.length() > 1000 ? detail.substring(0, 1000) : detail);
+                update.setString(4, key);
+                update.setString(5, instanceId);
+                if (update.executeUpdate() == 0) {
+                    LogService.errorf("❌ Coordinator: lease of %s was taken over by another instance, "
+                            + "its rows may be loaded twice", key);
+                }
+            }
+        }
+    }
+
+    private void startHeartbeat() {
+        String key = leasedKey;
+        heartbeat = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(Math.max(100, leaseMillis / 3));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (!renew(key)) {
+                        LogService.errorf("❌ Coordinator: lease of %s lost, another instance may load it", key);
+                        return;
+                    }
+                } catch (SQLException e) {
+                    // Следующая попытка - до истечения аренды
+                    LogService.errorf("Coordinator: could not renew lease of %s: %s", key, e.getMessage());
+                }
+            }
+        }, "Lease-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    private synchronized boolean renew(String key) throws SQLException {
+        if (!key.equals(leasedKey)) {
+            return true;    // файл уже завершен
+        }
+        try (PreparedStatement update = connection.prepareStatement("UPDATE " + table
+                + " SET lease_until = " + now + " + ? WHERE work_key = ? AND lease_owner = ? AND status = 'RUNNING'")) {
+            update.setLong(1, leaseMillis);
+            update.setString(2, key);
+            update.setString(3, instanceId);
+            return update.executeUpdate() == 1;
+        }
+    }
+
+    private void stopHeartbeat() {
+        Thread thread = heartbeat;
+        heartbeat = null;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Закрыть подключение. Незавершенная аренда не снимается: после ее истечения
+     * файл заберет другой процесс.
+     */
+    @Override
+    public void close() throws SQLException {
+        stopHeartbeat();
+        connection.close();
+    }
+}
@@ -0,0 +1,88 @@
+package plan;
+
+import Logging.LogService;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Журнал загруженных файлов (LOAD_LEDGER): текстовый файл, одна строка на событие
+ *   STARTED|DONE|FAILED &lt;TAB&gt; время &lt;TAB&gt; путь относительно PARQUET_DIR &lt;TAB&gt; размер &lt;TAB&gt; строк/ошибка
+ * Строка дописывается и сбрасывается на диск (fsync) до продолжения загрузки,
+ * состояние файла - последняя строка с его путем.
+ *
+ * DONE - файл загружен, повторно не загружается. STARTED без DONE (процесс прерван)
+ * и FAILED - часть строк могла попасть в БД: файл тоже не загружается автоматически,
+ * чтобы не задвоить данные; после очистки таблицы строку можно удалить из журнала.
+ */
+public class LoadLedger {
+
+    public enum Status { STARTED, DONE, FAILED }
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final File file;
+    private final Map<String, Status> statuses = new HashMap<>();
+
+    public LoadLedger(String path) throws IOException {
+        this.file = new File(path).getAbsoluteFile();
+        if (file.isFile()) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length < 3) {
+                        continue;   // неполная строка: запись прервана
+                    }
+                    try {
+                        statuses.put(fields[2], Status.valueOf(fields[0]));
+                    } catch (IllegalArgumentException e) {
+                        LogService.errorf("Ledger %s: unknown status in line: %s", file, line);
+                    }
+                }
+            }
+        }
+        LogService.infof("Load ledger: %s (%d files)", file, statuses.size());
+    }
+
+    /** Состояние файла, null - файл в журнале не встречался. */
+    public synchronized Status status(String relativePath) {
+        return statuses.get(relativePath);
+    }
+
+    public synchronized void started(String relativePath, long size) throws IOException {
+        append(Status.STARTED, relativePath, size, "");
+    }
+
+    public synchronized void done(String relativePath, long size, long rows) throws IOException {
+        append(Status.DONE, relativePath, size, String.valueOf(rows));
+    }
+
+    public synchronized void failed(String relativePath, long size, String error) throws IOException {
+        append(Status.FAILED, relativePath, size, error == null ? "" : error.replace('\t', ' ').replace('\n', ' '));
+    }
+
+    private void append(Status status, String relativePath, long size, String detail) throws IOException {
+        String line = status + "\t" + LocalDateTime.now().format(TIME) + "\t" + relativePath
+                + "\t" + size + "\t" + detail + "\n";
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(line);
+            writer.flush();
+            out.getFD().sync();
+        }
+        statuses.put(relativePath, status);
+    }
+}
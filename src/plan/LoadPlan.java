@@ -0,0 +1,92 @@
+package plan;
+
+import Logging.LogService;
+import config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * План загрузки всех файлов: результат LoadPlanner.
+ */
+public class LoadPlan {
+
+    private final List<FilePlan> files;
+
+    LoadPlan(List<FilePlan> files) {
+        this.files = files;
+    }
+
+    public List<FilePlan> getFiles() {
+        return files;
+    }
+
+    /** Файлы, footer которых прочитан успешно. */
+    public List<FilePlan> getLoadableFiles() {
+        List<FilePlan> result = new ArrayList<>();
+        for (FilePlan file : files) {
+            if (file.getError() == null) result.add(file);
+        }
+        return result;
+    }
+
+    public long getTotalRows() {
+        long rows = 0;
+        for (FilePlan file : files) rows += file.getRowCount();
+        return rows;
+    }
+
+    public long getTotalRowsToLoad() {
+        long rows = 0;
+        for (FilePlan file : files) rows += file.getRowsToLoad();
+        return rows;
+    }
+
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (FilePlan file : files) bytes += file.getFileSize();
+        return bytes;
+    }
+
+    public int getTotalUnits() {
+        int units = 0;
+        for (FilePlan file : files) units += file.getUnits().size();
+        return units;
+    }
+
+    /**
+     * Вывести план: по строке на файл и итоги.
+     */
+    public void print() {
+        LogService.info("=== Load Plan ===");
+        int rowGroups = 0;
+        int selectedRowGroups = 0;
+
+        for (int i = 0; i < files.size(); i++) {
+            FilePlan file = files.get(i);
+            String name = AppConfig.getRelativeFileName(file.getFilePath());
+
+            if (file.getError() != null) {
+                LogService.errorf("  %2d. %s | ❌ footer not readable: %s", i + 1, name, file.getError());
+                continue;
+            }
+
+            rowGroups += file.getRowGroups().size();
+            selectedRowGroups += file.getSelectedRowGroupCount();
+
+            LogService.infof("  %2d. %s | %,d rows | %d/%d row groups | %d units | %.1f MB | pickup %s .. %s",
+                    i + 1, name, file.getRowsToLoad(),
+                    file.getSelectedRowGroupCount(), file.getRowGroups().size(),
+                    file.getUnits().size(), file.getFileSize() / (1024.0 * 1024.0),
+                    file.getMinPickup(), file.getMaxPickup());
+        }
+
+        LogService.info("");
+        LogService.infof("Total rows in files: %,d", getTotalRows());
+        LogService.infof("Rows to load:        %,d%s", getTotalRowsToLoad(),
+                selectedRowGroups < rowGroups ? " (upper bound, row filters applied per page/row)" : "");
+        LogService.infof("Row groups:          %,d of %,d", selectedRowGroups, rowGroups);
+        LogService.infof("Work units:          %,d", getTotalUnits());
+        LogService.infof("Data size:           %.1f MB", getTotalBytes() / (1024.0 * 1024.0));
+    }
+}
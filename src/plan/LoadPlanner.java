@@ -0,0 +1,198 @@
+package plan;
+
+import Logging.LogService;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.MessageType;
+import reader.ParquetColumns;
+import reader.TripFilter;
+import reader.TripValues;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Фаза планирования: параллельно читает footer'ы всех Parquet файлов
+ * (строки, row groups, min/max pickup по статистике) и нарезает их на WorkUnit'ы.
+ * Данные файлов на этом этапе не читаются.
+ */
+public final class LoadPlanner {
+
+    private LoadPlanner() {
+        // static-only class
+    }
+
+    // Сколько unit'ов на поток в файле, если WORK_UNIT_ROWS не задан
+    private static final int UNITS_PER_THREAD = 4;
+
+    /**
+     * Построить план загрузки.
+     *
+     * @param filePaths файлы в порядке загрузки
+     * @param filter фильтр строк (row groups отбрасываются по статистике), null = без фильтра
+     * @param limit лимит строк на файл (0 = все)
+     * @param threadCount количество потоков записи
+     * @param unitRows целевой размер unit в строках (0 = подобрать по threadCount)
+     */
+    public static LoadPlan plan(List<String> filePaths, TripFilter filter, int limit,
+                                int threadCount, long unitRows) {
+        long startTime = System.currentTimeMillis();
+        int poolSize = Math.max(1, Math.min(filePaths.size(), Runtime.getRuntime().availableProcessors() * 2));
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+
+        List<Future<FilePlan>> futures = new ArrayList<>();
+        for (String filePath : filePaths) {
+            futures.add(executor.submit(() -> readFooter(filePath, filter)));
+        }
+
+        List<FilePlan> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    files.add(futures.get(i).get());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    files.add(FilePlan.failed(filePaths.get(i), cause.getMessage()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (FilePlan file : files) {
+            if (file.getError() == null) {
+                buildUnits(file, limit, threadCount, unitRows, filter != null);
+            }
+        }
+
+        LogService.infof("Read %d footers in %,d ms (%d threads)",
+                files.size(), System.currentTimeMillis() - startTime, poolSize);
+        return new LoadPlan(files);
+    }
+
+    /**
+     * Прочитать footer одного файла.
+     */
+    private static FilePlan readFooter(String filePath, TripFilter filter) throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        HadoopInputFile inputFile = HadoopInputFile.fromPath(new Path(filePath), conf);
+
+        List<BlockMetaData> blocks;
+        MessageType schema;
+        try (ParquetFileReader fileReader = ParquetFileReader.open(inputFile)) {
+            blocks = fileReader.getFooter().getBlocks();
+            schema = fileReader.getFooter().getFileMetaData().getSchema();
+        }
+
+        // Какие row groups переживут фильтр по статистике и словарям
+        Set<Long> selectedOffsets = null;
+        FilterPredicate predicate = filter != null ? filter.toPredicate(schema) : null;
+        if (predicate != null) {
+            selectedOffsets = new HashSet<>();
+            try (ParquetFileReader fileReader = ParquetFileReader.open(inputFile,
+                    HadoopReadOptions.builder(conf).withRecordFilter(FilterCompat.get(predicate)).build())) {
+                for (BlockMetaData block : fileReader.getRowGroups()) {
+                    selectedOffsets.add(block.getStartingPos());
+                }
+            }
+        }
+
+        List<FilePlan.RowGroupInfo> rowGroups = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BlockMetaData block = blocks.get(i);
+            LocalDateTime minPickup = null;
+            LocalDateTime maxPickup = null;
+
+            for (ColumnChunkMetaData column : block.getColumns()) {
+                if (ParquetColumns.PICKUP_DATETIME.equals(column.getPath().toDotString())) {
+                    Statistics<?> stats = column.getStatistics();
+                    if (stats != null && stats.hasNonNullValue() && stats.genericGetMin() instanceof Long) {
+                        minPickup = TripValues.microsToLocalDateTime((Long) stats.genericGetMin());
+                        maxPickup = TripValues.microsToLocalDateTime((Long) stats.genericGetMax());
+                    }
+                }
+            }
+
+            boolean selected = selectedOffsets == null || selectedOffsets.contains(block.getStartingPos());
+            rowGroups.add(new FilePlan.RowGroupInfo(i, block.getRowCount(), block.getStartingPos(),
+                    block.getCompressedSize(), minPickup, maxPickup, selected));
+        }
+
+        return new FilePlan(filePath, new File(filePath).length(), rowGroups);
+    }
+
+    /**
+     * Нарезать выбранные row groups файла на unit'ы примерно одинакового размера.
+     * Unit - всегда непрерывный диапазон выбранных row groups: пропущенная фильтром
+     * row group разрывает unit, чтобы диапазон файла не захватил ее.
+     * Без фильтра unit'ы обрезаются по лимиту; с фильтром число строк после фильтрации
+     * заранее неизвестно, поэтому планируются все выбранные row groups.
+     */
+    private static void buildUnits(FilePlan file, int limit, int threadCount, long unitRows, boolean filtered) {
+        long selectedRows = file.getSelectedRowCount();
+        long rowsToLoad = limit > 0 ? Math.min(selectedRows, limit) : selectedRows;
+        file.setRowsToLoad(rowsToLoad);
+
+        long targetRows = unitRows > 0
+                ? unitRows
+                : Math.max(1, rowsToLoad / ((long) Math.max(1, threadCount) * UNITS_PER_THREAD));
+
+        List<FilePlan.RowGroupInfo> current = new ArrayList<>();
+        long currentRows = 0;
+        long plannedRows = 0;
+
+        for (FilePlan.RowGroupInfo rg : file.getRowGroups()) {
+            if (!filtered && plannedRows >= rowsToLoad) {
+                break;
+            }
+
+            if (!rg.selected) {
+                addUnit(file, current);
+                current.clear();
+                currentRows = 0;
+                continue;
+            }
+
+            current.add(rg);
+            currentRows += rg.rowCount;
+            plannedRows += rg.rowCount;
+
+            if (currentRows >= targetRows) {
+                addUnit(file, current);
+                current.clear();
+                currentRows = 0;
+            }
+        }
+        addUnit(file, current);
+    }
+
+    private static void addUnit(FilePlan file, List<FilePlan.RowGroupInfo> rowGroups) {
+        if (rowGroups.isEmpty()) {
+            return;
+        }
+
+        FilePlan.RowGroupInfo first = rowGroups.get(0);
+        FilePlan.RowGroupInfo last = rowGroups.get(rowGroups.size() - 1);
+        long rows = 0;
+        for (FilePlan.RowGroupInfo rg : rowGroups) rows += rg.rowCount;
+
+        file.addUnit(new WorkUnit(file.getFilePath(), file.getUnits().size(), first.index, last.index, rows,
+                first.startOffset, last.startOffset + last.compressedSize));
+    }
+}
@@ -0,0 +1,93 @@
+package plan;
+
+import Logging.LogService;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общий прогресс загрузки: writer'ы сообщают о закоммиченных строках,
+ * раз в REPORT_INTERVAL_MS выводится процент, скорость и ETA.
+ * Отдельного потока нет - отчет печатает тот writer, который первым пересек интервал.
+ */
+public final class LoadProgress {
+
+    private LoadProgress() {
+        // static-only class
+    }
+
+    private static final long REPORT_INTERVAL_MS = 10_000;
+
+    private static volatile long totalRows = 0;
+    private static volatile int copies = 1;     // каждая строка пишется в столько целей (FANOUT_TARGETS)
+    private static volatile long startTimeMs = System.currentTimeMillis();
+    private static final AtomicLong doneRows = new AtomicLong();
+    private static final AtomicLong nextReportMs = new AtomicLong();
+
+    /**
+     * Каждая строка записывается в targets БД (writer'ы всех целей сообщают о своих строках).
+     */
+    public static void setTargets(int targets) {
+        copies = Math.max(1, targets);
+    }
+
+    /**
+     * Начать отсчет для плана на totalRows строк.
+     */
+    public static void start(long plannedRows) {
+        totalRows = plannedRows * copies;
+        startTimeMs = System.currentTimeMillis();
+        doneRows.set(0);
+        nextReportMs.set(startTimeMs + REPORT_INTERVAL_MS);
+    }
+
+    /**
+     * Учесть закоммиченные строки (вызывается writer'ами после commit).
+     */
+    public static void add(long rows) {
+        doneRows.addAndGet(rows);
+
+        long now = System.currentTimeMillis();
+        long next = nextReportMs.get();
+        if (totalRows > 0 && now >= next && nextReportMs.compareAndSet(next, now + REPORT_INTERVAL_MS)) {
+            LogService.info(snapshot());
+        }
+    }
+
+    public static long getDoneRows() {
+        return doneRows.get();
+    }
+
+    public static long getTotalRows() {
+        return totalRows;
+    }
+
+    /** Средняя скорость с начала загрузки, строк/с. */
+    public static double getRowsPerSec() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTimeMs);
+        return (doneRows.get() * 1000.0) / elapsed;
+    }
+
+    /**
+     * Строка вида "Progress: 42.1% | 1,234 of 2,931 rows | 51,234 rec/sec | ETA 00:00:33".
+     */
+    public static String snapshot() {
+        long done = doneRows.get();
+        long total = totalRows;
+        double rate = getRowsPerSec();
+        double percent = total > 0 ? Math.min(100.0, (done * 100.0) / total) : 0.0;
+
+        String eta = "n/a";
+        if (rate > 0 && total > done) {
+            eta = formatDuration((long) ((total - done) / rate));
+        } else if (total > 0 && done >= total) {
+            eta = formatDuration(0);
+        }
+
+        return String.format("Progress: %.1f%% | %,d of %,d rows | %.0f rec/sec | ETA %s",
+                percent, done, total, rate, eta);
+    }
+
+    private static String formatDuration(long seconds) {
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+}
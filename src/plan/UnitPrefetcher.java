@@ -0,0 +1,249 @@
+package plan;
+
+import Logging.LogService;
+import metrics.LoaderMetrics;
+import metrics.WriterMetrics;
+import model.TaxiTrip;
+import reader.ParquetTaxiReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-ahead следующих файлов: пока потоки записи разбирают файл N, фоновый поток
+ * открывает файлы N+1, N+2, ... и декодирует их первые unit'ы в память.
+ * На границе файла потоки записи сразу получают готовые записи, а не ждут
+ * чтения и распаковки Parquet.
+ *
+ * Объем декодированных, но еще не взятых записей ограничен бюджетом памяти;
+ * unit'ы читаются строго в порядке плана, поток ждет, пока бюджет освободится.
+ * Unit, который поток записи запросил раньше, чем до него дошел prefetch,
+ * читается самим потоком записи, prefetch его пропускает.
+ */
+public class UnitPrefetcher implements AutoCloseable {
+
+    // Оценка памяти на одну декодированную запись: TaxiTrip + две LocalDateTime
+    private static final long BYTES_PER_ROW = 320;
+
+    private enum State { PENDING, LOADING, READY, TAKEN }
+
+    private static class Slot {
+        State state = State.PENDING;
+        boolean discarded;
+        long bytes;
+        Prefetched result;
+    }
+
+    /**
+     * Декодированный unit.
+     */
+    public static class Prefetched {
+        private final List<TaxiTrip> trips;
+        private final int nullPickupFixed;
+
+        Prefetched(List<TaxiTrip> trips, int nullPickupFixed) {
+            this.trips = trips;
+            this.nullPickupFixed = nullPickupFixed;
+        }
+
+        /**
+         * Записи unit'а с учетом общего остатка лимита файла (как в ParquetTaxiReader.readUnit).
+         */
+        public List<TaxiTrip> takeTrips(AtomicLong remaining) {
+            while (true) {
+                long current = remaining.get();
+                if (current <= 0) {
+                    return new ArrayList<>();
+                }
+                long count = Math.min(current, trips.size());
+                if (remaining.compareAndSet(current, current - count)) {
+                    return count == trips.size() ? trips : new ArrayList<>(trips.subList(0, (int) count));
+                }
+            }
+        }
+
+        /** Сколько null pickup_datetime исправлено при чтении unit'а. */
+        public int getNullPickupFixed() {
+            return nullPickupFixed;
+        }
+    }
+
+    private final List<FilePlan> files;
+    private final ParquetTaxiReader reader;
+    private final long budgetBytes;
+    private final int limit;
+    private final Map<WorkUnit, Slot> slots = new HashMap<>();
+    private final Thread thread;
+
+    private long usedBytes;
+    private long peakBytes;
+    private int hits;
+    private int misses;
+    private boolean closed;
+
+    /**
+     * @param files файлы в порядке загрузки; prefetch начинается со второго
+     * @param reader отдельный reader для фонового потока
+     * @param budgetBytes максимум памяти под декодированные записи
+     * @param limit лимит строк на файл (0 = все)
+     */
+    public UnitPrefetcher(List<FilePlan> files, ParquetTaxiReader reader, long budgetBytes, int limit) {
+        this.files = files;
+        this.reader = reader;
+        this.budgetBytes = budgetBytes;
+        this.limit = limit;
+
+        for (int i = 1; i < files.size(); i++) {
+            for (WorkUnit unit : files.get(i).getUnits()) {
+                slots.put(unit, new Slot());
+            }
+        }
+
+        thread = new Thread(this::run, "Prefetch");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Забрать unit, если он уже прочитан или читается сейчас (тогда дождаться).
+     *
+     * @return декодированный unit или null - поток записи читает его сам
+     */
+    public synchronized Prefetched take(WorkUnit unit) throws InterruptedException {
+        Slot slot = slots.get(unit);
+        if (slot == null) {
+            return null;
+        }
+
+        while (slot.state == State.LOADING) {
+            wait();
+        }
+
+        Prefetched result = slot.state == State.READY ? slot.result : null;
+        if (result != null) {
+            hits++;
+        } else if (slot.state == State.PENDING) {
+            misses++;
+        }
+        release(slot);
+        return result;
+    }
+
+    /**
+     * Файл загружен: освободить его невзятые unit'ы (например, после достижения лимита).
+     */
+    public synchronized void discard(FilePlan file) {
+        for (WorkUnit unit : file.getUnits()) {
+            Slot slot = slots.get(unit);
+            if (slot == null) {
+                continue;
+            }
+            if (slot.state == State.LOADING) {
+                slot.discarded = true;
+            } else {
+                release(slot);
+            }
+        }
+    }
+
+    /** Память под прочитанные, но еще не взятые unit'ы (оценка). */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        LogService.infof("Prefetch: %d units served from read-ahead, %d read by writers, peak %,d MB of %,d MB",
+                hits, misses, peakBytes / (1024 * 1024), budgetBytes / (1024 * 1024));
+    }
+
+    private void release(Slot slot) {
+        slot.state = State.TAKEN;
+        slot.result = null;
+        usedBytes -= slot.bytes;
+        slot.bytes = 0;
+        notifyAll();
+    }
+
+    private void run() {
+        try {
+            for (int i = 1; i < files.size(); i++) {
+                AtomicLong remaining = new AtomicLong(limit > 0 ? limit : Long.MAX_VALUE);
+                for (WorkUnit unit : files.get(i).getUnits()) {
+                    if (!prefetch(unit, remaining)) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false - prefetcher закрыт
+     */
+    private boolean prefetch(WorkUnit unit, AtomicLong remaining) throws InterruptedException {
+        Slot slot = slots.get(unit);
+        long bytes = unit.getRowCount() * BYTES_PER_ROW;
+
+        synchronized (this) {
+            if (bytes > budgetBytes || remaining.get() <= 0) {
+                // unit больше всего бюджета или лимит файла уже набран - читать нечего
+                return !closed;
+            }
+            while (!closed && slot.state == State.PENDING && usedBytes + bytes > budgetBytes) {
+                wait();
+            }
+            if (closed) {
+                return false;
+            }
+            if (slot.state != State.PENDING) {
+                return true;
+            }
+            slot.state = State.LOADING;
+            slot.bytes = bytes;
+            usedBytes += bytes;
+            peakBytes = Math.max(peakBytes, usedBytes);
+        }
+
+        Prefetched result = null;
+        try {
+            int nullBefore = reader.getNullPickupDatetimeCount();
+            WriterMetrics metrics = LoaderMetrics.forTask("Prefetch");
+            long readStart = System.nanoTime();
+            metrics.readStarted();
+            List<TaxiTrip> trips = reader.readUnit(unit, remaining);
+            metrics.readCompleted(unit, trips.size(), System.nanoTime() - readStart);
+            result = new Prefetched(trips, reader.getNullPickupDatetimeCount() - nullBefore);
+        } catch (Exception e) {
+            LogService.errorf("Prefetch of %s %s failed: %s",
+                    unit.getFilePath(), unit, e.getMessage());
+        }
+
+        synchronized (this) {
+            if (result == null || slot.discarded) {
+                release(slot);
+            } else {
+                // После фильтрации строк может быть меньше, чем по footer
+                long actualBytes = result.trips.size() * BYTES_PER_ROW;
+                usedBytes += actualBytes - slot.bytes;
+                slot.bytes = actualBytes;
+                slot.result = result;
+                slot.state = State.READY;
+                notifyAll();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package plan;
+
+/**
+ * Единица работы загрузчика: непрерывный диапазон row groups одного Parquet файла.
+ * Диапазон задается смещениями в файле и передается в ParquetReader.withFileRange().
+ */
+public class WorkUnit {
+
+    private final String filePath;
+    private final int index;
+    private final int firstRowGroup;
+    private final int lastRowGroup;
+    private final long rowCount;
+    private final long rangeStart;
+    private final long rangeEnd;
+
+    public WorkUnit(String filePath, int index, int firstRowGroup, int lastRowGroup,
+                    long rowCount, long rangeStart, long rangeEnd) {
+        this.filePath = filePath;
+        this.index = index;
+        this.firstRowGroup = firstRowGroup;
+        this.lastRowGroup = lastRowGroup;
+        this.rowCount = rowCount;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+    }
+
+    public String getFilePath() { return filePath; }
+
+    /** Порядковый номер unit внутри файла. */
+    public int getIndex() { return index; }
+
+    public int getFirstRowGroup() { return firstRowGroup; }
+
+    public int getLastRowGroup() { return lastRowGroup; }
+
+    /** Количество строк по footer (до фильтрации записей). */
+    public long getRowCount() { return rowCount; }
+
+    public long getRangeStart() { return rangeStart; }
+
+    public long getRangeEnd() { return rangeEnd; }
+
+    @Override
+    public String toString() {
+        return String.format("unit %d [row groups %d-%d, %,d rows]", index, firstRowGroup, lastRowGroup, rowCount);
+    }
+}
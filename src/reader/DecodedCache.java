@@ -0,0 +1,479 @@
+package reader;
+
+import Logging.LogService;
+import config.AppConfig;
+import config.ReaderMode;
+import model.TaxiTrip;
+import plan.WorkUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш декодированных unit'ов на диске (DECODED_CACHE_DIR): строки unit'а после фильтра,
+ * ограничения значений и fallback дат, разложенные по колонкам. Повторная загрузка тех же
+ * файлов (в другую БД, после изменения схемы) не распаковывает и не разбирает Parquet заново -
+ * колонки читаются из отображенного в память файла прямо в TripRow.
+ *
+ * Ключ записи - путь, размер и mtime файла, диапазон unit'а, проекция,
+ * фильтр, режим декодирования (ReaderMode), зона и CACHE_VERSION. Запись создается только для
+ * полностью прочитанного unit'а (не обрезанного TEST_LIMIT), через временный файл и rename.
+ * Объем каталога ограничен DECODED_CACHE_MB: при превышении удаляются давно не использованные
+ * записи (по mtime, который обновляется при каждом попадании).
+ *
+ * Записи открыты через mmap, а на Windows отображенный файл нельзя удалить или заменить.
+ * Поэтому существующая запись не перезаписывается (тот же ключ - те же строки), а неудачное
+ * удаление при вытеснении или rename при публикации пропускается без ошибки загрузки.
+ *
+ * Формат записи (little-endian): заголовок (magic, версия формата, строк, емкость колонки,
+ * исправленных null pickup_datetime, длина ключа, ключ, выравнивание до 8 байт), затем колонки
+ * по емкости: pickup и dropoff (long), 9 double, 6 int, флаг (char).
+ */
+public final class DecodedCache {
+
+    /**
+     * Версия правил декодирования (ограничения значений, null-даты, TripRowConverter).
+     * При их изменении увеличить - старые записи перестанут совпадать по ключу.
+     */
+    static final int CACHE_VERSION = 3;
+
+    private static final int MAGIC = 0x4C4F4354;       // "TCOL"
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".tcol";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int FIXED_HEADER = 32;
+    private static final int ROW_BYTES = 8 * 2 + 8 * TripRow.DOUBLE_SLOTS + 4 * TripRow.INT_SLOTS + 2;
+    private static final long STALE_TEMP_MILLIS = 3_600_000L;
+
+    private static DecodedCache instance;
+
+    private final File dir;
+    private final long quotaBytes;
+    private long totalBytes;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder hitRows = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder stored = new LongAdder();
+    private static final LongAdder storedBytes = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+
+    private DecodedCache(File dir, long quotaBytes) {
+        this.dir = dir;
+        this.quotaBytes = quotaBytes;
+        File[] files = dir.listFiles();
+        long now = System.currentTimeMillis();
+        for (File f : files != null ? files : new File[0]) {
+            if (f.getName().endsWith(SUFFIX)) {
+                totalBytes += f.length();
+            } else if (f.getName().endsWith(TEMP_SUFFIX) && now - f.lastModified() > STALE_TEMP_MILLIS) {
+                // Остаток прерванного процесса
+                f.delete();
+            }
+        }
+        LogService.infof("Decoded cache: %s, %,d MB of %,d MB used",
+                dir.getAbsolutePath(), totalBytes >> 20, quotaBytes >> 20);
+    }
+
+    /**
+     * Кэш процесса или null, если DECODED_CACHE_DIR не задан (или каталог недоступен).
+     */
+    public static synchronized DecodedCache get() {
+        if (instance == null && AppConfig.DECODED_CACHE_DIR != null && !AppConfig.DECODED_CACHE_DIR.isEmpty()) {
+            File dir = new File(AppConfig.DECODED_CACHE_DIR);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                LogService.errorf("Decoded cache disabled: cannot create %s", dir.getAbsolutePath());
+                AppConfig.DECODED_CACHE_DIR = "";
+                return null;
+            }
+            instance = new DecodedCache(dir, Math.max(1, AppConfig.DECODED_CACHE_MB) * 1024L * 1024L);
+        }
+        return instance;
+    }
+
+    /**
+     * Ключ записи unit'а. Все, от чего зависят строки unit'а, должно входить в ключ.
+     */
+    static String key(WorkUnit unit, Set<String> columns, TripFilter filter, ReaderMode mode) {
+        File file = new File(unit.getFilePath());
+        return file.getAbsolutePath()
+                + "|size=" + file.length()
+                + "|mtime=" + file.lastModified()
+                + "|range=" + unit.getRangeStart() + "-" + unit.getRangeEnd()
+                + "|columns=" + new TreeSet<>(columns)
+                + "|filter=" + (filter != null ? filter : "")
+                + "|mode=" + mode
+                + "|zone=" + ZoneId.systemDefault().getId()
+                + "|version=" + CACHE_VERSION + "." + FORMAT_VERSION;
+    }
+
+    private File entryFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return new File(dir, name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static int headerBytes(byte[] keyBytes) {
+        return (FIXED_HEADER + keyBytes.length + 7) & ~7;
+    }
+
+    // ---------------------------------------------------------------------
+    // === Чтение ===
+    // ---------------------------------------------------------------------
+
+    /**
+     * Отображенная в память запись unit'а.
+     */
+    public static final class Hit {
+        private final MappedByteBuffer buf;
+        private final int rows;
+        private final int nullPickupFixed;
+        private final int pickupAt;
+        private final int dropoffAt;
+        private final int doublesAt;
+        private final int intsAt;
+        private final int flagsAt;
+        private final int capacity;
+
+        private Hit(MappedByteBuffer buf, int header, int rows, int capacity, int nullPickupFixed) {
+            this.buf = buf;
+            this.rows = rows;
+            this.capacity = capacity;
+            this.nullPickupFixed = nullPickupFixed;
+            this.pickupAt = header;
+            this.dropoffAt = pickupAt + 8 * capacity;
+            this.doublesAt = dropoffAt + 8 * capacity;
+            this.intsAt = doublesAt + 8 * capacity * TripRow.DOUBLE_SLOTS;
+            this.flagsAt = intsAt + 4 * capacity * TripRow.INT_SLOTS;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /** Исправленные null pickup_datetime при чтении unit'а из Parquet. */
+        public int getNullPickupFixed() {
+            return nullPickupFixed;
+        }
+
+        /**
+         * Заполнить row строкой i. Даты уже разрешены (как после TripRowReadSupport).
+         */
+        public void read(int i, TripRow row) {
+            row.pickupLocalMicros = buf.getLong(pickupAt + 8 * i);
+            row.dropoffLocalMicros = buf.getLong(dropoffAt + 8 * i);
+            for (int c = 0; c < TripRow.DOUBLE_SLOTS; c++) {
+                row.doubles[c] = buf.getDouble(doublesAt + 8 * (c * capacity + i));
+            }
+            for (int c = 0; c < TripRow.INT_SLOTS; c++) {
+                row.ints[c] = buf.getInt(intsAt + 4 * (c * capacity + i));
+            }
+            row.storeAndFwdFlag = TripValues.flagOf(buf.getChar(flagsAt + 2 * i));
+        }
+    }
+
+    /**
+     * Запись unit'а или null (нет записи, или она повреждена / от другого ключа - тогда удаляется).
+     */
+    public Hit open(String key) {
+        File file = entryFile(key);
+        if (!file.isFile()) {
+            misses.increment();
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            int header = headerBytes(keyBytes);
+            if (size < header) {
+                throw new IOException("truncated");
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int rows = buf.getInt(8);
+            int capacity = buf.getInt(12);
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT_VERSION || buf.getInt(20) != keyBytes.length
+                    || rows < 0 || rows > capacity || size != header + (long) capacity * ROW_BYTES) {
+                throw new IOException("bad header");
+            }
+            byte[] stored = new byte[keyBytes.length];
+            buf.get(FIXED_HEADER, stored);
+            if (!Arrays.equals(stored, keyBytes)) {
+                throw new IOException("key mismatch");
+            }
+            // mtime - время последнего использования для вытеснения
+            file.setLastModified(System.currentTimeMillis());
+            hits.increment();
+            hitRows.add(rows);
+            return new Hit(buf, header, rows, capacity, buf.getInt(16));
+        } catch (IOException e) {
+            LogService.errorf("Decoded cache entry %s is unusable (%s), removing", file.getName(), e.getMessage());
+            remove(file);
+            misses.increment();
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // === Запись ===
+    // ---------------------------------------------------------------------
+
+    /**
+     * Запись unit'а в процессе чтения из Parquet. Строки пишутся сразу в отображенный
+     * временный файл; commit() делает ее видимой, abort() удаляет.
+     */
+    public final class Builder {
+        private final String key;
+        private final File temp;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buf;
+        private final int header;
+        private final int capacity;
+        private int rows;
+        private boolean overflow;
+
+        private Builder(String key, File temp, RandomAccessFile raf, MappedByteBuffer buf, int header, int capacity) {
+            this.key = key;
+            this.temp = temp;
+            this.raf = raf;
+            this.buf = buf;
+            this.header = header;
+            this.capacity = capacity;
+        }
+
+        public void add(TripRow row) {
+            if (rows >= capacity) {
+                overflow = true;
+                return;
+            }
+            int i = rows++;
+            put(i, row.pickupLocalMicros, row.dropoffLocalMicros, row.storeAndFwdFlag);
+            int doublesAt = header + 16 * capacity;
+            for (int c = 0; c < TripRow.DOUBLE_SLOTS; c++) {
+                putDouble(doublesAt, c, i, row.doubles[c]);
+            }
+            int intsAt = doublesAt + 8 * capacity * TripRow.DOUBLE_SLOTS;
+            for (int c = 0; c < TripRow.INT_SLOTS; c++) {
+                putInt(intsAt, c, i, row.ints[c]);
+            }
+        }
+
+        public void add(TaxiTrip trip) {
+            if (rows >= capacity) {
+                overflow = true;
+                return;
+            }
+            int i = rows++;
+            put(i, trip.getPickupLocalMicros(), trip.getDropoffLocalMicros(), trip.getStoreAndFwdFlag());
+            int doublesAt = header + 16 * capacity;
+            putDouble(doublesAt, TripRow.TRIP_DISTANCE, i, trip.getTripDistance());
+            putDouble(doublesAt, TripRow.FARE_AMOUNT, i, trip.getFareAmount());
+            putDouble(doublesAt, TripRow.EXTRA, i, trip.getExtra());
+            putDouble(doublesAt, TripRow.MTA_TAX, i, trip.getMtaTax());
+            putDouble(doublesAt, TripRow.TIP_AMOUNT, i, trip.getTipAmount());
+            putDouble(doublesAt, TripRow.TOLLS_AMOUNT, i, trip.getTollsAmount());
+            putDouble(doublesAt, TripRow.IMPROVEMENT_SURCHARGE, i, trip.getImprovementSurcharge());
+            putDouble(doublesAt, TripRow.TOTAL_AMOUNT, i, trip.getTotalAmount());
+            putDouble(doublesAt, TripRow.CONGESTION_SURCHARGE, i, trip.getCongestionSurcharge());
+            int intsAt = doublesAt + 8 * capacity * TripRow.DOUBLE_SLOTS;
+            putInt(intsAt, TripRow.VENDOR_ID, i, trip.getVendorId());
+            putInt(intsAt, TripRow.PASSENGER_COUNT, i, trip.getPassengerCount());
+            putInt(intsAt, TripRow.RATECODE_ID, i, trip.getRateCodeId());
+            putInt(intsAt, TripRow.PU_LOCATION_ID, i, trip.getPuLocationId());
+            putInt(intsAt, TripRow.DO_LOCATION_ID, i, trip.getDoLocationId());
+            putInt(intsAt, TripRow.PAYMENT_TYPE, i, trip.getPaymentType());
+        }
+
+        private void put(int i, long pickup, long dropoff, String flag) {
+            buf.putLong(header + 8 * i, pickup);
+            buf.putLong(header + 8 * (capacity + i), dropoff);
+            int flagsAt = header + 16 * capacity + 8 * capacity * TripRow.DOUBLE_SLOTS + 4 * capacity * TripRow.INT_SLOTS;
+            buf.putChar(flagsAt + 2 * i, flag != null && !flag.isEmpty() ? flag.charAt(0) : 'N');
+        }
+
+        private void putDouble(int doublesAt, int column, int i, double value) {
+            buf.putDouble(doublesAt + 8 * (column * capacity + i), value);
+        }
+
+        private void putInt(int intsAt, int column, int i, int value) {
+            buf.putInt(intsAt + 4 * (column * capacity + i), value);
+        }
+
+        /**
+         * Unit прочитан полностью: записать заголовок и опубликовать запись.
+         */
+        public void commit(int nullPickupFixed) {
+            if (overflow) {
+                abort();
+                return;
+            }
+            try {
+                buf.putInt(8, rows);
+                buf.putInt(16, nullPickupFixed);
+                buf.putInt(0, MAGIC);
+                buf.force();
+                raf.close();
+            } catch (IOException e) {
+                LogService.errorf("Could not store decoded cache entry: %s", e.getMessage());
+                abort();
+                return;
+            }
+            File target = entryFile(key);
+            if (target.isFile()) {
+                // Тот же unit уже записал другой поток или процесс; запись может быть отображена
+                abort();
+                return;
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                abort();
+                if (!target.isFile()) {
+                    LogService.errorf("Could not store decoded cache entry: %s", e.getMessage());
+                }
+                // иначе запись успели опубликовать раньше, а ее отображение не дало заменить файл
+                return;
+            }
+            long bytes = target.length();
+            stored.increment();
+            storedBytes.add(bytes);
+            added(bytes);
+        }
+
+        /**
+         * Unit не дочитан (лимит, ошибка): временный файл удаляется. Если его еще держит
+         * отображение (Windows), файл удалит очистка устаревших временных файлов.
+         */
+        public void abort() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+                // файл все равно удаляется
+            }
+            temp.delete();
+        }
+    }
+
+    /**
+     * Начать запись unit'а на capacity строк или null, если запись не поместится в квоту
+     * или в одно отображение (2 ГБ).
+     */
+    public Builder create(String key, long capacity) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int header = headerBytes(keyBytes);
+        long size = header + capacity * ROW_BYTES;
+        if (capacity <= 0 || size > Integer.MAX_VALUE || size > quotaBytes) {
+            return null;
+        }
+        File temp = null;
+        RandomAccessFile raf = null;
+        try {
+            temp = File.createTempFile("unit-", TEMP_SUFFIX, dir);
+            raf = new RandomAccessFile(temp, "rw");
+            raf.setLength(size);
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            // magic пишется последним (commit): недописанный файл не пройдет проверку заголовка
+            buf.putInt(4, FORMAT_VERSION);
+            buf.putInt(12, (int) capacity);
+            buf.putInt(20, keyBytes.length);
+            buf.put(FIXED_HEADER, keyBytes);
+            return new Builder(key, temp, raf, buf, header, (int) capacity);
+        } catch (IOException e) {
+            LogService.errorf("Could not create decoded cache entry: %s", e.getMessage());
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                    // файл все равно удаляется
+                }
+            }
+            if (temp != null) {
+                temp.delete();
+            }
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // === Вытеснение ===
+    // ---------------------------------------------------------------------
+
+    private synchronized void added(long bytes) {
+        totalBytes += bytes;
+        if (totalBytes <= quotaBytes) {
+            return;
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        // Пересчет по каталогу: записи могли добавить и удалить другие процессы.
+        // mtime снимается один раз - попадания в других потоках меняют его во время сортировки
+        long[][] entries = new long[files.length][];
+        totalBytes = 0;
+        for (int i = 0; i < files.length; i++) {
+            entries[i] = new long[]{files[i].lastModified(), files[i].length(), i};
+            totalBytes += entries[i][1];
+        }
+        Arrays.sort(entries, Comparator.comparingLong(e -> e[0]));
+        for (long[] entry : entries) {
+            if (totalBytes <= quotaBytes) {
+                break;
+            }
+            // Отображенную запись (Windows) удалить нельзя - она вытесняется при следующем превышении
+            if (files[(int) entry[2]].delete()) {
+                totalBytes -= entry[1];
+                evicted.increment();
+            }
+        }
+    }
+
+    private synchronized void remove(File file) {
+        long length = file.length();
+        if (file.delete()) {
+            totalBytes -= length;
+        }
+    }
+
+    private synchronized long usedBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Сводка за запуск (в конце загрузки; ничего не выводит, если кэш выключен).
+     */
+    public static void printSummary() {
+        if (instance == null) {
+            return;
+        }
+        LogService.info("=== Decoded Cache ===");
+        LogService.infof("  Hits: %,d units (%,d rows) | Misses: %,d units", hits.sum(), hitRows.sum(), misses.sum());
+        LogService.infof("  Stored: %,d units (%,d MB) | Evicted: %,d | Size: %,d of %,d MB",
+                stored.sum(), storedBytes.sum() >> 20, evicted.sum(), instance.usedBytes() >> 20,
+                instance.quotaBytes >> 20);
+    }
+}
@@ -0,0 +1,348 @@
+package reader;
+
+import Logging.LogService;
+import config.AppConfig;
+import plan.WorkUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Внешняя сортировка файла по pickup_datetime (SORT_MODE = FILE).
+ *
+ * 1. spill(): потоки читают unit'ы файла, копят строки в SortBuffer (SORT_MEMORY_MB на все
+ *    потоки) и сбрасывают отсортированные прогоны в SORT_SPILL_DIR.
+ * 2. split(): границы ключей делят строки на равные части; граница ищется бинарным поиском
+ *    по прогонам, поэтому равные даты попадают в одну часть.
+ * 3. Range.merge(): каждый writer сливает свой диапазон всех прогонов (читая их блоками)
+ *    и получает строки подряд по ключу - у каждого writer'а своя непрерывная часть индекса.
+ *
+ * close() удаляет файлы прогонов.
+ */
+public final class ExternalSort implements AutoCloseable {
+
+    private static final int ROW_BYTES = SortBuffer.ROW_BYTES;
+
+    // Строк в блоке чтения курсора слияния
+    private static final int BLOCK_ROWS = 1024;
+
+    /** Отсортированный прогон на диске. */
+    private static final class Run {
+        final File file;
+        final FileChannel channel;
+        final int rows;
+        private final ByteBuffer keyBuf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+        Run(File file, FileChannel channel, int rows) {
+            this.file = file;
+            this.channel = channel;
+            this.rows = rows;
+        }
+
+        synchronized long key(int i) throws IOException {
+            keyBuf.clear();
+            readFully(channel, keyBuf, (long) i * ROW_BYTES);
+            return SortBuffer.key(keyBuf, 0);
+        }
+
+        /** Первая строка с ключом >= key. */
+        int lowerBound(long key) throws IOException {
+            int lo = 0;
+            int hi = rows;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key(mid) < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /** Позиция слияния в прогоне: строки читаются блоками по BLOCK_ROWS. */
+    private static final class Cursor {
+        final Run run;
+        final int order;
+        final int end;
+        final ByteBuffer block = ByteBuffer.allocate(BLOCK_ROWS * ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int next;           // следующая строка прогона
+        int blockStart;     // первая строка в block
+        int blockRows;
+        long key;
+
+        Cursor(Run run, int order, int start, int end) {
+            this.run = run;
+            this.order = order;
+            this.next = start;
+            this.end = end;
+        }
+
+        /** Перейти к строке next; false - диапазон закончился. */
+        boolean advance() throws IOException {
+            if (next >= end) {
+                return false;
+            }
+            if (next >= blockStart + blockRows) {
+                blockStart = next;
+                blockRows = Math.min(BLOCK_ROWS, end - next);
+                block.clear().limit(blockRows * ROW_BYTES);
+                readFully(run.channel, block, (long) next * ROW_BYTES);
+            }
+            key = SortBuffer.key(block, (next - blockStart) * ROW_BYTES);
+            return true;
+        }
+
+        void read(TripRow row) {
+            SortBuffer.read(block, (next - blockStart) * ROW_BYTES, row);
+            next++;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of sort run");
+            }
+            position += n;
+        }
+    }
+
+    private final Set<String> columns;
+    private final TripFilter filter;
+    private final File spillDir;
+    private final long memoryBytes;
+    private final List<Run> runs = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder nullPickupFixed = new LongAdder();
+
+    /**
+     * @param columns колонки writer'а (как у ParquetTaxiReader)
+     * @param filter фильтр строк, null = без фильтра
+     */
+    public ExternalSort(Set<String> columns, TripFilter filter) {
+        this.columns = columns;
+        this.filter = filter;
+        this.spillDir = new File(AppConfig.SORT_SPILL_DIR.isEmpty()
+                ? System.getProperty("java.io.tmpdir") : AppConfig.SORT_SPILL_DIR);
+        this.memoryBytes = Math.max(1, AppConfig.SORT_MEMORY_MB) * 1024L * 1024L;
+    }
+
+    /**
+     * Прочитать unit'ы очереди threads потоками и сбросить отсортированные прогоны.
+     *
+     * @param remaining общий остаток лимита строк файла
+     */
+    public void spill(Queue<WorkUnit> units, AtomicLong remaining, int threads) throws Exception {
+        long start = System.currentTimeMillis();
+        if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+            throw new IOException("Cannot create spill directory " + spillDir.getAbsolutePath());
+        }
+        // Строка в буфере: запись, ключ и два int сортировки
+        int rowsPerBuffer = (int) Math.min(SortBuffer.MAX_ROWS,
+                memoryBytes / Math.max(1, threads) / (ROW_BYTES + 8 + 8));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                spillUnits(units, remaining, new SortBuffer(rowsPerBuffer));
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long spilledBytes = rows.sum() * ROW_BYTES;
+        LogService.infof("Sorted %,d rows into %d runs (%,d MB in %s) in %,d ms",
+                rows.sum(), runs.size(), spilledBytes >> 20, spillDir.getAbsolutePath(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void spillUnits(Queue<WorkUnit> units, AtomicLong remaining, SortBuffer buffer) throws Exception {
+        ParquetTaxiReader reader = new ParquetTaxiReader(columns, filter);
+        WorkUnit unit;
+        try {
+            while (remaining.get() > 0 && (unit = units.poll()) != null) {
+                reader.readUnitRows(unit, remaining, row -> {
+                    buffer.add(row);
+                    if (buffer.isFull()) {
+                        writeRun(buffer);
+                    }
+                });
+            }
+            if (buffer.size() > 0) {
+                writeRun(buffer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        nullPickupFixed.add(reader.getNullPickupDatetimeCount());
+    }
+
+    private void writeRun(SortBuffer buffer) {
+        try {
+            File file = File.createTempFile("sort-run-", ".bin", spillDir);
+            file.deleteOnExit();
+            FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            try {
+                buffer.spill(channel);
+            } catch (IOException e) {
+                channel.close();
+                file.delete();
+                throw e;
+            }
+            runs.add(new Run(file, channel, buffer.size()));
+            rows.add(buffer.size());
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write sort run: " + e.getMessage(), e);
+        }
+    }
+
+    /** Исправленные null pickup_datetime при чтении файла. */
+    public int getNullPickupFixed() {
+        return nullPickupFixed.intValue();
+    }
+
+    /**
+     * Разделить строки на parts непрерывных диапазонов ключа с примерно равным числом строк.
+     */
+    public List<Range> split(int parts) throws IOException {
+        long total = rows.sum();
+        // Границы ищутся только между наименьшим и наибольшим ключом прогонов
+        long minKey = Long.MAX_VALUE;
+        long maxKey = Long.MIN_VALUE;
+        for (Run run : runs) {
+            if (run.rows > 0) {
+                minKey = Math.min(minKey, run.key(0));
+                maxKey = Math.max(maxKey, run.key(run.rows - 1));
+            }
+        }
+        List<Range> ranges = new ArrayList<>();
+        long from = Long.MIN_VALUE;
+        for (int i = 1; i <= parts; i++) {
+            long to = i == parts || total == 0 ? Long.MAX_VALUE : boundary(total * i / parts, minKey, maxKey);
+            ranges.add(new Range(from, to));
+            from = to;
+        }
+        return ranges;
+    }
+
+    /**
+     * Ключ строки номер target (с 0) в порядке сортировки: строки с меньшим ключом - не больше
+     * target, равные ключи не разрываются. Ответ лежит в [minKey, maxKey] всех прогонов, поэтому
+     * поиск идет по ширине реальных дат (~45 шагов на год в микросекундах), а не по всему long.
+     */
+    private long boundary(long target, long minKey, long maxKey) throws IOException {
+        long lo = minKey;
+        long hi = maxKey;
+        while (lo < hi) {
+            long mid = (lo >> 1) + (hi >> 1) + (lo & hi & 1);
+            if (countBelow(mid + 1) > target) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private long countBelow(long key) throws IOException {
+        long count = 0;
+        for (Run run : runs) {
+            count += run.lowerBound(key);
+        }
+        return count;
+    }
+
+    /**
+     * Диапазон ключей [from, to) всех прогонов - часть файла для одного writer'а.
+     */
+    public final class Range {
+        private final long from;
+        private final long to;
+
+        Range(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Передать строки диапазона в sink в порядке pickup_datetime.
+         *
+         * @return количество строк
+         */
+        public long merge(TripRowSink sink) throws IOException, SQLException {
+            PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int byKey = Long.compare(a.key, b.key);
+                return byKey != 0 ? byKey : Integer.compare(a.order, b.order);
+            });
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = runs.get(i);
+                int end = to == Long.MAX_VALUE ? run.rows : run.lowerBound(to);
+                Cursor cursor = new Cursor(run, i, run.lowerBound(from), end);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+            TripRow row = new TripRow();
+            long count = 0;
+            Cursor cursor;
+            while ((cursor = heap.poll()) != null) {
+                cursor.read(row);
+                sink.addRow(row);
+                count++;
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "pickup [" + (from == Long.MIN_VALUE ? "-inf" : LocalMicros.toLocalDateTime(from))
+                    + ", " + (to == Long.MAX_VALUE ? "+inf" : LocalMicros.toLocalDateTime(to)) + ")";
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Run run : runs) {
+            try {
+                run.channel.close();
+            } catch (IOException e) {
+                LogService.errorf("Could not close sort run %s: %s", run.file.getName(), e.getMessage());
+            }
+            if (!run.file.delete()) {
+                LogService.errorf("Could not delete sort run %s", run.file.getAbsolutePath());
+            }
+        }
+        runs.clear();
+    }
+}
@@ -0,0 +1,71 @@
+package reader;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Перевод микросекунд Unix timestamp во "время системной зоны" без создания LocalDateTime.
+ * Результат совпадает с TripValues.microsToLocalDateTime(micros), записанным как
+ * toEpochSecond(UTC) * 1_000_000 + микросекунды (с тем же усечением до миллисекунд).
+ *
+ * Смещение зоны кэшируется на интервал между переходами (DST), поэтому для
+ * отсортированных по времени данных ZoneRules почти не вызывается.
+ * Экземпляр не потокобезопасен - один на reader.
+ */
+public class LocalMicros {
+
+    private final ZoneRules rules = ZoneId.systemDefault().getRules();
+
+    // Интервал [rangeStart, rangeEnd) в секундах UTC с постоянным смещением
+    private long rangeStart = 1;
+    private long rangeEnd = 0;
+    private long offsetMicros;
+
+    /**
+     * Микросекунды UTC -> микросекунды времени системной зоны.
+     * Значение должно быть в допустимом диапазоне (TripValues.isValidMicros).
+     */
+    public long toLocalMicros(long utcMicros) {
+        long millis = utcMicros / 1000;
+        long seconds = Math.floorDiv(millis, 1000);
+        if (seconds < rangeStart || seconds >= rangeEnd) {
+            refresh(seconds);
+        }
+        return millis * 1000 + offsetMicros;
+    }
+
+    /**
+     * LocalDateTime -> микросекунды в том же представлении.
+     */
+    public static long of(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1000;
+    }
+
+    /**
+     * Обратное преобразование (для редких случаев, когда нужен LocalDateTime).
+     */
+    public static LocalDateTime toLocalDateTime(long localMicros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localMicros, 1_000_000L),
+                (int) Math.floorMod(localMicros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    private void refresh(long seconds) {
+        Instant instant = Instant.ofEpochSecond(seconds);
+        offsetMicros = rules.getOffset(instant).getTotalSeconds() * 1_000_000L;
+
+        if (rules.isFixedOffset()) {
+            rangeStart = Long.MIN_VALUE;
+            rangeEnd = Long.MAX_VALUE;
+            return;
+        }
+        // previousTransition() возвращает переход строго раньше instant
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        rangeStart = previous != null ? previous.toEpochSecond() : Long.MIN_VALUE;
+        rangeEnd = next != null ? next.toEpochSecond() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,55 @@
+package reader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Имена колонок NYC Taxi Parquet файлов, которые умеет разбирать ParquetTaxiReader.
+ * Используются для проекции схемы: writer объявляет нужные ему колонки,
+ * reader запрашивает у Parquet только их.
+ */
+public final class ParquetColumns {
+
+    private ParquetColumns() {
+        // static-only class
+    }
+
+    public static final String VENDOR_ID = "VendorID";
+    public static final String PICKUP_DATETIME = "tpep_pickup_datetime";
+    public static final String DROPOFF_DATETIME = "tpep_dropoff_datetime";
+    public static final String PASSENGER_COUNT = "passenger_count";
+    public static final String TRIP_DISTANCE = "trip_distance";
+    public static final String RATECODE_ID = "RatecodeID";
+    public static final String STORE_AND_FWD_FLAG = "store_and_fwd_flag";
+    public static final String PU_LOCATION_ID = "PULocationID";
+    public static final String DO_LOCATION_ID = "DOLocationID";
+    public static final String PAYMENT_TYPE = "payment_type";
+    public static final String FARE_AMOUNT = "fare_amount";
+    public static final String EXTRA = "extra";
+    public static final String MTA_TAX = "mta_tax";
+    public static final String TIP_AMOUNT = "tip_amount";
+    public static final String TOLLS_AMOUNT = "tolls_amount";
+    public static final String IMPROVEMENT_SURCHARGE = "improvement_surcharge";
+    public static final String TOTAL_AMOUNT = "total_amount";
+    public static final String CONGESTION_SURCHARGE = "congestion_surcharge";
+
+    /**
+     * Все колонки, которые сохраняются в TaxiTrip.
+     * Колонки вроде airport_fee / cbd_congestion_fee сюда не входят и не читаются.
+     */
+    public static final Set<String> ALL = of(
+            VENDOR_ID, PICKUP_DATETIME, DROPOFF_DATETIME, PASSENGER_COUNT, TRIP_DISTANCE,
+            RATECODE_ID, STORE_AND_FWD_FLAG, PU_LOCATION_ID, DO_LOCATION_ID, PAYMENT_TYPE,
+            FARE_AMOUNT, EXTRA, MTA_TAX, TIP_AMOUNT, TOLLS_AMOUNT, IMPROVEMENT_SURCHARGE,
+            TOTAL_AMOUNT, CONGESTION_SURCHARGE
+    );
+
+    /**
+     * Неизменяемый набор колонок в порядке перечисления.
+     */
+    public static Set<String> of(String... columns) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(columns)));
+    }
+}
@@ -1,105 +1,360 @@
 package reader;
 
 import Logging.LogService;
+import config.AppConfig;
+import config.ReaderMode;
+import config.SortMode;
 import model.TaxiTrip;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.parquet.example.data.Group;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.ReadSupport;
 import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import plan.WorkUnit;
 
 import java.io.IOException;
-import java.time.Instant;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Класс для чтения Parquet файлов с данными NYC Taxi.
  * Single Responsibility: только чтение и парсинг Parquet.
  * Version 2.1: С валидацией, ограничением значений и обработкой null-дат
+ * Version 2.2: Прямое декодирование в TaxiTrip со словарными lookup'ами (ReaderMode.DIRECT)
  */
 public class ParquetTaxiReader {
 
     private final Configuration hadoopConfig;
 
-    // Дефолтная дата для записей с null pickup_datetime (для первой записи в файле)
-    private static final LocalDateTime DEFAULT_PICKUP_DATETIME = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+    // Колонки, которые нужно читать (проекция схемы). Остальные column chunks не декодируются.
+    private final Set<String> requiredColumns;
 
-    // Последняя валидная pickup_datetime для fallback (используется если текущая запись = null)
-    private LocalDateTime lastValidPickupDatetime = DEFAULT_PICKUP_DATETIME;
+    // Фильтр строк (null = читать всё)
+    private final TripFilter filter;
 
-    // Счетчик записей с null pickup_datetime
-    private int nullPickupDatetimeCount = 0;
+    // План чтения последнего файла: unit'ы одного файла читаются подряд, footer не перечитываем
+    private String cachedPlanPath;
+    private ReadPlan cachedPlan;
 
-    // Лимиты для TINYINT (0-255) и SMALLINT (0-65535)
-    private static final int TINYINT_MAX = 255;
-    private static final int SMALLINT_MAX = 65535;
+    // Способ декодирования: прямые converter'ы или example Group
+    private final ReaderMode mode;
 
-    // Лимиты для DECIMAL полей
-    private static final double TRIP_DISTANCE_MAX = 9999999.99;      // DECIMAL(9,2)
-    private static final double FARE_AMOUNT_MAX = 9999999999.99;     // DECIMAL(12,2)
-    private static final double MONEY_MAX = 99999999.99;             // DECIMAL(10,2)
+    // Fallback для null pickup_datetime (последняя валидная дата) и счетчик исправлений
+    private final PickupFallback pickupFallback = new PickupFallback();
+
+    // Переиспользуемая запись для readUnitReused()
+    private final TaxiTrip reusedTrip = new TaxiTrip();
+
+    // Кэш декодированных unit'ов (DECODED_CACHE_DIR), null = выключен
+    private final DecodedCache decodedCache;
+    private final TripRow cachedRow = new TripRow();
+
+    // Сортировка строк unit'а по pickup_datetime (SORT_MODE = UNIT), null = порядок файла
+    private final SortBuffer unitSort;
+    private final TripRow sortedRow = new TripRow();
 
     public ParquetTaxiReader() {
+        this(ParquetColumns.ALL, null);
+    }
+
+    public ParquetTaxiReader(Set<String> requiredColumns) {
+        this(requiredColumns, null);
+    }
+
+    /**
+     * @param requiredColumns колонки, нужные writer'у (см. DatabaseWriterFactory.getRequiredColumns())
+     * @param filter фильтр строк с pushdown в Parquet, null = без фильтра
+     */
+    public ParquetTaxiReader(Set<String> requiredColumns, TripFilter filter) {
+        this(requiredColumns, filter, AppConfig.READER_MODE);
+    }
+
+    /**
+     * @param mode способ декодирования (для сравнения путей, обычно берется из AppConfig.READER_MODE)
+     */
+    public ParquetTaxiReader(Set<String> requiredColumns, TripFilter filter, ReaderMode mode) {
+        this.mode = mode != null ? mode : ReaderMode.DIRECT;
         this.hadoopConfig = new Configuration();
         hadoopConfig.set("fs.defaultFS", "file:///");
+        this.filter = filter;
+
+        // Колонки фильтра обязаны быть в проекции, иначе их нечем проверять
+        Set<String> columns = new LinkedHashSet<>(requiredColumns);
+        if (filter != null) {
+            columns.addAll(filter.getColumns());
+        }
+        this.requiredColumns = columns;
+        this.decodedCache = DecodedCache.get();
+        this.unitSort = AppConfig.SORT_MODE == SortMode.UNIT ? new SortBuffer(SortBuffer.MAX_ROWS) : null;
     }
 
     /**
-     * Читает Parquet файл и возвращает список поездок.
+     * Читает один WorkUnit (диапазон row groups) без построчного логирования.
+     * Строки с null pickup_datetime в начале unit получают PickupFallback.DEFAULT_PICKUP_DATETIME.
+     *
+     * @param unit диапазон файла из плана загрузки
+     * @param remaining общий для файла остаток лимита строк; уменьшается на каждую принятую строку
      */
-    public List<TaxiTrip> readFile(String filePath, int limit) throws IOException {
-        List<TaxiTrip> trips = new ArrayList<>();
-
-        // Сброс счетчика и lastValidPickupDatetime для каждого файла
-        nullPickupDatetimeCount = 0;
-        lastValidPickupDatetime = DEFAULT_PICKUP_DATETIME;
+    public List<TaxiTrip> readUnit(WorkUnit unit, AtomicLong remaining) throws IOException {
+        List<TaxiTrip> trips = readTrips(unit, remaining);
+        if (unitSort != null) {
+            // List.sort стабильна: строки с равной датой сохраняют порядок файла
+            trips.sort(Comparator.comparingLong(TaxiTrip::getPickupLocalMicros));
+        }
+        return trips;
+    }
 
-        LogService.infof("Reading Parquet file: %s", filePath);
-        long startTime = System.currentTimeMillis();
+    private List<TaxiTrip> readTrips(WorkUnit unit, AtomicLong remaining) throws IOException {
+        List<TaxiTrip> trips = new ArrayList<>((int) Math.min(unit.getRowCount(), Integer.MAX_VALUE - 8));
+        String cacheKey = decodedCache != null ? DecodedCache.key(unit, requiredColumns, filter, mode) : null;
+        DecodedCache.Hit hit = cacheKey != null ? decodedCache.open(cacheKey) : null;
+        if (hit != null) {
+            pickupFallback.addFixed(hit.getNullPickupFixed());
+            for (int i = 0; i < hit.getRows() && remaining.get() > 0; i++) {
+                if (remaining.getAndDecrement() <= 0) {
+                    break;
+                }
+                hit.read(i, cachedRow);
+                TaxiTrip trip = new TaxiTrip();
+                cachedRow.copyTo(trip);
+                trips.add(trip);
+            }
+            return trips;
+        }
 
-        Path path = new Path(filePath);
+        pickupFallback.reset();
+        int fixedBefore = pickupFallback.getNullPickupDatetimeCount();
 
-        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), path)
-                .withConf(hadoopConfig)
-                .build()) {
+        Path path = new Path(unit.getFilePath());
+        ReadPlan plan = prepareRead(unit.getFilePath());
+        DecodedCache.Builder entry = cacheKey != null ? decodedCache.create(cacheKey, unit.getRowCount()) : null;
+        boolean complete = false;
 
-            Group group;
-            int count = 0;
+        try (ParquetReader<?> reader = openReader(path, plan, unit)) {
 
-            while ((group = reader.read()) != null) {
-                TaxiTrip trip = parseGroup(group);
+            TaxiTrip trip;
+            while (remaining.get() > 0) {
+                if ((trip = nextTrip(reader)) == null) {
+                    complete = true;
+                    break;
+                }
+                if (filter != null && !filter.matches(trip, pickupFallback.isLastFallback())) {
+                    continue;
+                }
+                if (remaining.getAndDecrement() <= 0) {
+                    break;
+                }
+                if (entry != null) {
+                    entry.add(trip);
+                }
                 trips.add(trip);
-                count++;
+            }
+        } finally {
+            finishEntry(entry, complete, fixedBefore);
+        }
 
-                if (count % 100_000 == 0) {
-                    LogService.infof("  Read %,d records...", count);
-                }
+        return trips;
+    }
+
+    /**
+     * Читает WorkUnit без создания TaxiTrip: каждая принятая строка передается в sink
+     * как переиспользуемый TripRow. Правила ограничения значений и null-дат те же, что в readUnit().
+     * Режим декодирования всегда прямой (ReaderMode.DIRECT). Unit из DecodedCache читается
+     * из отображенного файла без Parquet. При SORT_MODE = UNIT строки unit'а сначала
+     * собираются в SortBuffer и передаются в sink по возрастанию pickup_datetime.
+     *
+     * @return количество строк, переданных в sink
+     */
+    public long readUnitRows(WorkUnit unit, AtomicLong remaining, TripRowSink sink) throws IOException, SQLException {
+        if (unitSort == null) {
+            return readRows(unit, remaining, sink);
+        }
+        unitSort.clear();
+        long count = readRows(unit, remaining, unitSort::add);
+        unitSort.emit(sink, sortedRow);
+        unitSort.clear();
+        return count;
+    }
 
-                if (limit > 0 && count >= limit) {
-                    LogService.infof("  Reached limit of %,d records", limit);
+    private long readRows(WorkUnit unit, AtomicLong remaining, TripRowSink sink) throws IOException, SQLException {
+        String cacheKey = decodedCache != null ? DecodedCache.key(unit, requiredColumns, filter, ReaderMode.DIRECT) : null;
+        DecodedCache.Hit hit = cacheKey != null ? decodedCache.open(cacheKey) : null;
+        long count = 0;
+        if (hit != null) {
+            pickupFallback.addFixed(hit.getNullPickupFixed());
+            for (int i = 0; i < hit.getRows() && remaining.get() > 0; i++) {
+                if (remaining.getAndDecrement() <= 0) {
                     break;
                 }
+                hit.read(i, cachedRow);
+                sink.addRow(cachedRow);
+                count++;
             }
+            return count;
+        }
 
-            long elapsed = System.currentTimeMillis() - startTime;
-            if (elapsed > 0) {
-                LogService.infof("✅ Read %,d records in %,d ms (%.2f records/sec)",
-                        count, elapsed, (count * 1000.0) / elapsed);
-            } else {
-                LogService.infof("✅ Read %,d records", count);
+        pickupFallback.reset();
+        int fixedBefore = pickupFallback.getNullPickupDatetimeCount();
+
+        Path path = new Path(unit.getFilePath());
+        ReadPlan plan = prepareRead(unit.getFilePath());
+        DecodedCache.Builder entry = cacheKey != null ? decodedCache.create(cacheKey, unit.getRowCount()) : null;
+        boolean complete = false;
+
+        try (ParquetReader<TripRow> reader = ParquetReader.builder(new TripRowReadSupport(pickupFallback), path)
+                .withConf(plan.config)
+                .withFilter(plan.filter)
+                .withFileRange(unit.getRangeStart(), unit.getRangeEnd())
+                .build()) {
+
+            TripRow row;
+            while (remaining.get() > 0) {
+                if ((row = reader.read()) == null) {
+                    complete = true;
+                    break;
+                }
+                if (filter != null && !filter.matches(row, pickupFallback.isLastFallback())) {
+                    continue;
+                }
+                if (remaining.getAndDecrement() <= 0) {
+                    break;
+                }
+                if (entry != null) {
+                    entry.add(row);
+                }
+                sink.addRow(row);
+                count++;
             }
+        } finally {
+            finishEntry(entry, complete, fixedBefore);
+        }
 
-            // Логируем статистику по null pickup_datetime
-            if (nullPickupDatetimeCount > 0) {
-                LogService.infof("⚠️  Fixed %,d records with null pickup_datetime (%.2f%%)",
-                        nullPickupDatetimeCount, (nullPickupDatetimeCount * 100.0) / count);
+        return count;
+    }
+
+    /**
+     * Опубликовать запись DecodedCache прочитанного до конца unit'а, иначе удалить.
+     */
+    private void finishEntry(DecodedCache.Builder entry, boolean complete, int fixedBefore) {
+        if (entry == null) {
+            return;
+        }
+        if (complete) {
+            entry.commit(pickupFallback.getNullPickupDatetimeCount() - fixedBefore);
+        } else {
+            entry.abort();
+        }
+    }
+
+    /**
+     * Читает WorkUnit в режиме переиспользования: один и тот же TaxiTrip заполняется для каждой
+     * строки и передается в sink. Даты хранятся примитивами, флаг - интернированная строка,
+     * поэтому в установившемся режиме на строку ничего не создается.
+     *
+     * @return количество строк, переданных в sink
+     */
+    public long readUnitReused(WorkUnit unit, AtomicLong remaining, TaxiTripSink sink) throws IOException, SQLException {
+        return readUnitRows(unit, remaining, row -> {
+            row.copyTo(reusedTrip);
+            sink.addTrip(reusedTrip);
+        });
+    }
+
+    /**
+     * Количество исправленных null pickup_datetime с момента создания reader'а.
+     */
+    public int getNullPickupDatetimeCount() {
+        return pickupFallback.getNullPickupDatetimeCount();
+    }
+
+    /**
+     * Открыть ParquetReader нужного режима: весь файл (unit = null) или диапазон row groups.
+     */
+    private ParquetReader<?> openReader(Path path, ReadPlan plan, WorkUnit unit) throws IOException {
+        ParquetReader.Builder<?> builder = mode == ReaderMode.GROUP
+                ? ParquetReader.builder(new GroupReadSupport(), path)
+                : ParquetReader.builder(new TaxiTripReadSupport(pickupFallback), path);
+
+        builder.withConf(plan.config).withFilter(plan.filter);
+        if (unit != null) {
+            builder.withFileRange(unit.getRangeStart(), unit.getRangeEnd());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Следующая запись из reader'а любого режима, null в конце.
+     */
+    private TaxiTrip nextTrip(ParquetReader<?> reader) throws IOException {
+        Object record = reader.read();
+        if (record == null) {
+            return null;
+        }
+        return record instanceof Group ? parseGroup((Group) record) : (TaxiTrip) record;
+    }
+
+    /**
+     * Параметры чтения одного файла: конфигурация с проекцией и фильтр для Parquet.
+     */
+    private static class ReadPlan {
+        final Configuration config;
+        final FilterCompat.Filter filter;
+
+        ReadPlan(Configuration config, FilterCompat.Filter filter) {
+            this.config = config;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * Читает footer и готовит чтение файла:
+     * - проекция схемы на requiredColumns. В проекцию попадают только колонки, которые есть
+     *   в файле: в старых и новых файлах TLC набор колонок отличается;
+     * - predicate из TripFilter для пропуска row groups / страниц по статистике.
+     */
+    private ReadPlan prepareRead(String filePath) throws IOException {
+        if (filePath.equals(cachedPlanPath)) {
+            return cachedPlan;
+        }
+
+        Path path = new Path(filePath);
+        HadoopInputFile inputFile = HadoopInputFile.fromPath(path, hadoopConfig);
+        MessageType fileSchema;
+        try (ParquetFileReader fileReader = ParquetFileReader.open(inputFile)) {
+            fileSchema = fileReader.getFooter().getFileMetaData().getSchema();
+        }
+
+        List<Type> projectedFields = new ArrayList<>();
+        for (Type field : fileSchema.getFields()) {
+            if (requiredColumns.contains(field.getName())) {
+                projectedFields.add(field);
             }
         }
 
-        return trips;
+        MessageType projection = new MessageType(fileSchema.getName(), projectedFields);
+
+        Configuration readConfig = new Configuration(hadoopConfig);
+        readConfig.set(ReadSupport.PARQUET_READ_SCHEMA, projection.toString());
+
+        FilterPredicate predicate = filter != null ? filter.toPredicate(fileSchema) : null;
+        ReadPlan plan = new ReadPlan(readConfig, predicate != null ? FilterCompat.get(predicate) : FilterCompat.NOOP);
+
+        cachedPlanPath = filePath;
+        cachedPlan = plan;
+        return plan;
     }
 
     /**
@@ -121,13 +376,7 @@ public class ParquetTaxiReader {
         }
 
         // Если pickup_datetime = null, используем lastValidPickupDatetime
-        if (pickupDatetime == null) {
-            pickupDatetime = lastValidPickupDatetime;
-            nullPickupDatetimeCount++;
-        } else {
-            // Сохраняем валидную дату для следующих записей
-            lastValidPickupDatetime = pickupDatetime;
-        }
+        pickupDatetime = pickupFallback.resolve(pickupDatetime);
 
         trip.setPickupDatetime(pickupDatetime);
 
@@ -149,7 +398,7 @@ public class ParquetTaxiReader {
         trip.setPassengerCount(clampTinyInt((int) getDoubleValue(group, "passenger_count")));
 
         // Trip distance - DECIMAL(9,2): max 9999999.99
-        trip.setTripDistance(clampDecimal(getDoubleValue(group, "trip_distance"), TRIP_DISTANCE_MAX));
+        trip.setTripDistance(clampDecimal(getDoubleValue(group, "trip_distance"), TripValues.TRIP_DISTANCE_MAX));
 
         // Rate code - TINYINT(4): 0-255
         trip.setRateCodeId(clampTinyInt((int) getDoubleValue(group, "RatecodeID")));
@@ -181,28 +430,28 @@ public class ParquetTaxiReader {
         trip.setPaymentType(clampTinyInt(getIntValue(group, "payment_type")));
 
         // Fare amount - DECIMAL(12,2): max 9999999999.99
-        trip.setFareAmount(clampDecimal(getDoubleValue(group, "fare_amount"), FARE_AMOUNT_MAX));
+        trip.setFareAmount(clampDecimal(getDoubleValue(group, "fare_amount"), TripValues.FARE_AMOUNT_MAX));
 
         // Extra - DECIMAL(10,2): max 99999999.99
-        trip.setExtra(clampDecimal(getDoubleValue(group, "extra"), MONEY_MAX));
+        trip.setExtra(clampDecimal(getDoubleValue(group, "extra"), TripValues.MONEY_MAX));
 
         // MTA tax - DECIMAL(10,2)
-        trip.setMtaTax(clampDecimal(getDoubleValue(group, "mta_tax"), MONEY_MAX));
+        trip.setMtaTax(clampDecimal(getDoubleValue(group, "mta_tax"), TripValues.MONEY_MAX));
 
         // Tip amount - DECIMAL(10,2)
-        trip.setTipAmount(clampDecimal(getDoubleValue(group, "tip_amount"), MONEY_MAX));
+        trip.setTipAmount(clampDecimal(getDoubleValue(group, "tip_amount"), TripValues.MONEY_MAX));
 
         // Tolls amount - DECIMAL(10,2)
-        trip.setTollsAmount(clampDecimal(getDoubleValue(group, "tolls_amount"), MONEY_MAX));
+        trip.setTollsAmount(clampDecimal(getDoubleValue(group, "tolls_amount"), TripValues.MONEY_MAX));
 
         // Improvement surcharge - DECIMAL(10,2)
-        trip.setImprovementSurcharge(clampDecimal(getDoubleValue(group, "improvement_surcharge"), MONEY_MAX));
+        trip.setImprovementSurcharge(clampDecimal(getDoubleValue(group, "improvement_surcharge"), TripValues.MONEY_MAX));
 
         // Total amount - DECIMAL(10,2)
-        trip.setTotalAmount(clampDecimal(getDoubleValue(group, "total_amount"), MONEY_MAX));
+        trip.setTotalAmount(clampDecimal(getDoubleValue(group, "total_amount"), TripValues.MONEY_MAX));
 
         // Congestion surcharge - DECIMAL(10,2)
-        trip.setCongestionSurcharge(clampDecimal(getDoubleValue(group, "congestion_surcharge"), MONEY_MAX));
+        trip.setCongestionSurcharge(clampDecimal(getDoubleValue(group, "congestion_surcharge"), TripValues.MONEY_MAX));
 
         return trip;
     }
@@ -212,9 +461,7 @@ public class ParquetTaxiReader {
      * Отрицательные значения = 0, слишком большие = 255.
      */
     private int clampTinyInt(int value) {
-        if (value < 0) return 0;
-        if (value > TINYINT_MAX) return TINYINT_MAX;
-        return value;
+        return TripValues.clampInt(value, TripValues.TINYINT_MAX);
     }
 
     /**
@@ -222,26 +469,14 @@ public class ParquetTaxiReader {
      * Отрицательные значения = 0, слишком большие = 65535.
      */
     private int clampSmallInt(int value) {
-        if (value < 0) return 0;
-        if (value > SMALLINT_MAX) return SMALLINT_MAX;
-        return value;
+        return TripValues.clampInt(value, TripValues.SMALLINT_MAX);
     }
 
     /**
-     * Ограничивает значение для DECIMAL полей.
-     * Отрицательные значения = 0, слишком большие = max.
+     * Ограничивает значение для DECIMAL полей (см. TripValues.clampDecimal).
      */
     private double clampDecimal(double value, double max) {
-        // Проверка на NaN и Infinity
-        if (Double.isNaN(value) || Double.isInfinite(value)) {
-            return 0.0;
-        }
-
-        if (value < 0.0) return 0.0;
-        if (value > max) return max;
-
-        // Округление до 2 знаков после запятой
-        return Math.round(value * 100.0) / 100.0;
+        return TripValues.clampDecimal(value, max);
     }
 
     /**
@@ -258,9 +493,7 @@ public class ParquetTaxiReader {
             try {
                 long longVal = group.getLong(fieldName, 0);
                 // Безопасное преобразование long -> int
-                if (longVal > Integer.MAX_VALUE) return Integer.MAX_VALUE;
-                if (longVal < Integer.MIN_VALUE) return Integer.MIN_VALUE;
-                return (int) longVal;
+                return TripValues.saturateToInt(longVal);
             } catch (Exception ex) {
                 return 0;
             }
@@ -324,12 +557,9 @@ public class ParquetTaxiReader {
      * Проверяет, существует ли поле в Group.
      */
     private boolean hasField(Group group, String fieldName) {
-        try {
-            group.getType().getFieldIndex(fieldName);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        // containsField вместо getFieldIndex + исключение: после проекции
+        // отсутствующие колонки встречаются в каждой строке
+        return group.getType().containsField(fieldName);
     }
 
     /**
@@ -337,16 +567,7 @@ public class ParquetTaxiReader {
      * Возвращает null если конвертация не удалась или значение некорректное.
      */
     private LocalDateTime microsToLocalDateTime(long micros) {
-        try {
-            // Проверка на разумный диапазон (1970-2100)
-            long millis = micros / 1000;
-            if (millis < 0 || millis > 4102444800000L) { // 2100-01-01
-                return null;
-            }
-            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
-        } catch (Exception e) {
-            return null;
-        }
+        return TripValues.microsToLocalDateTime(micros);
     }
 
     /**
@@ -0,0 +1,91 @@
+package reader;
+
+import java.time.LocalDateTime;
+
+/**
+ * Замена null pickup_datetime на последнюю валидную дату в потоке чтения.
+ * pickup_datetime - часть первичного ключа и ключ партиционирования, null в БД недопустим.
+ *
+ * Поток - это unit (диапазон row groups), а не весь файл: unit'ы читаются независимо,
+ * поэтому null-строки в начале любого unit'а получают DEFAULT_PICKUP_DATETIME, как в начале
+ * файла, а не дату последней строки предыдущего unit'а.
+ */
+public class PickupFallback {
+
+    // Дефолтная дата для записей с null pickup_datetime (для первой записи в файле)
+    public static final LocalDateTime DEFAULT_PICKUP_DATETIME = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+
+    // Последняя валидная pickup_datetime для fallback (используется если текущая запись = null)
+    // null = значение есть только в lastValidLocalMicros (после resolveLocalMicros)
+    private LocalDateTime lastValidPickupDatetime = DEFAULT_PICKUP_DATETIME;
+
+    // То же значение в микросекундах времени зоны (см. LocalMicros)
+    private long lastValidLocalMicros = LocalMicros.of(DEFAULT_PICKUP_DATETIME);
+
+    // Счетчик записей с null pickup_datetime
+    private int nullPickupDatetimeCount = 0;
+
+    // Дата последней разрешенной записи взята из fallback (своей даты у записи нет)
+    private boolean lastFallback = false;
+
+    /**
+     * Начать новый поток записей (файл или unit): null-записи до первой валидной получают
+     * DEFAULT_PICKUP_DATETIME.
+     */
+    public void reset() {
+        lastValidPickupDatetime = DEFAULT_PICKUP_DATETIME;
+        lastValidLocalMicros = LocalMicros.of(DEFAULT_PICKUP_DATETIME);
+    }
+
+    /**
+     * Вернуть pickup или, если он null, последнюю валидную дату.
+     */
+    public LocalDateTime resolve(LocalDateTime pickup) {
+        lastFallback = pickup == null;
+        if (pickup == null) {
+            nullPickupDatetimeCount++;
+            if (lastValidPickupDatetime == null) {
+                lastValidPickupDatetime = LocalMicros.toLocalDateTime(lastValidLocalMicros);
+            }
+            return lastValidPickupDatetime;
+        }
+        // Сохраняем валидную дату для следующих записей
+        lastValidPickupDatetime = pickup;
+        lastValidLocalMicros = LocalMicros.of(pickup);
+        return pickup;
+    }
+
+    /**
+     * То же, что resolve(), для дат в микросекундах времени зоны (без LocalDateTime).
+     *
+     * @param pickupLocalMicros дата или TripRow.NO_TIMESTAMP
+     */
+    public long resolveLocalMicros(long pickupLocalMicros) {
+        lastFallback = pickupLocalMicros == TripRow.NO_TIMESTAMP;
+        if (pickupLocalMicros == TripRow.NO_TIMESTAMP) {
+            nullPickupDatetimeCount++;
+            return lastValidLocalMicros;
+        }
+        lastValidLocalMicros = pickupLocalMicros;
+        lastValidPickupDatetime = null;
+        return pickupLocalMicros;
+    }
+
+    /**
+     * true, если последний вызов resolve() / resolveLocalMicros() вернул подставленную дату.
+     */
+    public boolean isLastFallback() {
+        return lastFallback;
+    }
+
+    public int getNullPickupDatetimeCount() {
+        return nullPickupDatetimeCount;
+    }
+
+    /**
+     * Учесть исправления, сделанные при первом чтении unit'а (unit взят из DecodedCache).
+     */
+    public void addFixed(int count) {
+        nullPickupDatetimeCount += count;
+    }
+}
@@ -0,0 +1,198 @@
+package reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Строки в памяти для сортировки по pickup_datetime (SORT_MODE): записи фиксированной длины
+ * в одном массиве без объекта на строку и ключи сортировки отдельно.
+ *
+ * Сортировка поразрядная по индексам (8 проходов по байту ключа, проходы с одинаковым
+ * байтом у всех строк пропускаются) и стабильная: строки с равной датой сохраняют
+ * порядок файла.
+ */
+public final class SortBuffer {
+
+    /** Запись строки: pickup, dropoff, 9 double, 6 int, флаг (char). */
+    static final int ROW_BYTES = 8 * 2 + 8 * TripRow.DOUBLE_SLOTS + 4 * TripRow.INT_SLOTS + 2;
+
+    /** Предел строк одного буфера: записи адресуются int'ом. */
+    public static final int MAX_ROWS = Integer.MAX_VALUE / ROW_BYTES;
+
+    private static final int DOUBLES_AT = 16;
+    private static final int INTS_AT = DOUBLES_AT + 8 * TripRow.DOUBLE_SLOTS;
+    private static final int FLAG_AT = INTS_AT + 4 * TripRow.INT_SLOTS;
+
+    private final int maxRows;
+    private ByteBuffer rows;
+    private long[] keys;
+    private int size;
+    private int[] order;        // индексы строк в порядке ключа, null = не отсортировано
+
+    /**
+     * @param maxRows сколько строк помещается в буфер (память растет по мере заполнения)
+     */
+    public SortBuffer(int maxRows) {
+        this.maxRows = Math.max(1, Math.min(maxRows, MAX_ROWS));
+        int initial = Math.min(this.maxRows, 4096);
+        this.rows = ByteBuffer.allocate(initial * ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.keys = new long[initial];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size >= maxRows;
+    }
+
+    /**
+     * Добавить строку (значения копируются, row можно переиспользовать).
+     */
+    public void add(TripRow row) {
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = row.pickupLocalMicros;
+        write(rows, size * ROW_BYTES, row);
+        size++;
+        order = null;
+    }
+
+    private void grow() {
+        if (size >= maxRows) {
+            throw new IllegalStateException("Sort buffer is full: " + maxRows + " rows");
+        }
+        int capacity = (int) Math.min(maxRows, keys.length * 2L);
+        ByteBuffer grown = ByteBuffer.allocate(capacity * ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        grown.put(0, rows, 0, size * ROW_BYTES);
+        rows = grown;
+        long[] grownKeys = new long[capacity];
+        System.arraycopy(keys, 0, grownKeys, 0, size);
+        keys = grownKeys;
+    }
+
+    /**
+     * Передать строки в sink в порядке pickup_datetime.
+     *
+     * @param row переиспользуемая строка для sink
+     */
+    public void emit(TripRowSink sink, TripRow row) throws SQLException {
+        int[] sorted = sort();
+        for (int i = 0; i < size; i++) {
+            read(rows, sorted[i] * ROW_BYTES, row);
+            sink.addRow(row);
+        }
+    }
+
+    /**
+     * Записать строки в порядке pickup_datetime в конец channel (прогон внешней сортировки).
+     */
+    void spill(FileChannel channel) throws IOException {
+        int[] sorted = sort();
+        ByteBuffer out = ByteBuffer.allocate(Math.min(size, 8192) * ROW_BYTES);
+        byte[] src = rows.array();
+        for (int i = 0; i < size; i++) {
+            if (out.remaining() < ROW_BYTES) {
+                drain(out, channel);
+            }
+            out.put(src, sorted[i] * ROW_BYTES, ROW_BYTES);
+        }
+        drain(out, channel);
+    }
+
+    private static void drain(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    public void clear() {
+        size = 0;
+        order = null;
+    }
+
+    private int[] sort() {
+        if (order == null) {
+            order = radixOrder(keys, size);
+        }
+        return order;
+    }
+
+    /**
+     * Индексы 0..n-1 в порядке ключей (LSD radix sort, стабильная).
+     */
+    static int[] radixOrder(long[] keys, int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        if (n < 2) {
+            return order;
+        }
+        int[] tmp = new int[n];
+        int[] counts = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[digit(keys[i], shift) + 1]++;
+            }
+            if (counts[digit(keys[0], shift) + 1] == n) {
+                continue;   // у всех строк один и тот же байт - порядок не меняется
+            }
+            for (int b = 0; b < 256; b++) {
+                counts[b + 1] += counts[b];
+            }
+            for (int i = 0; i < n; i++) {
+                int idx = order[i];
+                tmp[counts[digit(keys[idx], shift)]++] = idx;
+            }
+            int[] swap = order;
+            order = tmp;
+            tmp = swap;
+        }
+        return order;
+    }
+
+    // Знаковый ключ в беззнаковый порядок: отрицательные даты (до 1970) идут первыми
+    private static int digit(long key, int shift) {
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & 0xFF);
+    }
+
+    static void write(ByteBuffer buf, int at, TripRow row) {
+        buf.putLong(at, row.pickupLocalMicros);
+        buf.putLong(at + 8, row.dropoffLocalMicros);
+        for (int c = 0; c < TripRow.DOUBLE_SLOTS; c++) {
+            buf.putDouble(at + DOUBLES_AT + 8 * c, row.doubles[c]);
+        }
+        for (int c = 0; c < TripRow.INT_SLOTS; c++) {
+            buf.putInt(at + INTS_AT + 4 * c, row.ints[c]);
+        }
+        String flag = row.storeAndFwdFlag;
+        buf.putChar(at + FLAG_AT, flag != null && !flag.isEmpty() ? flag.charAt(0) : 'N');
+    }
+
+    static void read(ByteBuffer buf, int at, TripRow row) {
+        row.pickupLocalMicros = buf.getLong(at);
+        row.dropoffLocalMicros = buf.getLong(at + 8);
+        for (int c = 0; c < TripRow.DOUBLE_SLOTS; c++) {
+            row.doubles[c] = buf.getDouble(at + DOUBLES_AT + 8 * c);
+        }
+        for (int c = 0; c < TripRow.INT_SLOTS; c++) {
+            row.ints[c] = buf.getInt(at + INTS_AT + 4 * c);
+        }
+        row.storeAndFwdFlag = TripValues.flagOf(buf.getChar(at + FLAG_AT));
+    }
+
+    /** Ключ (pickup) записи. */
+    static long key(ByteBuffer buf, int at) {
+        return buf.getLong(at);
+    }
+}
@@ -0,0 +1,100 @@
+package reader;
+
+import model.TaxiTrip;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * ReadSupport, который материализует строки Parquet сразу в TaxiTrip через TripRowConverter.
+ * Проекция берется из parquet.read.schema, как и в GroupReadSupport.
+ */
+public class TaxiTripReadSupport extends ReadSupport<TaxiTrip> {
+
+    private final PickupFallback pickupFallback;
+
+    public TaxiTripReadSupport(PickupFallback pickupFallback) {
+        this.pickupFallback = pickupFallback;
+    }
+
+    @Override
+    public ReadContext init(InitContext context) {
+        String partialSchema = context.getConfiguration().get(ReadSupport.PARQUET_READ_SCHEMA);
+        return new ReadContext(getSchemaForRead(context.getFileSchema(), partialSchema));
+    }
+
+    @Override
+    public RecordMaterializer<TaxiTrip> prepareForRead(Configuration configuration,
+                                                       Map<String, String> keyValueMetaData,
+                                                       MessageType fileSchema,
+                                                       ReadContext readContext) {
+        return new TaxiTripMaterializer(new TripRowConverter(readContext.getRequestedSchema()), pickupFallback);
+    }
+
+    /**
+     * Сборка TaxiTrip из TripRow. Делается в getCurrentRecord(), а не в end():
+     * при record-level фильтре getCurrentRecord() вызывается только для принятых строк,
+     * и отброшенные строки не сдвигают fallback для pickup_datetime.
+     */
+    private static final class TaxiTripMaterializer extends RecordMaterializer<TaxiTrip> {
+        private final TripRowConverter root;
+        private final PickupFallback pickupFallback;
+
+        TaxiTripMaterializer(TripRowConverter root, PickupFallback pickupFallback) {
+            this.root = root;
+            this.pickupFallback = pickupFallback;
+        }
+
+        @Override
+        public TaxiTrip getCurrentRecord() {
+            return toTrip(root.getRow(), pickupFallback);
+        }
+
+        @Override
+        public GroupConverter getRootConverter() {
+            return root;
+        }
+    }
+
+    /**
+     * TripRow -> TaxiTrip с теми же правилами для дат, что и у ParquetTaxiReader.parseGroup().
+     */
+    static TaxiTrip toTrip(TripRow row, PickupFallback pickupFallback) {
+        TaxiTrip trip = new TaxiTrip();
+
+        trip.setVendorId(row.ints[TripRow.VENDOR_ID]);
+
+        LocalDateTime pickupDatetime = row.pickupMicros != 0 ? TripValues.microsToLocalDateTime(row.pickupMicros) : null;
+        pickupDatetime = pickupFallback.resolve(pickupDatetime);
+        trip.setPickupDatetime(pickupDatetime);
+
+        // Если dropoff null или отсутствует, делаем его на 10 минут позже pickup
+        trip.setDropoffDatetime(row.dropoffMicros != 0
+                ? TripValues.microsToLocalDateTime(row.dropoffMicros)
+                : pickupDatetime.plusMinutes(10));
+
+        trip.setPassengerCount(row.ints[TripRow.PASSENGER_COUNT]);
+        trip.setTripDistance(row.doubles[TripRow.TRIP_DISTANCE]);
+        trip.setRateCodeId(row.ints[TripRow.RATECODE_ID]);
+        trip.setStoreAndFwdFlag(row.storeAndFwdFlag);
+        trip.setPuLocationId(row.ints[TripRow.PU_LOCATION_ID]);
+        trip.setDoLocationId(row.ints[TripRow.DO_LOCATION_ID]);
+        trip.setPaymentType(row.ints[TripRow.PAYMENT_TYPE]);
+        trip.setFareAmount(row.doubles[TripRow.FARE_AMOUNT]);
+        trip.setExtra(row.doubles[TripRow.EXTRA]);
+        trip.setMtaTax(row.doubles[TripRow.MTA_TAX]);
+        trip.setTipAmount(row.doubles[TripRow.TIP_AMOUNT]);
+        trip.setTollsAmount(row.doubles[TripRow.TOLLS_AMOUNT]);
+        trip.setImprovementSurcharge(row.doubles[TripRow.IMPROVEMENT_SURCHARGE]);
+        trip.setTotalAmount(row.doubles[TripRow.TOTAL_AMOUNT]);
+        trip.setCongestionSurcharge(row.doubles[TripRow.CONGESTION_SURCHARGE]);
+
+        return trip;
+    }
+}
@@ -0,0 +1,14 @@
+package reader;
+
+import model.TaxiTrip;
+
+import java.sql.SQLException;
+
+/**
+ * Получатель переиспользуемых TaxiTrip (ParquetTaxiReader.readUnitReused).
+ * Объект перезаписывается следующей строкой - значения нужно забрать внутри addTrip().
+ */
+public interface TaxiTripSink {
+
+    void addTrip(TaxiTrip trip) throws SQLException;
+}
@@ -0,0 +1,185 @@
+package reader;
+
+import config.AppConfig;
+import model.TaxiTrip;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Фильтр строк: окно по pickup_datetime, списки PULocationID / DOLocationID / VendorID.
+ *
+ * Фильтр превращается в FilterPredicate для Parquet: row groups и страницы, которые
+ * по статистике, словарю или column index не могут содержать подходящих строк,
+ * пропускаются без декодирования; оставшиеся строки отсекаются при материализации.
+ * matches() дополнительно проверяет уже разобранную запись - это страховка
+ * для колонок, которые в конкретном файле имеют неподходящий для pushdown тип.
+ *
+ * Окно pickup проходят только строки со своей датой: строки, которым PickupFallback
+ * подставил дату (null, 0, вне 1970-2100), отклоняются. Подставленная дата зависит от
+ * соседних строк, уцелевших после pushdown, поэтому иначе результат зависел бы от того,
+ * сработал ли pushdown для файла.
+ */
+public class TripFilter {
+
+    private final LocalDateTime pickupFrom;   // включительно
+    private final LocalDateTime pickupTo;     // не включительно
+    private final Set<Integer> puLocations;
+    private final Set<Integer> doLocations;
+    private final Set<Integer> vendors;
+
+    // Границы окна в микросекундах времени зоны (LocalMicros) для matches(TripRow)
+    private final long pickupFromMicros;
+    private final long pickupToMicros;
+
+    public TripFilter(LocalDateTime pickupFrom, LocalDateTime pickupTo,
+                      List<Integer> puLocations, List<Integer> doLocations, List<Integer> vendors) {
+        this.pickupFrom = pickupFrom;
+        this.pickupTo = pickupTo;
+        this.puLocations = new HashSet<>(puLocations);
+        this.doLocations = new HashSet<>(doLocations);
+        this.vendors = new HashSet<>(vendors);
+        this.pickupFromMicros = pickupFrom != null ? LocalMicros.of(pickupFrom) : Long.MIN_VALUE;
+        this.pickupToMicros = pickupTo != null ? LocalMicros.of(pickupTo) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Фильтр из AppConfig, либо null если ни одно условие не задано.
+     */
+    public static TripFilter fromConfig() {
+        TripFilter filter = new TripFilter(AppConfig.FILTER_PICKUP_FROM, AppConfig.FILTER_PICKUP_TO,
+                AppConfig.FILTER_PU_LOCATIONS, AppConfig.FILTER_DO_LOCATIONS, AppConfig.FILTER_VENDORS);
+        return filter.isEmpty() ? null : filter;
+    }
+
+    private boolean hasPickupWindow() {
+        return pickupFrom != null || pickupTo != null;
+    }
+
+    public boolean isEmpty() {
+        return pickupFrom == null && pickupTo == null
+                && puLocations.isEmpty() && doLocations.isEmpty() && vendors.isEmpty();
+    }
+
+    /**
+     * Колонки, которые должны попасть в проекцию, чтобы фильтр мог их проверить.
+     */
+    public Set<String> getColumns() {
+        Set<String> columns = new LinkedHashSet<>();
+        if (pickupFrom != null || pickupTo != null) columns.add(ParquetColumns.PICKUP_DATETIME);
+        if (!puLocations.isEmpty()) columns.add(ParquetColumns.PU_LOCATION_ID);
+        if (!doLocations.isEmpty()) columns.add(ParquetColumns.DO_LOCATION_ID);
+        if (!vendors.isEmpty()) columns.add(ParquetColumns.VENDOR_ID);
+        return columns;
+    }
+
+    /**
+     * Строит predicate для конкретного файла.
+     * Условия по колонкам, которых нет в файле или которые имеют неожиданный тип, пропускаются
+     * (их проверит matches()). Возвращает null, если pushdown невозможен совсем.
+     */
+    public FilterPredicate toPredicate(MessageType fileSchema) {
+        List<FilterPredicate> parts = new ArrayList<>();
+
+        if (typeOf(fileSchema, ParquetColumns.PICKUP_DATETIME) == PrimitiveTypeName.INT64) {
+            if (pickupFrom != null) {
+                parts.add(FilterApi.gtEq(FilterApi.longColumn(ParquetColumns.PICKUP_DATETIME), toMicros(pickupFrom)));
+            }
+            if (pickupTo != null) {
+                parts.add(FilterApi.lt(FilterApi.longColumn(ParquetColumns.PICKUP_DATETIME), toMicros(pickupTo)));
+            }
+        }
+
+        addInPredicate(parts, fileSchema, ParquetColumns.PU_LOCATION_ID, puLocations);
+        addInPredicate(parts, fileSchema, ParquetColumns.DO_LOCATION_ID, doLocations);
+        addInPredicate(parts, fileSchema, ParquetColumns.VENDOR_ID, vendors);
+
+        FilterPredicate predicate = null;
+        for (FilterPredicate part : parts) {
+            predicate = predicate == null ? part : FilterApi.and(predicate, part);
+        }
+        return predicate;
+    }
+
+    private void addInPredicate(List<FilterPredicate> parts, MessageType fileSchema,
+                                String column, Set<Integer> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        PrimitiveTypeName type = typeOf(fileSchema, column);
+        if (type == PrimitiveTypeName.INT32) {
+            parts.add(FilterApi.in(FilterApi.intColumn(column), values));
+        } else if (type == PrimitiveTypeName.INT64) {
+            Set<Long> longValues = new HashSet<>();
+            for (Integer v : values) longValues.add(v.longValue());
+            parts.add(FilterApi.in(FilterApi.longColumn(column), longValues));
+        }
+    }
+
+    private PrimitiveTypeName typeOf(MessageType schema, String column) {
+        if (!schema.containsField(column)) {
+            return null;
+        }
+        Type field = schema.getType(column);
+        return field.isPrimitive() ? field.asPrimitiveType().getPrimitiveTypeName() : null;
+    }
+
+    /**
+     * Та же конвертация, что и в ParquetTaxiReader.microsToLocalDateTime (системная зона).
+     */
+    private long toMicros(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() * 1000L;
+    }
+
+    /**
+     * Проверка уже разобранной записи.
+     *
+     * @param pickupFallback pickup записи подставлен PickupFallback (см. описание класса)
+     */
+    public boolean matches(TaxiTrip trip, boolean pickupFallback) {
+        if (pickupFallback && hasPickupWindow()) return false;
+        LocalDateTime pickup = trip.getPickupDatetime();
+        if (pickupFrom != null && pickup.isBefore(pickupFrom)) return false;
+        if (pickupTo != null && !pickup.isBefore(pickupTo)) return false;
+        if (!puLocations.isEmpty() && !puLocations.contains(trip.getPuLocationId())) return false;
+        if (!doLocations.isEmpty() && !doLocations.contains(trip.getDoLocationId())) return false;
+        if (!vendors.isEmpty() && !vendors.contains(trip.getVendorId())) return false;
+        return true;
+    }
+
+    /**
+     * То же, что matches(TaxiTrip), для строки без объекта (даты уже разрешены в pickupLocalMicros).
+     */
+    public boolean matches(TripRow row, boolean pickupFallback) {
+        if (pickupFallback && hasPickupWindow()) return false;
+        if (row.pickupLocalMicros < pickupFromMicros || row.pickupLocalMicros >= pickupToMicros) return false;
+        if (!puLocations.isEmpty() && !puLocations.contains(row.ints[TripRow.PU_LOCATION_ID])) return false;
+        if (!doLocations.isEmpty() && !doLocations.contains(row.ints[TripRow.DO_LOCATION_ID])) return false;
+        if (!vendors.isEmpty() && !vendors.contains(row.ints[TripRow.VENDOR_ID])) return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (pickupFrom != null || pickupTo != null) {
+            sb.append("pickup in [").append(pickupFrom != null ? pickupFrom : "-inf")
+                    .append(", ").append(pickupTo != null ? pickupTo : "+inf").append(") ");
+        }
+        if (!puLocations.isEmpty()) sb.append("PU in ").append(puLocations).append(' ');
+        if (!doLocations.isEmpty()) sb.append("DO in ").append(doLocations).append(' ');
+        if (!vendors.isEmpty()) sb.append("vendor in ").append(vendors).append(' ');
+        return sb.toString().trim();
+    }
+}
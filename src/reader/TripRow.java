@@ -0,0 +1,88 @@
+package reader;
+
+import model.TaxiTrip;
+
+/**
+ * Одна строка NYC Taxi в примитивном виде: значения уже проверены и ограничены
+ * (TripValues), но еще не превращены в TaxiTrip. Заполняется TripRowConverter
+ * и переиспользуется для каждой строки.
+ */
+public class TripRow {
+
+    // Индексы целочисленных полей
+    public static final int VENDOR_ID = 0;
+    public static final int PASSENGER_COUNT = 1;
+    public static final int RATECODE_ID = 2;
+    public static final int PU_LOCATION_ID = 3;
+    public static final int DO_LOCATION_ID = 4;
+    public static final int PAYMENT_TYPE = 5;
+    static final int INT_SLOTS = 6;
+
+    // Индексы дробных полей
+    public static final int TRIP_DISTANCE = 0;
+    public static final int FARE_AMOUNT = 1;
+    public static final int EXTRA = 2;
+    public static final int MTA_TAX = 3;
+    public static final int TIP_AMOUNT = 4;
+    public static final int TOLLS_AMOUNT = 5;
+    public static final int IMPROVEMENT_SURCHARGE = 6;
+    public static final int TOTAL_AMOUNT = 7;
+    public static final int CONGESTION_SURCHARGE = 8;
+    static final int DOUBLE_SLOTS = 9;
+
+    public final int[] ints = new int[INT_SLOTS];
+    public final double[] doubles = new double[DOUBLE_SLOTS];
+
+    // Сырые микросекунды; 0 = значения нет (null или колонка отсутствует)
+    public long pickupMicros;
+    public long dropoffMicros;
+
+    // "Y"/"N"/... - всегда одна буква
+    public String storeAndFwdFlag;
+
+    // Значение даты отсутствует (NULL в БД)
+    public static final long NO_TIMESTAMP = TaxiTrip.NO_TIMESTAMP;
+
+    // Даты после проверки диапазона и fallback (заполняет ParquetTaxiReader.readUnitRows):
+    // время системной зоны в микросекундах, как LocalDateTime.toEpochSecond(UTC) * 1_000_000
+    public long pickupLocalMicros;
+    public long dropoffLocalMicros;
+
+    /**
+     * Заполнить переиспользуемый TaxiTrip (даты - примитивами, без LocalDateTime).
+     * Требует разрешенных дат (TripRowReadSupport).
+     */
+    public void copyTo(TaxiTrip trip) {
+        trip.setVendorId(ints[VENDOR_ID]);
+        trip.setPickupLocalMicros(pickupLocalMicros);
+        trip.setDropoffLocalMicros(dropoffLocalMicros);
+        trip.setPassengerCount(ints[PASSENGER_COUNT]);
+        trip.setTripDistance(doubles[TRIP_DISTANCE]);
+        trip.setRateCodeId(ints[RATECODE_ID]);
+        trip.setStoreAndFwdFlag(storeAndFwdFlag);
+        trip.setPuLocationId(ints[PU_LOCATION_ID]);
+        trip.setDoLocationId(ints[DO_LOCATION_ID]);
+        trip.setPaymentType(ints[PAYMENT_TYPE]);
+        trip.setFareAmount(doubles[FARE_AMOUNT]);
+        trip.setExtra(doubles[EXTRA]);
+        trip.setMtaTax(doubles[MTA_TAX]);
+        trip.setTipAmount(doubles[TIP_AMOUNT]);
+        trip.setTollsAmount(doubles[TOLLS_AMOUNT]);
+        trip.setImprovementSurcharge(doubles[IMPROVEMENT_SURCHARGE]);
+        trip.setTotalAmount(doubles[TOTAL_AMOUNT]);
+        trip.setCongestionSurcharge(doubles[CONGESTION_SURCHARGE]);
+    }
+
+    /**
+     * Сбросить значения перед следующей строкой: отсутствующее значение = 0 / "N".
+     */
+    public void reset() {
+        for (int i = 0; i < INT_SLOTS; i++) ints[i] = 0;
+        for (int i = 0; i < DOUBLE_SLOTS; i++) doubles[i] = 0.0;
+        pickupMicros = 0;
+        dropoffMicros = 0;
+        pickupLocalMicros = NO_TIMESTAMP;
+        dropoffLocalMicros = NO_TIMESTAMP;
+        storeAndFwdFlag = "N";
+    }
+}
@@ -0,0 +1,390 @@
+package reader;
+
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Корневой converter Parquet, который пишет значения колонок прямо в TripRow,
+ * минуя Group и поиск полей по имени.
+ *
+ * Для словарных колонок (VendorID, RatecodeID, payment_type, store_and_fwd_flag,
+ * PULocationID / DOLocationID и т.п.) каждое значение словаря проверяется и ограничивается
+ * один раз в setDictionary(), а на строку остается только lookup по id в массиве.
+ * Для страниц без словаря (fallback на PLAIN) работают обычные add*().
+ */
+public class TripRowConverter extends GroupConverter {
+
+    private final TripRow row = new TripRow();
+    private final Converter[] converters;
+
+    public TripRowConverter(MessageType requestedSchema) {
+        converters = new Converter[requestedSchema.getFieldCount()];
+        for (int i = 0; i < converters.length; i++) {
+            converters[i] = createConverter(requestedSchema.getType(i));
+        }
+    }
+
+    public TripRow getRow() {
+        return row;
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+        return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+        row.reset();
+    }
+
+    @Override
+    public void end() {
+        // значения уже в row
+    }
+
+    private Converter createConverter(Type field) {
+        if (!field.isPrimitive()) {
+            return new IgnoringGroupConverter(field);
+        }
+        PrimitiveTypeName type = field.asPrimitiveType().getPrimitiveTypeName();
+
+        switch (field.getName()) {
+            case ParquetColumns.VENDOR_ID:
+                return new IntConverter(type, TripRow.VENDOR_ID, TripValues.TINYINT_MAX);
+            case ParquetColumns.PASSENGER_COUNT:
+                return new IntConverter(type, TripRow.PASSENGER_COUNT, TripValues.TINYINT_MAX);
+            case ParquetColumns.RATECODE_ID:
+                return new IntConverter(type, TripRow.RATECODE_ID, TripValues.TINYINT_MAX);
+            case ParquetColumns.PU_LOCATION_ID:
+                return new IntConverter(type, TripRow.PU_LOCATION_ID, TripValues.SMALLINT_MAX);
+            case ParquetColumns.DO_LOCATION_ID:
+                return new IntConverter(type, TripRow.DO_LOCATION_ID, TripValues.SMALLINT_MAX);
+            case ParquetColumns.PAYMENT_TYPE:
+                return new IntConverter(type, TripRow.PAYMENT_TYPE, TripValues.TINYINT_MAX);
+
+            case ParquetColumns.TRIP_DISTANCE:
+                return new DecimalConverter(type, TripRow.TRIP_DISTANCE, TripValues.TRIP_DISTANCE_MAX);
+            case ParquetColumns.FARE_AMOUNT:
+                return new DecimalConverter(type, TripRow.FARE_AMOUNT, TripValues.FARE_AMOUNT_MAX);
+            case ParquetColumns.EXTRA:
+                return new DecimalConverter(type, TripRow.EXTRA, TripValues.MONEY_MAX);
+            case ParquetColumns.MTA_TAX:
+                return new DecimalConverter(type, TripRow.MTA_TAX, TripValues.MONEY_MAX);
+            case ParquetColumns.TIP_AMOUNT:
+                return new DecimalConverter(type, TripRow.TIP_AMOUNT, TripValues.MONEY_MAX);
+            case ParquetColumns.TOLLS_AMOUNT:
+                return new DecimalConverter(type, TripRow.TOLLS_AMOUNT, TripValues.MONEY_MAX);
+            case ParquetColumns.IMPROVEMENT_SURCHARGE:
+                return new DecimalConverter(type, TripRow.IMPROVEMENT_SURCHARGE, TripValues.MONEY_MAX);
+            case ParquetColumns.TOTAL_AMOUNT:
+                return new DecimalConverter(type, TripRow.TOTAL_AMOUNT, TripValues.MONEY_MAX);
+            case ParquetColumns.CONGESTION_SURCHARGE:
+                return new DecimalConverter(type, TripRow.CONGESTION_SURCHARGE, TripValues.MONEY_MAX);
+
+            case ParquetColumns.PICKUP_DATETIME:
+                return new TimestampConverter(type, true);
+            case ParquetColumns.DROPOFF_DATETIME:
+                return new TimestampConverter(type, false);
+
+            case ParquetColumns.STORE_AND_FWD_FLAG:
+                return new FlagConverter();
+
+            default:
+                return new PrimitiveConverter() {
+                    // колонка не используется - значения игнорируются
+                };
+        }
+    }
+
+    /**
+     * Числовое поле. Физические типы без числового значения для поля (INT96 даты старых файлов
+     * Spark, DECIMAL в BINARY / FIXED_LEN_BYTE_ARRAY, BOOLEAN) дают 0, как getLongValue /
+     * getDoubleValue пути GROUP, а не UnsupportedOperationException на весь файл.
+     * Для pickup 0 означает null - срабатывает обычный fallback даты.
+     */
+    private abstract class NumericConverter extends PrimitiveConverter {
+        abstract void setZero();
+
+        @Override
+        public void addBinary(Binary value) {
+            setZero();
+        }
+
+        @Override
+        public void addBoolean(boolean value) {
+            setZero();
+        }
+    }
+
+    /**
+     * TINYINT / SMALLINT поля: любой числовой тип -> int, ограничение 0..max.
+     */
+    private final class IntConverter extends NumericConverter {
+        private final PrimitiveTypeName type;
+        private final int slot;
+        private final int max;
+        private int[] lookup;
+
+        IntConverter(PrimitiveTypeName type, int slot, int max) {
+            this.type = type;
+            this.slot = slot;
+            this.max = max;
+        }
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return type == PrimitiveTypeName.INT32 || type == PrimitiveTypeName.INT64
+                    || type == PrimitiveTypeName.DOUBLE || type == PrimitiveTypeName.FLOAT;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+            lookup = new int[dictionary.getMaxId() + 1];
+            for (int id = 0; id < lookup.length; id++) {
+                switch (type) {
+                    case INT32:  lookup[id] = fromInt(dictionary.decodeToInt(id)); break;
+                    case INT64:  lookup[id] = fromLong(dictionary.decodeToLong(id)); break;
+                    case DOUBLE: lookup[id] = fromDouble(dictionary.decodeToDouble(id)); break;
+                    default:     lookup[id] = fromDouble(dictionary.decodeToFloat(id)); break;
+                }
+            }
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            row.ints[slot] = lookup[dictionaryId];
+        }
+
+        @Override
+        void setZero() {
+            row.ints[slot] = 0;
+        }
+
+        @Override
+        public void addInt(int value) {
+            row.ints[slot] = fromInt(value);
+        }
+
+        @Override
+        public void addLong(long value) {
+            row.ints[slot] = fromLong(value);
+        }
+
+        @Override
+        public void addDouble(double value) {
+            row.ints[slot] = fromDouble(value);
+        }
+
+        @Override
+        public void addFloat(float value) {
+            row.ints[slot] = fromDouble(value);
+        }
+
+        private int fromInt(int value) {
+            return TripValues.clampInt(value, max);
+        }
+
+        private int fromLong(long value) {
+            return TripValues.clampInt(TripValues.saturateToInt(value), max);
+        }
+
+        private int fromDouble(double value) {
+            return TripValues.clampInt((int) TripValues.finiteOrZero(value), max);
+        }
+    }
+
+    /**
+     * DECIMAL поля: любой числовой тип -> double, ограничение 0..max и округление.
+     */
+    private final class DecimalConverter extends NumericConverter {
+        private final PrimitiveTypeName type;
+        private final int slot;
+        private final double max;
+        private double[] lookup;
+
+        DecimalConverter(PrimitiveTypeName type, int slot, double max) {
+            this.type = type;
+            this.slot = slot;
+            this.max = max;
+        }
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return type == PrimitiveTypeName.INT32 || type == PrimitiveTypeName.INT64
+                    || type == PrimitiveTypeName.DOUBLE || type == PrimitiveTypeName.FLOAT;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+            lookup = new double[dictionary.getMaxId() + 1];
+            for (int id = 0; id < lookup.length; id++) {
+                switch (type) {
+                    case INT32:  lookup[id] = TripValues.clampDecimal(dictionary.decodeToInt(id), max); break;
+                    case INT64:  lookup[id] = TripValues.clampDecimal(dictionary.decodeToLong(id), max); break;
+                    case DOUBLE: lookup[id] = TripValues.clampDecimal(dictionary.decodeToDouble(id), max); break;
+                    default:     lookup[id] = TripValues.clampDecimal(dictionary.decodeToFloat(id), max); break;
+                }
+            }
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            row.doubles[slot] = lookup[dictionaryId];
+        }
+
+        @Override
+        void setZero() {
+            row.doubles[slot] = 0.0;
+        }
+
+        @Override
+        public void addDouble(double value) {
+            row.doubles[slot] = TripValues.clampDecimal(value, max);
+        }
+
+        @Override
+        public void addFloat(float value) {
+            row.doubles[slot] = TripValues.clampDecimal(value, max);
+        }
+
+        @Override
+        public void addInt(int value) {
+            row.doubles[slot] = TripValues.clampDecimal(value, max);
+        }
+
+        @Override
+        public void addLong(long value) {
+            row.doubles[slot] = TripValues.clampDecimal(value, max);
+        }
+    }
+
+    /**
+     * pickup / dropoff: сырые микросекунды, проверка диапазона делается при сборке записи.
+     */
+    private final class TimestampConverter extends NumericConverter {
+        private final PrimitiveTypeName type;
+        private final boolean pickup;
+        private long[] lookup;
+
+        TimestampConverter(PrimitiveTypeName type, boolean pickup) {
+            this.type = type;
+            this.pickup = pickup;
+        }
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return type == PrimitiveTypeName.INT64 || type == PrimitiveTypeName.INT32;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+            lookup = new long[dictionary.getMaxId() + 1];
+            for (int id = 0; id < lookup.length; id++) {
+                lookup[id] = type == PrimitiveTypeName.INT64 ? dictionary.decodeToLong(id) : dictionary.decodeToInt(id);
+            }
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            set(lookup[dictionaryId]);
+        }
+
+        @Override
+        void setZero() {
+            set(0);   // 0 = нет даты
+        }
+
+        @Override
+        public void addLong(long value) {
+            set(value);
+        }
+
+        @Override
+        public void addInt(int value) {
+            set(value);
+        }
+
+        private void set(long micros) {
+            if (pickup) {
+                row.pickupMicros = micros;
+            } else {
+                row.dropoffMicros = micros;
+            }
+        }
+    }
+
+    /**
+     * store_and_fwd_flag: одна буква, без декодирования строки для "Y" / "N".
+     */
+    private final class FlagConverter extends PrimitiveConverter {
+        private final Binary flagN = Binary.fromString("N");
+        private final Binary flagY = Binary.fromString("Y");
+        private String[] lookup;
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return true;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+            lookup = new String[dictionary.getMaxId() + 1];
+            for (int id = 0; id < lookup.length; id++) {
+                lookup[id] = TripValues.normalizeFlag(dictionary.decodeToBinary(id).toStringUsingUTF8());
+            }
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            row.storeAndFwdFlag = lookup[dictionaryId];
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+            // Binary.equals сравнивает байты без копирования среза страницы
+            if (value.length() == 0 || value.equals(flagN)) {
+                row.storeAndFwdFlag = "N";
+            } else if (value.equals(flagY)) {
+                row.storeAndFwdFlag = "Y";
+            } else {
+                row.storeAndFwdFlag = TripValues.normalizeFlag(value.toStringUsingUTF8());
+            }
+        }
+    }
+
+    /**
+     * Неожиданная вложенная колонка - значения игнорируются.
+     */
+    private static final class IgnoringGroupConverter extends GroupConverter {
+        private final Converter[] children;
+
+        IgnoringGroupConverter(Type field) {
+            int count = field.asGroupType().getFieldCount();
+            children = new Converter[count];
+            for (int i = 0; i < count; i++) {
+                Type child = field.asGroupType().getType(i);
+                children[i] = child.isPrimitive() ? new PrimitiveConverter() { } : new IgnoringGroupConverter(child);
+            }
+        }
+
+        @Override
+        public Converter getConverter(int fieldIndex) {
+            return children[fieldIndex];
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+}
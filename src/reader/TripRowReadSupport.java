@@ -0,0 +1,78 @@
+package reader;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.Map;
+
+/**
+ * ReadSupport для пути без объектов: каждая запись - один и тот же TripRow,
+ * в котором даты уже проверены и разрешены (pickupLocalMicros / dropoffLocalMicros)
+ * по тем же правилам, что и в TaxiTripReadSupport.toTrip().
+ */
+public class TripRowReadSupport extends ReadSupport<TripRow> {
+
+    // Если dropoff null или отсутствует, он на 10 минут позже pickup
+    private static final long DEFAULT_TRIP_MICROS = 10 * 60 * 1_000_000L;
+
+    private final PickupFallback pickupFallback;
+
+    public TripRowReadSupport(PickupFallback pickupFallback) {
+        this.pickupFallback = pickupFallback;
+    }
+
+    @Override
+    public ReadContext init(InitContext context) {
+        String partialSchema = context.getConfiguration().get(ReadSupport.PARQUET_READ_SCHEMA);
+        return new ReadContext(getSchemaForRead(context.getFileSchema(), partialSchema));
+    }
+
+    @Override
+    public RecordMaterializer<TripRow> prepareForRead(Configuration configuration,
+                                                      Map<String, String> keyValueMetaData,
+                                                      MessageType fileSchema,
+                                                      ReadContext readContext) {
+        return new TripRowMaterializer(new TripRowConverter(readContext.getRequestedSchema()), pickupFallback);
+    }
+
+    /**
+     * Даты разрешаются в getCurrentRecord() - только для строк, прошедших record-level фильтр.
+     */
+    private static final class TripRowMaterializer extends RecordMaterializer<TripRow> {
+        private final TripRowConverter root;
+        private final PickupFallback pickupFallback;
+        private final LocalMicros localMicros = new LocalMicros();
+
+        TripRowMaterializer(TripRowConverter root, PickupFallback pickupFallback) {
+            this.root = root;
+            this.pickupFallback = pickupFallback;
+        }
+
+        @Override
+        public TripRow getCurrentRecord() {
+            TripRow row = root.getRow();
+
+            long pickup = row.pickupMicros != 0 && TripValues.isValidMicros(row.pickupMicros)
+                    ? localMicros.toLocalMicros(row.pickupMicros) : TripRow.NO_TIMESTAMP;
+            row.pickupLocalMicros = pickupFallback.resolveLocalMicros(pickup);
+
+            if (row.dropoffMicros == 0) {
+                row.dropoffLocalMicros = row.pickupLocalMicros + DEFAULT_TRIP_MICROS;
+            } else if (TripValues.isValidMicros(row.dropoffMicros)) {
+                row.dropoffLocalMicros = localMicros.toLocalMicros(row.dropoffMicros);
+            } else {
+                row.dropoffLocalMicros = TripRow.NO_TIMESTAMP;
+            }
+            return row;
+        }
+
+        @Override
+        public GroupConverter getRootConverter() {
+            return root;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package reader;
+
+import java.sql.SQLException;
+
+/**
+ * Получатель строк без создания TaxiTrip (ParquetTaxiReader.readUnitRows).
+ * TripRow переиспользуется reader'ом - данные нужно забрать внутри addRow().
+ */
+public interface TripRowSink {
+
+    void addRow(TripRow row) throws SQLException;
+}
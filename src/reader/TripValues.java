@@ -0,0 +1,121 @@
+package reader;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Правила валидации значений NYC Taxi под типы колонок БД.
+ * Общие для всех путей декодирования (Group, прямой converter, словари).
+ */
+public final class TripValues {
+
+    private TripValues() {
+        // static-only class
+    }
+
+    // Лимиты для TINYINT (0-255) и SMALLINT (0-65535)
+    public static final int TINYINT_MAX = 255;
+    public static final int SMALLINT_MAX = 65535;
+
+    // Лимиты для DECIMAL полей
+    public static final double TRIP_DISTANCE_MAX = 9999999.99;      // DECIMAL(9,2)
+    public static final double FARE_AMOUNT_MAX = 9999999999.99;     // DECIMAL(12,2)
+    public static final double MONEY_MAX = 99999999.99;             // DECIMAL(10,2)
+
+    // Верхняя граница разумных дат: 2100-01-01
+    private static final long MAX_EPOCH_MILLIS = 4102444800000L;
+
+    // Односимвольные строки для ASCII флагов
+    private static final String[] ASCII_FLAGS = new String[128];
+
+    static {
+        for (char c = 0; c < ASCII_FLAGS.length; c++) {
+            ASCII_FLAGS[c] = String.valueOf(c).intern();
+        }
+    }
+
+    /**
+     * Ограничивает значение диапазоном 0..max.
+     * Отрицательные значения = 0, слишком большие = max.
+     */
+    public static int clampInt(int value, int max) {
+        if (value < 0) return 0;
+        if (value > max) return max;
+        return value;
+    }
+
+    /**
+     * Безопасное преобразование long -> int.
+     */
+    public static int saturateToInt(long value) {
+        if (value > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        if (value < Integer.MIN_VALUE) return Integer.MIN_VALUE;
+        return (int) value;
+    }
+
+    /**
+     * NaN и Infinity считаются отсутствующим значением.
+     */
+    public static double finiteOrZero(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0.0 : value;
+    }
+
+    /**
+     * Ограничивает значение для DECIMAL полей.
+     * Отрицательные значения = 0, слишком большие = max, округление до 2 знаков.
+     */
+    public static double clampDecimal(double value, double max) {
+        // Проверка на NaN и Infinity
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return 0.0;
+        }
+
+        if (value < 0.0) return 0.0;
+        if (value > max) return max;
+
+        // Округление до 2 знаков после запятой
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    /**
+     * Проверка на разумный диапазон (1970-2100) для микросекунд Unix timestamp.
+     */
+    public static boolean isValidMicros(long micros) {
+        long millis = micros / 1000;
+        return millis >= 0 && millis <= MAX_EPOCH_MILLIS;
+    }
+
+    /**
+     * Конвертирует микросекунды Unix timestamp в LocalDateTime (системная зона).
+     * Возвращает null если значение вне диапазона 1970-2100.
+     */
+    public static LocalDateTime microsToLocalDateTime(long micros) {
+        if (!isValidMicros(micros)) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(micros / 1000), ZoneId.systemDefault());
+    }
+
+    /**
+     * Первая буква store_and_fwd_flag (CHAR(1)); пустое значение = "N".
+     * Для ASCII возвращаются заранее созданные строки - без аллокации на строку.
+     */
+    public static String normalizeFlag(String flag) {
+        if (flag == null || flag.isEmpty()) {
+            return "N";
+        }
+        char c = flag.charAt(0);
+        if (c < ASCII_FLAGS.length) {
+            return ASCII_FLAGS[c];
+        }
+        return flag.substring(0, 1);
+    }
+
+    /**
+     * Флаг из одной буквы (DecodedCache); для ASCII - без аллокации.
+     */
+    static String flagOf(char c) {
+        return c < ASCII_FLAGS.length ? ASCII_FLAGS[c] : String.valueOf(c);
+    }
+}
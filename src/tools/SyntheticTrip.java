@@ -0,0 +1,183 @@
+package tools;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Одна синтетическая поездка (переиспользуемая запись) и правила генерации значений,
+ * похожих на реальные данные TLC: распределения дистанции и длительности, тарифы,
+ * коррелированные null (в реальных файлах passenger_count, RatecodeID, store_and_fwd_flag,
+ * congestion_surcharge и airport_fee пропадают вместе), редкие некорректные значения.
+ *
+ * Целочисленные колонки хранятся как long - тип в файле выбирает схема.
+ * Не потокобезопасен: один экземпляр на поток генерации.
+ */
+public class SyntheticTrip {
+
+    private static final int LOCATIONS = 265;
+    private static final long MICROS_PER_MINUTE = 60_000_000L;
+
+    // Веса значений 0, 1, 2, ... (доли в реальных данных 2023-2024)
+    private static final int[] PASSENGER_WEIGHTS = {0, 72, 14, 4, 3, 4, 3};
+    private static final int[] PAYMENT_WEIGHTS = {0, 75, 20, 3, 2};
+    private static final double[] EXTRAS = {0.0, 0.5, 1.0, 2.5};
+
+    // Значения текущей строки
+    long vendorId;
+    long pickupMicros;
+    long dropoffMicros;
+    boolean pickupNull;
+    boolean nullGroup;          // null в passenger_count, RatecodeID, flag, congestion, airport_fee
+    long passengerCount;
+    double tripDistance;
+    long rateCodeId;
+    String storeAndFwdFlag;
+    long puLocationId;
+    long doLocationId;
+    long paymentType;
+    double fareAmount;
+    double extra;
+    double mtaTax;
+    double tipAmount;
+    double tollsAmount;
+    double improvementSurcharge;
+    double totalAmount;
+    double congestionSurcharge;
+    double airportFee;
+
+    private final SplittableRandom random;
+    private final double nullRate;
+    private final double badRate;
+    private final double[] locationCdf;
+    private final long[] locationIds;
+
+    /**
+     * @param seed seed файла (одинаковый seed = одинаковые строки)
+     * @param skew показатель Zipf для PULocationID / DOLocationID (0 = равномерно)
+     * @param nullRate доля строк с null-группой колонок
+     * @param badRate доля некорректных значений в каждой "грязной" колонке
+     */
+    public SyntheticTrip(long seed, double skew, double nullRate, double badRate) {
+        this.random = new SplittableRandom(seed);
+        this.nullRate = nullRate;
+        this.badRate = badRate;
+
+        // Популярные зоны - не подряд идущие id: перестановка с фиксированным seed
+        locationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            locationIds[i] = i + 1;
+        }
+        Random shuffle = new Random(265);
+        for (int i = LOCATIONS - 1; i > 0; i--) {
+            int j = shuffle.nextInt(i + 1);
+            long t = locationIds[i];
+            locationIds[i] = locationIds[j];
+            locationIds[j] = t;
+        }
+        locationCdf = new double[LOCATIONS];
+        double sum = 0;
+        for (int i = 0; i < LOCATIONS; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            locationCdf[i] = sum;
+        }
+        for (int i = 0; i < LOCATIONS; i++) {
+            locationCdf[i] /= sum;
+        }
+    }
+
+    /**
+     * Сгенерировать следующую строку.
+     *
+     * @param pickupMicros время посадки (UTC микросекунды), вызывающий задает порядок по времени
+     */
+    public void next(long pickupMicros) {
+        this.pickupMicros = pickupMicros;
+        pickupNull = bad();
+        nullGroup = random.nextDouble() < nullRate;
+
+        vendorId = random.nextInt(100) < 72 ? 2 : (random.nextInt(50) == 0 ? 6 : 1);
+
+        // Длительность: логнормальная, медиана ~12 минут
+        double minutes = Math.exp(2.5 + 0.6 * random.nextGaussian());
+        dropoffMicros = pickupMicros + (long) (minutes * MICROS_PER_MINUTE);
+        if (bad()) {
+            dropoffMicros = pickupMicros - random.nextInt(3600) * 1_000_000L;   // dropoff раньше pickup
+        }
+
+        passengerCount = weighted(PASSENGER_WEIGHTS);
+        if (bad()) {
+            passengerCount = random.nextBoolean() ? 0 : 9;
+        }
+
+        double distance = round2(Math.exp(0.6 + 0.9 * random.nextGaussian()));
+        tripDistance = distance;
+        if (bad()) {
+            tripDistance = random.nextBoolean() ? -distance : 100_000 + random.nextInt(200_000);
+        }
+
+        rateCodeId = random.nextInt(100) < 93 ? 1 : 2 + random.nextInt(5);
+        if (bad()) {
+            rateCodeId = 99;
+        }
+        storeAndFwdFlag = random.nextInt(200) == 0 ? "Y" : "N";
+
+        puLocationId = location();
+        doLocationId = location();
+
+        paymentType = nullGroup ? 0 : weighted(PAYMENT_WEIGHTS);
+
+        // Тариф от настоящей дистанции: испорченная дистанция, как в реальных файлах, с тарифом не согласована
+        fareAmount = round2(3.0 + distance * 2.5 + minutes * 0.5);
+        extra = EXTRAS[random.nextInt(EXTRAS.length)];
+        mtaTax = 0.5;
+        tipAmount = paymentType == 1 ? round2(fareAmount * random.nextInt(31) / 100.0) : 0.0;
+        tollsAmount = random.nextInt(20) == 0 ? 6.94 : 0.0;
+        improvementSurcharge = 1.0;
+        congestionSurcharge = random.nextInt(10) < 8 ? 2.5 : 0.0;
+        airportFee = random.nextInt(12) == 0 ? 1.75 : 0.0;
+        if (bad()) {
+            // Возврат: все суммы отрицательные
+            fareAmount = -fareAmount;
+            extra = -extra;
+            mtaTax = -mtaTax;
+            improvementSurcharge = -improvementSurcharge;
+        }
+        totalAmount = round2(fareAmount + extra + mtaTax + tipAmount + tollsAmount + improvementSurcharge
+                + (nullGroup ? 0 : congestionSurcharge + airportFee));
+    }
+
+    private boolean bad() {
+        return badRate > 0 && random.nextDouble() < badRate;
+    }
+
+    private long location() {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = LOCATIONS - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (locationCdf[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return locationIds[lo];
+    }
+
+    /** Значение i с весом weights[i] (сумма весов - 100). */
+    private long weighted(int[] weights) {
+        int r = random.nextInt(100);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
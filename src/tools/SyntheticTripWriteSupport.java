@@ -0,0 +1,161 @@
+package tools;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import reader.ParquetColumns;
+
+import java.util.HashMap;
+
+/**
+ * Запись SyntheticTrip напрямую в RecordConsumer (без example Group и объектов на строку).
+ * Целочисленные значения пишутся типом колонки схемы: INT32, INT64 или DOUBLE.
+ */
+class SyntheticTripWriteSupport extends WriteSupport<SyntheticTrip> {
+
+    private static final Binary FLAG_Y = Binary.fromConstantByteArray(new byte[]{'Y'});
+    private static final Binary FLAG_N = Binary.fromConstantByteArray(new byte[]{'N'});
+
+    // Коды колонок: switch по int на каждую строку вместо сравнения имен
+    private static final int VENDOR_ID = 0;
+    private static final int PICKUP_DATETIME = 1;
+    private static final int DROPOFF_DATETIME = 2;
+    private static final int PASSENGER_COUNT = 3;
+    private static final int TRIP_DISTANCE = 4;
+    private static final int RATECODE_ID = 5;
+    private static final int STORE_AND_FWD_FLAG = 6;
+    private static final int PU_LOCATION_ID = 7;
+    private static final int DO_LOCATION_ID = 8;
+    private static final int PAYMENT_TYPE = 9;
+    private static final int FARE_AMOUNT = 10;
+    private static final int EXTRA = 11;
+    private static final int MTA_TAX = 12;
+    private static final int TIP_AMOUNT = 13;
+    private static final int TOLLS_AMOUNT = 14;
+    private static final int IMPROVEMENT_SURCHARGE = 15;
+    private static final int TOTAL_AMOUNT = 16;
+    private static final int CONGESTION_SURCHARGE = 17;
+    private static final int AIRPORT_FEE = 18;
+
+    private final MessageType schema;
+    private final PrimitiveTypeName[] types;
+    private final int[] columns;
+    private RecordConsumer consumer;
+
+    SyntheticTripWriteSupport(MessageType schema) {
+        this.schema = schema;
+        this.types = new PrimitiveTypeName[schema.getFieldCount()];
+        this.columns = new int[types.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = schema.getType(i).asPrimitiveType().getPrimitiveTypeName();
+            columns[i] = columnCode(schema.getFieldName(i));
+        }
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(schema, new HashMap<>());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.consumer = recordConsumer;
+    }
+
+    @Override
+    public void write(SyntheticTrip trip) {
+        consumer.startMessage();
+        for (int i = 0; i < types.length; i++) {
+            writeField(i, schema.getFieldName(i), trip);
+        }
+        consumer.endMessage();
+    }
+
+    private static int columnCode(String name) {
+        String[] known = {ParquetColumns.VENDOR_ID, ParquetColumns.PICKUP_DATETIME, ParquetColumns.DROPOFF_DATETIME,
+                ParquetColumns.PASSENGER_COUNT, ParquetColumns.TRIP_DISTANCE, ParquetColumns.RATECODE_ID,
+                ParquetColumns.STORE_AND_FWD_FLAG, ParquetColumns.PU_LOCATION_ID, ParquetColumns.DO_LOCATION_ID,
+                ParquetColumns.PAYMENT_TYPE, ParquetColumns.FARE_AMOUNT, ParquetColumns.EXTRA, ParquetColumns.MTA_TAX,
+                ParquetColumns.TIP_AMOUNT, ParquetColumns.TOLLS_AMOUNT, ParquetColumns.IMPROVEMENT_SURCHARGE,
+                ParquetColumns.TOTAL_AMOUNT, ParquetColumns.CONGESTION_SURCHARGE};
+        for (int i = 0; i < known.length; i++) {
+            if (known[i].equals(name)) {
+                return i;
+            }
+        }
+        if (name.equalsIgnoreCase("airport_fee")) {
+            return AIRPORT_FEE;
+        }
+        throw new IllegalArgumentException("Unknown TLC column: " + name);
+    }
+
+    private void writeField(int index, String name, SyntheticTrip trip) {
+        switch (columns[index]) {
+            case VENDOR_ID: number(index, name, trip.vendorId); break;
+            case PICKUP_DATETIME:
+                if (!trip.pickupNull) {
+                    number(index, name, trip.pickupMicros);
+                }
+                break;
+            case DROPOFF_DATETIME: number(index, name, trip.dropoffMicros); break;
+            case PASSENGER_COUNT:
+                if (!trip.nullGroup) {
+                    number(index, name, trip.passengerCount);
+                }
+                break;
+            case TRIP_DISTANCE: decimal(index, name, trip.tripDistance); break;
+            case RATECODE_ID:
+                if (!trip.nullGroup) {
+                    number(index, name, trip.rateCodeId);
+                }
+                break;
+            case STORE_AND_FWD_FLAG:
+                if (!trip.nullGroup) {
+                    consumer.startField(name, index);
+                    consumer.addBinary("Y".equals(trip.storeAndFwdFlag) ? FLAG_Y : FLAG_N);
+                    consumer.endField(name, index);
+                }
+                break;
+            case PU_LOCATION_ID: number(index, name, trip.puLocationId); break;
+            case DO_LOCATION_ID: number(index, name, trip.doLocationId); break;
+            case PAYMENT_TYPE: number(index, name, trip.paymentType); break;
+            case FARE_AMOUNT: decimal(index, name, trip.fareAmount); break;
+            case EXTRA: decimal(index, name, trip.extra); break;
+            case MTA_TAX: decimal(index, name, trip.mtaTax); break;
+            case TIP_AMOUNT: decimal(index, name, trip.tipAmount); break;
+            case TOLLS_AMOUNT: decimal(index, name, trip.tollsAmount); break;
+            case IMPROVEMENT_SURCHARGE: decimal(index, name, trip.improvementSurcharge); break;
+            case TOTAL_AMOUNT: decimal(index, name, trip.totalAmount); break;
+            case CONGESTION_SURCHARGE:
+                if (!trip.nullGroup) {
+                    decimal(index, name, trip.congestionSurcharge);
+                }
+                break;
+            default:
+                // AIRPORT_FEE
+                if (!trip.nullGroup) {
+                    decimal(index, name, trip.airportFee);
+                }
+                break;
+        }
+    }
+
+    private void number(int index, String name, long value) {
+        consumer.startField(name, index);
+        switch (types[index]) {
+            case INT32: consumer.addInteger((int) value); break;
+            case INT64: consumer.addLong(value); break;
+            default: consumer.addDouble(value); break;
+        }
+        consumer.endField(name, index);
+    }
+
+    private void decimal(int index, String name, double value) {
+        consumer.startField(name, index);
+        consumer.addDouble(value);
+        consumer.endField(name, index);
+    }
+}
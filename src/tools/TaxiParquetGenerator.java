@@ -0,0 +1,229 @@
+package tools;
+
+import Logging.LogService;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор синтетических Parquet файлов NYC yellow taxi для нагрузочного тестирования.
+ * Один файл = один месяц (yellow_tripdata_YYYY-MM.parquet), время посадки растет внутри файла.
+ * Файлы пишутся параллельно; строки файла зависят только от seed и номера файла,
+ * поэтому данные воспроизводимы при любом количестве потоков (footer может отличаться
+ * порядком списка encodings - parquet-mr хранит его в HashSet).
+ *
+ * Запуск:
+ *   java -cp OBLoader1.jar tools.TaxiParquetGenerator --out=data --files=12 --rows=3000000
+ *
+ * Параметры (--имя=значение):
+ *   out          каталог (обязательно)
+ *   files        количество файлов / месяцев (1)
+ *   rows         строк в файле (1000000)
+ *   start        первый месяц, YYYY-MM (2024-01)
+ *   schema       yellow_2015 | yellow_2021 | yellow_2024 (yellow_2024)
+ *   rowGroupMb   размер row group в МБ (128)
+ *   codec        UNCOMPRESSED | SNAPPY | GZIP | ZSTD ... (SNAPPY)
+ *   seed         seed (1)
+ *   threads      потоков (число ядер)
+ *   skew         показатель Zipf для зон посадки/высадки, 0 = равномерно (1.1)
+ *   nullRate     доля строк с null passenger_count / RatecodeID / flag / surcharges (0.03)
+ *   badRate      доля некорректных значений в "грязных" колонках (0.001)
+ */
+public final class TaxiParquetGenerator {
+
+    private TaxiParquetGenerator() {
+        // static-only class
+    }
+
+    /** Параметры генерации. */
+    public static class Options {
+        public String out;
+        public int files = 1;
+        public long rows = 1_000_000;
+        public YearMonth start = YearMonth.of(2024, 1);
+        public TlcSchema schema = TlcSchema.YELLOW_2024;
+        public long rowGroupBytes = 128L * 1024 * 1024;
+        public CompressionCodecName codec = CompressionCodecName.SNAPPY;
+        public long seed = 1;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public double skew = 1.1;
+        public double nullRate = 0.03;
+        public double badRate = 0.001;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String arg : args) {
+                String option = arg.startsWith("--") ? arg.substring(2) : arg;
+                int eq = option.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+                }
+                values.put(option.substring(0, eq), option.substring(eq + 1));
+            }
+
+            Options options = new Options();
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                String v = e.getValue().trim();
+                switch (e.getKey()) {
+                    case "out": options.out = v; break;
+                    case "files": options.files = Integer.parseInt(v); break;
+                    case "rows": options.rows = Long.parseLong(v.replace("_", "")); break;
+                    case "start": options.start = YearMonth.parse(v); break;
+                    case "schema": options.schema = TlcSchema.parse(v); break;
+                    case "rowGroupMb": options.rowGroupBytes = Long.parseLong(v) * 1024 * 1024; break;
+                    case "codec": options.codec = CompressionCodecName.valueOf(v.toUpperCase()); break;
+                    case "seed": options.seed = Long.parseLong(v); break;
+                    case "threads": options.threads = Integer.parseInt(v); break;
+                    case "skew": options.skew = Double.parseDouble(v); break;
+                    case "nullRate": options.nullRate = Double.parseDouble(v); break;
+                    case "badRate": options.badRate = Double.parseDouble(v); break;
+                    default: throw new IllegalArgumentException("Unknown option: --" + e.getKey());
+                }
+            }
+            if (options.out == null || options.out.isEmpty()) {
+                throw new IllegalArgumentException("--out=<directory> is required");
+            }
+            return options;
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (RuntimeException e) {
+            LogService.error("❌ " + e.getMessage());
+            LogService.error("Usage: tools.TaxiParquetGenerator --out=DIR [--files=N] [--rows=N] [--start=YYYY-MM]"
+                    + " [--schema=yellow_2024] [--rowGroupMb=128] [--codec=SNAPPY] [--seed=1] [--threads=N]"
+                    + " [--skew=1.1] [--nullRate=0.03] [--badRate=0.001]");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            generate(options);
+        } catch (Exception e) {
+            LogService.errorf("❌ Generation failed: %s", e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Сгенерировать файлы.
+     *
+     * @return пути созданных файлов по порядку месяцев
+     */
+    public static List<String> generate(Options options) throws Exception {
+        File dir = new File(options.out);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+
+        LogService.infof("Generating %d file(s) x %,d rows, schema %s, codec %s, row group %d MB, %d threads",
+                options.files, options.rows, options.schema, options.codec,
+                options.rowGroupBytes / (1024 * 1024), options.threads);
+
+        long startTime = System.currentTimeMillis();
+        AtomicLong written = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(options.threads, options.files)));
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < options.files; i++) {
+            int fileIndex = i;
+            futures.add(executor.submit(() -> writeFile(options, dir, fileIndex, written)));
+        }
+
+        List<String> files = new ArrayList<>();
+        try {
+            for (Future<String> future : futures) {
+                files.add(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        LogService.infof("✅ Generated %,d rows in %d file(s) in %.1f sec (%.0f rows/sec)",
+                written.get(), files.size(), elapsed / 1000.0, written.get() * 1000.0 / elapsed);
+        return files;
+    }
+
+    private static String writeFile(Options options, File dir, int fileIndex, AtomicLong written) throws IOException {
+        YearMonth month = options.start.plusMonths(fileIndex);
+        File file = new File(dir, String.format("yellow_tripdata_%s.parquet", month));
+
+        long fileStart = System.currentTimeMillis();
+        // Seed файла: воспроизводимо и независимо от порядка выполнения
+        write(file, options, month, options.seed * 1_000_003L + fileIndex);
+        written.addAndGet(options.rows);
+
+        LogService.infof("  %s: %,d rows, %,d KB in %,d ms", file.getName(), options.rows,
+                file.length() / 1024, System.currentTimeMillis() - fileStart);
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Записать один файл: options.rows строк за месяц month из генератора с seed fileSeed.
+     * Используется и бенчмарками (фикстуры) - формат строк у них общий.
+     */
+    public static void write(File file, Options options, YearMonth month, long fileSeed) throws IOException {
+        long monthStart = month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) * 1_000_000L;
+        long monthEnd = month.plusMonths(1).atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) * 1_000_000L;
+        double step = (monthEnd - monthStart) / (double) Math.max(1, options.rows);
+
+        SyntheticTrip trip = new SyntheticTrip(fileSeed, options.skew, options.nullRate, options.badRate);
+
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        try (ParquetWriter<SyntheticTrip> writer = new Builder(new Path(file.getAbsolutePath()),
+                options.schema.getMessageType())
+                .withConf(conf)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .withCompressionCodec(options.codec)
+                .withRowGroupSize(options.rowGroupBytes)
+                .withDictionaryEncoding(true)
+                .build()) {
+            for (long i = 0; i < options.rows; i++) {
+                trip.next(monthStart + (long) (i * step));
+                writer.write(trip);
+            }
+        }
+        new File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".crc").delete();
+    }
+
+    private static class Builder extends ParquetWriter.Builder<SyntheticTrip, Builder> {
+        private final MessageType schema;
+
+        Builder(Path path, MessageType schema) {
+            super(path);
+            this.schema = schema;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<SyntheticTrip> getWriteSupport(Configuration conf) {
+            return new SyntheticTripWriteSupport(schema);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package tools;
+
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+
+/**
+ * Варианты схемы TLC yellow taxi, встречающиеся в реальных файлах разных лет.
+ * Отличаются типами колонок (INT32 / INT64 / DOUBLE для id и счетчиков)
+ * и набором колонок (congestion_surcharge с 2019, airport_fee с 2022).
+ */
+public enum TlcSchema {
+    /** До 2019: все id INT64, нет congestion_surcharge и airport_fee. */
+    YELLOW_2015("message schema {"
+            + " optional int64 VendorID;"
+            + " optional int64 tpep_pickup_datetime (TIMESTAMP(MICROS,false));"
+            + " optional int64 tpep_dropoff_datetime (TIMESTAMP(MICROS,false));"
+            + " optional int64 passenger_count; optional double trip_distance; optional int64 RatecodeID;"
+            + " optional binary store_and_fwd_flag (STRING);"
+            + " optional int64 PULocationID; optional int64 DOLocationID; optional int64 payment_type;"
+            + " optional double fare_amount; optional double extra; optional double mta_tax;"
+            + " optional double tip_amount; optional double tolls_amount; optional double improvement_surcharge;"
+            + " optional double total_amount; }"),
+
+    /** 2020-2022: passenger_count / RatecodeID DOUBLE, id INT64, airport_fee. */
+    YELLOW_2021("message schema {"
+            + " optional int64 VendorID;"
+            + " optional int64 tpep_pickup_datetime (TIMESTAMP(MICROS,false));"
+            + " optional int64 tpep_dropoff_datetime (TIMESTAMP(MICROS,false));"
+            + " optional double passenger_count; optional double trip_distance; optional double RatecodeID;"
+            + " optional binary store_and_fwd_flag (STRING);"
+            + " optional int64 PULocationID; optional int64 DOLocationID; optional int64 payment_type;"
+            + " optional double fare_amount; optional double extra; optional double mta_tax;"
+            + " optional double tip_amount; optional double tolls_amount; optional double improvement_surcharge;"
+            + " optional double total_amount; optional double congestion_surcharge; optional double airport_fee; }"),
+
+    /** С 2023: VendorID / location INT32, passenger_count / RatecodeID INT64, Airport_fee. */
+    YELLOW_2024("message schema {"
+            + " optional int32 VendorID;"
+            + " optional int64 tpep_pickup_datetime (TIMESTAMP(MICROS,false));"
+            + " optional int64 tpep_dropoff_datetime (TIMESTAMP(MICROS,false));"
+            + " optional int64 passenger_count; optional double trip_distance; optional int64 RatecodeID;"
+            + " optional binary store_and_fwd_flag (STRING);"
+            + " optional int32 PULocationID; optional int32 DOLocationID; optional int64 payment_type;"
+            + " optional double fare_amount; optional double extra; optional double mta_tax;"
+            + " optional double tip_amount; optional double tolls_amount; optional double improvement_surcharge;"
+            + " optional double total_amount; optional double congestion_surcharge; optional double Airport_fee; }");
+
+    private final MessageType messageType;
+
+    TlcSchema(String schema) {
+        this.messageType = MessageTypeParser.parseMessageType(schema);
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    /** Вариант по имени без учета регистра (yellow_2024). */
+    public static TlcSchema parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
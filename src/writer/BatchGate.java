@@ -0,0 +1,101 @@
+package writer;
+
+import config.DatabaseType;
+import metrics.WriterMetrics;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение числа batch'ей, одновременно выполняющихся в БД (MAX_IN_FLIGHT_BATCHES). С виртуальными потоками задач может быть намного больше, чем
+ * запросов, которые стоит держать в БД одновременно: параллелизм записи задается
+ * разрешениями, а не числом потоков ОС. Перед разрешением batch проходит LoadThrottle
+ * (лимиты строк/с и байт/с); оба ожидания попадают в стадию batch_wait.
+ *
+ * Разрешения и LoadThrottle ведутся по целевой БД: в режиме fan-out у каждой цели свои
+ * MAX_IN_FLIGHT_BATCHES разрешений, и медленная цель не занимает слоты остальных.
+ *
+ * Разрешение берется на executeBatch + commit:
+ *   BatchGate.Permit permit = BatchGate.acquire(DatabaseType.POSTGRESQL, metrics, rows, bytes);
+ *   try { ... } finally { permit.close(); }
+ */
+public final class BatchGate {
+
+    private BatchGate() {
+        // static-only class
+    }
+
+    /** Разрешение на выполнение batch'а, возвращается при close(). */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** Семафоры целей при одном значении ограничения. */
+    private static final class Gates {
+        final int maxInFlight;      // 0 = без ограничения
+        final Map<DatabaseType, Semaphore> permits = new ConcurrentHashMap<>();
+
+        Gates(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        Semaphore forTarget(DatabaseType target) {
+            return maxInFlight > 0 ? permits.computeIfAbsent(target, t -> new Semaphore(maxInFlight, true)) : null;
+        }
+    }
+
+    private static volatile Gates gates = new Gates(0);
+
+    /**
+     * Задать ограничение на каждую целевую БД (0 = без ограничения).
+     * Вызывается при старте и из JMX во время загрузки.
+     */
+    public static void configure(int maxInFlight) {
+        gates = new Gates(Math.max(0, maxInFlight));
+    }
+
+    /**
+     * Дождаться лимита скорости и разрешения на batch из rows строк и примерно bytes байт
+     * в целевой БД target.
+     */
+    static Permit acquire(DatabaseType target, WriterMetrics metrics, long rows, long bytes) throws SQLException {
+        long waitStart = System.nanoTime();
+        long throttleNanos = LoadThrottle.reserve(target, rows, bytes);
+        boolean waited = throttleNanos > 0;
+        if (waited) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(throttleNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while throttled", "57014", e);
+            }
+        }
+
+        Semaphore semaphore = gates.forTarget(target);
+        if (semaphore != null && !semaphore.tryAcquire()) {
+            waited = true;
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a batch slot", "57014", e);
+            }
+        }
+        if (waited) {
+            metrics.batchWait(System.nanoTime() - waitStart);
+        }
+
+        long batchStart = System.nanoTime();
+        // Разрешение возвращается в тот семафор, из которого взято
+        return () -> {
+            LoadThrottle.batchCompleted(target, System.nanoTime() - batchStart);
+            if (semaphore != null) {
+                semaphore.release();
+            }
+        };
+    }
+}
@@ -0,0 +1,139 @@
+package writer;
+
+import config.AppConfig;
+import Logging.LogService;
+import metrics.LoaderMetrics;
+import metrics.WriterMetrics;
+import model.TaxiTrip;
+import plan.LoadProgress;
+import reader.TripRow;
+import reader.TripRowSink;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Приемник без записи: строки только учитываются, batch'и по BATCH_SIZE "выполняются" мгновенно.
+ * Показывает потолок конвейера - чтение Parquet и конвертацию без базы данных.
+ * Статистика, прогресс и метрики стадий - те же, что у настоящих writer'ов (execute_batch ~ 0).
+ *
+ * Из каждой строки берется пара значений в контрольную сумму, чтобы JIT не выбросил
+ * конвертацию как неиспользуемую; время bind на строку не меряется (это и есть стоимость приемника).
+ */
+public class BlackholeWriter implements DatabaseWriter, TripRowSink {
+
+    private final String taskId;
+    private final WriterMetrics metrics;
+    private int batchCount = 0;
+    private long totalInserted = 0;
+    private long checksum = 0;
+    private final long startTime;
+
+    public BlackholeWriter(String taskId) {
+        this.taskId = taskId;
+        this.metrics = LoaderMetrics.forTask(taskId);
+        this.startTime = System.currentTimeMillis();
+        LogService.infof("[%s] Blackhole sink: rows are counted and discarded", taskId);
+    }
+
+    @Override
+    public void addRow(TripRow row) throws SQLException {
+        checksum += row.pickupLocalMicros ^ Double.doubleToRawLongBits(row.doubles[TripRow.TOTAL_AMOUNT]);
+        afterRow();
+    }
+
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        checksum += trip.getPickupLocalMicros() ^ Double.doubleToRawLongBits(trip.getTotalAmount());
+        afterRow();
+    }
+
+    @Override
+    public void addTrips(List<TaxiTrip> trips) throws SQLException {
+        for (TaxiTrip trip : trips) {
+            addTrip(trip);
+        }
+    }
+
+    private void afterRow() throws SQLException {
+        batchCount++;
+        if (batchCount >= AppConfig.BATCH_SIZE) {
+            executeBatch();
+        }
+    }
+
+    @Override
+    public void executeBatch() {
+        if (batchCount == 0) {
+            return;
+        }
+
+        int recordsInBatch = batchCount;
+        metrics.executeStarted();
+        metrics.batchCompleted(recordsInBatch);
+
+        totalInserted += recordsInBatch;
+        LoadProgress.add(recordsInBatch);
+
+        if (totalInserted % AppConfig.LOG_INTERVAL == 0) {
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (elapsed > 0) {
+                double rate = (totalInserted * 1000.0) / elapsed;
+                LogService.infof("[%s] Consumed %,d records (%.0f records/sec)",
+                        taskId, totalInserted, rate);
+            } else {
+                LogService.infof("[%s] Consumed %,d records", taskId, totalInserted);
+            }
+        }
+
+        batchCount = 0;
+    }
+
+    @Override
+    public void flush() {
+        if (batchCount > 0) {
+            executeBatch();
+        }
+    }
+
+    @Override
+    public long getTotalInserted() {
+        return totalInserted;
+    }
+
+    @Override
+    public String getPerformanceStats() {
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        if (elapsed > 0) {
+            double rate = (totalInserted * 1000.0) / elapsed;
+            double seconds = elapsed / 1000.0;
+            return String.format(
+                    "[%s] Total: %,d records | Time: %.1f sec | Rate: %.0f records/sec",
+                    taskId, totalInserted, seconds, rate
+            );
+        } else {
+            return String.format(
+                    "[%s] Total: %,d records | Time: <1ms",
+                    taskId, totalInserted
+            );
+        }
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public void testInsert() {
+        LogService.infof("[%s] ✅ Blackhole sink needs no test insert", taskId);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        LogService.infof("[%s] ✅ BlackholeWriter closed: %,d records (checksum %016x)",
+                taskId, totalInserted, checksum);
+    }
+}
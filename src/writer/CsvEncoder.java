@@ -0,0 +1,200 @@
+package writer;
+
+import model.TaxiTrip;
+import reader.TripRow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Кодирует строки taxi_trips в CSV (UTF-8, разделитель запятая, '\n', без заголовка)
+ * прямо в переиспользуемый direct ByteBuffer, без String и форматтеров на строку.
+ * Порядок колонок - как в PostgreSQLCopyWriter.COPY_SQL; даты "yyyy-MM-dd HH:mm:ss[.ffffff]",
+ * суммы с 2 знаками, отсутствующая дата - пустое поле.
+ *
+ * Загрузка: COPY ... (FORMAT csv), bcp -c -t, (пустое поле = NULL),
+ * LOAD DATA INFILE ... FIELDS TERMINATED BY ',' (для дат - NULLIF(@col, '')).
+ */
+public class CsvEncoder implements RowEncoder {
+
+    // Максимальный размер строки: 2 даты по 26 символов, 16 чисел до 20 символов, флаг
+    static final int MAX_ROW_BYTES = 512;
+
+    private final ByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+
+    // Дата последней строки: строки файла идут почти по порядку времени
+    private long cachedDay = Long.MIN_VALUE;
+    private final byte[] cachedDate = new byte[10];
+
+    public CsvEncoder(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, MAX_ROW_BYTES * 2));
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public boolean hasRoomForRow() {
+        return buffer.remaining() >= MAX_ROW_BYTES;
+    }
+
+    /** Заголовка нет: bcp и LOAD DATA иначе требуют пропуска первой строки. */
+    @Override
+    public void writeHeader() {
+    }
+
+    @Override
+    public void writeTrailer() {
+    }
+
+    @Override
+    public void addRow(TripRow row) throws SQLException {
+        putTimestamp(row.pickupLocalMicros);
+        putInt(row.ints[TripRow.VENDOR_ID]);
+        putTimestamp(row.dropoffLocalMicros);
+        putInt(row.ints[TripRow.PASSENGER_COUNT]);
+        putDecimal(row.doubles[TripRow.TRIP_DISTANCE]);
+        putInt(row.ints[TripRow.RATECODE_ID]);
+        putFlag(row.storeAndFwdFlag);
+        putInt(row.ints[TripRow.PU_LOCATION_ID]);
+        putInt(row.ints[TripRow.DO_LOCATION_ID]);
+        putInt(row.ints[TripRow.PAYMENT_TYPE]);
+        putDecimal(row.doubles[TripRow.FARE_AMOUNT]);
+        putDecimal(row.doubles[TripRow.EXTRA]);
+        putDecimal(row.doubles[TripRow.MTA_TAX]);
+        putDecimal(row.doubles[TripRow.TIP_AMOUNT]);
+        putDecimal(row.doubles[TripRow.TOLLS_AMOUNT]);
+        putDecimal(row.doubles[TripRow.IMPROVEMENT_SURCHARGE]);
+        putDecimal(row.doubles[TripRow.TOTAL_AMOUNT]);
+        putDecimal(row.doubles[TripRow.CONGESTION_SURCHARGE]);
+        endRow();
+    }
+
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        putTimestamp(trip.getPickupLocalMicros());
+        putInt(trip.getVendorId());
+        putTimestamp(trip.getDropoffLocalMicros());
+        putInt(trip.getPassengerCount());
+        putDecimal(trip.getTripDistance());
+        putInt(trip.getRateCodeId());
+        putFlag(trip.getStoreAndFwdFlag());
+        putInt(trip.getPuLocationId());
+        putInt(trip.getDoLocationId());
+        putInt(trip.getPaymentType());
+        putDecimal(trip.getFareAmount());
+        putDecimal(trip.getExtra());
+        putDecimal(trip.getMtaTax());
+        putDecimal(trip.getTipAmount());
+        putDecimal(trip.getTollsAmount());
+        putDecimal(trip.getImprovementSurcharge());
+        putDecimal(trip.getTotalAmount());
+        putDecimal(trip.getCongestionSurcharge());
+        endRow();
+    }
+
+    private void endRow() {
+        // Последний разделитель строки заменяется переводом строки
+        buffer.put(buffer.position() - 1, (byte) '\n');
+    }
+
+    private void putTimestamp(long localMicros) {
+        if (localMicros != TripRow.NO_TIMESTAMP) {
+            long seconds = Math.floorDiv(localMicros, 1_000_000L);
+            int micros = (int) Math.floorMod(localMicros, 1_000_000L);
+            long day = Math.floorDiv(seconds, 86_400L);
+            int secondOfDay = (int) Math.floorMod(seconds, 86_400L);
+            if (day != cachedDay) {
+                cacheDate(day);
+            }
+            buffer.put(cachedDate);
+            buffer.put((byte) ' ');
+            putTwoDigits(secondOfDay / 3600);
+            buffer.put((byte) ':');
+            putTwoDigits(secondOfDay / 60 % 60);
+            buffer.put((byte) ':');
+            putTwoDigits(secondOfDay % 60);
+            if (micros != 0) {
+                buffer.put((byte) '.');
+                for (int divisor = 100_000; divisor > 0; divisor /= 10) {
+                    buffer.put((byte) ('0' + micros / divisor % 10));
+                }
+            }
+        }
+        buffer.put((byte) ',');
+    }
+
+    private void cacheDate(long day) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        int year = date.getYear();
+        cachedDate[0] = (byte) ('0' + year / 1000 % 10);
+        cachedDate[1] = (byte) ('0' + year / 100 % 10);
+        cachedDate[2] = (byte) ('0' + year / 10 % 10);
+        cachedDate[3] = (byte) ('0' + year % 10);
+        cachedDate[4] = '-';
+        cachedDate[5] = (byte) ('0' + date.getMonthValue() / 10);
+        cachedDate[6] = (byte) ('0' + date.getMonthValue() % 10);
+        cachedDate[7] = '-';
+        cachedDate[8] = (byte) ('0' + date.getDayOfMonth() / 10);
+        cachedDate[9] = (byte) ('0' + date.getDayOfMonth() % 10);
+        cachedDay = day;
+    }
+
+    private void putTwoDigits(int value) {
+        buffer.put((byte) ('0' + value / 10));
+        buffer.put((byte) ('0' + value % 10));
+    }
+
+    private void putInt(int value) {
+        putLong(value);
+        buffer.put((byte) ',');
+    }
+
+    /** Сумма с 2 знаками; значения из reader'а уже округлены до центов (TripValues.clampDecimal). */
+    private void putDecimal(double value) {
+        long cents = Math.round(value * 100.0);
+        if (cents < 0) {
+            buffer.put((byte) '-');
+            cents = -cents;
+        }
+        putLong(cents / 100);
+        buffer.put((byte) '.');
+        putTwoDigits((int) (cents % 100));
+        buffer.put((byte) ',');
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    private void putFlag(String value) {
+        if (value != null && value.length() == 1 && value.charAt(0) > ' ' && value.charAt(0) < 0x80
+                && value.charAt(0) != ',' && value.charAt(0) != '"') {
+            buffer.put((byte) value.charAt(0));
+        } else if (value != null && !value.isEmpty()) {
+            // Нестандартное значение флага: в кавычках, кавычки удваиваются
+            buffer.put((byte) '"');
+            for (byte b : value.replace("\"", "\"\"").getBytes(StandardCharsets.UTF_8)) {
+                buffer.put(b);
+            }
+            buffer.put((byte) '"');
+        }
+        buffer.put((byte) ',');
+    }
+}
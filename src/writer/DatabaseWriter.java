@@ -13,6 +13,7 @@ public interface DatabaseWriter extends AutoCloseable {
 
     /**
      * Добавить одну поездку в batch.
+     * Значения нужно забрать до возврата: в режиме TRIP_REUSE объект переиспользуется reader'ом.
      */
     void addTrip(TaxiTrip trip) throws SQLException;
 
@@ -3,8 +3,13 @@ package writer;
 import config.AppConfig;
 import config.DatabaseType;
 import Logging.LogService;
+import reader.ParquetColumns;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Фабрика для создания нужного DatabaseWriter в зависимости от типа базы данных.
@@ -23,8 +28,22 @@ public class DatabaseWriterFactory {
      * @throws SQLException если не удалось создать подключение
      */
     public static DatabaseWriter createWriter(String taskId) throws SQLException {
-        DatabaseType dbType = AppConfig.DATABASE_TYPE;
+        if (FanOut.isEnabled()) {
+            // Строки уходят во все FANOUT_TARGETS через их пулы writer'ов
+            return new FanOutWriter(taskId);
+        }
+        return createWriter(AppConfig.DATABASE_TYPE, taskId);
+    }
 
+    /**
+     * Создать DatabaseWriter для указанной базы данных (цели FANOUT_TARGETS, проверка подключения).
+     *
+     * @param dbType тип базы данных
+     * @param taskId идентификатор задачи для логирования
+     * @return экземпляр DatabaseWriter
+     * @throws SQLException если не удалось создать подключение
+     */
+    public static DatabaseWriter createWriter(DatabaseType dbType, String taskId) throws SQLException {
         LogService.infof("[%s] Creating writer for database: %s", taskId, dbType.getDisplayName());
 
         switch (dbType) {
@@ -32,13 +51,24 @@ public class DatabaseWriterFactory {
                 return new OceanBaseWriter(taskId);
 
             case POSTGRESQL:
-                return new PostgreSQLWriter(taskId);
+                if (!AppConfig.POSTGRESQL_SHARDS.isEmpty()) {
+                    return new ShardedPostgreSQLWriter(taskId);
+                }
+                return AppConfig.POSTGRESQL_COPY
+                        ? new PostgreSQLCopyWriter(taskId)
+                        : new PostgreSQLWriter(taskId);
 
             case MSSQL:
                 return new MSSQLWriter(taskId);
 
             case MONGODB:
                 return new MongoDBWriter(taskId);
+
+            case BLACKHOLE:
+                return new BlackholeWriter(taskId);
+
+            case FILE:
+                return new FileSinkWriter(taskId);
             default:
                 throw new IllegalStateException("Unsupported database type: " + dbType);
         }
@@ -54,10 +84,44 @@ public class DatabaseWriterFactory {
         return createWriter("Main");
     }
 
+    /**
+     * Получить набор Parquet колонок, нужных writer'у текущей БД.
+     * Reader запрашивает только их, остальные column chunks не читаются и не распаковываются.
+     */
+    public static Set<String> getRequiredColumns() {
+        if (FanOut.isEnabled()) {
+            // Объединение колонок всех целей
+            Set<String> columns = new HashSet<>();
+            for (DatabaseType target : AppConfig.FANOUT_TARGETS) {
+                columns.addAll(getRequiredColumns(target));
+            }
+            return columns;
+        }
+        return getRequiredColumns(AppConfig.DATABASE_TYPE);
+    }
+
+    /**
+     * Колонки writer'а типа dbType без подключения: набор объявляет сам класс writer'а
+     * (MongoDBWriter.REQUIRED_COLUMNS), остальные writer'ы пишут все колонки.
+     */
+    private static Set<String> getRequiredColumns(DatabaseType dbType) {
+        if (dbType == DatabaseType.MONGODB) {
+            return MongoDBWriter.REQUIRED_COLUMNS;
+        }
+        return ParquetColumns.ALL;
+    }
+
     /**
      * Получить название текущей базы данных.
      */
     public static String getCurrentDatabaseName() {
+        if (FanOut.isEnabled()) {
+            List<String> names = new ArrayList<>();
+            for (DatabaseType target : AppConfig.FANOUT_TARGETS) {
+                names.add(target.getDisplayName());
+            }
+            return String.join(" + ", names);
+        }
         return AppConfig.DATABASE_TYPE.getDisplayName();
     }
 }
\ No newline at end of file
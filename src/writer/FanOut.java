@@ -0,0 +1,215 @@
+package writer;
+
+import config.AppConfig;
+import config.DatabaseType;
+import Logging.LogService;
+import model.TaxiTrip;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Раздача batch'ей нескольким целевым БД (FANOUT_TARGETS): Parquet читается и декодируется
+ * один раз, каждый batch (FanOutWriter) кладется в очередь каждой цели.
+ *
+ * У цели свой пул из FANOUT_THREADS потоков со своими writer'ами (createWriter(type, taskId))
+ * и своя ограниченная очередь на FANOUT_BUFFER_BATCHES batch'ей. Медленная цель отстает
+ * от остальных не больше, чем на свою очередь: когда очередь полна, публикация ждет
+ * (время ожидания - "stalled" в сводке), и чтение замедляется до скорости этой цели.
+ *
+ * Ошибка записи в цель останавливает загрузку, как ошибка batch'а обычного writer'а:
+ * цель помечается сбойной, ее очередь дальше только разбирается, ошибку получает
+ * FanOutWriter, опубликовавший batch.
+ */
+public final class FanOut {
+
+    private FanOut() {
+        // static-only class
+    }
+
+    /** Batch, разосланный всем целям; done() вызывается каждой целью. */
+    static final class Batch {
+        final List<TaxiTrip> trips;
+        private final FanOutWriter owner;
+        private final AtomicInteger pending;
+        private volatile boolean failed;
+
+        Batch(List<TaxiTrip> trips, FanOutWriter owner, int targets) {
+            this.trips = trips;
+            this.owner = owner;
+            this.pending = new AtomicInteger(targets);
+        }
+
+        void done(Target target, SQLException error) {
+            if (error != null) {
+                failed = true;
+                owner.targetFailed(target.type, error);
+            }
+            if (pending.decrementAndGet() == 0) {
+                owner.batchDone(failed ? 0 : trips.size());
+            }
+        }
+    }
+
+    private static final Batch STOP = new Batch(new ArrayList<>(), null, 0);
+
+    /** Целевая БД: очередь batch'ей и потоки ее writer'ов. */
+    private static final class Target {
+        final DatabaseType type;
+        final BlockingQueue<Batch> queue;
+        final List<Thread> workers = new ArrayList<>();
+        final LongAdder rows = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        final LongAdder stallNanos = new LongAdder();
+        volatile SQLException failure;
+        final long startNanos = System.nanoTime();
+        volatile long busyUntilNanos;
+
+        Target(DatabaseType type, int bufferBatches) {
+            this.type = type;
+            this.queue = new ArrayBlockingQueue<>(bufferBatches);
+        }
+    }
+
+    private static List<Target> targets;
+
+    public static boolean isEnabled() {
+        return !AppConfig.FANOUT_TARGETS.isEmpty();
+    }
+
+    /**
+     * Запустить пулы writer'ов целей (при первом FanOutWriter).
+     */
+    private static synchronized List<Target> targets() {
+        if (targets == null) {
+            int threads = AppConfig.FANOUT_THREADS > 0 ? AppConfig.FANOUT_THREADS : AppConfig.THREAD_COUNT;
+            List<Target> started = new ArrayList<>();
+            for (DatabaseType type : AppConfig.FANOUT_TARGETS) {
+                Target target = new Target(type, Math.max(1, AppConfig.FANOUT_BUFFER_BATCHES));
+                for (int i = 0; i < threads; i++) {
+                    String taskId = type.name().toLowerCase() + "-" + (i + 1);
+                    Thread worker = new Thread(() -> drain(target, taskId), "FanOut-" + taskId);
+                    worker.setDaemon(true);
+                    worker.start();
+                    target.workers.add(worker);
+                }
+                started.add(target);
+            }
+            LogService.infof("Fan-out: %d targets x %d writer threads, buffer %d batches per target",
+                    started.size(), threads, AppConfig.FANOUT_BUFFER_BATCHES);
+            targets = started;
+        }
+        return targets;
+    }
+
+    static int targetCount() {
+        return AppConfig.FANOUT_TARGETS.size();
+    }
+
+    /**
+     * Отдать batch всем целям. Ждет, пока в очереди каждой цели найдется место.
+     */
+    static void publish(List<TaxiTrip> trips, FanOutWriter owner) throws InterruptedException {
+        List<Target> all = targets();
+        Batch batch = new Batch(trips, owner, all.size());
+        for (Target target : all) {
+            if (!target.queue.offer(batch)) {
+                long stallStart = System.nanoTime();
+                target.queue.put(batch);
+                target.stallNanos.add(System.nanoTime() - stallStart);
+            }
+        }
+    }
+
+    private static void drain(Target target, String taskId) {
+        DatabaseWriter writer = null;
+        try {
+            writer = DatabaseWriterFactory.createWriter(target.type, taskId);
+        } catch (SQLException e) {
+            LogService.errorf("[%s] Could not connect: %s", taskId, e.getMessage());
+            target.failure = e;
+        }
+        try {
+            while (true) {
+                Batch batch = target.queue.take();
+                if (batch == STOP) {
+                    break;
+                }
+                SQLException failure = target.failure;
+                if (failure == null) {
+                    try {
+                        writer.addTrips(batch.trips);
+                        writer.executeBatch();
+                        target.rows.add(batch.trips.size());
+                        target.batches.increment();
+                        target.busyUntilNanos = System.nanoTime();
+                    } catch (SQLException e) {
+                        LogService.errorf("[%s] Fan-out target %s failed: %s", taskId, target.type, e.getMessage());
+                        target.failure = e;
+                        failure = e;
+                    }
+                }
+                batch.done(target, failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (SQLException e) {
+                    LogService.errorf("[%s] Could not close writer: %s", taskId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Остановить пулы целей (все batch'и к этому моменту выполнены - FanOutWriter.flush)
+     * и вывести сводку по целям.
+     */
+    public static void close() {
+        List<Target> all;
+        synchronized (FanOut.class) {
+            all = targets;
+            targets = null;
+        }
+        if (all == null) {
+            return;
+        }
+        for (Target target : all) {
+            for (int i = 0; i < target.workers.size(); i++) {
+                try {
+                    target.queue.put(STOP);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        for (Target target : all) {
+            for (Thread worker : target.workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        LogService.info("=== Fan-out Targets ===");
+        for (Target target : all) {
+            long rows = target.rows.sum();
+            long busyNanos = Math.max(1, target.busyUntilNanos - target.startNanos);
+            LogService.infof("  %s: %,d rows | %,d batches | %.0f rows/sec | stalled readers %.1f s%s",
+                    target.type, rows, target.batches.sum(), rows * 1e9 / busyNanos,
+                    target.stallNanos.sum() / 1e9,
+                    target.failure != null ? " | FAILED: " + target.failure.getMessage() : "");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package writer;
+
+import config.AppConfig;
+import config.DatabaseType;
+import Logging.LogService;
+import model.TaxiTrip;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writer задачи в режиме FANOUT_TARGETS: собирает строки в batch'и по BATCH_SIZE и отдает
+ * их FanOut, который пишет каждый batch во все целевые БД. Сам к БД не подключается.
+ *
+ * addTrip копирует строку (в режиме TRIP_REUSE объект переиспользуется reader'ом),
+ * addTrips берет список как есть - его строки больше не меняются и читаются целями
+ * параллельно. flush() ждет, пока все batch'и задачи запишут все цели, и пробрасывает
+ * ошибку цели; getTotalInserted() - строки, записанные во все цели.
+ */
+public class FanOutWriter implements DatabaseWriter {
+
+    private final String taskId;
+    private final int targets;
+    private List<TaxiTrip> batch;
+    private int outstanding;           // отданные FanOut batch'и, которые записали еще не все цели
+    private long totalInserted;
+    private SQLException failure;
+    private final long startTime;
+
+    public FanOutWriter(String taskId) {
+        this.taskId = taskId;
+        this.targets = FanOut.targetCount();
+        this.batch = new ArrayList<>(AppConfig.BATCH_SIZE);
+        this.startTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        batch.add(copyOf(trip));
+        if (batch.size() >= AppConfig.BATCH_SIZE) {
+            executeBatch();
+        }
+    }
+
+    @Override
+    public void addTrips(List<TaxiTrip> trips) throws SQLException {
+        int batchSize = AppConfig.BATCH_SIZE;
+        int from = 0;
+        while (from < trips.size()) {
+            int to = Math.min(trips.size(), from + batchSize - batch.size());
+            batch.addAll(trips.subList(from, to));
+            from = to;
+            if (batch.size() >= batchSize) {
+                executeBatch();
+            }
+        }
+    }
+
+    @Override
+    public void executeBatch() throws SQLException {
+        checkFailure();
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<TaxiTrip> published = batch;
+        batch = new ArrayList<>(AppConfig.BATCH_SIZE);
+        synchronized (this) {
+            outstanding++;
+        }
+        try {
+            FanOut.publish(published, this);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for fan-out buffer", e);
+        }
+    }
+
+    /** Batch записан всеми целями (вызывается потоком цели). */
+    synchronized void batchDone(int rows) {
+        outstanding--;
+        totalInserted += rows;
+        notifyAll();
+    }
+
+    /** Цель не записала batch (вызывается потоком цели). */
+    synchronized void targetFailed(DatabaseType target, SQLException error) {
+        if (failure == null) {
+            failure = new SQLException("Fan-out target " + target + " failed: " + error.getMessage(), error);
+        }
+    }
+
+    private synchronized void checkFailure() throws SQLException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        executeBatch();
+        synchronized (this) {
+            while (outstanding > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for fan-out targets", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    @Override
+    public synchronized long getTotalInserted() {
+        return totalInserted;
+    }
+
+    @Override
+    public String getPerformanceStats() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        return String.format("[%s] Total: %,d records to %d targets | Time: %.1f sec | Rate: %.0f records/sec",
+                taskId, getTotalInserted(), targets, elapsed / 1000.0, getTotalInserted() * 1000.0 / elapsed);
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public void testInsert() throws SQLException {
+        TaxiTrip testTrip = new TaxiTrip();
+        testTrip.setVendorId(1);
+        testTrip.setPickupDatetime(LocalDateTime.now());
+        testTrip.setDropoffDatetime(LocalDateTime.now());
+        testTrip.setPassengerCount(1);
+        testTrip.setStoreAndFwdFlag("N");
+        addTrip(testTrip);
+        flush();
+        LogService.infof("[%s] ✅ Test insert successful", taskId);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        flush();
+    }
+
+    private static TaxiTrip copyOf(TaxiTrip trip) {
+        TaxiTrip copy = new TaxiTrip();
+        copy.setVendorId(trip.getVendorId());
+        copy.setPickupLocalMicros(trip.getPickupLocalMicros());
+        copy.setDropoffLocalMicros(trip.getDropoffLocalMicros());
+        copy.setPassengerCount(trip.getPassengerCount());
+        copy.setTripDistance(trip.getTripDistance());
+        copy.setRateCodeId(trip.getRateCodeId());
+        copy.setStoreAndFwdFlag(trip.getStoreAndFwdFlag());
+        copy.setPuLocationId(trip.getPuLocationId());
+        copy.setDoLocationId(trip.getDoLocationId());
+        copy.setPaymentType(trip.getPaymentType());
+        copy.setFareAmount(trip.getFareAmount());
+        copy.setExtra(trip.getExtra());
+        copy.setMtaTax(trip.getMtaTax());
+        copy.setTipAmount(trip.getTipAmount());
+        copy.setTollsAmount(trip.getTollsAmount());
+        copy.setImprovementSurcharge(trip.getImprovementSurcharge());
+        copy.setTotalAmount(trip.getTotalAmount());
+        copy.setCongestionSurcharge(trip.getCongestionSurcharge());
+        return copy;
+    }
+}
@@ -0,0 +1,259 @@
+package writer;
+
+import config.AppConfig;
+import config.FileSinkFormat;
+import Logging.LogService;
+import metrics.LoaderMetrics;
+import metrics.WriterMetrics;
+import model.TaxiTrip;
+import plan.LoadProgress;
+import reader.TripRow;
+import reader.TripRowSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Приемник в локальные файлы bulk-загрузки: PostgreSQL binary COPY (PgCopyEncoder) или CSV
+ * (CsvEncoder) в каталоге FILE_SINK_DIR. Отделяет скорость reader'а от скорости БД и позволяет
+ * заранее подготовить файлы для COPY / bcp / LOAD DATA INFILE.
+ *
+ * Один writer = один файл &lt;TABLE_NAME&gt;-&lt;номер&gt;-&lt;taskId&gt;.bin|csv, файл создается при первой строке.
+ * Batch из BATCH_SIZE строк = запись буфера в файл (execute_batch), commit нет;
+ * на диск (fsync) файл сбрасывается при закрытии.
+ */
+public class FileSinkWriter implements DatabaseWriter, TripRowSink {
+
+    // Размер буфера: по заполнении данные пишутся в файл
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    // Номер файла на весь процесс: writer'ы создаются на каждый Parquet файл с теми же taskId
+    private static final AtomicInteger FILE_SEQUENCE = new AtomicInteger();
+
+    private final String taskId;
+    private final WriterMetrics metrics;
+    private final RowEncoder encoder;
+    private final File directory;
+    private File file;
+    private FileChannel channel;
+    private int batchCount = 0;
+    private long totalInserted = 0;
+    private long totalBytes = 0;
+    private final long startTime;
+
+    public FileSinkWriter(String taskId) throws SQLException {
+        this.taskId = taskId;
+        this.metrics = LoaderMetrics.forTask(taskId);
+
+        if (AppConfig.FILE_SINK_DIR == null || AppConfig.FILE_SINK_DIR.isEmpty()) {
+            throw new SQLException("FILE_SINK_DIR is not set");
+        }
+        this.directory = new File(AppConfig.FILE_SINK_DIR);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new SQLException("Cannot create directory " + directory.getAbsolutePath());
+        }
+        if (!directory.canWrite()) {
+            throw new SQLException("Directory is not writable: " + directory.getAbsolutePath());
+        }
+
+        this.encoder = AppConfig.FILE_SINK_FORMAT == FileSinkFormat.CSV
+                ? new CsvEncoder(BUFFER_BYTES)
+                : new PgCopyEncoder(BUFFER_BYTES);
+        this.startTime = System.currentTimeMillis();
+
+        LogService.infof("[%s] File sink: %s files in %s", taskId, AppConfig.FILE_SINK_FORMAT,
+                directory.getAbsolutePath());
+    }
+
+    @Override
+    public void addRow(TripRow row) throws SQLException {
+        beforeRow();
+        long bindStart = metrics.bindStarted();
+        encoder.addRow(row);
+        metrics.bindCompleted(bindStart);
+        afterRow();
+    }
+
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        beforeRow();
+        long bindStart = metrics.bindStarted();
+        encoder.addTrip(trip);
+        metrics.bindCompleted(bindStart);
+        afterRow();
+    }
+
+    @Override
+    public void addTrips(List<TaxiTrip> trips) throws SQLException {
+        for (TaxiTrip trip : trips) {
+            addTrip(trip);
+        }
+    }
+
+    private void beforeRow() throws SQLException {
+        if (channel == null) {
+            open();
+        }
+        if (!encoder.hasRoomForRow()) {
+            long writeStart = System.nanoTime();
+            writeBuffer();
+            metrics.addExecuteNanos(System.nanoTime() - writeStart);
+        }
+    }
+
+    private void afterRow() throws SQLException {
+        batchCount++;
+        if (batchCount >= AppConfig.BATCH_SIZE) {
+            executeBatch();
+        }
+    }
+
+    private void open() throws SQLException {
+        file = new File(directory, String.format("%s-%04d-%s.%s", AppConfig.TABLE_NAME,
+                FILE_SEQUENCE.incrementAndGet(), taskId, AppConfig.FILE_SINK_FORMAT.getExtension()));
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new SQLException("Cannot create " + file + ": " + e.getMessage(), "58030", e);
+        }
+        encoder.writeHeader();
+        LogService.infof("[%s] Writing %s", taskId, file.getName());
+    }
+
+    /**
+     * Записать накопленные байты в файл.
+     */
+    private void writeBuffer() throws SQLException {
+        ByteBuffer buffer = encoder.getBuffer();
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                totalBytes += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Write to " + file + " failed: " + e.getMessage(), "58030", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void executeBatch() throws SQLException {
+        if (batchCount == 0) {
+            return;
+        }
+
+        int recordsInBatch = batchCount;
+
+        try {
+            metrics.executeStarted();
+            writeBuffer();
+            metrics.batchCompleted(recordsInBatch);
+
+            totalInserted += recordsInBatch;
+            LoadProgress.add(recordsInBatch);
+
+            if (totalInserted % AppConfig.LOG_INTERVAL == 0) {
+                long elapsed = System.currentTimeMillis() - startTime;
+                if (elapsed > 0) {
+                    double rate = (totalInserted * 1000.0) / elapsed;
+                    LogService.infof("[%s] Written %,d records (%.0f records/sec)",
+                            taskId, totalInserted, rate);
+                } else {
+                    LogService.infof("[%s] Written %,d records", taskId, totalInserted);
+                }
+            }
+
+            batchCount = 0;
+
+        } catch (SQLException e) {
+            metrics.batchFailed(recordsInBatch, e);
+            batchCount = 0;
+
+            LogService.errorf("[%s] File batch failed: %s", taskId, e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (batchCount > 0) {
+            executeBatch();
+        }
+    }
+
+    @Override
+    public long getTotalInserted() {
+        return totalInserted;
+    }
+
+    @Override
+    public String getPerformanceStats() {
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        if (elapsed > 0) {
+            double rate = (totalInserted * 1000.0) / elapsed;
+            double seconds = elapsed / 1000.0;
+            return String.format(
+                    "[%s] Total: %,d records | %,d KB | Time: %.1f sec | Rate: %.0f records/sec",
+                    taskId, totalInserted, totalBytes / 1024, seconds, rate
+            );
+        } else {
+            return String.format(
+                    "[%s] Total: %,d records | Time: <1ms",
+                    taskId, totalInserted
+            );
+        }
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public void testInsert() throws SQLException {
+        // Тестовая строка попала бы в подготовленные файлы - проверяется только каталог
+        if (!directory.canWrite()) {
+            throw new SQLException("Directory is not writable: " + directory.getAbsolutePath());
+        }
+        LogService.infof("[%s] ✅ Output directory is writable", taskId);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+
+            if (channel != null) {
+                encoder.writeTrailer();
+                writeBuffer();
+                channel.force(true);
+                channel.close();
+                channel = null;
+                LogService.infof("[%s] ✅ FileSinkWriter closed: %s, %,d records, %,d KB",
+                        taskId, file.getName(), totalInserted, totalBytes / 1024);
+            }
+
+        } catch (SQLException | IOException e) {
+            LogService.errorf("[%s] Error closing FileSinkWriter: %s", taskId, e.getMessage());
+            throw e instanceof SQLException ? (SQLException) e : new SQLException(e.getMessage(), "58030", e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LogService.errorf("[%s] Could not close %s: %s", taskId, file, e.getMessage());
+                }
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package writer;
+
+import Logging.LogService;
+import config.DatabaseType;
+import metrics.LatencyHistogram;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничитель скорости записи writer'ов: token bucket по строкам/с и байтам/с
+ * (THROTTLE_ROWS_PER_SEC, THROTTLE_BYTES_PER_SEC) и, при THROTTLE_TARGET_P99_MS, подстройка
+ * лимита строк по p99 batch'а (execute + commit): при превышении цели лимит снижается на 30%,
+ * при p99 ниже 80% цели - растет на 10% до заданного лимита. Так загрузка в кластер,
+ * обслуживающий запросы, не вытесняет их, а ночью идет на полной скорости.
+ *
+ * Лимиты меняются на ходу (setLimits; HTTP /throttle в MetricsServer). Batch, больший запаса
+ * bucket'а (1 секунда лимита), проходит в долг - следующие ждут дольше. Ожидание выполняется
+ * до взятия разрешения BatchGate и попадает в стадию batch_wait.
+ *
+ * Bucket'ы и подстройка ведутся по каждой целевой БД отдельно: в режиме fan-out медленная
+ * цель снижает свой лимит, не замедляя остальные (общие только заданные лимиты).
+ */
+public final class LoadThrottle {
+
+    private LoadThrottle() {
+        // static-only class
+    }
+
+    /** Оценка размера строки в протоколе БД для writer'ов, не знающих байты batch'а (binary COPY). */
+    static final int ESTIMATED_ROW_BYTES = 190;
+
+    private static final long CONTROL_INTERVAL_MILLIS = 2000;
+    private static final int MIN_SAMPLES = 5;
+    private static final double MIN_ROWS_PER_SEC = 100;
+    private static final double DECREASE = 0.7;
+    private static final double INCREASE = 1.1;
+
+    private static volatile long rowsLimit;        // 0 = без ограничения
+    private static volatile long bytesLimit;       // 0 = без ограничения
+    private static volatile long targetP99Millis;  // 0 = без подстройки
+    private static Thread controller;
+
+    // Состояние по целевым БД: в режиме fan-out цели не делят bucket и подстройку
+    private static final Map<DatabaseType, Target> TARGETS = new ConcurrentHashMap<>();
+
+    /** Bucket'ы и окно подстройки одной целевой БД. */
+    private static final class Target {
+        final DatabaseType type;
+        final TokenBucket rows = new TokenBucket();
+        final TokenBucket bytes = new TokenBucket();
+        double adaptiveRows;            // лимит от подстройки, 0 = не ограничивает
+
+        // Окно подстройки: задержки batch'ей и строки с прошлого шага. Окно заменяется атомарно
+        // (getAndSet) до чтения p99: задержки writer'ов после замены сразу идут в новое окно
+        final AtomicReference<LatencyHistogram> window = new AtomicReference<>(new LatencyHistogram());
+        final LongAdder windowRows = new LongAdder();
+        long windowStart = System.nanoTime();
+
+        Target(DatabaseType type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * Задать лимиты (0 = без ограничения). Можно вызывать во время загрузки.
+     * Лимиты действуют на каждую целевую БД отдельно.
+     */
+    public static synchronized void setLimits(long rowsPerSec, long bytesPerSec, long targetP99Ms) {
+        rowsLimit = Math.max(0, rowsPerSec);
+        bytesLimit = Math.max(0, bytesPerSec);
+        targetP99Millis = Math.max(0, targetP99Ms);
+        for (Target target : TARGETS.values()) {
+            if (targetP99Millis == 0) {
+                target.adaptiveRows = 0;
+            }
+            applyRowsRate(target);
+            target.bytes.setRate(bytesLimit);
+        }
+
+        if (targetP99Millis > 0 && controller == null) {
+            controller = new Thread(LoadThrottle::control, "Throttle");
+            controller.setDaemon(true);
+            controller.start();
+        }
+        if (isEnabled()) {
+            LogService.infof("Throttle: %s", describe());
+        }
+    }
+
+    public static boolean isEnabled() {
+        return rowsLimit > 0 || bytesLimit > 0 || targetP99Millis > 0;
+    }
+
+    public static long getRowsLimit() {
+        return rowsLimit;
+    }
+
+    public static long getBytesLimit() {
+        return bytesLimit;
+    }
+
+    public static long getTargetP99Millis() {
+        return targetP99Millis;
+    }
+
+    /**
+     * Действующий лимит строк/с с учетом подстройки, 0 = без ограничения.
+     * При нескольких целях (fan-out) - самый строгий из них.
+     */
+    public static synchronized long getEffectiveRowsPerSec() {
+        if (TARGETS.isEmpty()) {
+            return rowsLimit;
+        }
+        long strictest = 0;
+        for (long rate : getEffectiveRowsPerSecByTarget().values()) {
+            if (rate > 0 && (strictest == 0 || rate < strictest)) {
+                strictest = rate;
+            }
+        }
+        return strictest;
+    }
+
+    /** Действующий лимит строк/с каждой цели, 0 = без ограничения. */
+    public static synchronized Map<DatabaseType, Long> getEffectiveRowsPerSecByTarget() {
+        Map<DatabaseType, Long> rates = new EnumMap<>(DatabaseType.class);
+        for (Target target : TARGETS.values()) {
+            rates.put(target.type, Math.round(target.rows.getRate()));
+        }
+        return rates;
+    }
+
+    /** Текущие лимиты одной строкой (лог, /throttle). */
+    public static synchronized String describe() {
+        Map<DatabaseType, Long> rates = getEffectiveRowsPerSecByTarget();
+        String effective;
+        if (rates.size() <= 1) {
+            effective = limit(rates.isEmpty() ? rowsLimit : rates.values().iterator().next());
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<DatabaseType, Long> rate : rates.entrySet()) {
+                sb.append(sb.length() > 0 ? ", " : "").append(rate.getKey()).append(' ').append(limit(rate.getValue()));
+            }
+            effective = sb.toString();
+        }
+        return String.format(Locale.ROOT, "rows/sec %s (effective %s), bytes/sec %s, target p99 %s",
+                limit(rowsLimit), effective, limit(bytesLimit),
+                targetP99Millis > 0 ? targetP99Millis + " ms" : "off");
+    }
+
+    private static String limit(long value) {
+        return value > 0 ? String.format(Locale.ROOT, "%,d", value) : "unlimited";
+    }
+
+    private static Target target(DatabaseType type) {
+        Target target = TARGETS.get(type);
+        if (target == null) {
+            synchronized (LoadThrottle.class) {
+                target = TARGETS.get(type);
+                if (target == null) {
+                    target = new Target(type);
+                    applyRowsRate(target);
+                    target.bytes.setRate(bytesLimit);
+                    TARGETS.put(type, target);
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Зарезервировать batch в целевой БД type.
+     *
+     * @return сколько наносекунд подождать перед выполнением
+     */
+    static long reserve(DatabaseType type, long rows, long bytes) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Target target = target(type);
+        target.windowRows.add(rows);
+        return Math.max(target.rows.reserve(rows), target.bytes.reserve(bytes));
+    }
+
+    /** Batch выполнен (execute + commit) в type за nanos - для подстройки по p99. */
+    static void batchCompleted(DatabaseType type, long nanos) {
+        if (targetP99Millis > 0) {
+            target(type).window.get().record(nanos);
+        }
+    }
+
+    private static void control() {
+        while (true) {
+            try {
+                Thread.sleep(CONTROL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Target target : TARGETS.values()) {
+                adjust(target);
+            }
+        }
+    }
+
+    private static synchronized void adjust(Target target) {
+        if (targetP99Millis == 0 || target.window.get().getCount() < MIN_SAMPLES) {
+            return;
+        }
+        long now = System.nanoTime();
+        LatencyHistogram window = target.window.getAndSet(new LatencyHistogram());
+        double observed = target.windowRows.sumThenReset() * 1e9 / Math.max(1, now - target.windowStart);
+        double p99Millis = window.quantile(0.99) / 1e6;
+        target.windowStart = now;
+
+        if (p99Millis > targetP99Millis) {
+            double base = target.adaptiveRows > 0 ? Math.min(target.adaptiveRows, observed) : observed;
+            double previous = target.adaptiveRows;
+            target.adaptiveRows = Math.max(MIN_ROWS_PER_SEC, base * DECREASE);
+            applyRowsRate(target);
+            if (target.adaptiveRows == previous) {
+                return;
+            }
+            LogService.infof("Throttle %s: batch p99 %.1f ms > target %d ms, rows/sec limit %,.0f",
+                    target.type, p99Millis, targetP99Millis, target.adaptiveRows);
+        } else if (target.adaptiveRows > 0 && p99Millis < targetP99Millis * 0.8) {
+            target.adaptiveRows *= INCREASE;
+            // Лимит снимается, когда дорос до заданного или перестал сдерживать загрузку
+            if ((rowsLimit > 0 && target.adaptiveRows >= rowsLimit) || target.adaptiveRows > observed * 2) {
+                target.adaptiveRows = 0;
+                LogService.infof("Throttle %s: batch p99 %.1f ms within target, adaptive limit lifted",
+                        target.type, p99Millis);
+            }
+            applyRowsRate(target);
+        }
+    }
+
+    private static void applyRowsRate(Target target) {
+        double rate = rowsLimit;
+        if (target.adaptiveRows > 0) {
+            rate = rate > 0 ? Math.min(rate, target.adaptiveRows) : target.adaptiveRows;
+        }
+        target.rows.setRate(rate);
+    }
+
+    /**
+     * Token bucket с запасом в 1 секунду лимита; резерв может уходить в минус (долг).
+     */
+    private static final class TokenBucket {
+        private double rate;       // в секунду, 0 = без ограничения
+        private double tokens;
+        private long updated = System.nanoTime();
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        synchronized void setRate(double newRate) {
+            refill(System.nanoTime());
+            rate = newRate;
+            tokens = Math.min(tokens, newRate);
+        }
+
+        synchronized long reserve(long amount) {
+            if (rate <= 0) {
+                return 0;
+            }
+            refill(System.nanoTime());
+            tokens -= amount;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+        }
+
+        private void refill(long now) {
+            if (rate > 0) {
+                tokens = Math.min(rate, tokens + (now - updated) * rate / 1e9);
+            }
+            updated = now;
+        }
+    }
+}
@@ -9,12 +9,18 @@ import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import config.AppConfig;
+import config.DatabaseType;
+import metrics.LoaderMetrics;
+import metrics.WriterMetrics;
 import model.TaxiTrip;
 import org.bson.Document;
+import plan.LoadProgress;
+import reader.ParquetColumns;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 
 /**
@@ -23,7 +29,20 @@ import java.util.logging.Level;
  */
 public class MongoDBWriter implements DatabaseWriter {
 
+    // Колонки Parquet, которые попадают в документ (см. addTrip)
+    static final Set<String> REQUIRED_COLUMNS = ParquetColumns.of(
+            ParquetColumns.PICKUP_DATETIME,
+            ParquetColumns.DROPOFF_DATETIME,
+            ParquetColumns.PASSENGER_COUNT,
+            ParquetColumns.TRIP_DISTANCE,
+            ParquetColumns.PU_LOCATION_ID,
+            ParquetColumns.DO_LOCATION_ID,
+            ParquetColumns.FARE_AMOUNT,
+            ParquetColumns.TOTAL_AMOUNT
+    );
+
     private final String taskId;
+    private final WriterMetrics metrics;
     private final MongoClient mongoClient;
     private final MongoCollection<Document> collection;
 
@@ -34,6 +53,7 @@ public class MongoDBWriter implements DatabaseWriter {
 
     public MongoDBWriter(String taskId) throws SQLException {
         this.taskId = taskId;
+        this.metrics = LoaderMetrics.forTask(taskId);
 
         try {
             java.util.logging.Logger.getLogger("org.mongodb.driver").setLevel(Level.WARNING);
@@ -75,6 +95,7 @@ public class MongoDBWriter implements DatabaseWriter {
     @Override
     public void addTrip(TaxiTrip trip) throws SQLException {
         if (trip == null) return;
+        long bindStart = metrics.bindStarted();
         Document doc = new Document()
                 .append("pickup_datetime", trip.getPickupDatetime())
                 .append("dropoff_datetime", trip.getDropoffDatetime())
@@ -85,6 +106,7 @@ public class MongoDBWriter implements DatabaseWriter {
                 .append("fare_amount", trip.getFareAmount())
                 .append("total_amount", trip.getTotalAmount());
         batch.add(doc);
+        metrics.bindCompleted(bindStart);
 
         if (batch.size() >= AppConfig.BATCH_SIZE) {
             executeBatch();
@@ -101,13 +123,23 @@ public class MongoDBWriter implements DatabaseWriter {
     public void executeBatch() throws SQLException {
         if (batch.isEmpty()) return;
         try {
-            collection.insertMany(new ArrayList<>(batch));
-            totalInserted += batch.size();
-            batch.clear();
-
-            LogService.infof("[%s] Inserted batch (%d docs), total: %,d",
-                    taskId, AppConfig.BATCH_SIZE, totalInserted);
+            BatchGate.Permit permit = BatchGate.acquire(DatabaseType.MONGODB, metrics, batch.size(),
+                    (long) batch.size() * LoadThrottle.ESTIMATED_ROW_BYTES);
+            try {
+                metrics.executeStarted();
+                collection.insertMany(new ArrayList<>(batch));
+                metrics.batchCompleted(batch.size());
+                totalInserted += batch.size();
+                LoadProgress.add(batch.size());
+                batch.clear();
+
+                LogService.infof("[%s] Inserted batch (%d docs), total: %,d",
+                        taskId, AppConfig.BATCH_SIZE, totalInserted);
+            } finally {
+                permit.close();
+            }
         } catch (Exception e) {
+            metrics.batchFailed(batch.size(), e);
             throw new SQLException("MongoDB batch insert failed: " + e.getMessage(), e);
         }
     }
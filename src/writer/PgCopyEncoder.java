@@ -0,0 +1,206 @@
+package writer;
+
+import model.TaxiTrip;
+import reader.TripRow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * Кодирует строки taxi_trips в формат PostgreSQL binary COPY прямо в переиспользуемый
+ * direct ByteBuffer. Порядок и типы колонок - как в PostgreSQLCopyWriter.COPY_SQL:
+ * timestamp (микросекунды от 2000-01-01), smallint, numeric(p,2), char(1).
+ *
+ * Значения уже проверены и ограничены reader'ом (TripValues), здесь только кодирование.
+ */
+public class PgCopyEncoder implements RowEncoder {
+
+    // Максимальный размер одной строки: 18 полей с заголовками, numeric до 4 цифр base-10000
+    static final int MAX_ROW_BYTES = 512;
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short FIELD_COUNT = 18;
+
+    // 2000-01-01 00:00 (эпоха PostgreSQL) в микросекундах от 1970-01-01
+    private static final long PG_EPOCH_MICROS = 946_684_800_000_000L;
+
+    private static final short NUMERIC_POS = 0x0000;
+    private static final short NUMERIC_NEG = 0x4000;
+    private static final short NUMERIC_SCALE = 2;
+
+    private final ByteBuffer buffer;
+    private final short[] digits = new short[8];
+
+    public PgCopyEncoder(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, MAX_ROW_BYTES * 2));
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /** Хватит ли места еще на одну строку. */
+    @Override
+    public boolean hasRoomForRow() {
+        return buffer.remaining() >= MAX_ROW_BYTES;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    /** Заголовок COPY BINARY: сигнатура, флаги, длина расширения. */
+    @Override
+    public void writeHeader() {
+        buffer.put(SIGNATURE);
+        buffer.putInt(0);
+        buffer.putInt(0);
+    }
+
+    /** Конец данных COPY. */
+    @Override
+    public void writeTrailer() {
+        buffer.putShort((short) -1);
+    }
+
+    /**
+     * Строка из TripRow; даты берутся из pickupLocalMicros / dropoffLocalMicros.
+     */
+    @Override
+    public void addRow(TripRow row) throws SQLException {
+        buffer.putShort(FIELD_COUNT);
+        putTimestamp(row.pickupLocalMicros);
+        putSmallint(row.ints[TripRow.VENDOR_ID]);
+        putTimestamp(row.dropoffLocalMicros);
+        putSmallint(row.ints[TripRow.PASSENGER_COUNT]);
+        putNumeric(row.doubles[TripRow.TRIP_DISTANCE]);
+        putSmallint(row.ints[TripRow.RATECODE_ID]);
+        putChar(row.storeAndFwdFlag);
+        putSmallint(row.ints[TripRow.PU_LOCATION_ID]);
+        putSmallint(row.ints[TripRow.DO_LOCATION_ID]);
+        putSmallint(row.ints[TripRow.PAYMENT_TYPE]);
+        putNumeric(row.doubles[TripRow.FARE_AMOUNT]);
+        putNumeric(row.doubles[TripRow.EXTRA]);
+        putNumeric(row.doubles[TripRow.MTA_TAX]);
+        putNumeric(row.doubles[TripRow.TIP_AMOUNT]);
+        putNumeric(row.doubles[TripRow.TOLLS_AMOUNT]);
+        putNumeric(row.doubles[TripRow.IMPROVEMENT_SURCHARGE]);
+        putNumeric(row.doubles[TripRow.TOTAL_AMOUNT]);
+        putNumeric(row.doubles[TripRow.CONGESTION_SURCHARGE]);
+    }
+
+    /**
+     * Строка из TaxiTrip (обычный путь через addTrip).
+     */
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        buffer.putShort(FIELD_COUNT);
+        putTimestamp(trip.getPickupLocalMicros());
+        putSmallint(trip.getVendorId());
+        putTimestamp(trip.getDropoffLocalMicros());
+        putSmallint(trip.getPassengerCount());
+        putNumeric(trip.getTripDistance());
+        putSmallint(trip.getRateCodeId());
+        putChar(trip.getStoreAndFwdFlag());
+        putSmallint(trip.getPuLocationId());
+        putSmallint(trip.getDoLocationId());
+        putSmallint(trip.getPaymentType());
+        putNumeric(trip.getFareAmount());
+        putNumeric(trip.getExtra());
+        putNumeric(trip.getMtaTax());
+        putNumeric(trip.getTipAmount());
+        putNumeric(trip.getTollsAmount());
+        putNumeric(trip.getImprovementSurcharge());
+        putNumeric(trip.getTotalAmount());
+        putNumeric(trip.getCongestionSurcharge());
+    }
+
+    private void putNull() {
+        buffer.putInt(-1);
+    }
+
+    private void putTimestamp(long localMicros) {
+        if (localMicros == TripRow.NO_TIMESTAMP) {
+            putNull();
+            return;
+        }
+        buffer.putInt(8);
+        buffer.putLong(localMicros - PG_EPOCH_MICROS);
+    }
+
+    private void putSmallint(int value) throws SQLException {
+        // Reader ограничивает SMALLINT до 65535 (беззнаковый диапазон), а в PostgreSQL smallint знаковый
+        if (value > Short.MAX_VALUE || value < Short.MIN_VALUE) {
+            throw new SQLException("smallint out of range: " + value, "22003");
+        }
+        buffer.putInt(2);
+        buffer.putShort((short) value);
+    }
+
+    private void putChar(String value) {
+        if (value == null) {
+            putNull();
+            return;
+        }
+        if (value.length() == 1 && value.charAt(0) < 0x80) {
+            buffer.putInt(1);
+            buffer.put((byte) value.charAt(0));
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * numeric с 2 знаками: ndigits, weight, sign, dscale, цифры base-10000.
+     * Значения из reader'а уже округлены до центов (TripValues.clampDecimal).
+     */
+    private void putNumeric(double value) {
+        long cents = Math.round(value * 100.0);
+        short sign = NUMERIC_POS;
+        if (cents < 0) {
+            sign = NUMERIC_NEG;
+            cents = -cents;
+        }
+        long integer = cents / 100;
+        int fraction = (int) (cents % 100);
+
+        // Целая часть: группы по 4 цифры, сначала младшие
+        int groups = 0;
+        while (integer > 0) {
+            digits[groups++] = (short) (integer % 10000);
+            integer /= 10000;
+        }
+        // Переставить в порядок от старших к младшим
+        for (int i = 0, j = groups - 1; i < j; i++, j--) {
+            short t = digits[i];
+            digits[i] = digits[j];
+            digits[j] = t;
+        }
+
+        int count = groups;
+        int weight = groups - 1;
+        if (fraction != 0) {
+            digits[count++] = (short) (fraction * 100);
+        }
+        // Хвостовые нули не передаются
+        while (count > 0 && digits[count - 1] == 0) {
+            count--;
+        }
+        if (count == 0) {
+            weight = 0;
+        }
+
+        buffer.putInt(8 + 2 * count);
+        buffer.putShort((short) count);
+        buffer.putShort((short) weight);
+        buffer.putShort(sign);
+        buffer.putShort(NUMERIC_SCALE);
+        for (int i = 0; i < count; i++) {
+            buffer.putShort(digits[i]);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package writer;
+
+import config.AppConfig;
+import config.DatabaseType;
+import Logging.LogService;
+import metrics.LoaderMetrics;
+import metrics.WriterMetrics;
+import model.TaxiTrip;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.util.ByteBufferByteStreamWriter;
+import plan.LoadProgress;
+import reader.TripRow;
+import reader.TripRowSink;
+
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Класс для записи данных в PostgreSQL через COPY ... FROM STDIN (FORMAT binary).
+ * Строки кодируются в wire-формат PostgreSQL прямо в переиспользуемый direct буфер
+ * (PgCopyEncoder) без JDBC параметров. Через TripRowSink строки приходят из reader'а
+ * без создания TaxiTrip - это режим максимальной пропускной способности.
+ *
+ * Один COPY = один batch из BATCH_SIZE строк, после него commit.
+ * Поддерживает многопоточную работу - каждый экземпляр имеет свое подключение.
+ */
+public class PostgreSQLCopyWriter implements DatabaseWriter, TripRowSink {
+
+    // Размер буфера: по заполнении данные уходят в текущий COPY
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    private final Connection connection;
+    private final CopyManager copyManager;
+    private final PgCopyEncoder encoder = new PgCopyEncoder(BUFFER_BYTES);
+    private final String taskId;
+    private final WriterMetrics metrics;
+    private CopyIn copyIn;
+    private int batchCount = 0;
+    private long batchBytes = 0;        // отправлено в COPY текущего batch'а до executeBatch
+    private long totalInserted = 0;
+    private long startTime;
+
+    private static final String COPY_SQL =
+            "COPY " + AppConfig.TABLE_NAME + " (" +
+                    "  pickup_datetime, " +
+                    "  vendor_id, " +
+                    "  dropoff_datetime, " +
+                    "  passenger_count, " +
+                    "  trip_distance, " +
+                    "  rate_code_id, " +
+                    "  store_and_fwd_flag, " +
+                    "  pu_location_id, " +
+                    "  do_location_id, " +
+                    "  payment_type, " +
+                    "  fare_amount, " +
+                    "  extra, " +
+                    "  mta_tax, " +
+                    "  tip_amount, " +
+                    "  tolls_amount, " +
+                    "  improvement_surcharge, " +
+                    "  total_amount, " +
+                    "  congestion_surcharge" +
+                    ") FROM STDIN (FORMAT binary)";
+
+    public PostgreSQLCopyWriter(String taskId) throws SQLException {
+        this(taskId, AppConfig.getPostgreSQLUrl());
+    }
+
+    /**
+     * Writer для указанного узла PostgreSQL (ShardedPostgreSQLWriter).
+     */
+    public PostgreSQLCopyWriter(String taskId, String url) throws SQLException {
+        this.taskId = taskId;
+        this.metrics = LoaderMetrics.forTask(taskId);
+        LogService.infof("[%s] Connecting to PostgreSQL (binary COPY)...", taskId);
+
+        try {
+            Class.forName("org.postgresql.Driver");
+        } catch (ClassNotFoundException e) {
+            LogService.errorf("[%s] PostgreSQL driver not found", taskId);
+        }
+
+        this.connection = DriverManager.getConnection(
+                url,
+                AppConfig.POSTGRESQL_USER,
+                AppConfig.POSTGRESQL_PASSWORD
+        );
+
+        this.connection.setAutoCommit(false);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("SET work_mem = '256MB'");
+            stmt.execute("SET maintenance_work_mem = '512MB'");
+            stmt.execute("SET synchronous_commit = OFF");
+            stmt.execute("SET statement_timeout = '300s'");
+        } catch (SQLException e) {
+            LogService.infof("[%s] Could not set session parameters: %s", taskId, e.getMessage());
+        }
+
+        this.copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        this.startTime = System.currentTimeMillis();
+
+        LogService.infof("[%s] ✅ Connected to PostgreSQL successfully", taskId);
+    }
+
+    public PostgreSQLCopyWriter() throws SQLException {
+        this("Main");
+    }
+
+    @Override
+    public void addRow(TripRow row) throws SQLException {
+        beforeRow();
+        long bindStart = metrics.bindStarted();
+        encoder.addRow(row);
+        metrics.bindCompleted(bindStart);
+        afterRow();
+    }
+
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        beforeRow();
+        long bindStart = metrics.bindStarted();
+        encoder.addTrip(trip);
+        metrics.bindCompleted(bindStart);
+        afterRow();
+    }
+
+    @Override
+    public void addTrips(List<TaxiTrip> trips) throws SQLException {
+        for (TaxiTrip trip : trips) {
+            addTrip(trip);
+        }
+    }
+
+    private void beforeRow() throws SQLException {
+        if (batchCount == 0) {
+            encoder.writeHeader();
+        }
+        if (!encoder.hasRoomForRow()) {
+            long sendStart = System.nanoTime();
+            sendBuffer();
+            metrics.addExecuteNanos(System.nanoTime() - sendStart);
+        }
+    }
+
+    private void afterRow() throws SQLException {
+        batchCount++;
+        if (batchCount >= AppConfig.BATCH_SIZE) {
+            executeBatch();
+        }
+    }
+
+    /**
+     * Отправить накопленные байты в текущий COPY (открыть его при необходимости).
+     */
+    private void sendBuffer() throws SQLException {
+        if (copyIn == null) {
+            copyIn = copyManager.copyIn(COPY_SQL);
+        }
+        ByteBuffer buffer = encoder.getBuffer();
+        buffer.flip();
+        batchBytes += buffer.remaining();
+        try {
+            copyIn.writeToCopy(new ByteBufferByteStreamWriter(buffer));
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void executeBatch() throws SQLException {
+        if (batchCount == 0) {
+            return;
+        }
+
+        int recordsInBatch = batchCount;
+
+        try {
+            BatchGate.Permit permit = BatchGate.acquire(DatabaseType.POSTGRESQL, metrics, recordsInBatch,
+                    batchBytes + encoder.getBuffer().position());
+            try {
+                metrics.executeStarted();
+                encoder.writeTrailer();
+                sendBuffer();
+                copyIn.endCopy();
+                copyIn = null;
+                metrics.commitStarted();
+                connection.commit();
+                metrics.batchCompleted(recordsInBatch);
+
+                totalInserted += recordsInBatch;
+                LoadProgress.add(recordsInBatch);
+
+                if (totalInserted % AppConfig.LOG_INTERVAL == 0) {
+                    long elapsed = System.currentTimeMillis() - startTime;
+                    if (elapsed > 0) {
+                        double rate = (totalInserted * 1000.0) / elapsed;
+                        LogService.infof("[%s] Inserted %,d records (%.0f records/sec)",
+                                taskId, totalInserted, rate);
+                    } else {
+                        LogService.infof("[%s] Inserted %,d records", taskId, totalInserted);
+                    }
+                }
+
+                batchCount = 0;
+                batchBytes = 0;
+            } finally {
+                permit.close();
+            }
+        } catch (SQLException e) {
+            metrics.batchFailed(recordsInBatch, e);
+            cancelCopy();
+            connection.rollback();
+            encoder.getBuffer().clear();
+            batchCount = 0;
+            batchBytes = 0;
+
+            LogService.errorf("[%s] COPY batch failed: %s", taskId, e.getMessage());
+            throw e;
+        }
+    }
+
+    private void cancelCopy() {
+        if (copyIn != null) {
+            try {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            } catch (SQLException e) {
+                LogService.errorf("[%s] Could not cancel COPY: %s", taskId, e.getMessage());
+            }
+            copyIn = null;
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (batchCount > 0) {
+            executeBatch();
+        }
+    }
+
+    @Override
+    public long getTotalInserted() {
+        return totalInserted;
+    }
+
+    @Override
+    public String getPerformanceStats() {
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        if (elapsed > 0) {
+            double rate = (totalInserted * 1000.0) / elapsed;
+            double seconds = elapsed / 1000.0;
+            return String.format(
+                    "[%s] Total: %,d records | Time: %.1f sec | Rate: %.0f records/sec",
+                    taskId, totalInserted, seconds, rate
+            );
+        } else {
+            return String.format(
+                    "[%s] Total: %,d records | Time: <1ms",
+                    taskId, totalInserted
+            );
+        }
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+            }
+
+            LogService.infof("[%s] ✅ PostgreSQLCopyWriter closed", taskId);
+
+        } catch (SQLException e) {
+            LogService.errorf("[%s] Error closing PostgreSQLCopyWriter: %s", taskId, e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public void testInsert() throws SQLException {
+        TaxiTrip testTrip = new TaxiTrip();
+        testTrip.setVendorId(1);
+        testTrip.setPickupDatetime(LocalDateTime.now());
+        testTrip.setDropoffDatetime(LocalDateTime.now());
+        testTrip.setPassengerCount(1);
+        testTrip.setTripDistance(1.5);
+        testTrip.setRateCodeId(1);
+        testTrip.setStoreAndFwdFlag("N");
+        testTrip.setPuLocationId(100);
+        testTrip.setDoLocationId(200);
+        testTrip.setPaymentType(1);
+        testTrip.setFareAmount(10.0);
+        testTrip.setExtra(0.5);
+        testTrip.setMtaTax(0.5);
+        testTrip.setTipAmount(2.0);
+        testTrip.setTollsAmount(0.0);
+        testTrip.setImprovementSurcharge(0.3);
+        testTrip.setTotalAmount(13.3);
+        testTrip.setCongestionSurcharge(0.0);
+
+        addTrip(testTrip);
+        flush();
+
+        LogService.infof("[%s] ✅ Test insert successful", taskId);
+    }
+}
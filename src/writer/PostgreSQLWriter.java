@@ -1,8 +1,12 @@
 package writer;
 
 import config.AppConfig;
+import config.DatabaseType;
 import Logging.LogService;
+import metrics.LoaderMetrics;
+import metrics.WriterMetrics;
 import model.TaxiTrip;
+import plan.LoadProgress;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -18,6 +22,7 @@ public class PostgreSQLWriter implements DatabaseWriter {
     private final Connection connection;
     private final PreparedStatement insertStatement;
     private final String taskId;
+    private final WriterMetrics metrics;
     private int batchCount = 0;
     private long totalInserted = 0;
     private long startTime;
@@ -45,7 +50,15 @@ public class PostgreSQLWriter implements DatabaseWriter {
                     ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     public PostgreSQLWriter(String taskId) throws SQLException {
+        this(taskId, AppConfig.getPostgreSQLUrl());
+    }
+
+    /**
+     * Writer для указанного узла PostgreSQL (ShardedPostgreSQLWriter).
+     */
+    public PostgreSQLWriter(String taskId, String url) throws SQLException {
         this.taskId = taskId;
+        this.metrics = LoaderMetrics.forTask(taskId);
         LogService.infof("[%s] Connecting to PostgreSQL...", taskId);
 
         try {
@@ -55,7 +68,7 @@ public class PostgreSQLWriter implements DatabaseWriter {
         }
 
         this.connection = DriverManager.getConnection(
-                AppConfig.getPostgreSQLUrl(),
+                url,
                 AppConfig.POSTGRESQL_USER,
                 AppConfig.POSTGRESQL_PASSWORD
         );
@@ -83,6 +96,7 @@ public class PostgreSQLWriter implements DatabaseWriter {
 
     @Override
     public void addTrip(TaxiTrip trip) throws SQLException {
+        long bindStart = metrics.bindStarted();
         insertStatement.setTimestamp(1, toTimestamp(trip.getPickupDatetime()));
         insertStatement.setInt(2, trip.getVendorId());
         insertStatement.setTimestamp(3, toTimestamp(trip.getDropoffDatetime()));
@@ -104,6 +118,7 @@ public class PostgreSQLWriter implements DatabaseWriter {
 
         insertStatement.addBatch();
         batchCount++;
+        metrics.bindCompleted(bindStart);
 
         if (batchCount >= AppConfig.BATCH_SIZE) {
             executeBatch();
@@ -126,27 +141,37 @@ public class PostgreSQLWriter implements DatabaseWriter {
         int recordsInBatch = batchCount;
 
         try {
-            insertStatement.executeBatch();
-            connection.commit();
-
-            totalInserted += recordsInBatch;
-
-            // ИСПРАВЛЕНО: Проверка на division by zero
-            if (totalInserted % AppConfig.LOG_INTERVAL == 0) {
-                long elapsed = System.currentTimeMillis() - startTime;
-                if (elapsed > 0) {
-                    double rate = (totalInserted * 1000.0) / elapsed;
-                    LogService.infof("[%s] Inserted %,d records (%.0f records/sec)",
-                            taskId, totalInserted, rate);
-                } else {
-                    LogService.infof("[%s] Inserted %,d records", taskId, totalInserted);
+            BatchGate.Permit permit = BatchGate.acquire(DatabaseType.POSTGRESQL, metrics, recordsInBatch,
+                    (long) recordsInBatch * LoadThrottle.ESTIMATED_ROW_BYTES);
+            try {
+                metrics.executeStarted();
+                insertStatement.executeBatch();
+                metrics.commitStarted();
+                connection.commit();
+                metrics.batchCompleted(recordsInBatch);
+
+                totalInserted += recordsInBatch;
+                LoadProgress.add(recordsInBatch);
+
+                // ИСПРАВЛЕНО: Проверка на division by zero
+                if (totalInserted % AppConfig.LOG_INTERVAL == 0) {
+                    long elapsed = System.currentTimeMillis() - startTime;
+                    if (elapsed > 0) {
+                        double rate = (totalInserted * 1000.0) / elapsed;
+                        LogService.infof("[%s] Inserted %,d records (%.0f records/sec)",
+                                taskId, totalInserted, rate);
+                    } else {
+                        LogService.infof("[%s] Inserted %,d records", taskId, totalInserted);
+                    }
                 }
-            }
-
-            batchCount = 0;
-            insertStatement.clearBatch();
 
+                batchCount = 0;
+                insertStatement.clearBatch();
+            } finally {
+                permit.close();
+            }
         } catch (SQLException e) {
+            metrics.batchFailed(recordsInBatch, e);
             connection.rollback();
             insertStatement.clearBatch();
             batchCount = 0;
@@ -0,0 +1,29 @@
+package writer;
+
+import model.TaxiTrip;
+import reader.TripRow;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+/**
+ * Кодирование строк taxi_trips в байтовый буфер для bulk-загрузки (PgCopyEncoder, CsvEncoder).
+ * Вызывающий проверяет hasRoomForRow() перед каждой строкой и сам отправляет / пишет буфер.
+ */
+interface RowEncoder {
+
+    ByteBuffer getBuffer();
+
+    /** Хватит ли места еще на одну строку. */
+    boolean hasRoomForRow();
+
+    /** Начало потока данных (один раз на файл или COPY). */
+    void writeHeader();
+
+    /** Конец потока данных. */
+    void writeTrailer();
+
+    void addRow(TripRow row) throws SQLException;
+
+    void addTrip(TaxiTrip trip) throws SQLException;
+}
@@ -0,0 +1,125 @@
+package writer;
+
+import config.AppConfig;
+import config.ShardKey;
+import model.TaxiTrip;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Выбор узла (shard'а) для строки по SHARD_KEY.
+ *
+ * SHARD_MAP задает диапазоны значений ключа: "2009-2018=0, 2019-2021=1, 2022-=2"
+ * (год pickup) или "1-132=0, 133-=1" (pu_location_id); у диапазона может не быть
+ * начала или конца. Значение вне всех диапазонов - ошибка загрузки.
+ * Без SHARD_MAP узел = hash(значение) по числу узлов.
+ * Строки без pickup (NULL) при PICKUP_YEAR идут на узел 0.
+ */
+final class ShardRouter {
+
+    private static final class Range {
+        final long from;
+        final long to;
+        final int shard;
+
+        Range(long from, long to, int shard) {
+            this.from = from;
+            this.to = to;
+            this.shard = shard;
+        }
+    }
+
+    private static final long MICROS_PER_DAY = 86_400_000_000L;
+
+    private final ShardKey key;
+    private final int shards;
+    private final Range[] ranges;     // пусто = hash
+
+    ShardRouter(ShardKey key, int shards, String map) {
+        this.key = key;
+        this.shards = shards;
+        this.ranges = parse(map, shards);
+    }
+
+    static ShardRouter fromConfig() {
+        return new ShardRouter(AppConfig.SHARD_KEY, AppConfig.POSTGRESQL_SHARDS.size(), AppConfig.SHARD_MAP);
+    }
+
+    int shardOf(TaxiTrip trip) {
+        return key == ShardKey.PICKUP_YEAR
+                ? shardOfValue(pickupYear(trip.getPickupLocalMicros()))
+                : shardOfValue(trip.getPuLocationId());
+    }
+
+    int shardOf(int puLocationId, long pickupLocalMicros) {
+        return key == ShardKey.PICKUP_YEAR
+                ? shardOfValue(pickupYear(pickupLocalMicros))
+                : shardOfValue(puLocationId);
+    }
+
+    private static long pickupYear(long localMicros) {
+        if (localMicros == TaxiTrip.NO_TIMESTAMP) {
+            return Long.MIN_VALUE;
+        }
+        return LocalDate.ofEpochDay(Math.floorDiv(localMicros, MICROS_PER_DAY)).getYear();
+    }
+
+    private int shardOfValue(long value) {
+        if (value == Long.MIN_VALUE) {
+            return 0;
+        }
+        if (ranges.length == 0) {
+            // Перемешать биты: соседние значения (годы, зоны) расходятся по разным узлам равномерно
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) Math.floorMod(h ^ (h >>> 32), (long) shards);
+        }
+        for (Range range : ranges) {
+            if (value >= range.from && value <= range.to) {
+                return range.shard;
+            }
+        }
+        throw new IllegalArgumentException(key + " " + value + " is not covered by SHARD_MAP");
+    }
+
+    private static Range[] parse(String map, int shards) {
+        List<Range> result = new ArrayList<>();
+        if (map == null || map.trim().isEmpty()) {
+            return new Range[0];
+        }
+        for (String part : map.split(",")) {
+            String entry = part.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int eq = entry.lastIndexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("SHARD_MAP entry without '=shard': " + entry);
+            }
+            String bounds = entry.substring(0, eq).trim();
+            int shard = Integer.parseInt(entry.substring(eq + 1).trim());
+            if (shard < 0 || shard >= shards) {
+                throw new IllegalArgumentException("SHARD_MAP entry " + entry + ": shard must be 0.." + (shards - 1));
+            }
+            int dash = bounds.indexOf('-');
+            long from;
+            long to;
+            if (dash < 0) {
+                from = to = Long.parseLong(bounds);
+            } else {
+                String start = bounds.substring(0, dash).trim();
+                String end = bounds.substring(dash + 1).trim();
+                from = start.isEmpty() ? Long.MIN_VALUE + 1 : Long.parseLong(start);
+                to = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong(end);
+            }
+            result.add(new Range(from, to, shard));
+        }
+        return result.toArray(new Range[0]);
+    }
+
+    @Override
+    public String toString() {
+        return key + (ranges.length == 0 ? " hash" : " ranges") + " over " + shards + " shards";
+    }
+}
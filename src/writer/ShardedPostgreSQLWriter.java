@@ -0,0 +1,149 @@
+package writer;
+
+import config.AppConfig;
+import Logging.LogService;
+import model.TaxiTrip;
+import reader.TripRow;
+import reader.TripRowSink;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Запись в несколько независимых узлов PostgreSQL (POSTGRESQL_SHARDS): каждая строка уходит
+ * на узел, выбранный ShardRouter (SHARD_KEY / SHARD_MAP).
+ *
+ * На каждый узел - свой writer (PostgreSQLWriter или PostgreSQLCopyWriter) со своим
+ * подключением и своим batch'ем из BATCH_SIZE строк; taskId узла - "Task-1@shard-0",
+ * поэтому метрики стадий и сводка LoaderMetrics.printShardSummary видны по узлам.
+ * Подключения узла у всех задач вместе - его пул из THREAD_COUNT соединений.
+ */
+public class ShardedPostgreSQLWriter implements DatabaseWriter, TripRowSink {
+
+    /** Разделитель taskId задачи и имени узла в taskId writer'а узла. */
+    public static final String SHARD_SEPARATOR = "@shard-";
+
+    private final String taskId;
+    private final ShardRouter router;
+    private final DatabaseWriter[] shards;
+    private final TaxiTrip rowTrip = new TaxiTrip();    // строка для writer'ов без TripRowSink
+
+    public ShardedPostgreSQLWriter(String taskId) throws SQLException {
+        this.taskId = taskId;
+        this.router = ShardRouter.fromConfig();
+        List<String> urls = AppConfig.POSTGRESQL_SHARDS;
+        this.shards = new DatabaseWriter[urls.size()];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                String shardTaskId = taskId + SHARD_SEPARATOR + i;
+                shards[i] = AppConfig.POSTGRESQL_COPY
+                        ? new PostgreSQLCopyWriter(shardTaskId, urls.get(i))
+                        : new PostgreSQLWriter(shardTaskId, urls.get(i));
+            }
+        } catch (SQLException e) {
+            closeOpened();
+            throw e;
+        }
+        LogService.infof("[%s] Sharded writer: %s", taskId, router);
+    }
+
+    private void closeOpened() {
+        for (DatabaseWriter shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            try {
+                shard.close();
+            } catch (SQLException e) {
+                LogService.errorf("[%s] Could not close shard writer: %s", shard.getTaskId(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void addRow(TripRow row) throws SQLException {
+        DatabaseWriter shard = shards[router.shardOf(row.ints[TripRow.PU_LOCATION_ID], row.pickupLocalMicros)];
+        if (shard instanceof TripRowSink) {
+            ((TripRowSink) shard).addRow(row);
+        } else {
+            row.copyTo(rowTrip);
+            shard.addTrip(rowTrip);
+        }
+    }
+
+    @Override
+    public void addTrip(TaxiTrip trip) throws SQLException {
+        shards[router.shardOf(trip)].addTrip(trip);
+    }
+
+    @Override
+    public void addTrips(List<TaxiTrip> trips) throws SQLException {
+        for (TaxiTrip trip : trips) {
+            addTrip(trip);
+        }
+    }
+
+    @Override
+    public void executeBatch() throws SQLException {
+        for (DatabaseWriter shard : shards) {
+            shard.executeBatch();
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        for (DatabaseWriter shard : shards) {
+            shard.flush();
+        }
+    }
+
+    @Override
+    public long getTotalInserted() {
+        long total = 0;
+        for (DatabaseWriter shard : shards) {
+            total += shard.getTotalInserted();
+        }
+        return total;
+    }
+
+    @Override
+    public String getPerformanceStats() {
+        StringBuilder sb = new StringBuilder(String.format("[%s] Total: %,d records on %d shards",
+                taskId, getTotalInserted(), shards.length));
+        for (DatabaseWriter shard : shards) {
+            sb.append("\n   ").append(shard.getPerformanceStats());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public void testInsert() throws SQLException {
+        for (DatabaseWriter shard : shards) {
+            shard.testInsert();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (DatabaseWriter shard : shards) {
+            try {
+                shard.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package writer;
+
+import Logging.LogService;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * "Теплые" writer'ы между файлами (режим WATCH_MODE): задача с тем же taskId получает
+ * уже открытое подключение вместо нового, поэтому каждый новый файл не платит за
+ * подключение и подготовку statement'ов. Writer, простоявший дольше idleMillis, закрывается
+ * (closeIdle), чтобы не держать соединения между редкими файлами.
+ *
+ * Writer берется через Lease:
+ *   try (WriterPool.Lease lease = WriterPool.lease(pool, taskId)) { ... lease.completed(); }
+ * Без пула (pool = null) lease создает writer и закрывает его, как раньше.
+ */
+public final class WriterPool implements AutoCloseable {
+
+    private static class Idle {
+        final DatabaseWriter writer;
+        final long since;
+
+        Idle(DatabaseWriter writer, long since) {
+            this.writer = writer;
+            this.since = since;
+        }
+    }
+
+    private final long idleMillis;
+    private final Map<String, Idle> idle = new HashMap<>();
+
+    public WriterPool(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Writer задачи на время загрузки файла.
+     */
+    public static Lease lease(WriterPool pool, String taskId) throws SQLException {
+        DatabaseWriter writer = pool != null ? pool.take(taskId) : null;
+        return new Lease(pool, writer != null ? writer : DatabaseWriterFactory.createWriter(taskId));
+    }
+
+    private synchronized DatabaseWriter take(String taskId) {
+        Idle entry = idle.remove(taskId);
+        return entry != null ? entry.writer : null;
+    }
+
+    private synchronized void put(DatabaseWriter writer) {
+        idle.put(writer.getTaskId(), new Idle(writer, System.currentTimeMillis()));
+    }
+
+    /**
+     * Закрыть writer'ы, простоявшие дольше idleMillis.
+     */
+    public void closeIdle() {
+        long now = System.currentTimeMillis();
+        Map<String, DatabaseWriter> expired = new HashMap<>();
+        synchronized (this) {
+            Iterator<Idle> it = idle.values().iterator();
+            while (it.hasNext()) {
+                Idle entry = it.next();
+                if (now - entry.since >= idleMillis) {
+                    expired.put(entry.writer.getTaskId(), entry.writer);
+                    it.remove();
+                }
+            }
+        }
+        for (DatabaseWriter writer : expired.values()) {
+            closeQuietly(writer);
+        }
+        if (!expired.isEmpty()) {
+            LogService.infof("Closed %d idle writer(s)", expired.size());
+        }
+    }
+
+    /** Закрыть все writer'ы пула. */
+    @Override
+    public void close() {
+        Map<String, Idle> all;
+        synchronized (this) {
+            all = new HashMap<>(idle);
+            idle.clear();
+        }
+        for (Idle entry : all.values()) {
+            closeQuietly(entry.writer);
+        }
+    }
+
+    private static void closeQuietly(DatabaseWriter writer) {
+        try {
+            writer.close();
+        } catch (SQLException e) {
+            LogService.errorf("[%s] Could not close writer: %s", writer.getTaskId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Writer, взятый задачей. После completed() возвращается в пул, иначе (ошибка в задаче)
+     * закрывается - состояние подключения после сбоя неизвестно.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final WriterPool pool;
+        private final DatabaseWriter writer;
+        private boolean completed;
+
+        private Lease(WriterPool pool, DatabaseWriter writer) {
+            this.pool = pool;
+            this.writer = writer;
+        }
+
+        public DatabaseWriter writer() {
+            return writer;
+        }
+
+        /** Задача завершилась успешно, все batch'и выполнены (flush). */
+        public void completed() {
+            completed = true;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (pool != null && completed) {
+                pool.put(writer);
+            } else {
+                writer.close();
+            }
+        }
+    }
+}